@@ -0,0 +1,22 @@
+package ru.yandex.practicum.ewm.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.yandex.practicum.ewm.replica.ReplicaDataSourceConfig;
+import ru.yandex.practicum.ewm.replica.ReplicaProperties;
+
+/**
+ * Routes read-only transactions to the replica configured by ewm.replica
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "ewm.replica", name = "enabled", havingValue = "true")
+public class DataSourceConfig extends ReplicaDataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties(prefix = "ewm.replica")
+    public ReplicaProperties replicaProperties() {
+        return new ReplicaProperties();
+    }
+}
@@ -1,6 +1,7 @@
 package ru.yandex.practicum.ewm.service;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
@@ -53,6 +54,9 @@ public class EventServiceImpl implements  EventService {
     private final CommentRepository commentRepository;
     private final StatsService statsService;
 
+    @Value("${ewm_stats_server.approximate-views}")
+    private Boolean approximateViews;
+
     @Override
     public EventFullDto createEvent(Long userId, EventFullForRequestDto eventDto) {
         EventState state = EventState.PENDING;
@@ -460,6 +464,7 @@ public class EventServiceImpl implements  EventService {
                 .end(LocalDateTime.now())
                 .uris(List.of(request.getRequestURI()))
                 .unique(true)
+                .approximate(approximateViews)
                 .build();
 
         List<ViewStatsDto> stats = statsService.getStats(requestParam);
@@ -488,6 +493,7 @@ public class EventServiceImpl implements  EventService {
                 .end(LocalDateTime.now())
                 .uris(uris)
                 .unique(true)
+                .approximate(approximateViews)
                 .build();
 
         Map<String, List<ViewStatsDto>> stats = statsService.getStats(requestParam).stream()
@@ -1,10 +1,7 @@
 package ru.yandex.practicum.ewm.service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.ewm.client.StatsClient;
 import ru.yandex.practicum.ewm.dto.EndpointHitDto;
@@ -15,6 +12,7 @@ import javax.servlet.http.HttpServletRequest;
 import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
 
 @Service
 @RequiredArgsConstructor
@@ -33,20 +31,15 @@ public class StatsServiceImpl implements StatsService {
         endpointHitDto.setUri(request.getRequestURI());
         endpointHitDto.setIp(request.getRemoteAddr());
         endpointHitDto.setTimestamp(LocalDateTime.now());
+        endpointHitDto.setHitId(UUID.randomUUID().toString());
 
         statsClient.saveEndpointHit(endpointHitDto);
     }
 
     @Override
     public List<ViewStatsDto> getStats(StatsRequestParam requestParam) {
-        ResponseEntity<Object> responseEntity = statsClient.getStats(requestParam);
-        Object body = responseEntity.getBody();
+        List<ViewStatsDto> body = statsClient.getStats(requestParam).getBody();
 
-        if (body == null) {
-            return Collections.emptyList();
-        }
-
-        return new ObjectMapper().convertValue(body, new TypeReference<>() {
-        });
+        return body == null ? Collections.emptyList() : body;
     }
 }
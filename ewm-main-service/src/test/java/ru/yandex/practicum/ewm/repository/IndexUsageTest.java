@@ -0,0 +1,128 @@
+package ru.yandex.practicum.ewm.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.ewm.model.ParticipationRequestStatus;
+import ru.yandex.practicum.ewm.service.EventServiceImpl;
+import ru.yandex.practicum.ewm.service.StatsService;
+import ru.yandex.practicum.ewm.util.EventRequestParam;
+import ru.yandex.practicum.ewm.util.SqlCaptor;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "ru.yandex.practicum.ewm.util.SqlCaptor")
+@Import(EventServiceImpl.class)
+class IndexUsageTest {
+
+    private static final LocalDateTime ORIGIN = LocalDateTime.of(2030, 5, 1, 0, 0, 0);
+
+    @MockBean
+    private StatsService statsService;
+
+    @Autowired
+    private EventServiceImpl eventService;
+
+    @Autowired
+    private ParticipationRequestRepository requestRepository;
+
+    @Autowired
+    private CommentRepository commentRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void saveEvents() {
+        SqlCaptor.clear();
+
+        // ANALYZE commits the test transaction, so the rows are inserted once for all tests
+        if (jdbcTemplate.queryForObject("SELECT COUNT(*) FROM events", Long.class) > 0) {
+            return;
+        }
+
+        jdbcTemplate.update("INSERT INTO users (id, email, name) VALUES (1, 'user@mail.ru', 'user')");
+        jdbcTemplate.update("INSERT INTO categories (id, name) VALUES (1, 'category')");
+
+        String[] states = {"PENDING", "PUBLISHED", "CANCELED"};
+        for (int i = 1; i <= 300; i++) {
+            jdbcTemplate.update("INSERT INTO events (id, title, annotation, description, event_date, lat, lon, "
+                            + "category_id, initiator_id, state, created) VALUES (?, ?, ?, ?, ?, 0, 0, 1, 1, ?, ?)",
+                    i, "title", "annotation", "description", Timestamp.valueOf(ORIGIN.plusDays(i)),
+                    states[i % states.length], Timestamp.valueOf(ORIGIN));
+            jdbcTemplate.update("INSERT INTO requests (event_id, requester_id, status, created) "
+                    + "VALUES (?, 1, 'CONFIRMED', ?)", i, Timestamp.valueOf(ORIGIN));
+            jdbcTemplate.update("INSERT INTO comments (text, event_id, author_id, created) "
+                    + "VALUES ('text', ?, 1, ?)", i, Timestamp.valueOf(ORIGIN));
+        }
+
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    @Test
+    void getEventsByAdmin_shouldUseTheStateAndEventDateIndex() {
+        eventService.getEventsByAdmin(EventRequestParam.builder()
+                .states(List.of("PUBLISHED"))
+                .rangeStart(ORIGIN.plusDays(10))
+                .rangeEnd(ORIGIN.plusDays(20))
+                .build(), PageRequest.of(0, 10));
+
+        assertThat(explain("events")).contains("EVENTS_STATE_EVENT_DATE_IDX");
+    }
+
+    @Test
+    void countByEventIdAndStatus_shouldUseTheEventIdAndStatusIndex() {
+        requestRepository.countByEventIdAndStatus(1L, ParticipationRequestStatus.CONFIRMED);
+
+        assertThat(explain("requests")).contains("REQUESTS_EVENT_ID_STATUS_IDX");
+    }
+
+    @Test
+    void findByEventIdInAndStatus_shouldNotScanRequests() {
+        requestRepository.findByEventIdInAndStatus(List.of(1L, 2L), ParticipationRequestStatus.CONFIRMED);
+
+        // the query joins events, so H2 probes requests through the index it creates for the foreign key
+        assertThat(explain("requests")).doesNotContain("TABLESCAN");
+    }
+
+    @Test
+    void existsByRequesterIdAndEventId_shouldUseTheRequesterIdAndEventIdIndex() {
+        requestRepository.existsByRequesterIdAndEventId(1L, 1L);
+
+        assertThat(explain("requests")).contains("REQUESTS_REQUESTER_ID_EVENT_ID_IDX");
+    }
+
+    @Test
+    void countByEventId_shouldNotScanComments() {
+        commentRepository.countByEventId(1L);
+
+        assertThat(explain("comments")).doesNotContain("TABLESCAN");
+    }
+
+    /**
+     * Returns the H2 execution plan of the last captured statement that reads the table.
+     * Parameters are bound to nulls, the plan does not depend on their values
+     */
+    private String explain(String table) {
+        List<String> statements = SqlCaptor.getStatements();
+        String sql = statements.stream()
+                .filter(statement -> statement.matches("(?is).*\\bfrom\\s+" + table + "\\b.*"))
+                .reduce((first, second) -> second)
+                .orElseThrow();
+        int parameters = sql.length() - sql.replace("?", "").length();
+
+        return jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class,
+                Collections.nCopies(parameters, null).toArray()).toUpperCase();
+    }
+}
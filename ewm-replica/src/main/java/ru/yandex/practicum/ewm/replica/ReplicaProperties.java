@@ -0,0 +1,54 @@
+package ru.yandex.practicum.ewm.replica;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+
+/**
+ * Settings of a read replica, bound by each service under its own prefix
+ */
+@Getter
+@Setter
+public class ReplicaProperties {
+
+    /**
+     * Whether read-only transactions are sent to the replica
+     */
+    private boolean enabled = false;
+
+    /**
+     * JDBC url of the replica
+     */
+    private String url;
+
+    private String username;
+
+    private String password;
+
+    /**
+     * Maximum number of connections to the replica
+     */
+    private int maximumPoolSize = 10;
+
+    /**
+     * Replication lag above which read-only transactions go to the primary
+     */
+    private Duration maxLag = Duration.ofSeconds(5);
+
+    /**
+     * How often the replication lag is measured, also how long an unreachable replica is skipped
+     */
+    private Duration lagCheckInterval = Duration.ofSeconds(1);
+
+    /**
+     * Query that returns the replication lag of the replica in seconds, or NULL if it is unknown.
+     * A replica that streams from the primary and has replayed everything it received reports no lag even if
+     * the primary is idle. Once its WAL receiver stops streaming the lag is the age of the last replayed transaction,
+     * so it grows until the replica is skipped
+     */
+    private String lagQuery = "SELECT CASE WHEN NOT pg_is_in_recovery() THEN 0 "
+            + "WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() "
+            + "AND EXISTS (SELECT 1 FROM pg_stat_wal_receiver WHERE status = 'streaming') THEN 0 "
+            + "ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) END";
+}
@@ -0,0 +1,137 @@
+package ru.yandex.practicum.ewm.replica;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Clock;
+import java.time.Instant;
+
+/**
+ * Gives the connections of read-only transactions to the replica while its replication lag is within the limit,
+ * and all other connections to the primary. The lag is measured at most once per check interval,
+ * a replica that fails the check or refuses a connection is skipped until the next check.
+ * Must be wrapped in a LazyConnectionDataSourceProxy, so the connection is taken once the transaction is marked
+ * read-only
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractDataSource {
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final ReplicaProperties properties;
+    private final Clock clock;
+    private volatile boolean replicaUsable;
+    private volatile Instant nextCheck = Instant.MIN;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, ReplicaProperties properties) {
+        this(primary, replica, properties, Clock.systemUTC());
+    }
+
+    ReplicaRoutingDataSource(DataSource primary, DataSource replica, ReplicaProperties properties, Clock clock) {
+        this.primary = primary;
+        this.replica = replica;
+        this.properties = properties;
+        this.clock = clock;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return connect(DataSource::getConnection);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return connect(dataSource -> dataSource.getConnection(username, password));
+    }
+
+    /**
+     * Returns whether the replica was reachable and within the lag limit at the last check
+     *
+     * @return whether read-only transactions may use the replica
+     */
+    public boolean isReplicaUsable() {
+        if (clock.instant().isBefore(nextCheck)) {
+            return replicaUsable;
+        }
+
+        synchronized (this) {
+            Instant now = clock.instant();
+
+            if (now.isBefore(nextCheck)) {
+                return replicaUsable;
+            }
+
+            boolean usable = checkLag();
+            if (usable != replicaUsable) {
+                log.info(usable ? "Read-only transactions use the replica" : "Read-only transactions use the primary");
+            }
+
+            replicaUsable = usable;
+            nextCheck = now.plus(properties.getLagCheckInterval());
+            return usable;
+        }
+    }
+
+    /**
+     * Opens a connection of the selected data source, or of the primary if the replica refuses it
+     */
+    private Connection connect(ConnectionOpener opener) throws SQLException {
+        DataSource target = determineTarget();
+
+        if (target == primary) {
+            return opener.open(primary);
+        }
+
+        try {
+            return opener.open(replica);
+        } catch (SQLException e) {
+            skipReplica(e);
+            return opener.open(primary);
+        }
+    }
+
+    private DataSource determineTarget() {
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly() && isReplicaUsable() ? replica : primary;
+    }
+
+    private boolean checkLag() {
+        try (Connection connection = replica.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(properties.getLagQuery())) {
+            double lag = rs.next() ? rs.getDouble(1) : Double.MAX_VALUE;
+
+            if (rs.wasNull()) {
+                log.warn("Replication lag of the replica is unknown");
+                return false;
+            }
+
+            if (lag * 1000 > properties.getMaxLag().toMillis()) {
+                log.warn("Replica is {} s behind the primary", lag);
+                return false;
+            }
+
+            return true;
+        } catch (SQLException e) {
+            log.warn("Unable to check the replication lag: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private synchronized void skipReplica(SQLException e) {
+        log.warn("Unable to connect to the replica: {}", e.getMessage());
+        replicaUsable = false;
+        nextCheck = clock.instant().plus(properties.getLagCheckInterval());
+    }
+
+    @FunctionalInterface
+    private interface ConnectionOpener {
+
+        Connection open(DataSource dataSource) throws SQLException;
+    }
+}
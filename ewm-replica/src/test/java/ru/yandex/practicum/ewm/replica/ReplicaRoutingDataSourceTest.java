@@ -0,0 +1,170 @@
+package ru.yandex.practicum.ewm.replica;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ReplicaRoutingDataSourceTest {
+
+    @Mock
+    private DataSource primary;
+
+    @Mock
+    private DataSource replica;
+
+    @Mock
+    private Connection primaryConnection;
+
+    @Mock
+    private Connection replicaConnection;
+
+    @Mock
+    private Statement statement;
+
+    @Mock
+    private ResultSet resultSet;
+
+    private final ReplicaProperties properties = new ReplicaProperties();
+
+    private Instant now = Instant.parse("2023-05-01T00:00:00Z");
+
+    private ReplicaRoutingDataSource dataSource;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        properties.setMaxLag(Duration.ofSeconds(5));
+        properties.setLagCheckInterval(Duration.ofSeconds(1));
+
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        when(replica.getConnection()).thenReturn(replicaConnection);
+        when(replicaConnection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+
+        dataSource = new ReplicaRoutingDataSource(primary, replica, properties, new Clock() {
+            @Override
+            public ZoneOffset getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return now;
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+    }
+
+    @Test
+    void getConnection_shouldUseReplica_ifReadOnlyAndLagWithinLimit() throws SQLException {
+        when(resultSet.getDouble(1)).thenReturn(1.5);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertThat(dataSource.getConnection()).isSameAs(replicaConnection);
+    }
+
+    @Test
+    void getConnection_shouldUsePrimary_ifNotReadOnly() throws SQLException {
+        assertThat(dataSource.getConnection()).isSameAs(primaryConnection);
+        verify(replica, times(0)).getConnection();
+    }
+
+    @Test
+    void getConnection_shouldUsePrimary_untilLagIsBackWithinLimit() throws SQLException {
+        when(resultSet.getDouble(1)).thenReturn(30.0, 0.0);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertThat(dataSource.getConnection()).isSameAs(primaryConnection);
+        assertThat(dataSource.getConnection()).isSameAs(primaryConnection);
+        verify(statement, times(1)).executeQuery(anyString());
+
+        now = now.plusSeconds(2);
+
+        assertThat(dataSource.getConnection()).isSameAs(replicaConnection);
+    }
+
+    @Test
+    void getConnection_shouldUsePrimary_ifReceiverDisconnected() throws SQLException {
+        when(resultSet.getDouble(1)).thenReturn(0.0, 3.0, 8.0);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertThat(dataSource.getConnection()).isSameAs(replicaConnection);
+
+        now = now.plusSeconds(3);
+
+        assertThat(dataSource.getConnection()).isSameAs(replicaConnection);
+
+        now = now.plusSeconds(5);
+
+        assertThat(dataSource.getConnection()).isSameAs(primaryConnection);
+    }
+
+    @Test
+    void getConnection_shouldUsePrimary_ifLagIsUnknown() throws SQLException {
+        when(resultSet.getDouble(1)).thenReturn(0.0);
+        when(resultSet.wasNull()).thenReturn(true);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertThat(dataSource.getConnection()).isSameAs(primaryConnection);
+        assertThat(dataSource.isReplicaUsable()).isFalse();
+    }
+
+    @Test
+    void getConnection_shouldPassTheCredentialsToTheSelectedPool() throws SQLException {
+        when(resultSet.getDouble(1)).thenReturn(0.0);
+        when(primary.getConnection("reporter", "secret")).thenReturn(primaryConnection);
+        when(replica.getConnection("reporter", "secret")).thenReturn(replicaConnection);
+
+        assertThat(dataSource.getConnection("reporter", "secret")).isSameAs(primaryConnection);
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertThat(dataSource.getConnection("reporter", "secret")).isSameAs(replicaConnection);
+    }
+
+    @Test
+    void getConnection_shouldFallBackToPrimary_ifReplicaRefusesConnection() throws SQLException {
+        when(resultSet.getDouble(1)).thenReturn(0.0);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertThat(dataSource.getConnection()).isSameAs(replicaConnection);
+
+        when(replica.getConnection()).thenThrow(new SQLException("Connection refused"));
+
+        assertThat(dataSource.getConnection()).isSameAs(primaryConnection);
+        assertThat(dataSource.isReplicaUsable()).isFalse();
+    }
+}
@@ -0,0 +1,57 @@
+package ru.yandex.practicum.ewm.benchmark;
+
+import lombok.Getter;
+import org.flywaydb.core.Flyway;
+
+import java.util.Map;
+
+/**
+ * Databases the stats server is benchmarked against.
+ * H2_FILE stores the database in a file in PostgreSQL compatibility mode and stands in for a real Postgres,
+ * POSTGRES connects to the server given by the benchmark.postgres.url, benchmark.postgres.username
+ * and benchmark.postgres.password system properties
+ */
+@Getter
+public enum BenchmarkDatabase {
+
+    H2("jdbc:h2:mem:ewm_stats;DB_CLOSE_DELAY=-1", "test", "test"),
+    H2_FILE("jdbc:h2:file:./target/benchmark-db/ewm_stats;MODE=PostgreSQL", "test", "test"),
+    POSTGRES(System.getProperty("benchmark.postgres.url",
+            "jdbc:postgresql://localhost:5432/ewm_stats_benchmark?reWriteBatchedInserts=true"),
+            System.getProperty("benchmark.postgres.username", "ewm"),
+            System.getProperty("benchmark.postgres.password", "ewm"));
+
+    private final String url;
+    private final String username;
+    private final String password;
+
+    BenchmarkDatabase(String url, String username, String password) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+    }
+
+    /**
+     * Drops everything a previous run left in the database, the stats server migrates it again on start
+     */
+    public void clean() {
+        Flyway.configure()
+                .dataSource(url, username, password)
+                .cleanDisabled(false)
+                .load()
+                .clean();
+    }
+
+    /**
+     * Returns the data source properties of the stats server
+     *
+     * @return property names and values
+     */
+    public Map<String, Object> getProperties() {
+        return Map.of(
+                "spring.datasource.url", url,
+                "spring.datasource.username", username,
+                "spring.datasource.password", password,
+                "spring.datasource.driverClassName", this == POSTGRES ? "org.postgresql.Driver" : "org.h2.Driver");
+    }
+}
@@ -0,0 +1,55 @@
+package ru.yandex.practicum.ewm.benchmark;
+
+import ru.yandex.practicum.ewm.dto.EndpointHitDto;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Generates hits of the main service with uniformly distributed uris, IPs and timestamps within a time window
+ */
+public class HitGenerator {
+
+    private static final int IP_COUNT = 65_536;
+
+    private final int uriCount;
+    private final LocalDateTime start;
+    private final long spanSeconds;
+    private final SplittableRandom random;
+
+    public HitGenerator(int uriCount, LocalDateTime start, Duration span, long seed) {
+        this.uriCount = uriCount;
+        this.start = start;
+        this.spanSeconds = span.toSeconds();
+        this.random = new SplittableRandom(seed);
+    }
+
+    public EndpointHitDto next() {
+        int ip = random.nextInt(IP_COUNT);
+        EndpointHitDto endpointHitDto = new EndpointHitDto();
+
+        endpointHitDto.setApp("ewm-main-service");
+        endpointHitDto.setUri(uri(random.nextInt(uriCount)));
+        endpointHitDto.setIp("10.0." + (ip >> 8) + "." + (ip & 0xff));
+        endpointHitDto.setTimestamp(start.plusSeconds(random.nextLong(spanSeconds)));
+
+        return endpointHitDto;
+    }
+
+    public List<EndpointHitDto> next(int count) {
+        List<EndpointHitDto> endpointHitDtos = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            endpointHitDtos.add(next());
+        }
+
+        return endpointHitDtos;
+    }
+
+    public static String uri(int index) {
+        return "/events/" + index;
+    }
+}
@@ -0,0 +1,128 @@
+package ru.yandex.practicum.ewm.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of a running stats server over HTTP, in requests per second, with a fixed number of requests in flight.
+ * Requests are sent asynchronously over as many connections as there are requests in flight, so the servlet server
+ * and the reactive one can be compared by the number of concurrent connections they sustain.
+ * The servers are started separately against the same database and are given by the target parameter
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class HttpBenchmark {
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * Base url of the server, the servlet server listens on 9090 by default
+     */
+    @Param({"http://localhost:9090"})
+    private String target;
+
+    /**
+     * Number of requests in flight
+     */
+    @Param({"16", "256", "1024"})
+    private int concurrency;
+
+    @Param({"1000"})
+    private int uriCount;
+
+    private HttpClient client;
+    private ObjectMapper objectMapper;
+    private HitGenerator generator;
+    private Semaphore inFlight;
+    private final AtomicLong failures = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        generator = new HitGenerator(uriCount, LocalDateTime.now().minusHours(1), Duration.ofHours(1), 42);
+        inFlight = new Semaphore(concurrency);
+    }
+
+    /**
+     * Waits for the requests of the iteration to complete, so that they are not counted in the next one
+     */
+    @TearDown(Level.Iteration)
+    public void drain() throws InterruptedException {
+        inFlight.acquire(concurrency);
+        inFlight.release(concurrency);
+
+        long failed = failures.getAndSet(0);
+        if (failed > 0) {
+            System.out.println("Failed requests: " + failed);
+        }
+    }
+
+    @Benchmark
+    public void saveEndpointHit() throws IOException, InterruptedException {
+        send(HttpRequest.newBuilder(URI.create(target + "/hit"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(generator.next())))
+                .build());
+    }
+
+    @Benchmark
+    public void getStats() throws InterruptedException {
+        LocalDateTime end = LocalDateTime.now();
+
+        send(HttpRequest.newBuilder(URI.create(target + "/stats?start=" + encode(end.minusDays(1))
+                        + "&end=" + encode(end) + "&uris=" + generator.next().getUri()))
+                .GET()
+                .build());
+    }
+
+    private void send(HttpRequest request) throws InterruptedException {
+        inFlight.acquire();
+
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, e) -> {
+                    if (e != null || response.statusCode() >= 300) {
+                        failures.incrementAndGet();
+                    }
+                    inFlight.release();
+                });
+    }
+
+    private static String encode(LocalDateTime dateTime) {
+        return URLEncoder.encode(dateTime.format(FORMATTER), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,78 @@
+package ru.yandex.practicum.ewm.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.ewm.dto.EndpointHitDto;
+import ru.yandex.practicum.ewm.dto.EndpointHitsSummaryDto;
+import ru.yandex.practicum.ewm.service.StatsService;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of saving hits one by one and in batches, in hits per second
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class IngestBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"H2", "H2_FILE"})
+    private BenchmarkDatabase database;
+
+    @Param({"10", "10000"})
+    private int uriCount;
+
+    /**
+     * Value of stats.ingest.mode
+     */
+    @Param({"sync"})
+    private String ingestMode;
+
+    private ConfigurableApplicationContext context;
+    private StatsService statsService;
+    private HitGenerator generator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = StatsServer.start(database, Map.of("stats.ingest.mode", ingestMode));
+        statsService = context.getBean(StatsService.class);
+        generator = new HitGenerator(uriCount, LocalDateTime.now().minusHours(1), Duration.ofHours(1), 42);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public EndpointHitDto saveEndpointHit() {
+        return statsService.saveEndpointHit(generator.next());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public EndpointHitsSummaryDto saveEndpointHits() {
+        return statsService.saveEndpointHits(generator.next(BATCH_SIZE));
+    }
+}
@@ -0,0 +1,100 @@
+package ru.yandex.practicum.ewm.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.yandex.practicum.ewm.dto.EndpointHitDto;
+import ru.yandex.practicum.ewm.dto.ViewStatsDto;
+import ru.yandex.practicum.ewm.mapper.StatsMapper;
+import ru.yandex.practicum.ewm.model.EndpointHit;
+import ru.yandex.practicum.ewm.util.CborUtils;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Cost of mapping a hit to the entity and back, and of reading hits and writing stats responses
+ * in the JSON and CBOR formats the server accepts
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappingBenchmark {
+
+    private static final TypeReference<List<ViewStatsDto>> VIEW_STATS_LIST = new TypeReference<>() {
+    };
+
+    @Param({"JSON", "CBOR"})
+    private String format;
+
+    /**
+     * Number of entries in a stats response
+     */
+    @Param({"10", "1000"})
+    private int statsSize;
+
+    private ObjectMapper objectMapper;
+    private EndpointHitDto endpointHitDto;
+    private EndpointHit endpointHit;
+    private byte[] endpointHitBytes;
+    private List<ViewStatsDto> viewStats;
+    private byte[] viewStatsBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = "CBOR".equals(format) ? CborUtils.objectMapper() : Jackson2ObjectMapperBuilder.json().build();
+
+        endpointHitDto = new HitGenerator(statsSize, LocalDateTime.now(), Duration.ofHours(1), 42).next();
+        endpointHit = StatsMapper.toEndpointHit(endpointHitDto);
+        endpointHitBytes = objectMapper.writeValueAsBytes(endpointHitDto);
+
+        viewStats = IntStream.range(0, statsSize)
+                .mapToObj(i -> new ViewStatsDto("ewm-main-service", HitGenerator.uri(i), (long) (statsSize - i) * 37))
+                .collect(Collectors.toList());
+        viewStatsBytes = objectMapper.writeValueAsBytes(viewStats);
+    }
+
+    @Benchmark
+    public EndpointHit toEndpointHit() {
+        return StatsMapper.toEndpointHit(endpointHitDto);
+    }
+
+    @Benchmark
+    public EndpointHitDto toDto() {
+        return StatsMapper.toDto(endpointHit);
+    }
+
+    @Benchmark
+    public EndpointHitDto readEndpointHit() throws IOException {
+        return objectMapper.readValue(endpointHitBytes, EndpointHitDto.class);
+    }
+
+    @Benchmark
+    public byte[] writeViewStats() throws IOException {
+        return objectMapper.writeValueAsBytes(viewStats);
+    }
+
+    @Benchmark
+    public List<ViewStatsDto> readViewStats() throws IOException {
+        return objectMapper.readValue(viewStatsBytes, VIEW_STATS_LIST);
+    }
+}
@@ -0,0 +1,107 @@
+package ru.yandex.practicum.ewm.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.ewm.dto.ViewStatsDto;
+import ru.yandex.practicum.ewm.service.StatsService;
+import ru.yandex.practicum.ewm.util.StatsRequestParam;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Latency of getStats over 30 days of hits, with and without unique counting,
+ * for few and many distinct uris, short and long ranges, all uris or a page of them.
+ * The range edges are not aligned to a minute, so both the rollups and the raw hits are read
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class QueryBenchmark {
+
+    private static final LocalDateTime END = LocalDateTime.of(2023, 6, 1, 0, 0, 0);
+    private static final Duration SPAN = Duration.ofDays(30);
+    private static final int HITS = 200_000;
+    private static final int BATCH_SIZE = 1_000;
+
+    @Param({"H2", "H2_FILE"})
+    private BenchmarkDatabase database;
+
+    @Param({"false", "true"})
+    private boolean unique;
+
+    @Param({"10", "1000"})
+    private int uriCount;
+
+    @Param({"1", "30"})
+    private int rangeDays;
+
+    /**
+     * Number of uris in the request, 0 requests all of them
+     */
+    @Param({"0", "10"})
+    private int requestedUris;
+
+    /**
+     * Value of stats.storage
+     */
+    @Param({"database"})
+    private String storage;
+
+    private ConfigurableApplicationContext context;
+    private StatsService statsService;
+    private StatsRequestParam requestParam;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = StatsServer.start(database, Map.of("stats.storage", storage));
+        statsService = context.getBean(StatsService.class);
+
+        HitGenerator generator = new HitGenerator(uriCount, END.minus(SPAN), SPAN, 42);
+        for (int i = 0; i < HITS; i += BATCH_SIZE) {
+            statsService.saveEndpointHits(generator.next(BATCH_SIZE));
+        }
+
+        List<String> uris = requestedUris == 0 ? null : IntStream.range(0, Math.min(requestedUris, uriCount))
+                .mapToObj(HitGenerator::uri)
+                .collect(Collectors.toList());
+
+        requestParam = StatsRequestParam.builder()
+                .start(END.minusDays(rangeDays).plusSeconds(17))
+                .end(END.minusSeconds(13))
+                .uris(uris)
+                .unique(unique)
+                .approximate(false)
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<ViewStatsDto> getStats() {
+        return statsService.getStats(requestParam);
+    }
+}
@@ -0,0 +1,46 @@
+package ru.yandex.practicum.ewm.benchmark;
+
+import lombok.experimental.UtilityClass;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.ewm.EwmStatsService;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@UtilityClass
+public class StatsServer {
+
+    /**
+     * Starts the stats server without the web layer on a clean database.
+     * Scheduled jobs, the query cache and transaction logging are turned off so that they do not disturb the measurements
+     *
+     * @param database
+     * @param properties properties that override the defaults
+     * @return application context of the server
+     */
+    public ConfigurableApplicationContext start(BenchmarkDatabase database, Map<String, Object> properties) {
+        database.clean();
+
+        Map<String, Object> arguments = new HashMap<>(database.getProperties());
+        arguments.put("spring.jpa.properties.hibernate.dialect", database == BenchmarkDatabase.POSTGRES
+                ? "org.hibernate.dialect.PostgreSQL10Dialect" : "org.hibernate.dialect.H2Dialect");
+        arguments.put("stats.cache.enabled", false);
+        arguments.put("stats.partitions.cron", "-");
+        arguments.put("stats.archive.cron", "-");
+        arguments.put("logging.level.root", "WARN");
+        arguments.put("logging.level.org.springframework.transaction.interceptor", "WARN");
+        arguments.put("logging.level.org.springframework.orm.jpa.JpaTransactionManager", "WARN");
+        arguments.putAll(properties);
+
+        return new SpringApplicationBuilder(EwmStatsService.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .logStartupInfo(false)
+                .run(arguments.entrySet().stream()
+                        .map(argument -> "--" + argument.getKey() + "=" + argument.getValue())
+                        .toArray(String[]::new));
+    }
+}
@@ -2,6 +2,7 @@ package ru.yandex.practicum.ewm.client;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
@@ -11,9 +12,12 @@ import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.DefaultUriBuilderFactory;
 import ru.yandex.practicum.ewm.dto.EndpointHitDto;
+import ru.yandex.practicum.ewm.dto.ViewStatsDto;
+import ru.yandex.practicum.ewm.util.CborUtils;
 import ru.yandex.practicum.ewm.util.StatsRequestParam;
 
 import java.time.format.DateTimeFormatter;
@@ -25,20 +29,46 @@ import java.util.Map;
 public class StatsClient {
 
     private static final String DATE_TIME_FORMAT = "yyyy-MM-dd HH:mm:ss";
-    private final RestTemplate restTemplate;
+    private static final ParameterizedTypeReference<List<ViewStatsDto>> VIEW_STATS_LIST =
+            new ParameterizedTypeReference<>() {
+            };
 
-    public StatsClient(@Value("${ewm_stats_server.url}") String serverUrl, RestTemplateBuilder builder) {
+    private final RestTemplate restTemplate;
+    private final MediaType mediaType;
+    private final int hitRetries;
+
+    /**
+     * Creates a client that talks CBOR with epoch-millis timestamps to the stats server,
+     * or JSON if {@code ewm_stats_server.binary} is false
+     *
+     * @param serverUrl
+     * @param binary
+     * @param hitRetries number of times hits with hit ids are sent again after a failure
+     * @param builder
+     */
+    public StatsClient(@Value("${ewm_stats_server.url}") String serverUrl,
+                       @Value("${ewm_stats_server.binary:true}") boolean binary,
+                       @Value("${ewm_stats_server.hit-retries:2}") int hitRetries,
+                       RestTemplateBuilder builder) {
         this.restTemplate = builder
                 .uriTemplateHandler(new DefaultUriBuilderFactory(serverUrl))
                 .requestFactory(HttpComponentsClientHttpRequestFactory::new)
                 .build();
+        CborUtils.configureMessageConverters(this.restTemplate.getMessageConverters());
+        this.mediaType = binary ? MediaType.APPLICATION_CBOR : MediaType.APPLICATION_JSON;
+        this.hitRetries = hitRetries;
     }
 
     public ResponseEntity<Object> saveEndpointHit(EndpointHitDto endpointHitDto) {
-        return makeAndSendRequest(HttpMethod.POST, "/hit", null, endpointHitDto);
+        return sendHits("/hit", endpointHitDto, endpointHitDto.getHitId() != null);
+    }
+
+    public ResponseEntity<Object> saveEndpointHits(List<EndpointHitDto> endpointHitDtos) {
+        return sendHits("/hits", endpointHitDtos,
+                endpointHitDtos.stream().allMatch(endpointHitDto -> endpointHitDto.getHitId() != null));
     }
 
-    public ResponseEntity<Object> getStats(StatsRequestParam requestParam) {
+    public ResponseEntity<List<ViewStatsDto>> getStats(StatsRequestParam requestParam) {
         Map<String, Object> parameters = new HashMap<>();
         StringBuilder path = new StringBuilder()
                 .append("/stats?start={start}&end={end}");
@@ -54,13 +84,47 @@ public class StatsClient {
         path.append("&unique={unique}");
         parameters.put("unique", requestParam.getUnique());
 
-        return makeAndSendRequest(HttpMethod.GET, path.toString(), parameters, null);
+        if (requestParam.getApproximate() != null) {
+            path.append("&approximate={approximate}");
+            parameters.put("approximate", requestParam.getApproximate());
+        }
+
+        HttpEntity<Object> requestEntity = new HttpEntity<>(defaultHeaders());
+
+        try {
+            return prepareGatewayResponse(restTemplate.exchange(
+                    path.toString(), HttpMethod.GET, requestEntity, VIEW_STATS_LIST, parameters));
+        } catch (HttpStatusCodeException e) {
+            return ResponseEntity.status(e.getStatusCode()).build();
+        }
+    }
+
+    /**
+     * Sends hits, and sends them again after a connection failure or a server error if they all have hit ids.
+     * The retries carry the same hit ids, so the stats server drops the hits it has already counted
+     */
+    private ResponseEntity<Object> sendHits(String path, Object body, boolean retryable) {
+        int retries = retryable ? hitRetries : 0;
+
+        for (int attempt = 0; ; attempt++) {
+            try {
+                ResponseEntity<Object> response = makeAndSendRequest(HttpMethod.POST, path, null, body);
+
+                if (!response.getStatusCode().is5xxServerError() || attempt >= retries) {
+                    return response;
+                }
+            } catch (ResourceAccessException e) {
+                if (attempt >= retries) {
+                    throw e;
+                }
+            }
+        }
     }
 
     private ResponseEntity<Object> makeAndSendRequest(
-            HttpMethod method, String path, @Nullable Map<String, Object> parameters, @Nullable EndpointHitDto body
+            HttpMethod method, String path, @Nullable Map<String, Object> parameters, @Nullable Object body
     ) {
-        HttpEntity<EndpointHitDto> requestEntity = new HttpEntity<>(body, defaultHeaders());
+        HttpEntity<Object> requestEntity = new HttpEntity<>(body, defaultHeaders());
 
         ResponseEntity<Object> serverResponse;
 
@@ -79,13 +143,13 @@ public class StatsClient {
 
     private HttpHeaders defaultHeaders() {
         HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.setAccept(List.of(MediaType.APPLICATION_JSON));
+        headers.setContentType(mediaType);
+        headers.setAccept(List.of(mediaType, MediaType.APPLICATION_JSON));
 
         return headers;
     }
 
-    private ResponseEntity<Object> prepareGatewayResponse(ResponseEntity<Object> response) {
+    private <T> ResponseEntity<T> prepareGatewayResponse(ResponseEntity<T> response) {
         if (response.getStatusCode().is2xxSuccessful()) {
             return response;
         }
@@ -20,6 +20,12 @@ public class EndpointHitDto {
 
     private Long id;
 
+    /**
+     * Optional client-generated id, a hit with an id that was received recently is not counted again
+     */
+    @Size(max = 64, message = "Hit id must contain no more than 64 characters")
+    private String hitId;
+
     @NotBlank(message = "App cannot be empty and must contain at least one non-whitespace character")
     @Size(min = 2, max = 50, message = "App must contain at least 2 and no more than 50 characters")
     private String app;
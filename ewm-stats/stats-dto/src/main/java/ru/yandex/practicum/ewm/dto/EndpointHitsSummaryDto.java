@@ -0,0 +1,21 @@
+package ru.yandex.practicum.ewm.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+public class EndpointHitsSummaryDto {
+
+    private Integer saved;
+
+    private Integer duplicates;
+}
@@ -0,0 +1,32 @@
+package ru.yandex.practicum.ewm.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import ru.yandex.practicum.ewm.util.DateTimeUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Hits per bucket in columnar form: the bucket starts are listed once and every series has one count per bucket
+ */
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatsSeriesDto {
+
+    private String granularity;
+
+    @JsonFormat(pattern = DateTimeUtils.DATE_TIME_FORMAT)
+    private List<LocalDateTime> buckets;
+
+    private List<ViewSeriesDto> series;
+}
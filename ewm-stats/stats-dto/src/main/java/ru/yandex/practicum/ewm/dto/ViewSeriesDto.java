@@ -0,0 +1,28 @@
+package ru.yandex.practicum.ewm.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.util.List;
+
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+public class ViewSeriesDto {
+
+    private String app;
+
+    private String uri;
+
+    /**
+     * Number of hits in each bucket, in the order of the bucket starts of the series response
+     */
+    private List<Long> hits;
+}
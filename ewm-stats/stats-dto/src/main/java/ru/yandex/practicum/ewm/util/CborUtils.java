@@ -0,0 +1,106 @@
+package ru.yandex.practicum.ewm.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdScalarSerializer;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import lombok.experimental.UtilityClass;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Binary wire format shared by the stats server and its client.
+ * Payloads are CBOR (RFC 8949): field names and numbers are encoded without quoting or
+ * decimal conversion, lists are written as definite-length arrays so every batch is prefixed
+ * with its element count, and timestamps are epoch milliseconds (UTC) instead of formatted strings
+ */
+@UtilityClass
+public class CborUtils {
+
+    /**
+     * Returns a CBOR object mapper that writes {@link LocalDateTime} as epoch milliseconds.
+     * Timestamps formatted as {@value DateTimeUtils#DATE_TIME_FORMAT} are still accepted on read
+     *
+     * @return new object mapper
+     */
+    public ObjectMapper objectMapper() {
+        SimpleModule module = new SimpleModule("EpochMillis")
+                .addSerializer(LocalDateTime.class, new EpochMillisSerializer())
+                .addDeserializer(LocalDateTime.class, new EpochMillisDeserializer());
+
+        return CBORMapper.builder()
+                .addModule(module)
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .build();
+    }
+
+    /**
+     * Returns an HTTP message converter for {@code application/cbor}
+     *
+     * @return new message converter
+     */
+    public MappingJackson2CborHttpMessageConverter messageConverter() {
+        return new MappingJackson2CborHttpMessageConverter(objectMapper());
+    }
+
+    /**
+     * Replaces the CBOR converter that Spring registers by default when jackson-dataformat-cbor
+     * is on the classpath (it writes timestamps as arrays) with {@link #messageConverter()},
+     * or appends the converter if there is none, so JSON keeps its place as the default format
+     *
+     * @param converters
+     */
+    public void configureMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.removeIf(converter -> converter instanceof MappingJackson2CborHttpMessageConverter);
+        converters.add(messageConverter());
+    }
+
+    private static class EpochMillisSerializer extends StdScalarSerializer<LocalDateTime> {
+
+        EpochMillisSerializer() {
+            super(LocalDateTime.class);
+        }
+
+        @Override
+        public void serialize(LocalDateTime value, JsonGenerator generator, SerializerProvider provider)
+                throws IOException {
+            generator.writeNumber(value.toInstant(ZoneOffset.UTC).toEpochMilli());
+        }
+    }
+
+    private static class EpochMillisDeserializer extends StdScalarDeserializer<LocalDateTime> {
+
+        private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern(DateTimeUtils.DATE_TIME_FORMAT);
+
+        EpochMillisDeserializer() {
+            super(LocalDateTime.class);
+        }
+
+        @Override
+        public LocalDateTime deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            if (parser.hasToken(JsonToken.VALUE_NUMBER_INT)) {
+                return LocalDateTime.ofInstant(Instant.ofEpochMilli(parser.getLongValue()), ZoneOffset.UTC);
+            }
+
+            if (parser.hasToken(JsonToken.VALUE_STRING)) {
+                return LocalDateTime.parse(parser.getText(), FORMATTER);
+            }
+
+            return (LocalDateTime) context.handleUnexpectedToken(LocalDateTime.class, parser);
+        }
+    }
+}
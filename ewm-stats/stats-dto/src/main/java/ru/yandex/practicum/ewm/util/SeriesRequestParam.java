@@ -0,0 +1,26 @@
+package ru.yandex.practicum.ewm.util;
+
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Builder
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+public class SeriesRequestParam {
+
+    private LocalDateTime start;
+
+    private LocalDateTime end;
+
+    private List<String> uris;
+
+    private String granularity;
+}
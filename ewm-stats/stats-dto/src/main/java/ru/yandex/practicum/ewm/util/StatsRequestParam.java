@@ -23,4 +23,6 @@ public class StatsRequestParam {
     private List<String> uris;
 
     private Boolean unique;
+
+    private Boolean approximate;
 }
@@ -0,0 +1,27 @@
+package ru.yandex.practicum.ewm.util;
+
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+@Builder
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+public class TopStatsRequestParam {
+
+    private LocalDateTime start;
+
+    private LocalDateTime end;
+
+    private String prefix;
+
+    private Boolean unique;
+
+    private Integer limit;
+}
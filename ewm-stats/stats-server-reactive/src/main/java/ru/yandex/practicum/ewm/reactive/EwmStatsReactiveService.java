@@ -0,0 +1,16 @@
+package ru.yandex.practicum.ewm.reactive;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+/**
+ * Non-blocking variant of the stats server on WebFlux and R2DBC. It serves the hit saving and stats endpoints
+ * of the stats service specification on the database schema that the stats server migrates and maintains
+ */
+@SpringBootApplication
+public class EwmStatsReactiveService {
+
+	public static void main(String[] args) {
+		SpringApplication.run(EwmStatsReactiveService.class, args);
+	}
+}
@@ -0,0 +1,70 @@
+package ru.yandex.practicum.ewm.reactive.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.reactivestreams.Publisher;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.util.MimeType;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.ewm.util.CborUtils;
+
+import java.util.Map;
+
+@Configuration
+@RequiredArgsConstructor
+public class WebConfig implements WebFluxConfigurer {
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Installs the epoch-millis CBOR codecs, they are used when a request asks for
+     * {@code application/cbor} and JSON stays the default for {@code Accept: *}{@code /*}.
+     * Custom codecs are consulted before the default ones, so JSON is registered again in front of CBOR
+     *
+     * @param configurer
+     */
+    @Override
+    public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+        ObjectMapper cborMapper = CborUtils.objectMapper();
+
+        configurer.customCodecs().registerWithDefaultConfig(new Jackson2JsonEncoder(objectMapper));
+        configurer.customCodecs().registerWithDefaultConfig(new Jackson2JsonDecoder(objectMapper));
+        configurer.customCodecs().registerWithDefaultConfig(new CborEncoder(cborMapper));
+        configurer.customCodecs().registerWithDefaultConfig(
+                new Jackson2CborDecoder(cborMapper, MediaType.APPLICATION_CBOR));
+    }
+
+    /**
+     * CBOR encoder of single values, which are all the handlers return. The encoder of the framework
+     * rejects any publisher, including a Mono
+     */
+    private static final class CborEncoder extends Jackson2CborEncoder {
+
+        private CborEncoder(ObjectMapper objectMapper) {
+            super(objectMapper, MediaType.APPLICATION_CBOR);
+        }
+
+        @Override
+        public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory,
+                                       ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+            if (!(inputStream instanceof Mono)) {
+                return Flux.error(new UnsupportedOperationException("Only single values are encoded to CBOR"));
+            }
+
+            return Mono.from(inputStream)
+                    .map(value -> encodeValue(value, bufferFactory, elementType, mimeType, hints))
+                    .flux();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package ru.yandex.practicum.ewm.reactive.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.ewm.dto.EndpointHitDto;
+import ru.yandex.practicum.ewm.dto.EndpointHitsSummaryDto;
+import ru.yandex.practicum.ewm.dto.ViewStatsDto;
+import ru.yandex.practicum.ewm.reactive.service.StatsService;
+import ru.yandex.practicum.ewm.util.DateTimeUtils;
+import ru.yandex.practicum.ewm.util.StatsRequestParam;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@RestController
+@Slf4j
+@RequiredArgsConstructor
+@Validated
+public class StatsController {
+
+    private static final int MAX_BATCH_SIZE = 10_000;
+
+    private final StatsService statsService;
+
+    @PostMapping("/hit")
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<EndpointHitDto> saveEndpointHit(@RequestBody @Valid EndpointHitDto endpointHitDto) {
+        log.debug("Request received POST /hit: '{}'", endpointHitDto);
+        return statsService.saveEndpointHit(endpointHitDto);
+    }
+
+    @PostMapping("/hits")
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<EndpointHitsSummaryDto> saveEndpointHits(
+            @RequestBody
+            @NotEmpty(message = "Hits cannot be empty")
+            @Size(max = MAX_BATCH_SIZE, message = "Hits must contain no more than " + MAX_BATCH_SIZE + " elements")
+            List<@Valid EndpointHitDto> endpointHitDtos
+    ) {
+        log.debug("Request received POST /hits: {} hits", endpointHitDtos.size());
+        return statsService.saveEndpointHits(endpointHitDtos);
+    }
+
+    @GetMapping("/stats")
+    public Mono<List<ViewStatsDto>> getStats(
+            @RequestParam @DateTimeFormat(pattern = DateTimeUtils.DATE_TIME_FORMAT) LocalDateTime start,
+            @RequestParam @DateTimeFormat(pattern = DateTimeUtils.DATE_TIME_FORMAT) LocalDateTime end,
+            @RequestParam(required = false) List<String> uris,
+            @RequestParam(defaultValue = "false") Boolean unique
+    ) {
+        StatsRequestParam requestParam = StatsRequestParam.builder()
+                .start(start)
+                .end(end)
+                .uris(uris)
+                .unique(unique)
+                .build();
+
+        log.debug("Request received GET /stats?start={}&end={}&uris={}&unique={}", start, end, uris, unique);
+        return statsService.getStats(requestParam).collectList();
+    }
+}
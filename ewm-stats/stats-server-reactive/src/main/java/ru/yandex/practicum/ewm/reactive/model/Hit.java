@@ -0,0 +1,20 @@
+package ru.yandex.practicum.ewm.reactive.model;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * Hit in the layout of the hits table, with the dictionary ids of its app and uri
+ */
+@Value
+public class Hit {
+
+    int appId;
+
+    int uriId;
+
+    byte[] ip;
+
+    LocalDateTime created;
+}
@@ -0,0 +1,26 @@
+package ru.yandex.practicum.ewm.reactive.model;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+
+/**
+ * Row key of a rollup table
+ */
+@Value
+public class RollupKey {
+
+    /**
+     * Order of the primary key, rows are upserted in this order so that concurrent batches do not deadlock
+     */
+    public static final Comparator<RollupKey> ORDER = Comparator.comparingInt(RollupKey::getUriId)
+            .thenComparing(RollupKey::getBucket)
+            .thenComparingInt(RollupKey::getAppId);
+
+    int appId;
+
+    int uriId;
+
+    LocalDateTime bucket;
+}
@@ -0,0 +1,80 @@
+package ru.yandex.practicum.ewm.reactive.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionaries of app names and uris shared with the stats server. Entries are never changed or removed,
+ * so the ids are cached in memory without invalidation
+ */
+@Repository
+public class DictionaryRepository {
+
+    private final Dictionary apps;
+    private final Dictionary uris;
+
+    public DictionaryRepository(DatabaseClient databaseClient) {
+        this.apps = new Dictionary(databaseClient, "apps");
+        this.uris = new Dictionary(databaseClient, "uris");
+    }
+
+    /**
+     * Returns the id of the app, adding it to the dictionary if it is unknown.
+     * New entries are committed at once, so it should not be called within the hits transaction
+     *
+     * @param name
+     * @return app id
+     */
+    public Mono<Integer> getOrCreateAppId(String name) {
+        return apps.getOrCreateId(name);
+    }
+
+    /**
+     * Returns the id of the uri, adding it to the dictionary if it is unknown.
+     * New entries are committed at once, so it should not be called within the hits transaction
+     *
+     * @param name
+     * @return uri id
+     */
+    public Mono<Integer> getOrCreateUriId(String name) {
+        return uris.getOrCreateId(name);
+    }
+
+    @RequiredArgsConstructor
+    private static final class Dictionary {
+
+        private final DatabaseClient databaseClient;
+
+        private final String table;
+
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+        Mono<Integer> getOrCreateId(String name) {
+            Integer id = ids.get(name);
+
+            if (id != null) {
+                return Mono.just(id);
+            }
+
+            // a row committed by a concurrent insert is not visible to the statement that waited for it,
+            // so an empty result is followed by a plain lookup
+            return databaseClient.sql(String.format("WITH inserted AS (INSERT INTO %1$s (name) VALUES (:name) "
+                            + "ON CONFLICT (name) DO NOTHING RETURNING id) "
+                            + "SELECT id FROM inserted UNION ALL SELECT id FROM %1$s WHERE name = :name", table))
+                    .bind("name", name)
+                    .map(row -> row.get("id", Integer.class))
+                    .first()
+                    .switchIfEmpty(Mono.defer(() -> databaseClient
+                            .sql(String.format("SELECT id FROM %s WHERE name = :name", table))
+                            .bind("name", name)
+                            .map(row -> row.get("id", Integer.class))
+                            .one()))
+                    .doOnNext(found -> ids.put(name, found));
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package ru.yandex.practicum.ewm.reactive.repository;
+
+import io.r2dbc.spi.Statement;
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.ewm.dto.ViewStatsDto;
+import ru.yandex.practicum.ewm.reactive.model.Hit;
+import ru.yandex.practicum.ewm.reactive.model.RollupKey;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Raw hits and their minute, hour and day rollups in the tables of the stats server
+ */
+@Repository
+@RequiredArgsConstructor
+public class HitRepository {
+
+    private static final String INSERT_HIT = "INSERT INTO hits (app_id, uri_id, ip, created) VALUES ($1, $2, $3, $4)";
+
+    private static final String INSERT_VISITOR = "INSERT INTO visitors (ip) VALUES ($1) ON CONFLICT (ip) DO NOTHING";
+
+    private static final String URI_FILTER = " AND uri_id IN (SELECT id FROM uris WHERE name IN (:uris))";
+
+    private final DatabaseClient databaseClient;
+
+    /**
+     * Inserts a hit and returns its generated id
+     *
+     * @param hit
+     * @return hit id
+     */
+    public Mono<Long> save(Hit hit) {
+        return databaseClient.sql(INSERT_HIT + " RETURNING id")
+                .bind(0, hit.getAppId())
+                .bind(1, hit.getUriId())
+                .bind(2, hit.getIp())
+                .bind(3, hit.getCreated())
+                .map(row -> row.get("id", Long.class))
+                .one();
+    }
+
+    /**
+     * Inserts hits as one batch of bindings of a single statement
+     *
+     * @param hits
+     * @return completion
+     */
+    public Mono<Void> saveAll(List<Hit> hits) {
+        return databaseClient.inConnectionMany(connection -> {
+            Statement statement = connection.createStatement(INSERT_HIT);
+
+            for (int i = 0; i < hits.size(); i++) {
+                Hit hit = hits.get(i);
+
+                if (i > 0) {
+                    statement.add();
+                }
+
+                statement.bind(0, hit.getAppId())
+                        .bind(1, hit.getUriId())
+                        .bind(2, hit.getIp())
+                        .bind(3, hit.getCreated());
+            }
+
+            return Flux.from(statement.execute()).flatMap(result -> result.getRowsUpdated());
+        }).then();
+    }
+
+    /**
+     * Adds the IPs of the hits to the visitor dictionary of the stats server, which only reads it for queries.
+     * IPs are inserted in a fixed order so that concurrent writers do not deadlock
+     *
+     * @param hits
+     * @return completion
+     */
+    public Mono<Void> addVisitors(List<Hit> hits) {
+        List<ByteBuffer> ips = hits.stream()
+                .map(hit -> ByteBuffer.wrap(hit.getIp()))
+                .distinct()
+                .sorted()
+                .collect(Collectors.toList());
+
+        return databaseClient.inConnectionMany(connection -> {
+            Statement statement = connection.createStatement(INSERT_VISITOR);
+
+            for (int i = 0; i < ips.size(); i++) {
+                if (i > 0) {
+                    statement.add();
+                }
+
+                statement.bind(0, ips.get(i).array());
+            }
+
+            return Flux.from(statement.execute()).flatMap(result -> result.getRowsUpdated());
+        }).then();
+    }
+
+    /**
+     * Adds the hits to the counters of their minute, hour and day buckets.
+     * Sketches and visitor bitmaps of the updated buckets are reset, the stats server rebuilds them from the raw hits
+     *
+     * @param hits
+     * @return completion
+     */
+    public Mono<Void> addToRollups(List<Hit> hits) {
+        return addToRollup("hits_minute", hits, created -> created.truncatedTo(ChronoUnit.MINUTES), List.of())
+                .then(addToRollup("hits_hour", hits, created -> created.truncatedTo(ChronoUnit.HOURS),
+                        List.of("sketch", "visitors")))
+                .then(addToRollup("hits_day", hits, created -> created.truncatedTo(ChronoUnit.DAYS),
+                        List.of("sketch", "visitors")));
+    }
+
+    /**
+     * Returns the number of hits or of distinct IPs per app and uri within [start, end], most viewed first.
+     * Hit counts are summed over the coarsest aligned rollup buckets, only the edges that are not aligned
+     * to a minute are counted in the raw hits
+     *
+     * @param start
+     * @param end
+     * @param uris   uris to count, all uris if null or empty
+     * @param unique whether distinct IPs are counted instead of hits
+     * @return stats sorted by hits in descending order
+     */
+    public Flux<ViewStatsDto> findStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+        boolean filtered = uris != null && !uris.isEmpty();
+        String uriFilter = filtered ? URI_FILTER : "";
+        String counts;
+        Map<String, Object> parameters = new TreeMap<>(Map.of("start", start, "end", end));
+
+        if (unique) {
+            counts = "SELECT app_id, uri_id, COUNT(DISTINCT ip) AS hits FROM hits "
+                    + "WHERE created >= :start AND created <= :end" + uriFilter + " GROUP BY app_id, uri_id";
+        } else {
+            Bounds minutes = Bounds.within(start, end, ChronoUnit.MINUTES, new Bounds(start, start));
+            Bounds hours = minutes.inner(ChronoUnit.HOURS);
+            Bounds days = hours.inner(ChronoUnit.DAYS);
+
+            parameters.putAll(Map.of("minuteStart", minutes.start, "minuteEnd", minutes.end,
+                    "hourStart", hours.start, "hourEnd", hours.end, "dayStart", days.start, "dayEnd", days.end));
+
+            counts = "SELECT app_id, uri_id, hits FROM hits_day "
+                    + "WHERE bucket >= :dayStart AND bucket < :dayEnd" + uriFilter
+                    + " UNION ALL SELECT app_id, uri_id, hits FROM hits_hour "
+                    + "WHERE (bucket >= :hourStart AND bucket < :dayStart OR bucket >= :dayEnd AND bucket < :hourEnd)"
+                    + uriFilter
+                    + " UNION ALL SELECT app_id, uri_id, hits FROM hits_minute "
+                    + "WHERE (bucket >= :minuteStart AND bucket < :hourStart "
+                    + "OR bucket >= :hourEnd AND bucket < :minuteEnd)" + uriFilter
+                    + " UNION ALL SELECT app_id, uri_id, 1 FROM hits "
+                    + "WHERE (created >= :start AND created < :minuteStart "
+                    + "OR created >= :minuteEnd AND created <= :end)" + uriFilter;
+        }
+
+        if (filtered) {
+            parameters.put("uris", uris);
+        }
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql("SELECT a.name AS app, u.name AS uri, "
+                + "SUM(c.hits) AS hits FROM (" + counts + ") c "
+                + "JOIN apps a ON a.id = c.app_id JOIN uris u ON u.id = c.uri_id "
+                + "GROUP BY a.name, u.name ORDER BY hits DESC");
+
+        for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+            spec = spec.bind(parameter.getKey(), parameter.getValue());
+        }
+
+        return spec.map(row -> new ViewStatsDto(row.get("app", String.class), row.get("uri", String.class),
+                        row.get("hits", Number.class).longValue()))
+                .all();
+    }
+
+    private Mono<Void> addToRollup(String table, List<Hit> hits, Function<LocalDateTime, LocalDateTime> floor,
+                                   List<String> resetColumns) {
+        Map<RollupKey, Long> counts = new TreeMap<>(RollupKey.ORDER);
+
+        for (Hit hit : hits) {
+            counts.merge(new RollupKey(hit.getAppId(), hit.getUriId(), floor.apply(hit.getCreated())), 1L, Long::sum);
+        }
+
+        String sql = String.format("INSERT INTO %1$s (uri_id, bucket, app_id, hits) VALUES ($1, $2, $3, $4) "
+                        + "ON CONFLICT (uri_id, bucket, app_id) DO UPDATE SET hits = %1$s.hits + EXCLUDED.hits%2$s",
+                table, resetColumns.stream().map(column -> ", " + column + " = NULL").collect(Collectors.joining()));
+
+        return databaseClient.inConnectionMany(connection -> {
+            Statement statement = connection.createStatement(sql);
+            boolean first = true;
+
+            for (Map.Entry<RollupKey, Long> entry : counts.entrySet()) {
+                if (!first) {
+                    statement.add();
+                }
+
+                statement.bind(0, entry.getKey().getUriId())
+                        .bind(1, entry.getKey().getBucket())
+                        .bind(2, entry.getKey().getAppId())
+                        .bind(3, entry.getValue());
+                first = false;
+            }
+
+            return Flux.from(statement.execute()).flatMap(result -> result.getRowsUpdated());
+        }).then();
+    }
+
+    /**
+     * Half-open range [start, end) of whole buckets. An empty range is collapsed to a point of the enclosing range,
+     * so that the enclosing range minus this one is still a valid pair of ranges
+     */
+    @RequiredArgsConstructor
+    private static final class Bounds {
+
+        private final LocalDateTime start;
+        private final LocalDateTime end;
+
+        /**
+         * Returns the whole buckets of a coarser unit within this range
+         */
+        Bounds inner(ChronoUnit unit) {
+            return within(start, end, unit, new Bounds(end, end));
+        }
+
+        /**
+         * Returns the whole buckets of the unit within the range, or the given empty range if there are none
+         */
+        static Bounds within(LocalDateTime start, LocalDateTime end, ChronoUnit unit, Bounds empty) {
+            LocalDateTime floor = start.truncatedTo(unit);
+            LocalDateTime ceil = floor.equals(start) ? floor : floor.plus(1, unit);
+            LocalDateTime inner = end.truncatedTo(unit);
+
+            return ceil.isBefore(inner) ? new Bounds(ceil, inner) : empty;
+        }
+    }
+}
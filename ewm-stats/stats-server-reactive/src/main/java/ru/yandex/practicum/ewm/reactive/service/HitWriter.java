@@ -0,0 +1,43 @@
+package ru.yandex.practicum.ewm.reactive.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.ewm.reactive.model.Hit;
+import ru.yandex.practicum.ewm.reactive.repository.HitRepository;
+
+import java.util.List;
+
+@Component
+@Transactional
+@RequiredArgsConstructor
+public class HitWriter {
+
+    private final HitRepository hitRepository;
+
+    /**
+     * Writes a single hit, its visitor and its rollups and returns the generated id
+     *
+     * @param hit
+     * @return hit id
+     */
+    public Mono<Long> write(Hit hit) {
+        return hitRepository.save(hit)
+                .flatMap(id -> hitRepository.addVisitors(List.of(hit))
+                        .then(hitRepository.addToRollups(List.of(hit)))
+                        .thenReturn(id));
+    }
+
+    /**
+     * Writes hits, their visitors and their rollups in one transaction using batched inserts
+     *
+     * @param hits
+     * @return completion
+     */
+    public Mono<Void> writeAll(List<Hit> hits) {
+        return hitRepository.saveAll(hits)
+                .then(hitRepository.addVisitors(hits))
+                .then(hitRepository.addToRollups(hits));
+    }
+}
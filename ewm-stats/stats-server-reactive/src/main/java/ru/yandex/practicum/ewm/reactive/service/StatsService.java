@@ -0,0 +1,39 @@
+package ru.yandex.practicum.ewm.reactive.service;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.ewm.dto.EndpointHitDto;
+import ru.yandex.practicum.ewm.dto.EndpointHitsSummaryDto;
+import ru.yandex.practicum.ewm.dto.ViewStatsDto;
+import ru.yandex.practicum.ewm.util.StatsRequestParam;
+
+import java.util.List;
+
+public interface StatsService {
+
+    /**
+     * Creates a new endpoint hit
+     *
+     * @param endpointHitDto
+     * @return new endpoint hit
+     */
+    Mono<EndpointHitDto> saveEndpointHit(EndpointHitDto endpointHitDto);
+
+    /**
+     * Creates endpoint hits in a single transaction using batched inserts
+     *
+     * @param endpointHitDtos
+     * @return summary of the saved batch
+     */
+    Mono<EndpointHitsSummaryDto> saveEndpointHits(List<EndpointHitDto> endpointHitDtos);
+
+    /**
+     * Returns statistics on endpoints, most viewed first, as they are read from the database
+     * Non-unique counts are read from the coarsest aligned rollup buckets and raw hits only at the range edges,
+     * unique counts are computed over raw hits
+     *
+     * @param requestParam
+     * @return endpoints hits
+     */
+    Flux<ViewStatsDto> getStats(StatsRequestParam requestParam);
+}
@@ -0,0 +1,65 @@
+package ru.yandex.practicum.ewm.reactive.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.ewm.dto.EndpointHitDto;
+import ru.yandex.practicum.ewm.dto.EndpointHitsSummaryDto;
+import ru.yandex.practicum.ewm.dto.ViewStatsDto;
+import ru.yandex.practicum.ewm.reactive.model.Hit;
+import ru.yandex.practicum.ewm.reactive.repository.DictionaryRepository;
+import ru.yandex.practicum.ewm.reactive.repository.HitRepository;
+import ru.yandex.practicum.ewm.reactive.util.IpAddressUtils;
+import ru.yandex.practicum.ewm.reactive.validator.ValidationException;
+import ru.yandex.practicum.ewm.util.StatsRequestParam;
+
+import java.util.List;
+
+@Service
+@RequiredArgsConstructor
+public class StatsServiceImpl implements StatsService {
+
+    private final HitWriter hitWriter;
+    private final HitRepository hitRepository;
+    private final DictionaryRepository dictionaryRepository;
+
+    @Override
+    public Mono<EndpointHitDto> saveEndpointHit(EndpointHitDto endpointHitDto) {
+        return encode(endpointHitDto)
+                .flatMap(hitWriter::write)
+                .map(id -> {
+                    endpointHitDto.setId(id);
+                    return endpointHitDto;
+                });
+    }
+
+    @Override
+    public Mono<EndpointHitsSummaryDto> saveEndpointHits(List<EndpointHitDto> endpointHitDtos) {
+        return Flux.fromIterable(endpointHitDtos)
+                .concatMap(this::encode)
+                .collectList()
+                .flatMap(hits -> hitWriter.writeAll(hits).thenReturn(new EndpointHitsSummaryDto(hits.size(), 0)));
+    }
+
+    @Override
+    public Flux<ViewStatsDto> getStats(StatsRequestParam requestParam) {
+        if (requestParam.getStart().isAfter(requestParam.getEnd())) {
+            return Flux.error(new ValidationException("The start of the range must be before the end of the range"));
+        }
+
+        return hitRepository.findStats(requestParam.getStart(), requestParam.getEnd(), requestParam.getUris(),
+                Boolean.TRUE.equals(requestParam.getUnique()));
+    }
+
+    /**
+     * Resolves the dictionary ids of the app and uri of a hit, known names are taken from memory
+     * and unknown ones are committed before the hit transaction starts
+     */
+    private Mono<Hit> encode(EndpointHitDto endpointHitDto) {
+        return Mono.fromCallable(() -> IpAddressUtils.parse(endpointHitDto.getIp()))
+                .flatMap(ip -> dictionaryRepository.getOrCreateAppId(endpointHitDto.getApp())
+                        .zipWith(dictionaryRepository.getOrCreateUriId(endpointHitDto.getUri()))
+                        .map(ids -> new Hit(ids.getT1(), ids.getT2(), ip, endpointHitDto.getTimestamp())));
+    }
+}
@@ -0,0 +1,65 @@
+package ru.yandex.practicum.ewm.reactive.util;
+
+import lombok.experimental.UtilityClass;
+import ru.yandex.practicum.ewm.reactive.validator.ValidationException;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+@UtilityClass
+public class IpAddressUtils {
+
+    public static final int LENGTH = 16;
+
+    private static final byte[] IPV4_MAPPED_PREFIX = {0, 0, 0, 0, 0, 0, 0, 0, 0, 0, (byte) 0xff, (byte) 0xff};
+
+    private static final String OCTET = "(25[0-5]|2[0-4]\\d|1?\\d?\\d)";
+
+    private static final Pattern IPV4 = Pattern.compile(OCTET + "(\\." + OCTET + "){3}");
+
+    /**
+     * Converts an IPv4 or IPv6 literal to 16 bytes in the layout of the hits table of the stats server,
+     * IPv4 addresses are stored as IPv4-mapped IPv6 addresses. Host names are rejected without a DNS lookup
+     *
+     * @param ip
+     * @return address in network byte order
+     */
+    public byte[] parse(String ip) {
+        String address = ip.strip();
+
+        if (address.startsWith("[") && address.endsWith("]")) {
+            address = address.substring(1, address.length() - 1);
+        }
+
+        int zone = address.indexOf('%');
+        if (zone >= 0) {
+            address = address.substring(0, zone);
+        }
+
+        if (address.indexOf(':') < 0 && !IPV4.matcher(address).matches()) {
+            throw invalidAddress(ip);
+        }
+
+        try {
+            // a bracketed literal is never resolved as a host name, a matched IPv4 literal is parsed as is
+            byte[] bytes = InetAddress.getByName(address.indexOf(':') >= 0 ? "[" + address + "]" : address)
+                    .getAddress();
+
+            if (bytes.length == LENGTH) {
+                return bytes;
+            }
+
+            byte[] mapped = Arrays.copyOf(IPV4_MAPPED_PREFIX, LENGTH);
+            System.arraycopy(bytes, 0, mapped, IPV4_MAPPED_PREFIX.length, bytes.length);
+            return mapped;
+        } catch (UnknownHostException e) {
+            throw invalidAddress(ip);
+        }
+    }
+
+    private ValidationException invalidAddress(String ip) {
+        return new ValidationException(String.format("IP %s is not a valid IPv4 or IPv6 address", ip));
+    }
+}
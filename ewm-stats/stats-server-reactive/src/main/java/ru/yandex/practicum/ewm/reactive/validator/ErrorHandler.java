@@ -0,0 +1,43 @@
+package ru.yandex.practicum.ewm.reactive.validator;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebInputException;
+
+import javax.validation.ConstraintViolationException;
+import java.util.Map;
+
+@RestControllerAdvice
+@Slf4j
+public class ErrorHandler {
+
+    @ExceptionHandler({
+            ServerWebInputException.class,
+            ConstraintViolationException.class,
+            ValidationException.class
+    })
+    public ResponseEntity<Map<String, String>> handleValidationException(final Exception e) {
+        log.error(e.getMessage(), e);
+        return error(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<Map<String, String>> handleResponseStatusException(final ResponseStatusException e) {
+        log.error(e.getMessage(), e);
+        return error(e.getStatus(), e.getMessage());
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<Map<String, String>> handleThrowable(final Throwable e) {
+        log.error(e.getMessage(), e);
+        return error(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage());
+    }
+
+    private ResponseEntity<Map<String, String>> error(HttpStatus status, String errorMessage) {
+        return ResponseEntity.status(status).body(Map.of("error", String.valueOf(errorMessage)));
+    }
+}
@@ -0,0 +1,8 @@
+package ru.yandex.practicum.ewm.reactive.validator;
+
+public class ValidationException extends RuntimeException {
+
+    public ValidationException(String message) {
+        super(message);
+    }
+}
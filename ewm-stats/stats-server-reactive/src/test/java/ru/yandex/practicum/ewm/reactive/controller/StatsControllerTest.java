@@ -0,0 +1,107 @@
+package ru.yandex.practicum.ewm.reactive.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.ewm.dto.EndpointHitDto;
+import ru.yandex.practicum.ewm.dto.ViewStatsDto;
+import ru.yandex.practicum.ewm.reactive.service.StatsService;
+import ru.yandex.practicum.ewm.reactive.validator.ErrorHandler;
+import ru.yandex.practicum.ewm.util.StatsRequestParam;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class StatsControllerTest {
+
+    private WebTestClient webTestClient;
+
+    @Mock
+    private StatsService statsService;
+
+    @InjectMocks
+    private StatsController statsController;
+
+    @BeforeEach
+    void setWebTestClient() {
+        webTestClient = WebTestClient.bindToController(statsController)
+                .controllerAdvice(new ErrorHandler())
+                .build();
+    }
+
+    @Test
+    void saveEndpointHit_shouldReturnTheHitWithItsId() {
+        when(statsService.saveEndpointHit(any())).thenAnswer(invocation -> {
+            EndpointHitDto endpointHitDto = invocation.getArgument(0);
+            endpointHitDto.setId(1L);
+            return Mono.just(endpointHitDto);
+        });
+
+        webTestClient.post().uri("/hit")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"app\":\"ewm-main-service\",\"uri\":\"/events/1\",\"ip\":\"192.163.0.1\","
+                        + "\"timestamp\":\"2022-09-06 11:00:23\"}")
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody()
+                .jsonPath("$.id").isEqualTo(1)
+                .jsonPath("$.timestamp").isEqualTo("2022-09-06 11:00:23");
+    }
+
+    @Test
+    void saveEndpointHit_shouldReturnBadRequest_ifTheHitIsInvalid() {
+        webTestClient.post().uri("/hit")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"app\":\"ewm-main-service\",\"uri\":\"/events/1\",\"timestamp\":\"2022-09-06 11:00:23\"}")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.error").exists();
+
+        verifyNoInteractions(statsService);
+    }
+
+    @Test
+    void getStats_shouldPassTheParametersToTheService() {
+        when(statsService.getStats(any())).thenReturn(Flux.just(new ViewStatsDto("ewm-main-service", "/events/1", 6L)));
+
+        webTestClient.get().uri("/stats?start={start}&end={end}&uris=/events/1&unique=true",
+                        "2022-09-06 11:00:00", "2022-09-07 11:00:00")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(ViewStatsDto.class)
+                .isEqualTo(List.of(new ViewStatsDto("ewm-main-service", "/events/1", 6L)));
+
+        verify(statsService).getStats(StatsRequestParam.builder()
+                .start(LocalDateTime.of(2022, 9, 6, 11, 0))
+                .end(LocalDateTime.of(2022, 9, 7, 11, 0))
+                .uris(List.of("/events/1"))
+                .unique(true)
+                .build());
+    }
+
+    @Test
+    void getStats_shouldReturnBadRequest_ifTheStartIsMissing() {
+        webTestClient.get().uri("/stats?end={end}", "2022-09-07 11:00:00")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .value(body -> assertThat(body).contains("error"));
+
+        verifyNoInteractions(statsService);
+    }
+}
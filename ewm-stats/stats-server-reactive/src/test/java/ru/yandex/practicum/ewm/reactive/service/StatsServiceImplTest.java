@@ -0,0 +1,106 @@
+package ru.yandex.practicum.ewm.reactive.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import ru.yandex.practicum.ewm.dto.EndpointHitDto;
+import ru.yandex.practicum.ewm.dto.EndpointHitsSummaryDto;
+import ru.yandex.practicum.ewm.reactive.model.Hit;
+import ru.yandex.practicum.ewm.reactive.repository.DictionaryRepository;
+import ru.yandex.practicum.ewm.reactive.repository.HitRepository;
+import ru.yandex.practicum.ewm.reactive.util.IpAddressUtils;
+import ru.yandex.practicum.ewm.reactive.validator.ValidationException;
+import ru.yandex.practicum.ewm.util.StatsRequestParam;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class StatsServiceImplTest {
+
+    private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2022, 9, 6, 11, 0, 23);
+
+    @Mock
+    private HitWriter hitWriter;
+
+    @Mock
+    private HitRepository hitRepository;
+
+    @Mock
+    private DictionaryRepository dictionaryRepository;
+
+    @InjectMocks
+    private StatsServiceImpl statsService;
+
+    @Test
+    void saveEndpointHit_shouldWriteTheEncodedHit_andReturnItsId() {
+        when(dictionaryRepository.getOrCreateAppId("ewm-main-service")).thenReturn(Mono.just(1));
+        when(dictionaryRepository.getOrCreateUriId("/events/1")).thenReturn(Mono.just(2));
+        when(hitWriter.write(any())).thenReturn(Mono.just(3L));
+
+        StepVerifier.create(statsService.saveEndpointHit(endpointHit("/events/1", "192.163.0.1")))
+                .assertNext(endpointHitDto -> assertThat(endpointHitDto.getId()).isEqualTo(3))
+                .verifyComplete();
+
+        verify(hitWriter).write(new Hit(1, 2, IpAddressUtils.parse("192.163.0.1"), TIMESTAMP));
+    }
+
+    @Test
+    void saveEndpointHits_shouldWriteAllHitsInOneBatch() {
+        when(dictionaryRepository.getOrCreateAppId(anyString())).thenReturn(Mono.just(1));
+        when(dictionaryRepository.getOrCreateUriId(anyString())).thenReturn(Mono.just(2));
+        when(hitWriter.writeAll(any())).thenReturn(Mono.empty());
+
+        StepVerifier.create(statsService.saveEndpointHits(List.of(endpointHit("/events/1", "192.163.0.1"),
+                        endpointHit("/events/1", "::1"))))
+                .expectNext(new EndpointHitsSummaryDto(2, 0))
+                .verifyComplete();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Hit>> captor = ArgumentCaptor.forClass(List.class);
+        verify(hitWriter).writeAll(captor.capture());
+
+        assertThat(captor.getValue()).hasSize(2);
+    }
+
+    @Test
+    void saveEndpointHit_shouldFail_ifTheIpIsInvalid() {
+        StepVerifier.create(statsService.saveEndpointHit(endpointHit("/events/1", "localhost")))
+                .verifyError(ValidationException.class);
+
+        verifyNoInteractions(dictionaryRepository, hitWriter);
+    }
+
+    @Test
+    void getStats_shouldFail_ifTheStartIsAfterTheEnd() {
+        StepVerifier.create(statsService.getStats(StatsRequestParam.builder()
+                        .start(TIMESTAMP)
+                        .end(TIMESTAMP.minusSeconds(1))
+                        .unique(false)
+                        .build()))
+                .verifyError(ValidationException.class);
+
+        verifyNoInteractions(hitRepository);
+    }
+
+    private EndpointHitDto endpointHit(String uri, String ip) {
+        EndpointHitDto endpointHitDto = new EndpointHitDto();
+        endpointHitDto.setApp("ewm-main-service");
+        endpointHitDto.setUri(uri);
+        endpointHitDto.setIp(ip);
+        endpointHitDto.setTimestamp(TIMESTAMP);
+        return endpointHitDto;
+    }
+}
@@ -0,0 +1,28 @@
+package ru.yandex.practicum.ewm.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "stats.archive")
+@Getter
+@Setter
+public class ArchiveProperties {
+
+    /**
+     * Whether hits older than maxAge are moved from the hits table to compressed day files
+     */
+    private boolean enabled = false;
+
+    /**
+     * Directory of the day files
+     */
+    private String directory = "data/archive";
+
+    /**
+     * Age after which the hits of a day are archived, counted from the end of the day
+     */
+    private Duration maxAge = Duration.ofDays(90);
+}
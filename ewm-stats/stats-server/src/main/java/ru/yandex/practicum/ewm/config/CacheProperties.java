@@ -0,0 +1,34 @@
+package ru.yandex.practicum.ewm.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "stats.cache")
+@Getter
+@Setter
+public class CacheProperties {
+
+    /**
+     * Whether stats queries are answered from cached aggregates extended with the newer hits
+     */
+    private boolean enabled = true;
+
+    /**
+     * Approximate heap size that the cached aggregates may occupy
+     */
+    private DataSize maxSize = DataSize.ofMegabytes(64);
+
+    /**
+     * Age after which hits are no longer expected to arrive, newer hits are never cached
+     */
+    private Duration settleDelay = Duration.ofSeconds(10);
+
+    /**
+     * Time after which an entry that has not been read is evicted
+     */
+    private Duration expireAfterAccess = Duration.ofMinutes(30);
+}
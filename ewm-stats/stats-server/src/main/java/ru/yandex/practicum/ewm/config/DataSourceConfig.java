@@ -0,0 +1,34 @@
+package ru.yandex.practicum.ewm.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import ru.yandex.practicum.ewm.replica.ReplicaDataSourceConfig;
+import ru.yandex.practicum.ewm.replica.ReplicaProperties;
+
+/**
+ * Routes read-only transactions to the replica configured by stats.replica
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "stats.replica", name = "enabled", havingValue = "true")
+public class DataSourceConfig extends ReplicaDataSourceConfig {
+
+    private final CacheProperties cacheProperties;
+    private final IngestProperties ingestProperties;
+
+    public DataSourceConfig(CacheProperties cacheProperties, IngestProperties ingestProperties) {
+        this.cacheProperties = cacheProperties;
+        this.ingestProperties = ingestProperties;
+    }
+
+    @Override
+    protected void validate(ReplicaProperties properties) {
+        if (cacheProperties.isEnabled() && properties.getMaxLag().compareTo(cacheProperties.getSettleDelay()) >= 0) {
+            throw new IllegalStateException("stats.replica.max-lag must be below stats.cache.settle-delay");
+        }
+
+        if (ingestProperties.getRollups() == IngestProperties.Rollups.LIVE) {
+            throw new IllegalStateException("stats.ingest.rollups=live needs queries to read the flushed counters "
+                    + "from the primary, disable stats.replica");
+        }
+    }
+}
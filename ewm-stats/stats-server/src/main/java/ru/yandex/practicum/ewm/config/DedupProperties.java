@@ -0,0 +1,23 @@
+package ru.yandex.practicum.ewm.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "stats.dedup")
+@Getter
+@Setter
+public class DedupProperties {
+
+    /**
+     * Whether hits with a client-supplied hit id are dropped when the id was received before within the window
+     */
+    private boolean enabled = true;
+
+    /**
+     * Minimum time a hit id is remembered for, ids are forgotten at most a third of the window later
+     */
+    private Duration window = Duration.ofMinutes(10);
+}
@@ -0,0 +1,74 @@
+package ru.yandex.practicum.ewm.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "stats.ingest")
+@Getter
+@Setter
+public class IngestProperties {
+
+    /**
+     * How single hits received by POST /hit are written
+     */
+    private Mode mode = Mode.SYNC;
+
+    /**
+     * When a buffered hit is acknowledged to the client
+     */
+    private Ack ack = Ack.FLUSH;
+
+    /**
+     * Number of rows sent to the database in one JDBC batch
+     */
+    private int batchSize = 500;
+
+    /**
+     * Maximum number of hits waiting in the write-behind buffer
+     */
+    private int queueCapacity = 10_000;
+
+    /**
+     * Number of hits that triggers a group commit
+     */
+    private int flushSize = 500;
+
+    /**
+     * Maximum time the first hit of a group waits for the group commit
+     */
+    private Duration flushInterval = Duration.ofMillis(50);
+
+    /**
+     * Maximum time a caller waits for the group commit of its hit with ack=flush
+     */
+    private Duration flushTimeout = Duration.ofSeconds(10);
+
+    /**
+     * How the rollups of recent hits are updated
+     */
+    private Rollups rollups = Rollups.SYNC;
+
+    /**
+     * How often live rollup counters are written to the rollup tables.
+     * Other instances see the hits counted by this one up to this much later
+     */
+    private Duration liveFlushInterval = Duration.ofSeconds(5);
+
+    public enum Mode {
+        SYNC,
+        BUFFERED
+    }
+
+    public enum Rollups {
+        SYNC,
+        LIVE
+    }
+
+    public enum Ack {
+        ENQUEUE,
+        FLUSH
+    }
+}
@@ -0,0 +1,73 @@
+package ru.yandex.practicum.ewm.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "stats.limiter")
+@Getter
+@Setter
+public class LimiterProperties {
+
+    /**
+     * Whether ingest and query requests beyond the adaptive concurrency limits are rejected
+     */
+    private boolean enabled = true;
+
+    /**
+     * Delay suggested to the rejected clients in the Retry-After header
+     */
+    private Duration retryAfter = Duration.ofSeconds(1);
+
+    /**
+     * Concurrency limit of the hit saving requests
+     */
+    private Limit ingest = Limit.of(20, 150, Duration.ofMillis(500));
+
+    /**
+     * Concurrency limit of the stats requests
+     */
+    private Limit query = Limit.of(10, 50, Duration.ofSeconds(2));
+
+    @Getter
+    @Setter
+    public static class Limit {
+
+        /**
+         * Number of requests allowed in flight before the limit adapts
+         */
+        private int initialLimit;
+
+        /**
+         * Lower bound of the limit
+         */
+        private int minLimit = 1;
+
+        /**
+         * Upper bound of the limit
+         */
+        private int maxLimit;
+
+        /**
+         * Factor the limit is multiplied by when a request fails or exceeds the timeout
+         */
+        private double backoffRatio = 0.9;
+
+        /**
+         * Latency above which a completed request is treated as a sign of overload
+         */
+        private Duration timeout;
+
+        private static Limit of(int initialLimit, int maxLimit, Duration timeout) {
+            Limit limit = new Limit();
+
+            limit.setInitialLimit(initialLimit);
+            limit.setMaxLimit(maxLimit);
+            limit.setTimeout(timeout);
+
+            return limit;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package ru.yandex.practicum.ewm.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "stats.partitions")
+@Getter
+@Setter
+public class PartitionProperties {
+
+    /**
+     * Whether monthly partitions of the hits table are maintained, only applies to PostgreSQL
+     */
+    private boolean enabled = true;
+
+    /**
+     * Number of future months that always have a partition
+     */
+    private int monthsAhead = 3;
+
+    /**
+     * Number of past months whose raw hits are kept, older partitions are dropped.
+     * Their counts stay available in the hour and day rollups, but not at minute precision.
+     * With the archive enabled partitions are kept until the archive cutoff. Zero keeps all partitions
+     */
+    private int retentionMonths = 0;
+}
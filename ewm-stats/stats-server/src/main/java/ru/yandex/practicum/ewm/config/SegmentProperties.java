@@ -0,0 +1,26 @@
+package ru.yandex.practicum.ewm.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "stats.segments")
+@Getter
+@Setter
+public class SegmentProperties {
+
+    /**
+     * Directory of the segment files, used when stats.storage is segment
+     */
+    private String directory = "data/segments";
+
+    /**
+     * Number of hits in one segment file, a full segment is closed and a new one is started
+     */
+    private int recordsPerSegment = 1 << 20;
+
+    /**
+     * Number of consecutive hits that share one entry of the in-memory time index of a segment
+     */
+    private int blockSize = 4096;
+}
@@ -0,0 +1,50 @@
+package ru.yandex.practicum.ewm.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@ConfigurationProperties(prefix = "stats.sharding")
+@Getter
+@Setter
+public class ShardingProperties {
+
+    /**
+     * Databases of the shards, used when stats.storage is sharded.
+     * Hits are routed by the position of a shard in the list, so shards may only be appended to an empty deployment
+     */
+    private List<Shard> shards = new ArrayList<>();
+
+    /**
+     * Number of threads that query and write the shards in parallel
+     */
+    private int threads = 8;
+
+    /**
+     * Maximum time a request waits for the slowest shard
+     */
+    private Duration timeout = Duration.ofSeconds(30);
+
+    @Getter
+    @Setter
+    public static class Shard {
+
+        /**
+         * JDBC url of the shard
+         */
+        private String url;
+
+        private String username;
+
+        private String password;
+
+        /**
+         * Maximum number of connections to the shard
+         */
+        private int maximumPoolSize = 10;
+    }
+}
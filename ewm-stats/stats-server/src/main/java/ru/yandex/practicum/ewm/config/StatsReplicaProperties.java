@@ -0,0 +1,12 @@
+package ru.yandex.practicum.ewm.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import ru.yandex.practicum.ewm.replica.ReplicaProperties;
+
+/**
+ * Replica of the stats database. Its max-lag must be below stats.cache.settle-delay
+ * so that cached aggregates never miss settled hits
+ */
+@ConfigurationProperties(prefix = "stats.replica")
+public class StatsReplicaProperties extends ReplicaProperties {
+}
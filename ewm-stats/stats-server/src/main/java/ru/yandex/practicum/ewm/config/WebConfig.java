@@ -0,0 +1,23 @@
+package ru.yandex.practicum.ewm.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import ru.yandex.practicum.ewm.util.CborUtils;
+
+import java.util.List;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    /**
+     * Installs the epoch-millis CBOR converter, it is used when a request asks for
+     * {@code application/cbor} and JSON stays the default for {@code Accept: *}{@code /*}
+     *
+     * @param converters
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        CborUtils.configureMessageConverters(converters);
+    }
+}
@@ -0,0 +1,174 @@
+package ru.yandex.practicum.ewm.controller;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+import ru.yandex.practicum.ewm.config.LimiterProperties;
+import ru.yandex.practicum.ewm.util.ConcurrencyLimiter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Rejects ingest and query requests with 503 and a Retry-After header once the adaptive concurrency limit of their
+ * kind is reached, so that a slow database makes clients back off instead of piling up on the server threads
+ */
+@Component
+@Slf4j
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private static final UrlPathHelper URL_PATH_HELPER = new UrlPathHelper();
+
+    private final LimiterProperties properties;
+    private final Limit ingest;
+    private final Limit query;
+
+    public ConcurrencyLimitFilter(LimiterProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.ingest = new Limit("ingest", properties.getIngest(), meterRegistry);
+        this.query = new Limit("query", properties.getQuery(), meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !properties.isEnabled() || limitOf(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Limit limit = limitOf(request);
+
+        if (!limit.limiter.tryAcquire()) {
+            limit.rejected.increment();
+            reject(response, limit);
+            return;
+        }
+
+        long start = System.nanoTime();
+        AtomicBoolean released = new AtomicBoolean();
+        boolean failed = true;
+
+        try {
+            chain.doFilter(request, response);
+            failed = false;
+        } finally {
+            if (!failed && request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleasingListener(limit.limiter, start, released));
+            } else if (released.compareAndSet(false, true)) {
+                limit.limiter.release(start, System.nanoTime(), failed || isServerError(response));
+            }
+        }
+    }
+
+    private Limit limitOf(HttpServletRequest request) {
+        String path = URL_PATH_HELPER.getPathWithinApplication(request);
+
+        if (HttpMethod.POST.matches(request.getMethod()) && (path.equals("/hit") || path.equals("/hits"))) {
+            return ingest;
+        }
+
+        if (HttpMethod.GET.matches(request.getMethod()) && (path.equals("/stats") || path.startsWith("/stats/"))) {
+            return query;
+        }
+
+        return null;
+    }
+
+    private void reject(HttpServletResponse response, Limit limit) throws IOException {
+        log.warn("Rejected a request over the {} concurrency limit of {}", limit.name, limit.limiter.getLimit());
+
+        long retryAfter = Math.max(1, (properties.getRetryAfter().toMillis() + 999) / 1000);
+
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+        response.setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        response.getOutputStream().print("{\"error\": \"The server is overloaded, retry in " + retryAfter + " s\"}");
+    }
+
+    private static boolean isServerError(HttpServletResponse response) {
+        return response.getStatus() >= HttpStatus.INTERNAL_SERVER_ERROR.value();
+    }
+
+    private static final class Limit {
+
+        private final String name;
+        private final ConcurrencyLimiter limiter;
+        private final Counter rejected;
+
+        private Limit(String name, LimiterProperties.Limit properties, MeterRegistry meterRegistry) {
+            this.name = name;
+            this.limiter = new ConcurrencyLimiter(properties.getInitialLimit(), properties.getMinLimit(),
+                    properties.getMaxLimit(), properties.getBackoffRatio(), properties.getTimeout());
+
+            Gauge.builder("stats.limiter.limit", limiter, ConcurrencyLimiter::getLimit)
+                    .description("Current adaptive limit of the requests in flight")
+                    .tag("limiter", name)
+                    .register(meterRegistry);
+            Gauge.builder("stats.limiter.in.flight", limiter, ConcurrencyLimiter::getInFlight)
+                    .description("Number of admitted requests in flight")
+                    .tag("limiter", name)
+                    .register(meterRegistry);
+            this.rejected = Counter.builder("stats.limiter.rejected")
+                    .description("Number of requests rejected over the limit")
+                    .tag("limiter", name)
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Releases the slot of a request that completes on another thread, such as a streamed stats response
+     */
+    private static final class ReleasingListener implements AsyncListener {
+
+        private final ConcurrencyLimiter limiter;
+        private final long start;
+        private final AtomicBoolean released;
+
+        private ReleasingListener(ConcurrencyLimiter limiter, long start, AtomicBoolean released) {
+            this.limiter = limiter;
+            this.start = start;
+            this.released = released;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release(isServerError((HttpServletResponse) event.getSuppliedResponse()));
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release(true);
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release(true);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+
+        private void release(boolean failed) {
+            if (released.compareAndSet(false, true)) {
+                limiter.release(start, System.nanoTime(), failed);
+            }
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package ru.yandex.practicum.ewm.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -11,13 +14,24 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.ewm.dto.EndpointHitDto;
+import ru.yandex.practicum.ewm.dto.EndpointHitsSummaryDto;
+import ru.yandex.practicum.ewm.dto.StatsSeriesDto;
 import ru.yandex.practicum.ewm.dto.ViewStatsDto;
 import ru.yandex.practicum.ewm.service.StatsService;
 import ru.yandex.practicum.ewm.util.DateTimeUtils;
+import ru.yandex.practicum.ewm.util.SeriesRequestParam;
 import ru.yandex.practicum.ewm.util.StatsRequestParam;
+import ru.yandex.practicum.ewm.util.TopStatsRequestParam;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Positive;
+import javax.validation.constraints.Size;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -27,7 +41,12 @@ import java.util.List;
 @Validated
 public class StatsController {
 
+    private static final int MAX_BATCH_SIZE = 10_000;
+
+    private static final int MAX_TOP_LIMIT = 1_000;
+
     private final StatsService statsService;
+    private final ObjectMapper objectMapper;
 
     @PostMapping("/hit")
     @ResponseStatus(HttpStatus.CREATED)
@@ -36,21 +55,111 @@ public class StatsController {
         return statsService.saveEndpointHit(endpointHitDto);
     }
 
+    @PostMapping("/hits")
+    @ResponseStatus(HttpStatus.CREATED)
+    public EndpointHitsSummaryDto saveEndpointHits(
+            @RequestBody
+            @NotEmpty(message = "Hits cannot be empty")
+            @Size(max = MAX_BATCH_SIZE, message = "Hits must contain no more than " + MAX_BATCH_SIZE + " elements")
+            List<@Valid EndpointHitDto> endpointHitDtos
+    ) {
+        log.info("Request received POST /hits: {} hits", endpointHitDtos.size());
+        return statsService.saveEndpointHits(endpointHitDtos);
+    }
+
     @GetMapping("/stats")
     public List<ViewStatsDto> getStats(
             @RequestParam @DateTimeFormat(pattern = DateTimeUtils.DATE_TIME_FORMAT) LocalDateTime start,
             @RequestParam @DateTimeFormat(pattern = DateTimeUtils.DATE_TIME_FORMAT) LocalDateTime end,
             @RequestParam(required = false) List<String> uris,
-            @RequestParam(defaultValue = "false") Boolean unique
+            @RequestParam(defaultValue = "false") Boolean unique,
+            @RequestParam(defaultValue = "false") Boolean approximate
     ) {
         StatsRequestParam requestParam = StatsRequestParam.builder()
                 .start(start)
                 .end(end)
                 .uris(uris)
                 .unique(unique)
+                .approximate(approximate)
                 .build();
 
-        log.info("Request received GET /stats?start={}&end={}&uris={}&unique={}", start, end, uris, unique);
+        log.info("Request received GET /stats?start={}&end={}&uris={}&unique={}&approximate={}",
+                start, end, uris, unique, approximate);
         return statsService.getStats(requestParam);
     }
+
+    @GetMapping("/stats/top")
+    public List<ViewStatsDto> getTopStats(
+            @RequestParam @DateTimeFormat(pattern = DateTimeUtils.DATE_TIME_FORMAT) LocalDateTime start,
+            @RequestParam @DateTimeFormat(pattern = DateTimeUtils.DATE_TIME_FORMAT) LocalDateTime end,
+            @RequestParam(required = false) String prefix,
+            @RequestParam(defaultValue = "false") Boolean unique,
+            @RequestParam(defaultValue = "10")
+            @Positive(message = "Limit must be positive")
+            @Max(value = MAX_TOP_LIMIT, message = "Limit must be no more than " + MAX_TOP_LIMIT)
+            Integer limit
+    ) {
+        TopStatsRequestParam requestParam = TopStatsRequestParam.builder()
+                .start(start)
+                .end(end)
+                .prefix(prefix)
+                .unique(unique)
+                .limit(limit)
+                .build();
+
+        log.info("Request received GET /stats/top?start={}&end={}&prefix={}&unique={}&limit={}",
+                start, end, prefix, unique, limit);
+        return statsService.getTopStats(requestParam);
+    }
+
+    @GetMapping("/stats/series")
+    public StatsSeriesDto getSeries(
+            @RequestParam @DateTimeFormat(pattern = DateTimeUtils.DATE_TIME_FORMAT) LocalDateTime start,
+            @RequestParam @DateTimeFormat(pattern = DateTimeUtils.DATE_TIME_FORMAT) LocalDateTime end,
+            @RequestParam List<String> uris,
+            @RequestParam(defaultValue = "hour") String granularity
+    ) {
+        SeriesRequestParam requestParam = SeriesRequestParam.builder()
+                .start(start)
+                .end(end)
+                .uris(uris)
+                .granularity(granularity)
+                .build();
+
+        log.info("Request received GET /stats/series?start={}&end={}&uris={}&granularity={}",
+                start, end, uris, granularity);
+        return statsService.getSeries(requestParam);
+    }
+
+    @GetMapping(value = "/stats", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamStats(
+            @RequestParam @DateTimeFormat(pattern = DateTimeUtils.DATE_TIME_FORMAT) LocalDateTime start,
+            @RequestParam @DateTimeFormat(pattern = DateTimeUtils.DATE_TIME_FORMAT) LocalDateTime end,
+            @RequestParam(required = false) List<String> uris,
+            @RequestParam(defaultValue = "false") Boolean unique,
+            @RequestParam(defaultValue = "false") Boolean approximate
+    ) {
+        StatsRequestParam requestParam = StatsRequestParam.builder()
+                .start(start)
+                .end(end)
+                .uris(uris)
+                .unique(unique)
+                .approximate(approximate)
+                .build();
+
+        log.info("Request received GET /stats?start={}&end={}&uris={}&unique={}&approximate={} as {}",
+                start, end, uris, unique, approximate, MediaType.APPLICATION_NDJSON_VALUE);
+        StreamingResponseBody body = outputStream -> statsService.streamStats(requestParam, viewStatsDto -> {
+            try {
+                outputStream.write(objectMapper.writeValueAsBytes(viewStatsDto));
+                outputStream.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
 }
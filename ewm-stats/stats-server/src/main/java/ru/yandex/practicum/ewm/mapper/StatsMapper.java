@@ -2,7 +2,20 @@ package ru.yandex.practicum.ewm.mapper;
 
 import lombok.experimental.UtilityClass;
 import ru.yandex.practicum.ewm.dto.EndpointHitDto;
+import ru.yandex.practicum.ewm.dto.StatsSeriesDto;
+import ru.yandex.practicum.ewm.dto.ViewSeriesDto;
 import ru.yandex.practicum.ewm.model.EndpointHit;
+import ru.yandex.practicum.ewm.model.EndpointKey;
+import ru.yandex.practicum.ewm.model.RollupGranularity;
+import ru.yandex.practicum.ewm.util.IpAddressUtils;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 
 @UtilityClass
 public class StatsMapper {
@@ -11,9 +24,10 @@ public class StatsMapper {
         EndpointHitDto endpointHitDto = new EndpointHitDto();
 
         endpointHitDto.setId(endpointHit.getId());
+        endpointHitDto.setHitId(endpointHit.getHitId());
         endpointHitDto.setApp(endpointHit.getApp());
         endpointHitDto.setUri(endpointHit.getUri());
-        endpointHitDto.setIp(endpointHit.getIp());
+        endpointHitDto.setIp(IpAddressUtils.format(endpointHit.getIp()));
         endpointHitDto.setTimestamp(endpointHit.getTimestamp());
 
         return endpointHitDto;
@@ -22,11 +36,37 @@ public class StatsMapper {
     public EndpointHit toEndpointHit(EndpointHitDto endpointHitDto) {
         EndpointHit endpointHit = new EndpointHit();
 
+        endpointHit.setHitId(endpointHitDto.getHitId());
         endpointHit.setApp(endpointHitDto.getApp());
         endpointHit.setUri(endpointHitDto.getUri());
-        endpointHit.setIp(endpointHitDto.getIp());
+        endpointHit.setIp(IpAddressUtils.parse(endpointHitDto.getIp()));
         endpointHit.setTimestamp(endpointHitDto.getTimestamp());
 
         return endpointHit;
     }
+
+    /**
+     * Converts hits per bucket to the columnar series response, most viewed endpoints first
+     *
+     * @param granularity
+     * @param first       start of the first bucket
+     * @param buckets     number of buckets
+     * @param series      hits per bucket by app and uri
+     * @return series response
+     */
+    public StatsSeriesDto toSeriesDto(RollupGranularity granularity, LocalDateTime first, int buckets,
+                                      Map<EndpointKey, long[]> series) {
+        List<LocalDateTime> bucketStarts = IntStream.range(0, buckets)
+                .mapToObj(i -> first.plus(i, granularity.getUnit()))
+                .collect(Collectors.toList());
+
+        List<ViewSeriesDto> viewSeries = series.entrySet().stream()
+                .sorted(Comparator.comparingLong(
+                        (Map.Entry<EndpointKey, long[]> entry) -> LongStream.of(entry.getValue()).sum()).reversed())
+                .map(entry -> new ViewSeriesDto(entry.getKey().getApp(), entry.getKey().getUri(),
+                        LongStream.of(entry.getValue()).boxed().collect(Collectors.toList())))
+                .collect(Collectors.toList());
+
+        return new StatsSeriesDto(granularity.name(), bucketStarts, viewSeries);
+    }
 }
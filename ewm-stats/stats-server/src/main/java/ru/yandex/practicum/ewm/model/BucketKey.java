@@ -0,0 +1,34 @@
+package ru.yandex.practicum.ewm.model;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * Encoded app and uri with the start of a rollup bucket
+ */
+@Getter
+@EqualsAndHashCode
+@ToString
+@RequiredArgsConstructor
+public class BucketKey {
+
+    private final int appId;
+
+    private final int uriId;
+
+    private final LocalDateTime bucket;
+
+    /**
+     * Returns the key of the same app and uri in another bucket
+     *
+     * @param other start of the other bucket
+     * @return bucket key
+     */
+    public BucketKey withBucket(LocalDateTime other) {
+        return bucket.equals(other) ? this : new BucketKey(appId, uriId, other);
+    }
+}
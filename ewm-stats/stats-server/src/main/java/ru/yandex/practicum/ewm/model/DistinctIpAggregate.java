@@ -0,0 +1,40 @@
+package ru.yandex.practicum.ewm.model;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Exact set of visitor IPs per app and uri, the sets are never changed after the aggregate is created
+ */
+public class DistinctIpAggregate extends StatsAggregate<Set<ByteBuffer>> {
+
+    private static final long IP_WEIGHT = 112;
+
+    public DistinctIpAggregate(Map<EndpointKey, Set<ByteBuffer>> values) {
+        super(values);
+    }
+
+    @Override
+    protected Set<ByteBuffer> combine(Set<ByteBuffer> value, Set<ByteBuffer> other) {
+        Set<ByteBuffer> union = new HashSet<>(value);
+        union.addAll(other);
+        return union;
+    }
+
+    @Override
+    protected long count(Set<ByteBuffer> value) {
+        return value.size();
+    }
+
+    @Override
+    protected long weight(Set<ByteBuffer> value) {
+        return IP_WEIGHT * value.size();
+    }
+
+    @Override
+    protected StatsAggregate<Set<ByteBuffer>> create(Map<EndpointKey, Set<ByteBuffer>> values) {
+        return new DistinctIpAggregate(values);
+    }
+}
@@ -11,6 +11,7 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Table;
+import javax.persistence.Transient;
 import java.time.LocalDateTime;
 
 @Entity
@@ -25,14 +26,26 @@ public class EndpointHit {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column
+    @Column(name = "app_id")
+    private Integer appId;
+
+    @Column(name = "uri_id")
+    private Integer uriId;
+
+    @Transient
+    private String hitId;
+
+    @Transient
     private String app;
 
-    @Column
+    @Transient
     private String uri;
 
+    @Transient
+    private Integer visitorId;
+
     @Column
-    private String ip;
+    private byte[] ip;
 
     @Column(name = "created")
     private LocalDateTime timestamp;
@@ -0,0 +1,20 @@
+package ru.yandex.practicum.ewm.model;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+/**
+ * App and uri that stats are grouped by
+ */
+@Getter
+@EqualsAndHashCode
+@ToString
+@RequiredArgsConstructor
+public class EndpointKey {
+
+    private final String app;
+
+    private final String uri;
+}
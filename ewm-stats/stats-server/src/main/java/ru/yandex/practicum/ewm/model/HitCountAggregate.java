@@ -0,0 +1,54 @@
+package ru.yandex.practicum.ewm.model;
+
+import ru.yandex.practicum.ewm.dto.ViewStatsDto;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Number of hits per app and uri
+ */
+public class HitCountAggregate extends StatsAggregate<Long> {
+
+    public HitCountAggregate(Map<EndpointKey, Long> values) {
+        super(values);
+    }
+
+    /**
+     * Creates an aggregate from view stats
+     *
+     * @param viewStats
+     * @return aggregate of the hits
+     */
+    public static HitCountAggregate of(List<ViewStatsDto> viewStats) {
+        Map<EndpointKey, Long> values = new HashMap<>();
+
+        for (ViewStatsDto viewStatsDto : viewStats) {
+            values.merge(new EndpointKey(viewStatsDto.getApp(), viewStatsDto.getUri()), viewStatsDto.getHits(),
+                    Long::sum);
+        }
+
+        return new HitCountAggregate(values);
+    }
+
+    @Override
+    protected Long combine(Long value, Long other) {
+        return value + other;
+    }
+
+    @Override
+    protected long count(Long value) {
+        return value;
+    }
+
+    @Override
+    protected long weight(Long value) {
+        return 16;
+    }
+
+    @Override
+    protected StatsAggregate<Long> create(Map<EndpointKey, Long> values) {
+        return new HitCountAggregate(values);
+    }
+}
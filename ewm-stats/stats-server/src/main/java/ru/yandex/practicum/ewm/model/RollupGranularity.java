@@ -0,0 +1,79 @@
+package ru.yandex.practicum.ewm.model;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+public enum RollupGranularity {
+
+    MINUTE("hits_minute", ChronoUnit.MINUTES, false, false),
+    HOUR("hits_hour", ChronoUnit.HOURS, true, true),
+    DAY("hits_day", ChronoUnit.DAYS, true, true);
+
+    private final String table;
+    private final ChronoUnit unit;
+    private final boolean sketched;
+    private final boolean visitors;
+
+    RollupGranularity(String table, ChronoUnit unit, boolean sketched, boolean visitors) {
+        this.table = table;
+        this.unit = unit;
+        this.sketched = sketched;
+        this.visitors = visitors;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public ChronoUnit getUnit() {
+        return unit;
+    }
+
+    /**
+     * Returns whether buckets of this granularity keep a HyperLogLog sketch of visitor IPs
+     *
+     * @return true if buckets are sketched
+     */
+    public boolean isSketched() {
+        return sketched;
+    }
+
+    /**
+     * Returns whether buckets of this granularity keep a bitmap of the exact visitor ids
+     *
+     * @return true if buckets keep visitor bitmaps
+     */
+    public boolean hasVisitors() {
+        return visitors;
+    }
+
+    /**
+     * Returns the start of the bucket that contains the given date and time
+     *
+     * @param dateTime
+     * @return start of the bucket
+     */
+    public LocalDateTime floor(LocalDateTime dateTime) {
+        return dateTime.truncatedTo(unit);
+    }
+
+    /**
+     * Returns the first bucket boundary that is not before the given date and time
+     *
+     * @param dateTime
+     * @return bucket boundary
+     */
+    public LocalDateTime ceil(LocalDateTime dateTime) {
+        LocalDateTime floor = floor(dateTime);
+        return floor.equals(dateTime) ? floor : floor.plus(1, unit);
+    }
+
+    /**
+     * Returns the next finer granularity or null for the finest one
+     *
+     * @return finer granularity
+     */
+    public RollupGranularity finer() {
+        return ordinal() == 0 ? null : values()[ordinal() - 1];
+    }
+}
@@ -0,0 +1,32 @@
+package ru.yandex.practicum.ewm.model;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * Part of a stats time range answered from a single source.
+ * A segment without granularity is read from the raw hits table.
+ * The range is half-open unless endInclusive is set, which is only the case for the raw segment at the end of the range
+ */
+@Getter
+@EqualsAndHashCode
+@ToString
+@AllArgsConstructor
+public class RollupSegment {
+
+    private final RollupGranularity granularity;
+
+    private final LocalDateTime start;
+
+    private final LocalDateTime end;
+
+    private final boolean endInclusive;
+
+    public boolean isRaw() {
+        return granularity == null;
+    }
+}
@@ -0,0 +1,37 @@
+package ru.yandex.practicum.ewm.model;
+
+import ru.yandex.practicum.ewm.util.HyperLogLog;
+
+import java.util.Map;
+
+/**
+ * HyperLogLog sketch of visitor IPs per app and uri, the sketches are never changed after the aggregate is created
+ */
+public class SketchAggregate extends StatsAggregate<HyperLogLog> {
+
+    private static final long SKETCH_WEIGHT = (1 << HyperLogLog.PRECISION) + 32;
+
+    public SketchAggregate(Map<EndpointKey, HyperLogLog> values) {
+        super(values);
+    }
+
+    @Override
+    protected HyperLogLog combine(HyperLogLog value, HyperLogLog other) {
+        return value.copy().merge(other);
+    }
+
+    @Override
+    protected long count(HyperLogLog value) {
+        return value.cardinality();
+    }
+
+    @Override
+    protected long weight(HyperLogLog value) {
+        return SKETCH_WEIGHT;
+    }
+
+    @Override
+    protected StatsAggregate<HyperLogLog> create(Map<EndpointKey, HyperLogLog> values) {
+        return new SketchAggregate(values);
+    }
+}
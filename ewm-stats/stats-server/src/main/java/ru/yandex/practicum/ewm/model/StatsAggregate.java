@@ -0,0 +1,140 @@
+package ru.yandex.practicum.ewm.model;
+
+import ru.yandex.practicum.ewm.dto.ViewStatsDto;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Stats of a time range per app and uri that can be combined with the stats of an adjacent range.
+ * Aggregates are immutable, so they can be shared by concurrent readers of the stats cache
+ *
+ * @param <V> per endpoint value
+ */
+public abstract class StatsAggregate<V> {
+
+    private static final long ENTRY_OVERHEAD = 96;
+
+    private static final Comparator<ViewStatsDto> BY_HITS = Comparator.comparing(ViewStatsDto::getHits);
+
+    private final Map<EndpointKey, V> values;
+
+    protected StatsAggregate(Map<EndpointKey, V> values) {
+        this.values = Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * Returns the stats of the union of this range and an adjacent range, neither aggregate is changed
+     *
+     * @param other aggregate of the same type
+     * @return combined aggregate
+     */
+    @SuppressWarnings("unchecked")
+    public StatsAggregate<V> plus(StatsAggregate<?> other) {
+        if (other.getClass() != getClass()) {
+            throw new IllegalArgumentException(String.format("Cannot add %s to %s",
+                    other.getClass().getSimpleName(), getClass().getSimpleName()));
+        }
+
+        Map<EndpointKey, V> combined = new HashMap<>(values);
+        ((StatsAggregate<V>) other).values.forEach((key, value) -> combined.merge(key, value, this::combine));
+
+        return create(combined);
+    }
+
+    /**
+     * Returns the stats of the endpoints that match the filter, the aggregate is not changed
+     *
+     * @param filter
+     * @return filtered aggregate
+     */
+    public StatsAggregate<V> filter(Predicate<EndpointKey> filter) {
+        return create(values.entrySet().stream()
+                .filter(entry -> filter.test(entry.getKey()))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+    }
+
+    /**
+     * Returns the stats as view stats, most viewed first
+     *
+     * @return list of endpoints hits
+     */
+    public List<ViewStatsDto> toViewStats() {
+        return values.entrySet().stream()
+                .map(entry -> new ViewStatsDto(entry.getKey().getApp(), entry.getKey().getUri(),
+                        count(entry.getValue())))
+                .sorted(BY_HITS.reversed())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the most viewed endpoints, most viewed first. Only the current top entries are kept in a bounded heap
+     * while the values are counted, the other endpoints are never sorted
+     *
+     * @param limit
+     * @return list of endpoints hits
+     */
+    public List<ViewStatsDto> toTopViewStats(int limit) {
+        PriorityQueue<ViewStatsDto> top = new PriorityQueue<>(limit + 1, BY_HITS);
+
+        values.forEach((key, value) -> {
+            top.add(new ViewStatsDto(key.getApp(), key.getUri(), count(value)));
+
+            if (top.size() > limit) {
+                top.poll();
+            }
+        });
+
+        List<ViewStatsDto> result = new ArrayList<>(top);
+        result.sort(BY_HITS.reversed());
+        return result;
+    }
+
+    /**
+     * Returns the approximate number of bytes the aggregate occupies on the heap
+     *
+     * @return weight in bytes
+     */
+    public long weight() {
+        long weight = ENTRY_OVERHEAD;
+
+        for (Map.Entry<EndpointKey, V> entry : values.entrySet()) {
+            weight += ENTRY_OVERHEAD + 2L * (entry.getKey().getApp().length() + entry.getKey().getUri().length())
+                    + weight(entry.getValue());
+        }
+
+        return weight;
+    }
+
+    /**
+     * Returns whether the aggregate stays valid when it is combined with aggregates loaded later,
+     * aggregates that do not are not kept by the stats cache
+     *
+     * @return whether the aggregate may be cached
+     */
+    public boolean isCacheable() {
+        return true;
+    }
+
+    protected Map<EndpointKey, V> getValues() {
+        return values;
+    }
+
+    /**
+     * Combines the values of one endpoint in two adjacent ranges without changing them
+     */
+    protected abstract V combine(V value, V other);
+
+    protected abstract long count(V value);
+
+    protected abstract long weight(V value);
+
+    protected abstract StatsAggregate<V> create(Map<EndpointKey, V> values);
+}
@@ -0,0 +1,76 @@
+package ru.yandex.practicum.ewm.model;
+
+import org.roaringbitmap.RoaringBitmap;
+import ru.yandex.practicum.ewm.util.VisitorBitmaps;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Exact set of visitor ids per app and uri as compressed bitmaps, the bitmaps are never changed after the aggregate
+ * is created. Unions of ranges are bitmap ORs, so overlapping ranges are not counted twice
+ */
+public class VisitorAggregate extends StatsAggregate<RoaringBitmap> {
+
+    public VisitorAggregate(Map<EndpointKey, RoaringBitmap> values) {
+        super(values);
+    }
+
+    /**
+     * Converts sets of visitor IPs to bitmaps of their visitor ids
+     *
+     * @param aggregate
+     * @param encoder   visitor ids of the given IPs
+     * @return aggregate of the same visitors
+     */
+    public static VisitorAggregate of(DistinctIpAggregate aggregate,
+                                      Function<Collection<ByteBuffer>, Map<ByteBuffer, Integer>> encoder) {
+        Set<ByteBuffer> ips = new HashSet<>();
+        aggregate.getValues().values().forEach(ips::addAll);
+
+        Map<ByteBuffer, Integer> ids = encoder.apply(ips);
+        Map<EndpointKey, RoaringBitmap> values = new HashMap<>();
+
+        aggregate.getValues().forEach((key, value) -> {
+            RoaringBitmap bitmap = new RoaringBitmap();
+            value.forEach(ip -> bitmap.add(ids.get(ip)));
+            values.put(key, bitmap);
+        });
+
+        return new VisitorAggregate(values);
+    }
+
+    /**
+     * Provisional ids of IPs that are not in the visitor dictionary would not match the dictionary ids
+     * that the IPs get later, so aggregates with them are not cached
+     */
+    @Override
+    public boolean isCacheable() {
+        return getValues().values().stream().noneMatch(VisitorBitmaps::hasProvisionalIds);
+    }
+
+    @Override
+    protected RoaringBitmap combine(RoaringBitmap value, RoaringBitmap other) {
+        return RoaringBitmap.or(value, other);
+    }
+
+    @Override
+    protected long count(RoaringBitmap value) {
+        return value.getLongCardinality();
+    }
+
+    @Override
+    protected long weight(RoaringBitmap value) {
+        return value.getLongSizeInBytes();
+    }
+
+    @Override
+    protected StatsAggregate<RoaringBitmap> create(Map<EndpointKey, RoaringBitmap> values) {
+        return new VisitorAggregate(values);
+    }
+}
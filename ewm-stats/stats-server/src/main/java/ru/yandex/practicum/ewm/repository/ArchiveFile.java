@@ -0,0 +1,341 @@
+package ru.yandex.practicum.ewm.repository;
+
+import ru.yandex.practicum.ewm.model.EndpointKey;
+import ru.yandex.practicum.ewm.util.IpAddressUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Hits of one day stored column by column in a gzip-compressed file.
+ * After the header and the app and uri dictionaries come the timestamps as microseconds since the previous hit,
+ * then the dictionary indexes of the apps and uris, all as variable-length integers, and finally the raw IPs.
+ * Hits are sorted by time, so the deltas are small and a range is found by binary search
+ */
+class ArchiveFile {
+
+    private static final int MAGIC = 0x45574d41;
+    private static final byte VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int INDEX_BITS = 26;
+
+    private final LocalDate day;
+    private final String[] apps;
+    private final String[] uris;
+    private final long[] micros;
+    private final int[] appIndexes;
+    private final int[] uriIndexes;
+    private final byte[] ips;
+
+    private ArchiveFile(LocalDate day, String[] apps, String[] uris, long[] micros, int[] appIndexes,
+                        int[] uriIndexes, byte[] ips) {
+        this.day = day;
+        this.apps = apps;
+        this.uris = uris;
+        this.micros = micros;
+        this.appIndexes = appIndexes;
+        this.uriIndexes = uriIndexes;
+        this.ips = ips;
+    }
+
+    static Builder builder(LocalDate day) {
+        return new Builder(day);
+    }
+
+    int size() {
+        return micros.length;
+    }
+
+    /**
+     * Writes the file to a temporary file next to the target, forces it to disk and moves it into place,
+     * so a reader never sees a partially written file
+     */
+    void write(Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (OutputStream file = Files.newOutputStream(temporary);
+             DataOutputStream output = new DataOutputStream(
+                     new BufferedOutputStream(new GZIPOutputStream(file, BUFFER_SIZE), BUFFER_SIZE))) {
+            output.writeInt(MAGIC);
+            output.writeByte(VERSION);
+            output.writeLong(day.toEpochDay());
+            output.writeInt(micros.length);
+
+            writeDictionary(output, apps);
+            writeDictionary(output, uris);
+
+            long previous = 0;
+            for (long value : micros) {
+                writeVarLong(output, value - previous);
+                previous = value;
+            }
+
+            for (int index : appIndexes) {
+                writeVarLong(output, index);
+            }
+
+            for (int index : uriIndexes) {
+                writeVarLong(output, index);
+            }
+
+            output.write(ips);
+        }
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    static ArchiveFile read(Path path) throws IOException {
+        try (InputStream file = Files.newInputStream(path);
+             DataInputStream input = new DataInputStream(
+                     new BufferedInputStream(new GZIPInputStream(file, BUFFER_SIZE), BUFFER_SIZE))) {
+            if (input.readInt() != MAGIC || input.readByte() != VERSION) {
+                throw new IOException(String.format("%s is not an archive file", path));
+            }
+
+            LocalDate day = LocalDate.ofEpochDay(input.readLong());
+            int size = input.readInt();
+            String[] apps = readDictionary(input);
+            String[] uris = readDictionary(input);
+
+            long[] micros = new long[size];
+            long previous = 0;
+            for (int i = 0; i < size; i++) {
+                previous += readVarLong(input);
+                micros[i] = previous;
+            }
+
+            int[] appIndexes = new int[size];
+            for (int i = 0; i < size; i++) {
+                appIndexes[i] = (int) readVarLong(input);
+            }
+
+            int[] uriIndexes = new int[size];
+            for (int i = 0; i < size; i++) {
+                uriIndexes[i] = (int) readVarLong(input);
+            }
+
+            byte[] ips = new byte[size * IpAddressUtils.LENGTH];
+            input.readFully(ips);
+
+            return new ArchiveFile(day, apps, uris, micros, appIndexes, uriIndexes, ips);
+        }
+    }
+
+    /**
+     * Visits the hits within [start, end] or [start, end) whose uri matches the filter.
+     * Timestamps are passed as epoch milliseconds
+     */
+    void scan(LocalDateTime start, LocalDateTime end, boolean endInclusive, Predicate<String> uriFilter,
+              HitVisitor visitor) {
+        boolean[] matches = new boolean[uris.length];
+        boolean any = false;
+
+        for (int i = 0; i < uris.length; i++) {
+            matches[i] = uriFilter.test(uris[i]);
+            any |= matches[i];
+        }
+
+        if (!any) {
+            return;
+        }
+
+        LocalDateTime dayStart = day.atStartOfDay();
+        long from = ChronoUnit.MICROS.between(dayStart, start);
+        long to = ChronoUnit.MICROS.between(dayStart, end);
+        long dayMillis = dayStart.toInstant(ZoneOffset.UTC).toEpochMilli();
+        ByteBuffer ipBuffer = ByteBuffer.wrap(ips);
+        EndpointKey[] endpoints = new EndpointKey[apps.length * uris.length];
+
+        for (int i = firstAtOrAfter(from); i < micros.length; i++) {
+            if (micros[i] > to || (micros[i] == to && !endInclusive)) {
+                break;
+            }
+
+            if (!matches[uriIndexes[i]]) {
+                continue;
+            }
+
+            int endpoint = appIndexes[i] * uris.length + uriIndexes[i];
+            if (endpoints[endpoint] == null) {
+                endpoints[endpoint] = new EndpointKey(apps[appIndexes[i]], uris[uriIndexes[i]]);
+            }
+
+            visitor.visit(endpoints[endpoint], dayMillis + micros[i] / 1000,
+                    ipBuffer.getLong(i * IpAddressUtils.LENGTH), ipBuffer.getLong(i * IpAddressUtils.LENGTH + 8));
+        }
+    }
+
+    private int firstAtOrAfter(long value) {
+        int index = Arrays.binarySearch(micros, value);
+
+        if (index < 0) {
+            return -index - 1;
+        }
+
+        while (index > 0 && micros[index - 1] == value) {
+            index--;
+        }
+
+        return index;
+    }
+
+    private static void writeDictionary(DataOutputStream output, String[] names) throws IOException {
+        output.writeInt(names.length);
+
+        for (String name : names) {
+            output.writeUTF(name);
+        }
+    }
+
+    private static String[] readDictionary(DataInputStream input) throws IOException {
+        String[] names = new String[input.readInt()];
+
+        for (int i = 0; i < names.length; i++) {
+            names[i] = input.readUTF();
+        }
+
+        return names;
+    }
+
+    private static void writeVarLong(DataOutputStream output, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            output.writeByte((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+
+        output.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream input) throws IOException {
+        long value = 0;
+
+        for (int shift = 0; ; shift += 7) {
+            int b = input.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Collects the hits of a day in any order and sorts them by time
+     */
+    static final class Builder {
+
+        private final LocalDate day;
+        private final LocalDateTime dayStart;
+        private final Map<String, Integer> apps = new LinkedHashMap<>();
+        private final Map<String, Integer> uris = new LinkedHashMap<>();
+        private long[] micros = new long[1024];
+        private int[] appIndexes = new int[1024];
+        private int[] uriIndexes = new int[1024];
+        private byte[] ips = new byte[1024 * IpAddressUtils.LENGTH];
+        private int size;
+
+        private Builder(LocalDate day) {
+            this.day = day;
+            this.dayStart = day.atStartOfDay();
+        }
+
+        Builder add(LocalDateTime timestamp, String app, String uri, byte[] ip) {
+            if (!timestamp.toLocalDate().equals(day)) {
+                throw new IllegalArgumentException(String.format("Hit at %s does not belong to %s", timestamp, day));
+            }
+
+            if (size == micros.length) {
+                if (size == 1 << INDEX_BITS) {
+                    throw new IllegalStateException(String.format("Too many hits on %s to archive", day));
+                }
+
+                micros = Arrays.copyOf(micros, size * 2);
+                appIndexes = Arrays.copyOf(appIndexes, size * 2);
+                uriIndexes = Arrays.copyOf(uriIndexes, size * 2);
+                ips = Arrays.copyOf(ips, size * 2 * IpAddressUtils.LENGTH);
+            }
+
+            micros[size] = ChronoUnit.MICROS.between(dayStart, timestamp);
+            appIndexes[size] = apps.computeIfAbsent(app, name -> apps.size());
+            uriIndexes[size] = uris.computeIfAbsent(uri, name -> uris.size());
+            System.arraycopy(ip, 0, ips, size * IpAddressUtils.LENGTH, IpAddressUtils.LENGTH);
+            size++;
+
+            return this;
+        }
+
+        /**
+         * Adds all hits of an existing file of the same day
+         */
+        Builder addAll(ArchiveFile file) {
+            byte[] ip = new byte[IpAddressUtils.LENGTH];
+
+            for (int i = 0; i < file.size(); i++) {
+                System.arraycopy(file.ips, i * IpAddressUtils.LENGTH, ip, 0, IpAddressUtils.LENGTH);
+                add(dayStart.plus(file.micros[i], ChronoUnit.MICROS), file.apps[file.appIndexes[i]],
+                        file.uris[file.uriIndexes[i]], ip);
+            }
+
+            return this;
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * Sorts the hits by time. A day has fewer than 2^37 microseconds, so each timestamp is packed
+         * with its row index into one long and the rows are reordered after a single primitive sort
+         */
+        ArchiveFile build() {
+            long[] order = new long[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = (micros[i] << INDEX_BITS) | i;
+            }
+            Arrays.sort(order);
+
+            long[] sortedMicros = new long[size];
+            int[] sortedApps = new int[size];
+            int[] sortedUris = new int[size];
+            byte[] sortedIps = new byte[size * IpAddressUtils.LENGTH];
+
+            for (int i = 0; i < size; i++) {
+                int row = (int) (order[i] & ((1 << INDEX_BITS) - 1));
+
+                sortedMicros[i] = micros[row];
+                sortedApps[i] = appIndexes[row];
+                sortedUris[i] = uriIndexes[row];
+                System.arraycopy(ips, row * IpAddressUtils.LENGTH, sortedIps, i * IpAddressUtils.LENGTH,
+                        IpAddressUtils.LENGTH);
+            }
+
+            return new ArchiveFile(day, apps.keySet().toArray(String[]::new), uris.keySet().toArray(String[]::new),
+                    sortedMicros, sortedApps, sortedUris, sortedIps);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package ru.yandex.practicum.ewm.repository;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.ewm.config.ArchiveProperties;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Hits moved out of the hits table into one compressed columnar file per day.
+ * The hits_archive table holds the current file version of each archived day bucket. A day is archived in one transaction
+ * that deletes its rows from the hits table, writes a new version of its file and registers that version,
+ * so every query sees a hit either in the table or in the archive, and a failed run leaves no trace
+ */
+@Repository
+public class ArchiveRepository {
+
+    private static final Pattern FILE_NAME = Pattern.compile("hits-(\\d{4}-\\d{2}-\\d{2})-v(\\d+)\\.gz");
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final DictionaryRepository dictionaryRepository;
+    private final SqlDialect dialect;
+    private final Path directory;
+
+    public ArchiveRepository(NamedParameterJdbcTemplate jdbcTemplate, DictionaryRepository dictionaryRepository,
+                             ArchiveProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dictionaryRepository = dictionaryRepository;
+        this.dialect = SqlDialect.of(jdbcTemplate.getJdbcTemplate().getDataSource());
+        this.directory = Paths.get(properties.getDirectory());
+    }
+
+    /**
+     * Returns the day of the oldest hit in the hits table before the given time
+     *
+     * @param before
+     * @return day of the oldest hit
+     */
+    public Optional<LocalDate> findOldestDay(LocalDateTime before) {
+        Timestamp oldest = jdbcTemplate.queryForObject("SELECT MIN(created) FROM hits WHERE created < :before",
+                new MapSqlParameterSource("before", Timestamp.valueOf(before)), Timestamp.class);
+
+        return Optional.ofNullable(oldest).map(timestamp -> timestamp.toLocalDateTime().toLocalDate());
+    }
+
+    /**
+     * Returns the day after the newest archived day
+     *
+     * @return end of the archive
+     */
+    public Optional<LocalDate> findArchivedUntil() {
+        Date newest = jdbcTemplate.getJdbcTemplate().queryForObject("SELECT MAX(bucket) FROM hits_archive", Date.class);
+
+        return Optional.ofNullable(newest).map(date -> date.toLocalDate().plusDays(1));
+    }
+
+    /**
+     * Moves the hits of a day from the hits table into a new version of the day file.
+     * Hits that arrived after the day was archived are merged into the existing file.
+     * Must be called in a transaction, the previous version is kept for queries that have already looked it up
+     *
+     * @param day
+     * @return number of hits moved
+     */
+    public int archiveDay(LocalDate day) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource("day", Date.valueOf(day))
+                .addValue("start", Timestamp.valueOf(day.atStartOfDay()))
+                .addValue("end", Timestamp.valueOf(day.plusDays(1).atStartOfDay()));
+        List<Integer> versions = jdbcTemplate.queryForList("SELECT version FROM hits_archive WHERE bucket = :day",
+                parameters, Integer.class);
+        Integer current = versions.isEmpty() ? null : versions.get(0);
+
+        try {
+            Files.createDirectories(directory);
+            deleteFiles(day, version -> current == null || version < current - 1);
+
+            ArchiveFile.Builder builder = ArchiveFile.builder(day);
+
+            if (current != null) {
+                builder.addAll(ArchiveFile.read(path(day, current)));
+            }
+
+            int archived = builder.size();
+
+            jdbcTemplate.query(dialect.deleteReturning("hits", "created >= :start AND created < :end",
+                    "app_id, uri_id, ip, created"), parameters, rs -> {
+                        builder.add(rs.getTimestamp("created").toLocalDateTime(),
+                                dictionaryRepository.getAppName(rs.getInt("app_id")),
+                                dictionaryRepository.getUriName(rs.getInt("uri_id")), rs.getBytes("ip"));
+                    });
+
+            int moved = builder.size() - archived;
+
+            if (moved == 0) {
+                return 0;
+            }
+
+            int version = current == null ? 1 : current + 1;
+            builder.build().write(path(day, version));
+
+            parameters.addValue("version", version).addValue("hits", builder.size());
+            jdbcTemplate.update(current == null
+                    ? "INSERT INTO hits_archive (bucket, version, hits) VALUES (:day, :version, :hits)"
+                    : "UPDATE hits_archive SET version = :version, hits = :hits WHERE bucket = :day", parameters);
+
+            return moved;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Visits the archived hits within [start, end] or [start, end) whose uri matches the filter
+     *
+     * @param start
+     * @param end
+     * @param endInclusive
+     * @param uriFilter
+     * @param visitor
+     */
+    public void scan(LocalDateTime start, LocalDateTime end, boolean endInclusive, Predicate<String> uriFilter,
+                     HitVisitor visitor) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource("first", Date.valueOf(start.toLocalDate()))
+                .addValue("last", Date.valueOf(end.toLocalDate()));
+        Map<LocalDate, Integer> versions = new LinkedHashMap<>();
+
+        jdbcTemplate.query("SELECT bucket, version FROM hits_archive WHERE bucket >= :first AND bucket <= :last "
+                        + "ORDER BY bucket",
+                parameters, rs -> {
+                    versions.put(rs.getDate("bucket").toLocalDate(), rs.getInt("version"));
+                });
+
+        try {
+            for (Map.Entry<LocalDate, Integer> entry : versions.entrySet()) {
+                ArchiveFile.read(path(entry.getKey(), entry.getValue()))
+                        .scan(start, end, endInclusive, uriFilter, visitor);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path path(LocalDate day, int version) {
+        return directory.resolve(String.format("hits-%s-v%d.gz", day, version));
+    }
+
+    private void deleteFiles(LocalDate day, Predicate<Integer> versionFilter) throws IOException {
+        List<Path> stale;
+
+        try (Stream<Path> files = Files.list(directory)) {
+            stale = files.filter(file -> {
+                Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+
+                return matcher.matches() && matcher.group(1).equals(day.toString())
+                        && versionFilter.test(Integer.parseInt(matcher.group(2)));
+            }).collect(Collectors.toList());
+        }
+
+        for (Path file : stale) {
+            Files.delete(file);
+        }
+    }
+}
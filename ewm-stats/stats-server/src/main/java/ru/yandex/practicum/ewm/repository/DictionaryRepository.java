@@ -0,0 +1,323 @@
+package ru.yandex.practicum.ewm.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.ewm.model.EndpointHit;
+import ru.yandex.practicum.ewm.util.UriPatterns;
+import ru.yandex.practicum.ewm.util.VisitorBitmaps;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Dictionaries of app names and uris. Hits and rollups store the integer ids of their app and uri.
+ * Entries are never changed or removed, so both directions are cached in memory without invalidation.
+ * The visitor dictionary numbers the IPs for the visitor bitmaps of the hour and day rollups, it grows with the audience,
+ * so only the ids of recently seen IPs are cached. Every writer of hits adds their IPs to it, queries only read it
+ */
+@Repository
+public class DictionaryRepository {
+
+    private static final int TRIE_REFRESH_OVERLAP = 100;
+
+    private static final int VISITOR_CACHE_SIZE = 1 << 18;
+
+    private static final int VISITOR_BATCH_SIZE = 1000;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate newTransaction;
+    private final SqlDialect dialect;
+    private final Dictionary apps = new Dictionary("apps");
+    private final Dictionary uris = new Dictionary("uris");
+    private final UriTrie uriTrie = new UriTrie();
+    private final Cache<ByteBuffer, Integer> visitorIds = Caffeine.newBuilder()
+            .maximumSize(VISITOR_CACHE_SIZE)
+            .build();
+
+    public DictionaryRepository(NamedParameterJdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.dialect = SqlDialect.of(jdbcTemplate.getJdbcTemplate().getDataSource());
+    }
+
+    /**
+     * Sets the app, uri and visitor ids of endpoint hits, adding unknown names and IPs to the dictionaries.
+     * New entries are committed in their own transactions, so it should be called before the hits transaction
+     * starts in order not to hold two connections at once
+     *
+     * @param endpointHits
+     */
+    public void encode(Collection<EndpointHit> endpointHits) {
+        for (EndpointHit endpointHit : endpointHits) {
+            endpointHit.setAppId(apps.getOrCreateId(endpointHit.getApp()));
+            endpointHit.setUriId(uris.getOrCreateId(endpointHit.getUri()));
+        }
+
+        Map<ByteBuffer, Integer> ids = getOrCreateVisitorIds(endpointHits.stream()
+                .map(endpointHit -> ByteBuffer.wrap(endpointHit.getIp()))
+                .collect(Collectors.toSet()));
+
+        for (EndpointHit endpointHit : endpointHits) {
+            endpointHit.setVisitorId(ids.get(ByteBuffer.wrap(endpointHit.getIp())));
+        }
+    }
+
+    /**
+     * Returns the visitor ids of the IPs that are in the visitor dictionary, unknown IPs are skipped
+     *
+     * @param ips
+     * @return visitor id by IP
+     */
+    public Map<ByteBuffer, Integer> findVisitorIds(Collection<ByteBuffer> ips) {
+        Map<ByteBuffer, Integer> found = new HashMap<>(visitorIds.getAllPresent(ips));
+
+        found.putAll(loadVisitorIds(ips.stream()
+                .filter(ip -> !found.containsKey(ip))
+                .collect(Collectors.toList())));
+
+        return found;
+    }
+
+    /**
+     * Returns visitor ids of IPs read by a query without writing to the dictionary.
+     * IPs that are not in the dictionary yet, e.g. of hits written by an older version, get the provisional ids
+     * of {@link VisitorBitmaps#provisionalId(byte[])}, so the parts of a query agree on them. Aggregates with
+     * provisional ids are not cached, as the IPs use their dictionary ids once they have them
+     *
+     * @param ips
+     * @return visitor id by IP, for every given IP
+     */
+    public Map<ByteBuffer, Integer> encodeVisitors(Collection<ByteBuffer> ips) {
+        Map<ByteBuffer, Integer> ids = findVisitorIds(ips);
+
+        for (ByteBuffer ip : ips) {
+            if (!ids.containsKey(ip)) {
+                ids.put(ip, VisitorBitmaps.provisionalId(toBytes(ip)));
+            }
+        }
+
+        return ids;
+    }
+
+    /**
+     * Returns the visitor ids of the IPs, adding unknown IPs to the visitor dictionary.
+     * New IPs are committed in their own transaction in a fixed order, so that concurrent writers of the same IPs
+     * do not deadlock, and their ids are read back in that transaction on the primary.
+     * Like {@link #encode(Collection)} it should be called outside of the hits transaction
+     *
+     * @param ips
+     * @return visitor id by IP
+     */
+    public Map<ByteBuffer, Integer> getOrCreateVisitorIds(Collection<ByteBuffer> ips) {
+        Map<ByteBuffer, Integer> found = findVisitorIds(ips);
+        List<ByteBuffer> missing = ips.stream()
+                .filter(ip -> !found.containsKey(ip))
+                .sorted()
+                .collect(Collectors.toList());
+
+        if (missing.isEmpty()) {
+            return found;
+        }
+
+        found.putAll(Objects.requireNonNull(newTransaction.execute(status -> {
+            jdbcTemplate.getJdbcTemplate().batchUpdate(dialect.insertMissing("visitors", "ip"), missing,
+                    VISITOR_BATCH_SIZE, (ps, ip) -> ps.setBytes(1, toBytes(ip)));
+            return loadVisitorIds(missing);
+        })));
+
+        if (!found.keySet().containsAll(missing)) {
+            throw new IllegalStateException("Visitor ids were not created for all IPs");
+        }
+
+        return found;
+    }
+
+    public String getAppName(int id) {
+        return apps.getName(id);
+    }
+
+    public String getUriName(int id) {
+        return uris.getName(id);
+    }
+
+    /**
+     * Returns the ids of the uris that have been hit at least once, unknown uris are skipped
+     *
+     * @param names
+     * @return list of uri ids
+     */
+    public List<Integer> findUriIds(Collection<String> names) {
+        return uris.findIds(names);
+    }
+
+    /**
+     * Replaces the uri patterns among the uris by the known uris that match them, other uris are kept as they are.
+     * Patterns are resolved by an in-memory trie of the uri dictionary, which is loaded by the first pattern
+     * and catches up with the uris added since, also by other instances, before every lookup
+     *
+     * @param names uris and patterns, see {@link UriPatterns}
+     * @return distinct uris
+     */
+    public List<String> expandUris(List<String> names) {
+        if (!UriPatterns.hasPatterns(names)) {
+            return names;
+        }
+
+        refreshUriTrie();
+
+        Set<String> expanded = new LinkedHashSet<>();
+
+        for (String name : names) {
+            if (UriPatterns.isPattern(name)) {
+                uriTrie.match(name).forEach(id -> expanded.add(getUriName(id)));
+            } else {
+                expanded.add(name);
+            }
+        }
+
+        return new ArrayList<>(expanded);
+    }
+
+    /**
+     * Adds the uris with ids above the largest known one to the trie. Ids are taken from a sequence when a uri
+     * is inserted, so a uri committed a moment after one with a larger id is picked up by re-reading the last ids
+     */
+    private void refreshUriTrie() {
+        int after = Math.max(0, uriTrie.getMaxId() - TRIE_REFRESH_OVERLAP);
+
+        jdbcTemplate.query("SELECT id, name FROM uris WHERE id > :after ORDER BY id",
+                new MapSqlParameterSource("after", after), rs -> {
+                    uris.put(rs.getInt("id"), rs.getString("name"));
+                    uriTrie.add(rs.getInt("id"), rs.getString("name"));
+                });
+    }
+
+    private Map<ByteBuffer, Integer> loadVisitorIds(List<ByteBuffer> ips) {
+        Map<ByteBuffer, Integer> found = new HashMap<>();
+        List<byte[]> values = ips.stream()
+                .map(DictionaryRepository::toBytes)
+                .collect(Collectors.toList());
+
+        for (int i = 0; i < values.size(); i += VISITOR_BATCH_SIZE) {
+            jdbcTemplate.query("SELECT id, ip FROM visitors WHERE ip IN (:ips)", new MapSqlParameterSource("ips",
+                    values.subList(i, Math.min(i + VISITOR_BATCH_SIZE, values.size()))), rs -> {
+                        ByteBuffer ip = ByteBuffer.wrap(rs.getBytes("ip"));
+                        visitorIds.put(ip, rs.getInt("id"));
+                        found.put(ip, rs.getInt("id"));
+                    });
+        }
+
+        return found;
+    }
+
+    private static byte[] toBytes(ByteBuffer ip) {
+        byte[] bytes = new byte[ip.remaining()];
+        ip.duplicate().get(bytes);
+        return bytes;
+    }
+
+    @RequiredArgsConstructor
+    private final class Dictionary {
+
+        private final String table;
+
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+        private final Map<Integer, String> names = new ConcurrentHashMap<>();
+
+        Integer getOrCreateId(String name) {
+            Integer id = ids.get(name);
+
+            if (id != null) {
+                return id;
+            }
+
+            id = findId(name);
+
+            if (id == null) {
+                try {
+                    id = newTransaction.execute(status -> insert(name));
+                } catch (DuplicateKeyException e) {
+                    id = findId(name);
+                }
+            }
+
+            put(Objects.requireNonNull(id), name);
+            return id;
+        }
+
+        String getName(int id) {
+            return names.computeIfAbsent(id, key -> {
+                String name = jdbcTemplate.queryForObject(
+                        String.format("SELECT name FROM %s WHERE id = :id", table),
+                        new MapSqlParameterSource("id", key), String.class);
+                ids.put(name, key);
+                return name;
+            });
+        }
+
+        List<Integer> findIds(Collection<String> names) {
+            List<Integer> found = new ArrayList<>();
+            List<String> missing = new ArrayList<>();
+
+            for (String name : names) {
+                Integer id = ids.get(name);
+
+                if (id != null) {
+                    found.add(id);
+                } else {
+                    missing.add(name);
+                }
+            }
+
+            if (!missing.isEmpty()) {
+                jdbcTemplate.query(String.format("SELECT id, name FROM %s WHERE name IN (:names)", table),
+                        new MapSqlParameterSource("names", missing), rs -> {
+                            put(rs.getInt("id"), rs.getString("name"));
+                            found.add(rs.getInt("id"));
+                        });
+            }
+
+            return found.stream().distinct().collect(Collectors.toList());
+        }
+
+        private Integer findId(String name) {
+            return jdbcTemplate.query(String.format("SELECT id FROM %s WHERE name = :name", table),
+                    new MapSqlParameterSource("name", name), rs -> rs.next() ? rs.getInt("id") : null);
+        }
+
+        private Integer insert(String name) {
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+
+            jdbcTemplate.update(String.format("INSERT INTO %s (name) VALUES (:name)", table),
+                    new MapSqlParameterSource("name", name), keyHolder, new String[]{"id"});
+
+            return Objects.requireNonNull(keyHolder.getKey()).intValue();
+        }
+
+        private void put(Integer id, String name) {
+            ids.put(name, id);
+            names.put(id, name);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package ru.yandex.practicum.ewm.repository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.ewm.config.IngestProperties;
+import ru.yandex.practicum.ewm.dto.ViewStatsDto;
+import ru.yandex.practicum.ewm.model.EndpointHit;
+import ru.yandex.practicum.ewm.model.EndpointKey;
+import ru.yandex.practicum.ewm.model.HitCountAggregate;
+import ru.yandex.practicum.ewm.model.RollupGranularity;
+import ru.yandex.practicum.ewm.model.RollupSegment;
+import ru.yandex.practicum.ewm.model.StatsAggregate;
+import ru.yandex.practicum.ewm.util.RollupPlanner;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Hits, rollups and dictionaries of one shard database, in the same schema as the single database.
+ * Dictionary ids are local to the shard, so results leave the shard keyed by app and uri names
+ */
+public class HitShard {
+
+    private static final String INSERT_HIT = "INSERT INTO hits (app_id, uri_id, ip, created) VALUES (?, ?, ?, ?)";
+
+    @Getter
+    private final DataSource dataSource;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final DictionaryRepository dictionaryRepository;
+    private final RollupRepository rollupRepository;
+    private final IngestProperties properties;
+
+    public HitShard(DataSource dataSource, IngestProperties properties, MeterRegistry meterRegistry) {
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.dictionaryRepository = new DictionaryRepository(jdbcTemplate, transactionManager);
+        this.rollupRepository = new RollupRepository(jdbcTemplate, dictionaryRepository, properties, meterRegistry);
+        this.properties = properties;
+    }
+
+    /**
+     * Writes endpoint hits and their rollups in one transaction of the shard.
+     * A single hit gets the id generated by the shard, batches are inserted without returning ids
+     *
+     * @param endpointHits
+     */
+    public void write(List<EndpointHit> endpointHits) {
+        dictionaryRepository.encode(endpointHits);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            if (endpointHits.size() == 1) {
+                insert(endpointHits.get(0));
+            } else {
+                jdbcTemplate.getJdbcTemplate().batchUpdate(INSERT_HIT, endpointHits, properties.getBatchSize(),
+                        HitShard::setParameters);
+            }
+
+            rollupRepository.add(endpointHits);
+        });
+    }
+
+    /**
+     * Returns the stats of the shard in the inclusive range, as hit counts, sketches or bitmaps of visitor ids.
+     * Visitor ids are local to the shard, which is safe as the bitmaps of an endpoint all come from its own shard
+     *
+     * @param start
+     * @param end
+     * @param uris        uris and uri patterns, all uris if null
+     * @param unique
+     * @param approximate
+     * @return aggregate that can be combined with the aggregates of the other shards
+     */
+    public StatsAggregate<?> aggregate(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                       boolean approximate) {
+        List<String> expandedUris = dictionaryRepository.expandUris(uris);
+        List<RollupSegment> segments = RollupPlanner.plan(start, end, true);
+
+        if (!unique) {
+            return HitCountAggregate.of(rollupRepository.findStats(segments, expandedUris));
+        }
+
+        if (approximate) {
+            return rollupRepository.findSketches(segments, expandedUris);
+        }
+
+        return rollupRepository.findVisitors(segments, expandedUris);
+    }
+
+    /**
+     * Returns the most viewed apps and uris of the shard in the inclusive range, most viewed first
+     *
+     * @param start
+     * @param end
+     * @param prefix only uris starting with the prefix are counted, all uris if null
+     * @param limit
+     * @param unique
+     * @return list of endpoints hits
+     */
+    public List<ViewStatsDto> findTopStats(LocalDateTime start, LocalDateTime end, String prefix, int limit,
+                                           boolean unique) {
+        if (unique) {
+            return rollupRepository.findTopUniqueStats(start, end, prefix, limit);
+        }
+
+        return rollupRepository.findTopStats(RollupPlanner.plan(start, end), prefix, limit);
+    }
+
+    /**
+     * Returns the number of hits of the shard in each bucket per app and uri
+     *
+     * @param granularity
+     * @param first       start of the first bucket
+     * @param buckets     number of buckets
+     * @param uris        uris and uri patterns
+     * @return hits per bucket by app and uri
+     */
+    public Map<EndpointKey, long[]> findSeries(RollupGranularity granularity, LocalDateTime first, int buckets,
+                                               List<String> uris) {
+        return rollupRepository.findSeries(granularity, first, buckets, dictionaryRepository.expandUris(uris));
+    }
+
+    private void insert(EndpointHit endpointHit) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+
+        jdbcTemplate.getJdbcTemplate().update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(INSERT_HIT, new String[]{"id"});
+            setParameters(ps, endpointHit);
+            return ps;
+        }, keyHolder);
+
+        endpointHit.setId(Objects.requireNonNull(keyHolder.getKey()).longValue());
+    }
+
+    private static void setParameters(PreparedStatement ps, EndpointHit endpointHit) throws SQLException {
+        ps.setInt(1, endpointHit.getAppId());
+        ps.setInt(2, endpointHit.getUriId());
+        ps.setBytes(3, endpointHit.getIp());
+        ps.setTimestamp(4, Timestamp.valueOf(endpointHit.getTimestamp()));
+    }
+}
@@ -0,0 +1,107 @@
+package ru.yandex.practicum.ewm.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.Flyway;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.boot.jdbc.DatabaseDriver;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.ewm.config.IngestProperties;
+import ru.yandex.practicum.ewm.config.ShardingProperties;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shard databases of the hits, used instead of the single database when stats.storage is sharded.
+ * Each app and uri pair lives on exactly one shard chosen by the hash of the pair, so its hits, rollups
+ * and sketches are never split between shards. Every shard is migrated with the migrations of the single database
+ * when the application starts
+ */
+@Repository
+@ConditionalOnProperty(name = "stats.storage", havingValue = "sharded")
+@Slf4j
+public class HitShards {
+
+    private final List<HitShard> shards = new ArrayList<>();
+    private final List<HikariDataSource> pools = new ArrayList<>();
+
+    public HitShards(ShardingProperties properties, FlywayProperties flywayProperties,
+                     IngestProperties ingestProperties, MeterRegistry meterRegistry) {
+        if (properties.getShards().isEmpty()) {
+            throw new IllegalStateException("stats.storage=sharded needs at least one stats.sharding.shards entry");
+        }
+
+        for (ShardingProperties.Shard shard : properties.getShards()) {
+            HikariDataSource dataSource = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .url(shard.getUrl())
+                    .username(shard.getUsername())
+                    .password(shard.getPassword())
+                    .build();
+            dataSource.setPoolName("shard-" + pools.size());
+            dataSource.setMaximumPoolSize(shard.getMaximumPoolSize());
+            pools.add(dataSource);
+
+            migrate(dataSource, shard.getUrl(), flywayProperties);
+            shards.add(new HitShard(dataSource, ingestProperties, meterRegistry));
+        }
+
+        log.info("Hits are sharded across {} databases", shards.size());
+    }
+
+    public List<HitShard> getShards() {
+        return shards;
+    }
+
+    /**
+     * Returns the shard of an app and uri. The hash of a string is fixed by the language,
+     * so the shard does not change between restarts as long as the list of shards stays the same
+     *
+     * @param app
+     * @param uri
+     * @return shard that keeps the hits of the endpoint
+     */
+    public HitShard route(String app, String uri) {
+        int hash = 31 * app.hashCode() + uri.hashCode();
+        return shards.get(Math.floorMod(hash ^ hash >>> 16, shards.size()));
+    }
+
+    @PreDestroy
+    public void close() {
+        pools.forEach(HikariDataSource::close);
+    }
+
+    /**
+     * Applies the migrations of the single database, with the vendor of the shard in place of {vendor}.
+     * Hits of a partitioned PostgreSQL table go to its default partition, monthly partitions are only maintained
+     * in the single database
+     */
+    private static void migrate(DataSource dataSource, String url, FlywayProperties flywayProperties) {
+        String vendor = DatabaseDriver.fromJdbcUrl(url).getId();
+
+        Flyway.configure()
+                .dataSource(dataSource)
+                .locations(flywayProperties.getLocations().stream()
+                        .map(location -> location.replace("{vendor}", vendor))
+                        .toArray(String[]::new))
+                .baselineOnMigrate(flywayProperties.isBaselineOnMigrate())
+                .baselineVersion(flywayProperties.getBaselineVersion())
+                .load()
+                .migrate();
+
+        if (SqlDialect.of(dataSource) == SqlDialect.POSTGRESQL) {
+            PartitionRepository partitionRepository = new PartitionRepository(new JdbcTemplate(dataSource));
+
+            if (partitionRepository.isPartitioned()) {
+                partitionRepository.createDefaultPartition();
+            }
+        }
+    }
+}
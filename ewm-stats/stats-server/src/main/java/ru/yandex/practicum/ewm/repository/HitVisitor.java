@@ -0,0 +1,13 @@
+package ru.yandex.practicum.ewm.repository;
+
+import ru.yandex.practicum.ewm.model.EndpointKey;
+
+/**
+ * Receives the hits of a range scan over hit files. The IP is passed as its two 8-byte halves in network byte order,
+ * so a scan does not copy or allocate per hit
+ */
+@FunctionalInterface
+public interface HitVisitor {
+
+    void visit(EndpointKey endpoint, long timestamp, long ipHigh, long ipLow);
+}
@@ -0,0 +1,116 @@
+package ru.yandex.practicum.ewm.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Monthly range partitions of the PostgreSQL hits table
+ * Rows that do not fall into any monthly partition are kept in the default partition
+ */
+@Repository
+@RequiredArgsConstructor
+public class PartitionRepository {
+
+    public static final String DEFAULT_PARTITION = "hits_default";
+
+    private static final String PARTITION_PREFIX = "hits_p";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Returns whether the hits table is partitioned
+     * It is a plain table in databases created before partitioning was introduced
+     *
+     * @return true if the hits table is partitioned
+     */
+    public boolean isPartitioned() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT relkind = 'p' FROM pg_class WHERE oid = 'hits'::regclass", Boolean.class));
+    }
+
+    /**
+     * Replaces the plain hits table with a partitioned one and attaches the old table as its default partition
+     */
+    public void convertToPartitioned() {
+        jdbcTemplate.execute("ALTER TABLE hits RENAME TO " + DEFAULT_PARTITION);
+        jdbcTemplate.execute("ALTER TABLE " + DEFAULT_PARTITION + " DROP CONSTRAINT hits_pkey");
+        jdbcTemplate.execute("ALTER TABLE " + DEFAULT_PARTITION + " ALTER COLUMN id DROP IDENTITY");
+        jdbcTemplate.execute("CREATE TABLE hits (LIKE " + DEFAULT_PARTITION + " INCLUDING DEFAULTS, "
+                + "PRIMARY KEY (id, created)) PARTITION BY RANGE (created)");
+
+        Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM " + DEFAULT_PARTITION, Long.class);
+        jdbcTemplate.execute("ALTER TABLE hits ALTER COLUMN id ADD GENERATED BY DEFAULT AS IDENTITY "
+                + "(START WITH " + (maxId + 1) + ")");
+        jdbcTemplate.execute("ALTER TABLE hits ATTACH PARTITION " + DEFAULT_PARTITION + " DEFAULT");
+    }
+
+    public void createDefaultPartition() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + DEFAULT_PARTITION + " PARTITION OF hits DEFAULT");
+    }
+
+    /**
+     * Returns the months that have their own partition
+     *
+     * @return months in chronological order
+     */
+    public List<YearMonth> findPartitionMonths() {
+        return jdbcTemplate.queryForList("SELECT c.relname FROM pg_inherits i "
+                        + "JOIN pg_class c ON c.oid = i.inhrelid "
+                        + "WHERE i.inhparent = 'hits'::regclass AND c.relname LIKE '" + PARTITION_PREFIX + "%'",
+                        String.class).stream()
+                .map(name -> YearMonth.parse(name.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX))
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the months of the rows that are stored in the default partition
+     *
+     * @return months in chronological order
+     */
+    public List<YearMonth> findDefaultPartitionMonths() {
+        return jdbcTemplate.queryForList("SELECT DISTINCT DATE_TRUNC('month', created) AS month FROM "
+                        + DEFAULT_PARTITION + " ORDER BY month", Timestamp.class).stream()
+                .map(month -> YearMonth.from(month.toLocalDateTime()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Creates the partition of the month and moves its rows out of the default partition.
+     * Must run in a transaction, because the default partition cannot contain rows of an attached partition
+     *
+     * @param month
+     */
+    public void createPartition(YearMonth month) {
+        String name = PARTITION_PREFIX + month.format(PARTITION_SUFFIX);
+        Timestamp from = Timestamp.valueOf(month.atDay(1).atStartOfDay());
+        Timestamp to = Timestamp.valueOf(month.plusMonths(1).atDay(1).atStartOfDay());
+
+        jdbcTemplate.execute("CREATE TABLE " + name + " (LIKE hits INCLUDING DEFAULTS)");
+        jdbcTemplate.update("INSERT INTO " + name + " SELECT * FROM " + DEFAULT_PARTITION
+                + " WHERE created >= ? AND created < ?", from, to);
+        jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + " WHERE created >= ? AND created < ?", from, to);
+        jdbcTemplate.execute(String.format("ALTER TABLE hits ATTACH PARTITION %s FOR VALUES FROM ('%s') TO ('%s')",
+                name, from, to));
+    }
+
+    /**
+     * Detaches and drops the partition of the month
+     *
+     * @param month
+     */
+    public void dropPartition(YearMonth month) {
+        String name = PARTITION_PREFIX + month.format(PARTITION_SUFFIX);
+
+        jdbcTemplate.execute("ALTER TABLE hits DETACH PARTITION " + name);
+        jdbcTemplate.execute("DROP TABLE " + name);
+    }
+}
@@ -0,0 +1,708 @@
+package ru.yandex.practicum.ewm.repository;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.ewm.config.IngestProperties;
+import ru.yandex.practicum.ewm.dto.ViewStatsDto;
+import ru.yandex.practicum.ewm.model.BucketKey;
+import ru.yandex.practicum.ewm.model.DistinctIpAggregate;
+import ru.yandex.practicum.ewm.model.EndpointHit;
+import ru.yandex.practicum.ewm.model.EndpointKey;
+import ru.yandex.practicum.ewm.model.RollupGranularity;
+import ru.yandex.practicum.ewm.model.RollupSegment;
+import ru.yandex.practicum.ewm.model.SketchAggregate;
+import ru.yandex.practicum.ewm.model.VisitorAggregate;
+import ru.yandex.practicum.ewm.util.HyperLogLog;
+import ru.yandex.practicum.ewm.util.VisitorBitmaps;
+
+import javax.sql.DataSource;
+import java.nio.ByteBuffer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Minute, hour and day rollups of the hits table.
+ * Rollups are updated in the transaction that inserts the raw hits, or by the flush of the live counters.
+ * Hour and day buckets also keep a HyperLogLog sketch of visitor IPs for approximate unique counts
+ * and a Roaring bitmap of visitor ids for exact ones
+ */
+@Repository
+public class RollupRepository {
+
+    private static final List<String> KEY_COLUMNS = List.of("uri_id", "bucket", "app_id");
+
+    private static final Comparator<BucketKey> KEY_ORDER = Comparator.comparingInt(BucketKey::getUriId)
+            .thenComparing(BucketKey::getBucket)
+            .thenComparingInt(BucketKey::getAppId);
+
+    private static final int FETCH_SIZE = 1000;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate streamingJdbcTemplate;
+    private final DictionaryRepository dictionaryRepository;
+    private final IngestProperties properties;
+    private final SqlDialect dialect;
+    private final DistributionSummary scannedRows;
+
+    public RollupRepository(NamedParameterJdbcTemplate jdbcTemplate, DictionaryRepository dictionaryRepository,
+                            IngestProperties properties, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.streamingJdbcTemplate = streamingTemplate(jdbcTemplate.getJdbcTemplate().getDataSource());
+        this.dictionaryRepository = dictionaryRepository;
+        this.properties = properties;
+        this.dialect = SqlDialect.of(jdbcTemplate.getJdbcTemplate().getDataSource());
+        this.scannedRows = DistributionSummary.builder("stats.query.rows")
+                .description("Number of hit and rollup rows read by the database for one stats query")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * PostgreSQL only uses a cursor for a positive fetch size inside a transaction, otherwise it reads the whole result
+     */
+    private static NamedParameterJdbcTemplate streamingTemplate(DataSource dataSource) {
+        JdbcTemplate template = new JdbcTemplate(Objects.requireNonNull(dataSource));
+        template.setFetchSize(FETCH_SIZE);
+        return new NamedParameterJdbcTemplate(template);
+    }
+
+    /**
+     * Adds encoded endpoint hits to the counters of their minute, hour and day buckets
+     * Keys are written in a fixed order so that concurrent writers do not deadlock
+     *
+     * @param endpointHits endpoint hits with their visitor ids
+     */
+    public void add(List<EndpointHit> endpointHits) {
+        Map<BucketKey, Long> minuteCounts = new HashMap<>();
+        Map<BucketKey, HyperLogLog> hourSketches = new HashMap<>();
+        Map<BucketKey, RoaringBitmap> hourVisitors = new HashMap<>();
+
+        for (EndpointHit endpointHit : endpointHits) {
+            minuteCounts.merge(new BucketKey(endpointHit.getAppId(), endpointHit.getUriId(),
+                    RollupGranularity.MINUTE.floor(endpointHit.getTimestamp())), 1L, Long::sum);
+            hourSketches.computeIfAbsent(new BucketKey(endpointHit.getAppId(), endpointHit.getUriId(),
+                    RollupGranularity.HOUR.floor(endpointHit.getTimestamp())), key -> new HyperLogLog())
+                    .add(endpointHit.getIp());
+            hourVisitors.computeIfAbsent(new BucketKey(endpointHit.getAppId(), endpointHit.getUriId(),
+                    RollupGranularity.HOUR.floor(endpointHit.getTimestamp())), key -> new RoaringBitmap())
+                    .add(endpointHit.getVisitorId());
+        }
+
+        add(minuteCounts, hourSketches, hourVisitors);
+    }
+
+    /**
+     * Adds minute counters to the counters of their minute, hour and day buckets,
+     * merges hour sketches into the sketches of their hour and day buckets
+     * and hour visitor ids into the visitor bitmaps of their hour and day buckets
+     * Keys are written in a fixed order so that concurrent writers do not deadlock
+     *
+     * @param minuteCounts number of hits per minute bucket
+     * @param hourSketches visitor IPs per hour bucket, left unchanged
+     * @param hourVisitors visitor ids per hour bucket, left unchanged
+     */
+    public void add(Map<BucketKey, Long> minuteCounts, Map<BucketKey, HyperLogLog> hourSketches,
+                    Map<BucketKey, RoaringBitmap> hourVisitors) {
+        if (minuteCounts.isEmpty() && hourSketches.isEmpty() && hourVisitors.isEmpty()) {
+            return;
+        }
+
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            Map<BucketKey, Long> counts = new TreeMap<>(KEY_ORDER);
+
+            minuteCounts.forEach((key, count) ->
+                    counts.merge(key.withBucket(granularity.floor(key.getBucket())), count, Long::sum));
+
+            jdbcTemplate.getJdbcTemplate().batchUpdate(
+                    dialect.upsertSum(granularity.getTable(), KEY_COLUMNS, "hits"),
+                    new ArrayList<>(counts.entrySet()),
+                    properties.getBatchSize(),
+                    (ps, entry) -> {
+                        ps.setInt(1, entry.getKey().getUriId());
+                        ps.setTimestamp(2, Timestamp.valueOf(entry.getKey().getBucket()));
+                        ps.setInt(3, entry.getKey().getAppId());
+                        ps.setLong(4, entry.getValue());
+                    });
+
+            if (granularity.isSketched()) {
+                Map<BucketKey, HyperLogLog> sketches = new TreeMap<>(KEY_ORDER);
+
+                hourSketches.forEach((key, sketch) -> sketches.merge(key.withBucket(granularity.floor(key.getBucket())),
+                        sketch, (value, other) -> value.copy().merge(other)));
+                addToSketches(granularity, sketches, counts);
+            }
+
+            if (granularity.hasVisitors()) {
+                Map<BucketKey, RoaringBitmap> visitors = new TreeMap<>(KEY_ORDER);
+
+                hourVisitors.forEach((key, bitmap) -> visitors.merge(key.withBucket(granularity.floor(key.getBucket())),
+                        bitmap, (value, other) -> RoaringBitmap.or(value, other)));
+                addToVisitors(granularity, visitors, counts);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of hits per app and uri summed over the given segments, most viewed first
+     * Raw segments are counted from the hits table, the others from the rollup of their granularity
+     *
+     * @param segments
+     * @param uris
+     * @return list of endpoints hits
+     */
+    public List<ViewStatsDto> findStats(List<RollupSegment> segments, List<String> uris) {
+        List<ViewStatsDto> stats = new ArrayList<>();
+        streamStats(segments, uris, stats::add);
+        return stats;
+    }
+
+    /**
+     * Passes the number of hits per app and uri summed over the given segments to the consumer, most viewed first
+     * Rows are read from a forward-only cursor one fetch at a time, so memory does not depend on the number of groups
+     *
+     * @param segments
+     * @param uris
+     * @param consumer
+     */
+    public void streamStats(List<RollupSegment> segments, List<String> uris, Consumer<ViewStatsDto> consumer) {
+        List<Integer> uriIds = uris == null ? null : dictionaryRepository.findUriIds(uris);
+
+        if (segments.isEmpty() || uriIds != null && uriIds.isEmpty()) {
+            return;
+        }
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource("uriIds", uriIds);
+        long[] scanned = new long[1];
+
+        streamingJdbcTemplate.query(statsSql(segments, uriCondition(uriIds), parameters) + " ORDER BY total DESC",
+                parameters, rs -> {
+                    scanned[0] += rs.getLong("scanned");
+                    consumer.accept(toViewStats(rs));
+                });
+        scannedRows.record(scanned[0]);
+    }
+
+    /**
+     * Returns the most viewed apps and uris over the given segments, most viewed first.
+     * The database keeps only the current top rows while it reads the groups instead of sorting all of them,
+     * and only the top rows are sent back
+     *
+     * @param segments
+     * @param prefix   only uris starting with the prefix are counted, all uris if null
+     * @param limit
+     * @return list of endpoints hits
+     */
+    public List<ViewStatsDto> findTopStats(List<RollupSegment> segments, String prefix, int limit) {
+        if (segments.isEmpty()) {
+            return List.of();
+        }
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource("limit", limit);
+        String sql = statsSql(segments, prefixCondition(prefix, parameters), parameters)
+                + " ORDER BY total DESC LIMIT :limit";
+
+        return jdbcTemplate.query(sql, parameters, (rs, rowNum) -> toViewStats(rs));
+    }
+
+    /**
+     * Returns the apps and uris with the most distinct IPs in the inclusive range of raw hits, most viewed first
+     *
+     * @param start
+     * @param end
+     * @param prefix only uris starting with the prefix are counted, all uris if null
+     * @param limit
+     * @return list of endpoints hits
+     */
+    public List<ViewStatsDto> findTopUniqueStats(LocalDateTime start, LocalDateTime end, String prefix, int limit) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource("limit", limit)
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end));
+        String sql = String.format("SELECT app_id, uri_id, COUNT(DISTINCT ip) AS total FROM hits "
+                        + "WHERE created >= :start AND created <= :end%s GROUP BY app_id, uri_id "
+                        + "ORDER BY total DESC LIMIT :limit",
+                prefixCondition(prefix, parameters));
+
+        return jdbcTemplate.query(sql, parameters, (rs, rowNum) -> toViewStats(rs));
+    }
+
+    /**
+     * Returns the number of hits in each bucket of the given granularity per app and uri,
+     * read from the rollup of that granularity in a single pass. Buckets without hits are zero
+     *
+     * @param granularity
+     * @param first       start of the first bucket
+     * @param buckets     number of buckets
+     * @param uris
+     * @return hits per bucket by app and uri
+     */
+    public Map<EndpointKey, long[]> findSeries(RollupGranularity granularity, LocalDateTime first, int buckets,
+                                               List<String> uris) {
+        List<Integer> uriIds = dictionaryRepository.findUriIds(uris);
+        Map<EndpointKey, long[]> series = new HashMap<>();
+
+        if (uriIds.isEmpty()) {
+            return series;
+        }
+
+        String sql = String.format("SELECT app_id, uri_id, bucket, hits FROM %s "
+                + "WHERE bucket >= :start AND bucket < :end%s", granularity.getTable(), uriCondition(uriIds));
+        MapSqlParameterSource parameters = new MapSqlParameterSource("uriIds", uriIds)
+                .addValue("start", Timestamp.valueOf(first))
+                .addValue("end", Timestamp.valueOf(first.plus(buckets, granularity.getUnit())));
+
+        jdbcTemplate.query(sql, parameters, rs -> {
+            EndpointKey key = new EndpointKey(dictionaryRepository.getAppName(rs.getInt("app_id")),
+                    dictionaryRepository.getUriName(rs.getInt("uri_id")));
+            int index = (int) granularity.getUnit().between(first, rs.getTimestamp("bucket").toLocalDateTime());
+
+            series.computeIfAbsent(key, k -> new long[buckets])[index] += rs.getLong("hits");
+        });
+
+        return series;
+    }
+
+    /**
+     * Returns the estimated number of distinct IPs per app and uri over the given segments, most viewed first
+     *
+     * @param segments
+     * @param uris
+     * @return list of endpoints hits
+     */
+    public List<ViewStatsDto> findApproximateUniqueStats(List<RollupSegment> segments, List<String> uris) {
+        return findSketches(segments, uris).toViewStats();
+    }
+
+    /**
+     * Returns the sketches of the distinct IPs per app and uri over the given segments.
+     * Hour and day segments merge the stored sketches, other segments sketch the raw hits
+     *
+     * @param segments
+     * @param uris
+     * @return sketches of the visitor IPs
+     */
+    public SketchAggregate findSketches(List<RollupSegment> segments, List<String> uris) {
+        List<Integer> uriIds = uris == null ? null : dictionaryRepository.findUriIds(uris);
+        Map<GroupKey, HyperLogLog> sketches = new HashMap<>();
+        long[] scanned = new long[1];
+
+        if (uriIds != null && uriIds.isEmpty()) {
+            return new SketchAggregate(Map.of());
+        }
+
+        for (RollupSegment segment : segments) {
+            MapSqlParameterSource parameters = new MapSqlParameterSource("uriIds", uriIds)
+                    .addValue("start", Timestamp.valueOf(segment.getStart()))
+                    .addValue("end", Timestamp.valueOf(segment.getEnd()));
+
+            if (segment.isRaw() || !segment.getGranularity().isSketched()) {
+                String sql = String.format("SELECT DISTINCT app_id, uri_id, ip FROM hits "
+                                + "WHERE created >= :start AND created %s :end%s",
+                        segment.isEndInclusive() ? "<=" : "<", uriCondition(uriIds));
+
+                jdbcTemplate.query(sql, parameters, rs -> {
+                    scanned[0]++;
+                    sketches.computeIfAbsent(new GroupKey(rs.getInt("app_id"), rs.getInt("uri_id")),
+                            key -> new HyperLogLog()).add(rs.getBytes("ip"));
+                });
+                continue;
+            }
+
+            String sql = String.format("SELECT app_id, uri_id, bucket, sketch FROM %s "
+                            + "WHERE bucket >= :start AND bucket < :end%s",
+                    segment.getGranularity().getTable(), uriCondition(uriIds));
+
+            jdbcTemplate.query(sql, parameters, rs -> {
+                scanned[0]++;
+                byte[] bytes = rs.getBytes("sketch");
+                BucketKey key = new BucketKey(rs.getInt("app_id"), rs.getInt("uri_id"),
+                        rs.getTimestamp("bucket").toLocalDateTime());
+                HyperLogLog sketch = bytes != null
+                        ? HyperLogLog.fromBytes(bytes)
+                        : findRawSketch(segment.getGranularity(), key);
+
+                sketches.merge(new GroupKey(key.getAppId(), key.getUriId()), sketch, HyperLogLog::merge);
+            });
+        }
+
+        scannedRows.record(scanned[0]);
+        return new SketchAggregate(toEndpointKeys(sketches));
+    }
+
+    /**
+     * Returns the bitmaps of the exact visitor ids per app and uri over the given segments.
+     * Hour and day segments merge the stored bitmaps. Minute and raw segments, at most an hour at each end
+     * of the range, and buckets without a bitmap read the raw hits, whose IPs are numbered by the visitor dictionary.
+     * The query does not write, buckets without a bitmap are filled by {@link #fillMissingVisitors(LocalDateTime, LocalDateTime)}
+     *
+     * @param segments
+     * @param uris
+     * @return bitmaps of the visitor ids
+     */
+    public VisitorAggregate findVisitors(List<RollupSegment> segments, List<String> uris) {
+        List<Integer> uriIds = uris == null ? null : dictionaryRepository.findUriIds(uris);
+        Map<GroupKey, RoaringBitmap> visitors = new HashMap<>();
+        Map<GroupKey, Set<ByteBuffer>> rawIps = new HashMap<>();
+        long[] scanned = new long[1];
+
+        if (uriIds != null && uriIds.isEmpty()) {
+            return new VisitorAggregate(Map.of());
+        }
+
+        for (RollupSegment segment : segments) {
+            MapSqlParameterSource parameters = new MapSqlParameterSource("uriIds", uriIds)
+                    .addValue("start", Timestamp.valueOf(segment.getStart()))
+                    .addValue("end", Timestamp.valueOf(segment.getEnd()));
+
+            if (segment.isRaw() || !segment.getGranularity().hasVisitors()) {
+                String sql = String.format("SELECT DISTINCT app_id, uri_id, ip FROM hits "
+                                + "WHERE created >= :start AND created %s :end%s",
+                        segment.isEndInclusive() ? "<=" : "<", uriCondition(uriIds));
+
+                jdbcTemplate.query(sql, parameters, rs -> {
+                    scanned[0]++;
+                    rawIps.computeIfAbsent(new GroupKey(rs.getInt("app_id"), rs.getInt("uri_id")),
+                            key -> new HashSet<>()).add(ByteBuffer.wrap(rs.getBytes("ip")));
+                });
+                continue;
+            }
+
+            List<BucketKey> missing = new ArrayList<>();
+            String sql = String.format("SELECT app_id, uri_id, bucket, visitors FROM %s "
+                            + "WHERE bucket >= :start AND bucket < :end%s",
+                    segment.getGranularity().getTable(), uriCondition(uriIds));
+
+            jdbcTemplate.query(sql, parameters, rs -> {
+                scanned[0]++;
+                byte[] bytes = rs.getBytes("visitors");
+                BucketKey key = new BucketKey(rs.getInt("app_id"), rs.getInt("uri_id"),
+                        rs.getTimestamp("bucket").toLocalDateTime());
+
+                if (bytes != null) {
+                    visitors.merge(new GroupKey(key.getAppId(), key.getUriId()), VisitorBitmaps.fromBytes(bytes),
+                            (value, other) -> RoaringBitmap.or(value, other));
+                } else {
+                    missing.add(key);
+                }
+            });
+
+            for (BucketKey key : missing) {
+                rawIps.computeIfAbsent(new GroupKey(key.getAppId(), key.getUriId()), k -> new HashSet<>())
+                        .addAll(findRawIps(segment.getGranularity(), key));
+            }
+        }
+
+        if (!rawIps.isEmpty()) {
+            Set<ByteBuffer> ips = new HashSet<>();
+            rawIps.values().forEach(ips::addAll);
+            Map<ByteBuffer, Integer> ids = dictionaryRepository.encodeVisitors(ips);
+
+            rawIps.forEach((key, values) -> {
+                RoaringBitmap bitmap = visitors.computeIfAbsent(key, k -> new RoaringBitmap());
+                values.forEach(ip -> bitmap.add(ids.get(ip)));
+            });
+        }
+
+        scannedRows.record(scanned[0]);
+        return new VisitorAggregate(toEndpointKeys(visitors));
+    }
+
+    /**
+     * Converts exact sets of visitor IPs, e.g. of archived hits, to bitmaps of their visitor ids
+     *
+     * @param aggregate
+     * @return bitmaps of the visitor ids
+     */
+    public VisitorAggregate toVisitors(DistinctIpAggregate aggregate) {
+        return VisitorAggregate.of(aggregate, dictionaryRepository::encodeVisitors);
+    }
+
+    /**
+     * Computes the missing visitor bitmaps of the hour and day buckets within [start, end) from the raw hits,
+     * so that the buckets keep their visitors when the raw hits are removed from the hits table.
+     * It adds unknown IPs to the visitor dictionary in separate transactions, so it runs outside of a transaction
+     *
+     * @param start
+     * @param end
+     */
+    public void fillMissingVisitors(LocalDateTime start, LocalDateTime end) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end));
+
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            if (!granularity.hasVisitors()) {
+                continue;
+            }
+
+            List<BucketKey> keys = jdbcTemplate.query(String.format("SELECT app_id, uri_id, bucket FROM %s "
+                            + "WHERE bucket >= :start AND bucket < :end AND visitors IS NULL", granularity.getTable()),
+                    parameters, (rs, rowNum) -> new BucketKey(rs.getInt("app_id"), rs.getInt("uri_id"),
+                            rs.getTimestamp("bucket").toLocalDateTime()));
+            List<Object[]> updates = new ArrayList<>();
+
+            for (BucketKey key : keys) {
+                RoaringBitmap bitmap = new RoaringBitmap();
+                dictionaryRepository.getOrCreateVisitorIds(findRawIps(granularity, key)).values().forEach(bitmap::add);
+
+                updates.add(new Object[]{VisitorBitmaps.toBytes(bitmap), key.getUriId(),
+                        Timestamp.valueOf(key.getBucket()), key.getAppId()});
+            }
+
+            jdbcTemplate.getJdbcTemplate().batchUpdate(String.format("UPDATE %s SET visitors = ? "
+                    + "WHERE uri_id = ? AND bucket = ? AND app_id = ? AND visitors IS NULL", granularity.getTable()),
+                    updates);
+        }
+    }
+
+    /**
+     * Computes the missing sketches of the hour and day buckets within [start, end) from the raw hits,
+     * so that the buckets keep their sketches when the raw hits are removed from the hits table
+     *
+     * @param start
+     * @param end
+     */
+    public void fillMissingSketches(LocalDateTime start, LocalDateTime end) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end));
+
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            if (!granularity.isSketched()) {
+                continue;
+            }
+
+            List<BucketKey> keys = jdbcTemplate.query(String.format("SELECT app_id, uri_id, bucket FROM %s "
+                            + "WHERE bucket >= :start AND bucket < :end AND sketch IS NULL", granularity.getTable()),
+                    parameters, (rs, rowNum) -> new BucketKey(rs.getInt("app_id"), rs.getInt("uri_id"),
+                            rs.getTimestamp("bucket").toLocalDateTime()));
+            List<Object[]> updates = new ArrayList<>();
+
+            for (BucketKey key : keys) {
+                updates.add(new Object[]{findRawSketch(granularity, key).toBytes(), key.getUriId(),
+                        Timestamp.valueOf(key.getBucket()), key.getAppId()});
+            }
+
+            jdbcTemplate.getJdbcTemplate().batchUpdate(String.format(
+                    "UPDATE %s SET sketch = ? WHERE uri_id = ? AND bucket = ? AND app_id = ?", granularity.getTable()),
+                    updates);
+        }
+    }
+
+    /**
+     * Merges the sketches of the added hits into the sketches of their buckets.
+     * The bucket rows are locked by the preceding upsert, so concurrent writers merge one after another.
+     * A bucket without a sketch is either new, when its counter equals the number of hits added now,
+     * or was created before sketches were introduced and is rebuilt from the raw hits.
+     * Merging is idempotent, so a sketch may carry IPs that were merged before
+     */
+    private void addToSketches(RollupGranularity granularity, Map<BucketKey, HyperLogLog> sketches,
+                               Map<BucketKey, Long> counts) {
+        String select = String.format("SELECT hits, sketch FROM %s WHERE uri_id = ? AND bucket = ? AND app_id = ? "
+                + "FOR UPDATE", granularity.getTable());
+        List<Object[]> updates = new ArrayList<>();
+
+        for (Map.Entry<BucketKey, HyperLogLog> entry : sketches.entrySet()) {
+            BucketKey key = entry.getKey();
+            Long count = counts.get(key);
+            List<Optional<HyperLogLog>> rows = jdbcTemplate.getJdbcTemplate().query(select, (rs, rowNum) -> {
+                byte[] bytes = rs.getBytes("sketch");
+
+                if (bytes != null) {
+                    return Optional.of(HyperLogLog.fromBytes(bytes));
+                }
+
+                return count != null && rs.getLong("hits") == count
+                        ? Optional.of(new HyperLogLog())
+                        : Optional.empty();
+            }, key.getUriId(), Timestamp.valueOf(key.getBucket()), key.getAppId());
+
+            if (rows.isEmpty()) {
+                continue;
+            }
+
+            HyperLogLog sketch = rows.get(0)
+                    .map(stored -> stored.merge(entry.getValue()))
+                    .orElseGet(() -> findRawSketch(granularity, key));
+
+            updates.add(new Object[]{sketch.toBytes(), key.getUriId(), Timestamp.valueOf(key.getBucket()),
+                    key.getAppId()});
+        }
+
+        jdbcTemplate.getJdbcTemplate().batchUpdate(String.format(
+                "UPDATE %s SET sketch = ? WHERE uri_id = ? AND bucket = ? AND app_id = ?", granularity.getTable()), updates);
+    }
+
+    /**
+     * Merges the visitor ids of the added hits into the bitmaps of their buckets, under the row locks
+     * of the preceding upsert like the sketches. A bucket without a bitmap is either new, when its counter equals
+     * the number of hits added now, or is rebuilt from the raw hits. The transaction cannot add IPs to the dictionary,
+     * so a bucket with raw hits of unknown IPs keeps no bitmap and is rebuilt by the queries until it is filled
+     */
+    private void addToVisitors(RollupGranularity granularity, Map<BucketKey, RoaringBitmap> visitors,
+                               Map<BucketKey, Long> counts) {
+        String select = String.format("SELECT hits, visitors FROM %s WHERE uri_id = ? AND bucket = ? AND app_id = ? "
+                + "FOR UPDATE", granularity.getTable());
+        List<Object[]> updates = new ArrayList<>();
+
+        for (Map.Entry<BucketKey, RoaringBitmap> entry : visitors.entrySet()) {
+            BucketKey key = entry.getKey();
+            Long count = counts.get(key);
+            List<Optional<RoaringBitmap>> rows = jdbcTemplate.getJdbcTemplate().query(select, (rs, rowNum) -> {
+                byte[] bytes = rs.getBytes("visitors");
+
+                if (bytes != null) {
+                    return Optional.of(VisitorBitmaps.fromBytes(bytes));
+                }
+
+                return count != null && rs.getLong("hits") == count
+                        ? Optional.of(new RoaringBitmap())
+                        : Optional.empty();
+            }, key.getUriId(), Timestamp.valueOf(key.getBucket()), key.getAppId());
+
+            if (rows.isEmpty()) {
+                continue;
+            }
+
+            RoaringBitmap bitmap;
+
+            if (rows.get(0).isPresent()) {
+                bitmap = rows.get(0).get();
+                bitmap.or(entry.getValue());
+            } else {
+                Set<ByteBuffer> ips = findRawIps(granularity, key);
+                Map<ByteBuffer, Integer> ids = dictionaryRepository.findVisitorIds(ips);
+
+                if (ids.size() < ips.size()) {
+                    continue;
+                }
+
+                bitmap = new RoaringBitmap();
+                ids.values().forEach(bitmap::add);
+            }
+
+            updates.add(new Object[]{VisitorBitmaps.toBytes(bitmap), key.getUriId(), Timestamp.valueOf(key.getBucket()),
+                    key.getAppId()});
+        }
+
+        jdbcTemplate.getJdbcTemplate().batchUpdate(String.format(
+                "UPDATE %s SET visitors = ? WHERE uri_id = ? AND bucket = ? AND app_id = ?", granularity.getTable()),
+                updates);
+    }
+
+    private Set<ByteBuffer> findRawIps(RollupGranularity granularity, BucketKey key) {
+        Set<ByteBuffer> ips = new HashSet<>();
+
+        jdbcTemplate.getJdbcTemplate().query(
+                "SELECT DISTINCT ip FROM hits WHERE uri_id = ? AND app_id = ? AND created >= ? AND created < ?",
+                rs -> {
+                    ips.add(ByteBuffer.wrap(rs.getBytes("ip")));
+                },
+                key.getUriId(), key.getAppId(), Timestamp.valueOf(key.getBucket()),
+                Timestamp.valueOf(key.getBucket().plus(1, granularity.getUnit())));
+
+        return ips;
+    }
+
+    private HyperLogLog findRawSketch(RollupGranularity granularity, BucketKey key) {
+        HyperLogLog sketch = new HyperLogLog();
+
+        jdbcTemplate.getJdbcTemplate().query(
+                "SELECT ip FROM hits WHERE uri_id = ? AND app_id = ? AND created >= ? AND created < ?",
+                rs -> {
+                    sketch.add(rs.getBytes("ip"));
+                },
+                key.getUriId(), key.getAppId(), Timestamp.valueOf(key.getBucket()),
+                Timestamp.valueOf(key.getBucket().plus(1, granularity.getUnit())));
+
+        return sketch;
+    }
+
+    private <V> Map<EndpointKey, V> toEndpointKeys(Map<GroupKey, V> values) {
+        Map<EndpointKey, V> result = new HashMap<>();
+
+        values.forEach((key, value) -> result.put(new EndpointKey(dictionaryRepository.getAppName(key.getAppId()),
+                dictionaryRepository.getUriName(key.getUriId())), value));
+
+        return result;
+    }
+
+    private ViewStatsDto toViewStats(ResultSet rs) throws SQLException {
+        return new ViewStatsDto(dictionaryRepository.getAppName(rs.getInt("app_id")),
+                dictionaryRepository.getUriName(rs.getInt("uri_id")), rs.getLong("total"));
+    }
+
+    /**
+     * Builds the unordered sum of hits per app and uri over the segments, with the number of rows read for each,
+     * and adds the segment bounds to the parameters
+     */
+    private String statsSql(List<RollupSegment> segments, String uriCondition, MapSqlParameterSource parameters) {
+        List<String> parts = new ArrayList<>();
+
+        for (int i = 0; i < segments.size(); i++) {
+            RollupSegment segment = segments.get(i);
+
+            parameters.addValue("start" + i, Timestamp.valueOf(segment.getStart()));
+            parameters.addValue("end" + i, Timestamp.valueOf(segment.getEnd()));
+
+            parts.add(segment.isRaw() ? rawPart(segment, i, uriCondition) : rollupPart(segment, i, uriCondition));
+        }
+
+        return "SELECT app_id, uri_id, SUM(hits) AS total, SUM(scanned) AS scanned FROM ("
+                + String.join(" UNION ALL ", parts)
+                + ") s GROUP BY app_id, uri_id";
+    }
+
+    private String rawPart(RollupSegment segment, int index, String uriCondition) {
+        return String.format("SELECT app_id, uri_id, COUNT(*) AS hits, COUNT(*) AS scanned FROM hits "
+                        + "WHERE created >= :start%1$d AND created %2$s :end%1$d%3$s GROUP BY app_id, uri_id",
+                index, segment.isEndInclusive() ? "<=" : "<", uriCondition);
+    }
+
+    private String rollupPart(RollupSegment segment, int index, String uriCondition) {
+        return String.format("SELECT app_id, uri_id, SUM(hits) AS hits, COUNT(*) AS scanned FROM %1$s "
+                        + "WHERE bucket >= :start%2$d AND bucket < :end%2$d%3$s GROUP BY app_id, uri_id",
+                segment.getGranularity().getTable(), index, uriCondition);
+    }
+
+    private String prefixCondition(String prefix, MapSqlParameterSource parameters) {
+        if (prefix == null || prefix.isEmpty()) {
+            return "";
+        }
+
+        parameters.addValue("prefix", prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%");
+        return " AND uri_id IN (SELECT id FROM uris WHERE name LIKE :prefix ESCAPE '\\')";
+    }
+
+    private String uriCondition(List<Integer> uriIds) {
+        return uriIds == null ? "" : " AND uri_id IN (:uriIds)";
+    }
+
+    @Getter
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static final class GroupKey {
+
+        private final int appId;
+
+        private final int uriId;
+    }
+}
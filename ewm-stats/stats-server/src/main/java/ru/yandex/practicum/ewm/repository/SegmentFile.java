@@ -0,0 +1,289 @@
+package ru.yandex.practicum.ewm.repository;
+
+import ru.yandex.practicum.ewm.model.EndpointKey;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+
+/**
+ * Memory-mapped file of fixed-size hit records with its own dictionary of apps and uris.
+ * A record holds the timestamp in epoch milliseconds, the segment-local endpoint id and the 16-byte IP.
+ * The number of committed records is stored in the header after the records are written,
+ * so a torn append is ignored when the file is opened again.
+ * Every block of records keeps its minimum and maximum timestamp in memory, range scans skip the blocks
+ * and whole segments that do not overlap the range
+ */
+class SegmentFile implements AutoCloseable {
+
+    static final int RECORD_SIZE = 32;
+
+    private static final int MAGIC = 0x45574d53;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int COUNT_OFFSET = 8;
+
+    private final long sequence;
+    private final int capacity;
+    private final int blockSize;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final OutputStream dictionaryOutput;
+    private final List<EndpointKey> endpoints = new CopyOnWriteArrayList<>();
+    private final Map<EndpointKey, Integer> endpointIds = new HashMap<>();
+    private final long[] blockMin;
+    private final long[] blockMax;
+
+    private volatile int count;
+
+    private SegmentFile(long sequence, int capacity, int blockSize, FileChannel channel, MappedByteBuffer buffer,
+                        OutputStream dictionaryOutput) {
+        this.sequence = sequence;
+        this.capacity = capacity;
+        this.blockSize = blockSize;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.dictionaryOutput = dictionaryOutput;
+        this.blockMin = new long[(capacity + blockSize - 1) / blockSize];
+        this.blockMax = new long[blockMin.length];
+        Arrays.fill(blockMin, Long.MAX_VALUE);
+        Arrays.fill(blockMax, Long.MIN_VALUE);
+    }
+
+    /**
+     * Opens the segment with the given sequence number in the directory, creating its files if they do not exist
+     */
+    static SegmentFile open(Path directory, long sequence, int capacity, int blockSize) throws IOException {
+        Path dataPath = directory.resolve(String.format("segment-%010d.dat", sequence));
+        Path dictionaryPath = directory.resolve(String.format("segment-%010d.dict", sequence));
+        boolean exists = Files.exists(dataPath);
+
+        FileChannel channel = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        int fileCapacity = exists ? (int) ((channel.size() - HEADER_SIZE) / RECORD_SIZE) : capacity;
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                HEADER_SIZE + (long) fileCapacity * RECORD_SIZE);
+
+        if (exists && buffer.getInt(0) != MAGIC) {
+            channel.close();
+            throw new IOException(String.format("%s is not a segment file", dataPath));
+        }
+
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+
+        List<EndpointKey> endpoints = readDictionary(dictionaryPath);
+        OutputStream dictionaryOutput = Files.newOutputStream(dictionaryPath, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+        SegmentFile segment = new SegmentFile(sequence, fileCapacity, blockSize, channel, buffer, dictionaryOutput);
+
+        endpoints.forEach(segment::register);
+        segment.count = (int) Math.min(buffer.getLong(COUNT_OFFSET), fileCapacity);
+        for (int i = 0; i < segment.count; i++) {
+            segment.index(i, buffer.getLong(segment.offset(i)));
+        }
+
+        return segment;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    boolean isFull() {
+        return count >= capacity;
+    }
+
+    /**
+     * Returns the number of records that can still be appended
+     */
+    int remaining() {
+        return capacity - count;
+    }
+
+    /**
+     * Writes a record after the committed ones without committing it
+     *
+     * @param position  number of records appended before it since the last commit
+     * @param timestamp epoch milliseconds
+     * @param endpoint
+     * @param ip        16 bytes
+     * @return index of the record in the segment
+     */
+    int write(int position, long timestamp, EndpointKey endpoint, byte[] ip) throws IOException {
+        int index = count + position;
+        int offset = offset(index);
+        ByteBuffer address = ByteBuffer.wrap(ip);
+
+        buffer.putLong(offset, timestamp);
+        buffer.putInt(offset + 8, endpointId(endpoint));
+        buffer.putLong(offset + 16, address.getLong(0));
+        buffer.putLong(offset + 24, address.getLong(8));
+        index(index, timestamp);
+
+        return index;
+    }
+
+    /**
+     * Makes the written records visible to readers and to the next open of the file
+     *
+     * @param written number of records written since the last commit
+     */
+    void commit(int written) throws IOException {
+        dictionaryOutput.flush();
+        buffer.putLong(COUNT_OFFSET, count + written);
+        count += written;
+    }
+
+    /**
+     * Visits the committed records whose timestamp is within [start, end] and whose uri matches the filter
+     */
+    void scan(long start, long end, Predicate<String> uriFilter, HitVisitor visitor) {
+        // endpoints referenced by committed records are registered before the count is published
+        int committed = count;
+        List<EndpointKey> names = endpoints;
+        boolean[] matches = new boolean[names.size()];
+        boolean any = false;
+
+        for (int i = 0; i < matches.length; i++) {
+            matches[i] = uriFilter.test(names.get(i).getUri());
+            any |= matches[i];
+        }
+
+        if (!any) {
+            return;
+        }
+
+        for (int block = 0; block * blockSize < committed; block++) {
+            if (blockMax[block] < start || blockMin[block] > end) {
+                continue;
+            }
+
+            int last = Math.min(committed, (block + 1) * blockSize);
+
+            for (int i = block * blockSize; i < last; i++) {
+                int offset = offset(i);
+                long timestamp = buffer.getLong(offset);
+                int endpointId = buffer.getInt(offset + 8);
+
+                // a record may refer to a dictionary entry lost in a crash
+                if (timestamp < start || timestamp > end || endpointId >= matches.length || !matches[endpointId]) {
+                    continue;
+                }
+
+                visitor.visit(names.get(endpointId), timestamp, buffer.getLong(offset + 16),
+                        buffer.getLong(offset + 24));
+            }
+        }
+    }
+
+    /**
+     * Returns whether the segment may have records within [start, end]
+     */
+    boolean overlaps(long start, long end) {
+        int committed = count;
+
+        for (int block = 0; block * blockSize < committed; block++) {
+            if (blockMax[block] >= start && blockMin[block] <= end) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Writes the mapped records to disk, until then they survive a crash of the process but not of the host
+     */
+    void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        dictionaryOutput.close();
+        channel.close();
+    }
+
+    private int endpointId(EndpointKey endpoint) throws IOException {
+        Integer id = endpointIds.get(endpoint);
+
+        if (id != null) {
+            return id;
+        }
+
+        DataOutputStream output = new DataOutputStream(dictionaryOutput);
+        output.writeUTF(endpoint.getApp());
+        output.writeUTF(endpoint.getUri());
+
+        return register(endpoint);
+    }
+
+    private int register(EndpointKey endpoint) {
+        endpoints.add(endpoint);
+        endpointIds.put(endpoint, endpoints.size() - 1);
+        return endpoints.size() - 1;
+    }
+
+    private void index(int index, long timestamp) {
+        int block = index / blockSize;
+        blockMin[block] = Math.min(blockMin[block], timestamp);
+        blockMax[block] = Math.max(blockMax[block], timestamp);
+    }
+
+    private int offset(int index) {
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+
+    /**
+     * Reads the dictionary entries and cuts off an entry left incomplete by a crash,
+     * it is not referenced by committed records
+     */
+    private static List<EndpointKey> readDictionary(Path path) throws IOException {
+        List<EndpointKey> endpoints = new ArrayList<>();
+
+        if (!Files.exists(path)) {
+            return endpoints;
+        }
+
+        byte[] bytes = Files.readAllBytes(path);
+        ByteArrayInputStream input = new ByteArrayInputStream(bytes);
+        DataInputStream data = new DataInputStream(input);
+        int valid = 0;
+
+        try {
+            while (input.available() > 0) {
+                endpoints.add(new EndpointKey(data.readUTF(), data.readUTF()));
+                valid = bytes.length - input.available();
+            }
+        } catch (EOFException | UTFDataFormatException e) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+
+        return endpoints;
+    }
+}
@@ -0,0 +1,154 @@
+package ru.yandex.practicum.ewm.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.ewm.config.SegmentProperties;
+import ru.yandex.practicum.ewm.model.EndpointHit;
+import ru.yandex.practicum.ewm.model.EndpointKey;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Append-only hit storage in memory-mapped segment files on local disk, used instead of the hits table
+ * when stats.storage is segment. Hits are appended to the last segment under a single writer lock,
+ * range scans read the committed records of the overlapping segments directly from the mapped files
+ */
+@Repository
+@ConditionalOnProperty(name = "stats.storage", havingValue = "segment")
+@Slf4j
+public class SegmentStore {
+
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    private final SegmentProperties properties;
+    private final Path directory;
+    private final List<SegmentFile> segments = new CopyOnWriteArrayList<>();
+
+    public SegmentStore(SegmentProperties properties) {
+        this.properties = properties;
+        this.directory = Paths.get(properties.getDirectory());
+
+        try {
+            Files.createDirectories(directory);
+
+            for (long sequence : findSequences()) {
+                segments.add(SegmentFile.open(directory, sequence, properties.getRecordsPerSegment(),
+                        properties.getBlockSize()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        log.info("Opened {} hit segments in {}", segments.size(), directory.toAbsolutePath());
+    }
+
+    /**
+     * Appends hits and sets their ids, the hits are visible to scans once the method returns
+     *
+     * @param endpointHits
+     */
+    public synchronized void append(List<EndpointHit> endpointHits) {
+        try {
+            int next = 0;
+
+            while (next < endpointHits.size()) {
+                SegmentFile segment = activeSegment();
+                int written = Math.min(segment.remaining(), endpointHits.size() - next);
+
+                for (int i = 0; i < written; i++) {
+                    EndpointHit endpointHit = endpointHits.get(next + i);
+                    int index = segment.write(i, toMillis(endpointHit.getTimestamp()),
+                            new EndpointKey(endpointHit.getApp(), endpointHit.getUri()), endpointHit.getIp());
+
+                    endpointHit.setId((segment.getSequence() << 32) + index);
+                }
+
+                segment.commit(written);
+                next += written;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Visits the hits within the inclusive range whose uri matches the filter.
+     * Segments without records in the range are skipped as a whole
+     *
+     * @param start
+     * @param end
+     * @param uriFilter
+     * @param visitor
+     */
+    public void scan(LocalDateTime start, LocalDateTime end, Predicate<String> uriFilter, HitVisitor visitor) {
+        long from = toMillis(start);
+        long to = toMillis(end);
+
+        for (SegmentFile segment : segments) {
+            if (segment.overlaps(from, to)) {
+                segment.scan(from, to, uriFilter, visitor);
+            }
+        }
+    }
+
+    /**
+     * Converts a hit timestamp to the epoch milliseconds stored in the segments
+     *
+     * @param dateTime
+     * @return epoch milliseconds
+     */
+    public static long toMillis(LocalDateTime dateTime) {
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        for (SegmentFile segment : segments) {
+            segment.close();
+        }
+    }
+
+    private SegmentFile activeSegment() throws IOException {
+        SegmentFile last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+
+        if (last != null && !last.isFull()) {
+            return last;
+        }
+
+        if (last != null) {
+            last.force();
+        }
+
+        long sequence = last == null ? 0 : last.getSequence() + 1;
+        SegmentFile segment = SegmentFile.open(directory, sequence, properties.getRecordsPerSegment(),
+                properties.getBlockSize());
+        segments.add(segment);
+
+        log.info("Started hit segment {}", sequence);
+        return segment;
+    }
+
+    private List<Long> findSequences() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith("segment-") && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring("segment-".length(),
+                            name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package ru.yandex.practicum.ewm.repository;
+
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * SQL that differs between the production database and the embedded one used by tests
+ */
+public enum SqlDialect {
+
+    POSTGRESQL {
+        @Override
+        public String upsertSum(String table, List<String> keyColumns, String sumColumn) {
+            return String.format("INSERT INTO %1$s (%2$s, %3$s) VALUES (%4$s) "
+                            + "ON CONFLICT (%2$s) DO UPDATE SET %3$s = %1$s.%3$s + EXCLUDED.%3$s",
+                    table, String.join(", ", keyColumns), sumColumn, placeholders(keyColumns.size() + 1));
+        }
+
+        @Override
+        public String insertMissing(String table, String column) {
+            return String.format("INSERT INTO %1$s (%2$s) VALUES (?) ON CONFLICT (%2$s) DO NOTHING", table, column);
+        }
+
+        @Override
+        public String deleteReturning(String table, String condition, String columns) {
+            return String.format("DELETE FROM %s WHERE %s RETURNING %s", table, condition, columns);
+        }
+    },
+    H2 {
+        @Override
+        public String upsertSum(String table, List<String> keyColumns, String sumColumn) {
+            String sourceColumns = String.join(", ", keyColumns) + ", " + sumColumn;
+            String condition = keyColumns.stream()
+                    .map(column -> String.format("t.%1$s = s.%1$s", column))
+                    .collect(Collectors.joining(" AND "));
+            String values = keyColumns.stream()
+                    .map(column -> "s." + column)
+                    .collect(Collectors.joining(", "));
+
+            return String.format("MERGE INTO %1$s t USING (VALUES (%2$s)) s(%5$s) ON %3$s "
+                            + "WHEN MATCHED THEN UPDATE SET %4$s = t.%4$s + s.%4$s "
+                            + "WHEN NOT MATCHED THEN INSERT (%5$s) VALUES (%6$s, s.%4$s)",
+                    table, placeholders(keyColumns.size() + 1), condition, sumColumn, sourceColumns, values);
+        }
+
+        @Override
+        public String insertMissing(String table, String column) {
+            return String.format("MERGE INTO %1$s (%2$s) KEY (%2$s) VALUES (?)", table, column);
+        }
+
+        @Override
+        public String deleteReturning(String table, String condition, String columns) {
+            return String.format("SELECT %s FROM OLD TABLE (DELETE FROM %s WHERE %s)", columns, table, condition);
+        }
+    };
+
+    /**
+     * Returns an insert statement that adds the value of sumColumn to an existing row with the same key
+     * Parameters are the key columns followed by the value to add
+     *
+     * @param table
+     * @param keyColumns
+     * @param sumColumn
+     * @return SQL statement
+     */
+    public abstract String upsertSum(String table, List<String> keyColumns, String sumColumn);
+
+    /**
+     * Returns an insert statement that skips the row if the unique column already has the value
+     * The only parameter is the value of the column
+     *
+     * @param table
+     * @param column
+     * @return SQL statement
+     */
+    public abstract String insertMissing(String table, String column);
+
+    /**
+     * Returns a query that deletes the matching rows and returns the given columns of the deleted rows
+     *
+     * @param table
+     * @param condition
+     * @param columns
+     * @return SQL query
+     */
+    public abstract String deleteReturning(String table, String condition, String columns);
+
+    public static SqlDialect of(DataSource dataSource) {
+        try {
+            String productName = JdbcUtils.extractDatabaseMetaData(dataSource,
+                    DatabaseMetaData::getDatabaseProductName);
+            return "H2".equals(productName) ? H2 : POSTGRESQL;
+        } catch (MetaDataAccessException e) {
+            throw new IllegalStateException("Unable to detect the database type", e);
+        }
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.ewm.repository;
+
+import ru.yandex.practicum.ewm.model.EndpointHit;
+
+import java.util.List;
+
+public interface StatsRepositoryCustom {
+
+    /**
+     * Inserts encoded endpoint hits using JDBC batches, bypassing the persistence context
+     * Generated ids are not populated
+     *
+     * @param endpointHits
+     */
+    void saveAllInBatch(List<EndpointHit> endpointHits);
+}
@@ -0,0 +1,31 @@
+package ru.yandex.practicum.ewm.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.ewm.config.IngestProperties;
+import ru.yandex.practicum.ewm.model.EndpointHit;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+public class StatsRepositoryImpl implements StatsRepositoryCustom {
+
+    private static final String INSERT_HIT = "INSERT INTO hits (app_id, uri_id, ip, created) VALUES (?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final IngestProperties properties;
+
+    public StatsRepositoryImpl(JdbcTemplate jdbcTemplate, IngestProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.properties = properties;
+    }
+
+    @Override
+    public void saveAllInBatch(List<EndpointHit> endpointHits) {
+        jdbcTemplate.batchUpdate(INSERT_HIT, endpointHits, properties.getBatchSize(), (ps, endpointHit) -> {
+            ps.setInt(1, endpointHit.getAppId());
+            ps.setInt(2, endpointHit.getUriId());
+            ps.setBytes(3, endpointHit.getIp());
+            ps.setTimestamp(4, Timestamp.valueOf(endpointHit.getTimestamp()));
+        });
+    }
+}
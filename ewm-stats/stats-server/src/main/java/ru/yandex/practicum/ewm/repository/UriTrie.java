@@ -0,0 +1,104 @@
+package ru.yandex.practicum.ewm.repository;
+
+import ru.yandex.practicum.ewm.util.UriPatterns;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Known uris split into path segments. A pattern only visits the children of the nodes its literal segments lead to,
+ * and children are sorted, so a segment like 1* only visits the range of children starting with its literal prefix
+ */
+class UriTrie {
+
+    private final Node root = new Node();
+    private int maxId;
+
+    synchronized void add(int id, String uri) {
+        Node node = root;
+
+        for (String segment : UriPatterns.split(uri)) {
+            node = node.children.computeIfAbsent(segment, key -> new Node());
+        }
+
+        node.id = id;
+        maxId = Math.max(maxId, id);
+    }
+
+    /**
+     * Returns the largest id added so far, 0 for an empty trie
+     */
+    synchronized int getMaxId() {
+        return maxId;
+    }
+
+    /**
+     * Returns the ids of the uris matching the pattern
+     */
+    synchronized List<Integer> match(String pattern) {
+        List<Integer> ids = new ArrayList<>();
+        match(root, UriPatterns.split(pattern), 0, ids);
+        return ids;
+    }
+
+    private void match(Node node, String[] segments, int index, List<Integer> ids) {
+        if (index == segments.length) {
+            if (node.id != null) {
+                ids.add(node.id);
+            }
+            return;
+        }
+
+        String segment = segments[index];
+
+        if (index == segments.length - 1 && index > 0 && UriPatterns.ANY_PATH.equals(segment)) {
+            if (node.id != null) {
+                ids.add(node.id);
+            }
+            node.children.values().forEach(child -> collect(child, ids));
+            return;
+        }
+
+        int wildcard = segment.indexOf(UriPatterns.WILDCARD);
+
+        if (wildcard < 0) {
+            Node child = node.children.get(segment);
+
+            if (child != null) {
+                match(child, segments, index + 1, ids);
+            }
+            return;
+        }
+
+        String prefix = segment.substring(0, wildcard);
+        Pattern pattern = UriPatterns.compileSegment(segment);
+        NavigableMap<String, Node> candidates = prefix.isEmpty()
+                ? node.children
+                : node.children.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+
+        for (Map.Entry<String, Node> entry : candidates.entrySet()) {
+            if (pattern.matcher(entry.getKey()).matches()) {
+                match(entry.getValue(), segments, index + 1, ids);
+            }
+        }
+    }
+
+    private void collect(Node node, List<Integer> ids) {
+        if (node.id != null) {
+            ids.add(node.id);
+        }
+
+        node.children.values().forEach(child -> collect(child, ids));
+    }
+
+    private static final class Node {
+
+        private final NavigableMap<String, Node> children = new TreeMap<>();
+
+        private Integer id;
+    }
+}
@@ -0,0 +1,48 @@
+package ru.yandex.practicum.ewm.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.ewm.model.EndpointHit;
+import ru.yandex.practicum.ewm.repository.RollupRepository;
+import ru.yandex.practicum.ewm.repository.StatsRepository;
+
+import java.util.List;
+
+@Component
+@Transactional
+@RequiredArgsConstructor
+public class EndpointHitWriter {
+
+    private final StatsRepository statsRepository;
+    private final RollupRepository rollupRepository;
+    private final LiveCounters liveCounters;
+    private final ApplicationEventPublisher eventPublisher;
+
+    /**
+     * Writes a single endpoint hit and its rollups and returns it with the generated id.
+     * Rollups of recent hits are left to the live counters when they are enabled
+     *
+     * @param endpointHit
+     * @return saved endpoint hit
+     */
+    public EndpointHit write(EndpointHit endpointHit) {
+        EndpointHit savedEndpointHit = statsRepository.save(endpointHit);
+        rollupRepository.add(liveCounters.takeRecent(List.of(endpointHit)));
+        eventPublisher.publishEvent(new HitsWrittenEvent(List.of(endpointHit)));
+
+        return savedEndpointHit;
+    }
+
+    /**
+     * Writes endpoint hits and their rollups in one transaction using batched inserts
+     *
+     * @param endpointHits
+     */
+    public void writeAll(List<EndpointHit> endpointHits) {
+        statsRepository.saveAllInBatch(endpointHits);
+        rollupRepository.add(liveCounters.takeRecent(endpointHits));
+        eventPublisher.publishEvent(new HitsWrittenEvent(endpointHits));
+    }
+}
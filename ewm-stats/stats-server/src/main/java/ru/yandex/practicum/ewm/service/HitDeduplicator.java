@@ -0,0 +1,178 @@
+package ru.yandex.practicum.ewm.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.ewm.config.DedupProperties;
+import ru.yandex.practicum.ewm.model.EndpointHit;
+import ru.yandex.practicum.ewm.util.HyperLogLog;
+import ru.yandex.practicum.ewm.util.LongHashSet;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Remembers the client-supplied ids of received hits for the configured window, so that a retried hit is dropped
+ * instead of being counted twice. Ids are kept as 64-bit hashes in time-bucketed generations of primitive sets:
+ * the window is covered by three generations plus the current one, and the oldest generation is dropped as a whole
+ * when a new one starts. Ids are spread over independently locked shards to keep concurrent writers apart.
+ * Ids are remembered by this instance only, retries that reach another instance are not detected
+ */
+@Component
+public class HitDeduplicator {
+
+    private static final int SHARDS = 16;
+    private static final int GENERATIONS = 4;
+
+    private final DedupProperties properties;
+    private final Clock clock;
+    private final Shard[] shards = new Shard[SHARDS];
+    private final Counter duplicates;
+
+    @Autowired
+    public HitDeduplicator(DedupProperties properties, MeterRegistry meterRegistry) {
+        this(properties, meterRegistry, Clock.systemUTC());
+    }
+
+    HitDeduplicator(DedupProperties properties, MeterRegistry meterRegistry, Clock clock) {
+        this.properties = properties;
+        this.clock = clock;
+
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard();
+        }
+
+        this.duplicates = Counter.builder("stats.ingest.duplicates")
+                .description("Number of hits dropped because their hit id was received before")
+                .register(meterRegistry);
+        Gauge.builder("stats.ingest.dedup.ids", shards, values -> Arrays.stream(values).mapToLong(Shard::size).sum())
+                .description("Number of hit ids remembered for deduplication")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Remembers the id of a hit and returns whether it was not received within the window.
+     * Hits without an id are always accepted
+     *
+     * @param endpointHit
+     * @return true if the hit has to be written
+     */
+    public boolean accept(EndpointHit endpointHit) {
+        if (!properties.isEnabled() || endpointHit.getHitId() == null) {
+            return true;
+        }
+
+        long hash = hash(endpointHit.getHitId());
+        boolean accepted = shard(hash).add(hash, generation());
+
+        if (!accepted) {
+            duplicates.increment();
+        }
+
+        return accepted;
+    }
+
+    /**
+     * Returns the hits whose ids were not received within the window, including earlier in the same list
+     *
+     * @param endpointHits
+     * @return hits that have to be written
+     */
+    public List<EndpointHit> acceptAll(List<EndpointHit> endpointHits) {
+        return endpointHits.stream()
+                .filter(this::accept)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Forgets the ids of hits that could not be written, so that their retries are accepted
+     *
+     * @param endpointHits
+     */
+    public void forget(Collection<EndpointHit> endpointHits) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+
+        for (EndpointHit endpointHit : endpointHits) {
+            if (endpointHit.getHitId() != null) {
+                long hash = hash(endpointHit.getHitId());
+                shard(hash).remove(hash);
+            }
+        }
+    }
+
+    private long generation() {
+        return clock.millis() / Math.max(1, properties.getWindow().toMillis() / (GENERATIONS - 1));
+    }
+
+    private Shard shard(long hash) {
+        return shards[(int) (hash >>> 60) & (SHARDS - 1)];
+    }
+
+    /**
+     * Zero marks an empty slot of the sets, the hash that maps to it is replaced by another constant
+     */
+    private static long hash(String hitId) {
+        long hash = HyperLogLog.hash(hitId.getBytes(StandardCharsets.UTF_8));
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static final class Shard {
+
+        private final LongHashSet[] generations = new LongHashSet[GENERATIONS];
+        private long current = Long.MIN_VALUE;
+
+        private Shard() {
+            for (int i = 0; i < GENERATIONS; i++) {
+                generations[i] = new LongHashSet();
+            }
+        }
+
+        synchronized boolean add(long hash, long generation) {
+            rotate(generation);
+
+            for (LongHashSet ids : generations) {
+                if (ids.contains(hash)) {
+                    return false;
+                }
+            }
+
+            generations[(int) Math.floorMod(current, (long) GENERATIONS)].add(hash);
+            return true;
+        }
+
+        synchronized void remove(long hash) {
+            for (LongHashSet ids : generations) {
+                ids.remove(hash);
+            }
+        }
+
+        synchronized long size() {
+            return Arrays.stream(generations).mapToLong(LongHashSet::size).sum();
+        }
+
+        /**
+         * Clears the generations that ended more than a window ago when a later generation starts
+         */
+        private void rotate(long generation) {
+            if (generation <= current) {
+                return;
+            }
+
+            long first = current == Long.MIN_VALUE ? generation : Math.max(current + 1, generation - GENERATIONS + 1);
+
+            for (long next = first; next <= generation; next++) {
+                generations[(int) Math.floorMod(next, (long) GENERATIONS)].clear();
+            }
+
+            current = generation;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package ru.yandex.practicum.ewm.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.ewm.config.IngestProperties;
+import ru.yandex.practicum.ewm.model.EndpointHit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * Write-behind buffer for single hits.
+ * Hits are queued in memory and written by a background thread in group commits,
+ * either when flush-size hits are collected or when flush-interval has passed since the first queued hit.
+ * With ack=enqueue a hit is acknowledged as soon as it is queued and is lost if the process dies before the flush;
+ * with ack=flush the caller waits for the group commit that contains its hit.
+ * If the queue is full or the buffer is stopped the hit is written synchronously by the caller.
+ */
+@Component
+@Slf4j
+public class HitWriteBuffer {
+
+    private final EndpointHitWriter endpointHitWriter;
+    private final IngestProperties properties;
+    private final BlockingQueue<PendingHit> queue;
+    private final Timer flushTimer;
+    private final DistributionSummary flushSize;
+    private final MeterRegistry meterRegistry;
+    private final ReadWriteLock lifecycleLock = new ReentrantReadWriteLock();
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    public HitWriteBuffer(EndpointHitWriter endpointHitWriter, IngestProperties properties,
+                          MeterRegistry meterRegistry) {
+        this.endpointHitWriter = endpointHitWriter;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+
+        Gauge.builder("stats.ingest.buffer.depth", queue, BlockingQueue::size)
+                .description("Number of hits waiting in the write-behind buffer")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("stats.ingest.buffer.flush")
+                .description("Latency of group commits of buffered hits")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.flushSize = DistributionSummary.builder("stats.ingest.buffer.flush.size")
+                .description("Number of hits written by one group commit")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return properties.getMode() == IngestProperties.Mode.BUFFERED;
+    }
+
+    /**
+     * Queues an endpoint hit for the next group commit.
+     * Returns once the hit is queued or written, depending on the configured ack mode.
+     * With ack=flush the caller fails if the hit is not written within flush-timeout: a hit that is still queued
+     * is dropped from the queue, a hit that a group commit has taken fails with {@link HitWriteTimeoutException}
+     * as it may still be written
+     *
+     * @param endpointHit
+     */
+    public void submit(EndpointHit endpointHit) {
+        boolean waitForFlush = properties.getAck() == IngestProperties.Ack.FLUSH;
+        PendingHit pendingHit = new PendingHit(endpointHit, waitForFlush ? new CompletableFuture<>() : null);
+
+        if (!enqueue(pendingHit)) {
+            endpointHitWriter.write(endpointHit);
+            return;
+        }
+
+        if (waitForFlush) {
+            awaitFlush(pendingHit);
+        }
+    }
+
+    /**
+     * Queues a hit unless the buffer is stopped or full. The read lock keeps stop() from draining the queue
+     * for the last time between the check of the running flag and the offer
+     */
+    private boolean enqueue(PendingHit pendingHit) {
+        lifecycleLock.readLock().lock();
+        try {
+            if (!running) {
+                return false;
+            }
+
+            if (!queue.offer(pendingHit)) {
+                meterRegistry.counter("stats.ingest.buffer.overflow").increment();
+                return false;
+            }
+
+            return true;
+        } finally {
+            lifecycleLock.readLock().unlock();
+        }
+    }
+
+    private void awaitFlush(PendingHit pendingHit) {
+        try {
+            pendingHit.flushed.get(properties.getFlushTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw new IllegalStateException("Failed to write the buffered hit", e.getCause());
+        } catch (TimeoutException e) {
+            if (queue.remove(pendingHit)) {
+                throw new IllegalStateException(String.format("Buffered hit was not written within %s",
+                        properties.getFlushTimeout()));
+            }
+
+            throw new HitWriteTimeoutException(String.format("Buffered hit was not written within %s, "
+                    + "its group commit is still running", properties.getFlushTimeout()), pendingHit.flushed);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the buffered hit to be written", e);
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        running = true;
+        writerThread = new Thread(this::writeLoop, "hit-write-buffer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        log.info("Write-behind buffer started: flush size {}, flush interval {}, ack {}",
+                properties.getFlushSize(), properties.getFlushInterval(), properties.getAck());
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        if (writerThread == null) {
+            return;
+        }
+
+        lifecycleLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            lifecycleLock.writeLock().unlock();
+        }
+
+        writerThread.join(TimeUnit.SECONDS.toMillis(30));
+
+        List<PendingHit> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            flush(remaining);
+        }
+    }
+
+    private void writeLoop() {
+        List<PendingHit> batch = new ArrayList<>(properties.getFlushSize());
+
+        while (running || !queue.isEmpty()) {
+            try {
+                collectBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void collectBatch(List<PendingHit> batch) throws InterruptedException {
+        PendingHit first = queue.poll(properties.getFlushInterval().toNanos(), TimeUnit.NANOSECONDS);
+
+        if (first == null) {
+            return;
+        }
+
+        batch.add(first);
+        long deadline = System.nanoTime() + properties.getFlushInterval().toNanos();
+
+        while (batch.size() < properties.getFlushSize()) {
+            queue.drainTo(batch, properties.getFlushSize() - batch.size());
+
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= properties.getFlushSize() || remaining <= 0) {
+                return;
+            }
+
+            PendingHit next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<PendingHit> batch) {
+        List<EndpointHit> endpointHits = batch.stream()
+                .map(pendingHit -> pendingHit.endpointHit)
+                .collect(Collectors.toList());
+
+        try {
+            flushTimer.record(() -> endpointHitWriter.writeAll(endpointHits));
+            flushSize.record(endpointHits.size());
+            batch.forEach(PendingHit::complete);
+        } catch (RuntimeException e) {
+            log.error("Failed to write {} buffered hits", endpointHits.size(), e);
+            meterRegistry.counter("stats.ingest.buffer.failed").increment(endpointHits.size());
+            batch.forEach(pendingHit -> pendingHit.fail(e));
+        }
+    }
+
+    private static final class PendingHit {
+
+        private final EndpointHit endpointHit;
+        private final CompletableFuture<Void> flushed;
+
+        private PendingHit(EndpointHit endpointHit, CompletableFuture<Void> flushed) {
+            this.endpointHit = endpointHit;
+            this.flushed = flushed;
+        }
+
+        private void complete() {
+            if (flushed != null) {
+                flushed.complete(null);
+            }
+        }
+
+        private void fail(Throwable e) {
+            if (flushed != null) {
+                flushed.completeExceptionally(e);
+            }
+        }
+    }
+}
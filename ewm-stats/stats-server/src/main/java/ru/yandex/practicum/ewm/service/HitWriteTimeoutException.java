@@ -0,0 +1,21 @@
+package ru.yandex.practicum.ewm.service;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Thrown when a buffered hit is not written within flush-timeout after a group commit has taken it.
+ * The hit may still be written, the pending write completes once the group commit ends
+ */
+public class HitWriteTimeoutException extends IllegalStateException {
+
+    private final CompletionStage<Void> pendingWrite;
+
+    public HitWriteTimeoutException(String message, CompletionStage<Void> pendingWrite) {
+        super(message);
+        this.pendingWrite = pendingWrite;
+    }
+
+    public CompletionStage<Void> getPendingWrite() {
+        return pendingWrite;
+    }
+}
@@ -0,0 +1,148 @@
+package ru.yandex.practicum.ewm.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.ewm.config.ArchiveProperties;
+import ru.yandex.practicum.ewm.model.DistinctIpAggregate;
+import ru.yandex.practicum.ewm.model.RollupSegment;
+import ru.yandex.practicum.ewm.model.StatsAggregate;
+import ru.yandex.practicum.ewm.repository.ArchiveRepository;
+import ru.yandex.practicum.ewm.repository.RollupRepository;
+import ru.yandex.practicum.ewm.util.HitAggregator;
+import ru.yandex.practicum.ewm.util.RollupPlanner;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Moves the hits of days older than the configured age from the hits table to the archive, day by day,
+ * and reads them back for queries that reach that far. Rollup counters, sketches and visitor bitmaps stay
+ * in the database, so only the parts of a query that read raw hits are served from the archive
+ */
+@Component
+@Slf4j
+public class HitsArchive {
+
+    private final ArchiveRepository archiveRepository;
+    private final RollupRepository rollupRepository;
+    private final ArchiveProperties properties;
+    private final TransactionTemplate transactionTemplate;
+    private final Clock clock;
+    private volatile LocalDateTime archivedUntil = LocalDateTime.MIN;
+
+    @Autowired
+    public HitsArchive(ArchiveRepository archiveRepository, RollupRepository rollupRepository,
+                       ArchiveProperties properties, TransactionTemplate transactionTemplate) {
+        this(archiveRepository, rollupRepository, properties, transactionTemplate, Clock.systemDefaultZone());
+    }
+
+    HitsArchive(ArchiveRepository archiveRepository, RollupRepository rollupRepository, ArchiveProperties properties,
+                TransactionTemplate transactionTemplate, Clock clock) {
+        this.archiveRepository = archiveRepository;
+        this.rollupRepository = rollupRepository;
+        this.properties = properties;
+        this.transactionTemplate = transactionTemplate;
+        this.clock = clock;
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadArchivedUntil() {
+        if (properties.isEnabled()) {
+            archiveRepository.findArchivedUntil().ifPresent(day -> archivedUntil = day.atStartOfDay());
+        }
+    }
+
+    @Scheduled(cron = "${stats.archive.cron}")
+    public void archiveHits() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+
+        LocalDateTime cutoff = getCutoff();
+        Optional<LocalDate> oldest;
+
+        while ((oldest = archiveRepository.findOldestDay(cutoff)).isPresent()) {
+            LocalDate day = oldest.get();
+            rollupRepository.fillMissingVisitors(day.atStartOfDay(), day.plusDays(1).atStartOfDay());
+            Integer moved = transactionTemplate.execute(status -> {
+                rollupRepository.fillMissingSketches(day.atStartOfDay(), day.plusDays(1).atStartOfDay());
+                return archiveRepository.archiveDay(day);
+            });
+
+            if (moved == null || moved == 0) {
+                break;
+            }
+
+            if (archivedUntil.isBefore(day.plusDays(1).atStartOfDay())) {
+                archivedUntil = day.plusDays(1).atStartOfDay();
+            }
+
+            log.info("Archived {} hits of {}", moved, day);
+        }
+    }
+
+    /**
+     * Returns whether the archive may hold hits at or after the start of a query.
+     * Other instances archive the same days, so the configured cutoff is checked as well as the known archive end
+     *
+     * @param start
+     * @return whether the query has to read the archive
+     */
+    public boolean reaches(LocalDateTime start) {
+        return properties.isEnabled() && (start.isBefore(getCutoff()) || start.isBefore(archivedUntil));
+    }
+
+    /**
+     * Aggregates the archived hits that a query over the database misses: the raw segments of the range
+     * for hit counts, the raw and unsketched segments for approximate unique counts and the segments
+     * without visitor bitmaps for exact ones, whose visitor IPs are converted to visitor ids
+     *
+     * @param start
+     * @param end
+     * @param endInclusive
+     * @param uris
+     * @param unique
+     * @param approximate
+     * @return hit counts, visitor ids or sketches per app and uri
+     */
+    public StatsAggregate<?> aggregate(LocalDateTime start, LocalDateTime end, boolean endInclusive,
+                                       List<String> uris, boolean unique, boolean approximate) {
+        Predicate<String> uriFilter = uris == null ? uri -> true : Set.copyOf(uris)::contains;
+        List<RollupSegment> segments = RollupPlanner.plan(start, end, endInclusive).stream()
+                .filter(segment -> segment.isRaw() || unique && !(approximate
+                        ? segment.getGranularity().isSketched()
+                        : segment.getGranularity().hasVisitors()))
+                .collect(Collectors.toList());
+
+        StatsAggregate<?> aggregate = HitAggregator.aggregate(visitor -> segments.forEach(segment ->
+                archiveRepository.scan(segment.getStart(), segment.getEnd(), segment.isEndInclusive(), uriFilter,
+                        visitor)), unique, approximate);
+
+        return unique && !approximate ? rollupRepository.toVisitors((DistinctIpAggregate) aggregate) : aggregate;
+    }
+
+    /**
+     * Returns the start of the oldest day whose hits are not archived yet
+     *
+     * @return archive cutoff
+     */
+    public LocalDateTime getCutoff() {
+        return LocalDateTime.now(clock).minus(properties.getMaxAge()).truncatedTo(ChronoUnit.DAYS);
+    }
+}
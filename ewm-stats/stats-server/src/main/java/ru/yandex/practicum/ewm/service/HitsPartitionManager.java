@@ -0,0 +1,139 @@
+package ru.yandex.practicum.ewm.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.ewm.config.PartitionProperties;
+import ru.yandex.practicum.ewm.repository.PartitionRepository;
+import ru.yandex.practicum.ewm.repository.RollupRepository;
+import ru.yandex.practicum.ewm.repository.SqlDialect;
+
+import javax.sql.DataSource;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the PostgreSQL hits table partitioned by month.
+ * Partitions are created ahead of time and for any month that has rows in the default partition,
+ * and partitions older than the retention period are dropped as a whole instead of deleting rows.
+ * Missing sketches and visitor bitmaps of the month are computed first, so hit counts and unique counts remain
+ * in the hour and day rollups, while unique counts of ranges that do not start and end on whole hours lose
+ * the dropped hits. With the archive enabled only months before the archive cutoff are dropped,
+ * after their hits are archived
+ */
+@Component
+@Slf4j
+public class HitsPartitionManager {
+
+    private final PartitionRepository partitionRepository;
+    private final RollupRepository rollupRepository;
+    private final HitsArchive hitsArchive;
+    private final PartitionProperties properties;
+    private final TransactionTemplate transactionTemplate;
+    private final Clock clock;
+    private final boolean supported;
+
+    @Autowired
+    public HitsPartitionManager(PartitionRepository partitionRepository, RollupRepository rollupRepository,
+                                HitsArchive hitsArchive, PartitionProperties properties,
+                                TransactionTemplate transactionTemplate, DataSource dataSource) {
+        this(partitionRepository, rollupRepository, hitsArchive, properties, transactionTemplate,
+                SqlDialect.of(dataSource), Clock.systemDefaultZone());
+    }
+
+    HitsPartitionManager(PartitionRepository partitionRepository, RollupRepository rollupRepository,
+                         HitsArchive hitsArchive, PartitionProperties properties,
+                         TransactionTemplate transactionTemplate, SqlDialect dialect, Clock clock) {
+        this.partitionRepository = partitionRepository;
+        this.rollupRepository = rollupRepository;
+        this.hitsArchive = hitsArchive;
+        this.properties = properties;
+        this.transactionTemplate = transactionTemplate;
+        this.clock = clock;
+        this.supported = dialect == SqlDialect.POSTGRESQL;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${stats.partitions.cron}")
+    public void maintainPartitions() {
+        if (!supported || !properties.isEnabled()) {
+            return;
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!partitionRepository.isPartitioned()) {
+                log.info("Converting the hits table to a partitioned table");
+                partitionRepository.convertToPartitioned();
+            }
+
+            partitionRepository.createDefaultPartition();
+        });
+
+        YearMonth current = YearMonth.now(clock);
+        List<YearMonth> existing = partitionRepository.findPartitionMonths();
+
+        TreeSet<YearMonth> required = new TreeSet<>(partitionRepository.findDefaultPartitionMonths());
+        for (int i = 0; i <= properties.getMonthsAhead(); i++) {
+            required.add(current.plusMonths(i));
+        }
+        required.removeAll(existing);
+
+        for (YearMonth month : required) {
+            transactionTemplate.executeWithoutResult(status -> partitionRepository.createPartition(month));
+            log.info("Created hits partition for {}", month);
+        }
+
+        if (properties.getRetentionMonths() <= 0) {
+            return;
+        }
+
+        YearMonth oldestRetained = current.minusMonths(properties.getRetentionMonths());
+        if (hitsArchive.isEnabled()) {
+            YearMonth oldestUnarchived = YearMonth.from(hitsArchive.getCutoff());
+
+            if (oldestUnarchived.isBefore(oldestRetained)) {
+                log.warn("Hits partitions from {} are kept until their hits are archived", oldestUnarchived);
+                oldestRetained = oldestUnarchived;
+            }
+        }
+
+        List<YearMonth> expired = existing.stream()
+                .filter(oldestRetained::isAfter)
+                .sorted()
+                .collect(Collectors.toList());
+        if (expired.isEmpty()) {
+            return;
+        }
+
+        if (hitsArchive.isEnabled()) {
+            hitsArchive.archiveHits();
+        }
+
+        for (YearMonth month : expired) {
+            dropPartition(month);
+        }
+    }
+
+    /**
+     * Computes the missing sketches and visitor bitmaps of the month from its raw hits, then drops its partition
+     */
+    private void dropPartition(YearMonth month) {
+        LocalDateTime start = month.atDay(1).atStartOfDay();
+        LocalDateTime end = month.plusMonths(1).atDay(1).atStartOfDay();
+
+        rollupRepository.fillMissingVisitors(start, end);
+        transactionTemplate.executeWithoutResult(status -> {
+            rollupRepository.fillMissingSketches(start, end);
+            partitionRepository.dropPartition(month);
+        });
+        log.info("Dropped hits partition for {}", month);
+    }
+}
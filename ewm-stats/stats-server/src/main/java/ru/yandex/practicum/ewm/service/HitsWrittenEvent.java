@@ -0,0 +1,17 @@
+package ru.yandex.practicum.ewm.service;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import ru.yandex.practicum.ewm.model.EndpointHit;
+
+import java.util.List;
+
+/**
+ * Published by the writer for every written group of hits, listeners run once the hits are committed
+ */
+@Getter
+@RequiredArgsConstructor
+public class HitsWrittenEvent {
+
+    private final List<EndpointHit> endpointHits;
+}
@@ -0,0 +1,473 @@
+package ru.yandex.practicum.ewm.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.ewm.config.IngestProperties;
+import ru.yandex.practicum.ewm.model.BucketKey;
+import ru.yandex.practicum.ewm.model.EndpointHit;
+import ru.yandex.practicum.ewm.model.EndpointKey;
+import ru.yandex.practicum.ewm.model.HitCountAggregate;
+import ru.yandex.practicum.ewm.model.RollupGranularity;
+import ru.yandex.practicum.ewm.model.RollupSegment;
+import ru.yandex.practicum.ewm.model.SketchAggregate;
+import ru.yandex.practicum.ewm.model.VisitorAggregate;
+import ru.yandex.practicum.ewm.repository.DictionaryRepository;
+import ru.yandex.practicum.ewm.repository.RollupRepository;
+import ru.yandex.practicum.ewm.util.HyperLogLog;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Rollup counters of recent hits kept in memory with rollups=live and written to the rollup tables periodically,
+ * so that writers of the same uri do not queue on its bucket rows. Hits of the current and the previous minute
+ * are counted in a LongAdder per minute bucket, sketched in a HyperLogLog per hour bucket and their visitor ids
+ * collected in a bitmap per hour bucket once their transaction commits; older and future hits update the rollups
+ * in their transaction as before.
+ * A flush moves the counters into the rollup tables while holding the write lock, and queries hold the read lock
+ * while they read the rollup tables and add the counters, so every hit is counted exactly once.
+ * Hits that are not flushed yet are lost if the process dies, the raw hits are not
+ */
+@Component
+@Slf4j
+public class LiveCounters {
+
+    private static final Duration RETENTION = Duration.ofMinutes(5);
+
+    private final RollupRepository rollupRepository;
+    private final DictionaryRepository dictionaryRepository;
+    private final IngestProperties properties;
+    private final TransactionTemplate transactionTemplate;
+    private final Clock clock;
+    private final ConcurrentMap<BucketKey, LongAdder> counts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<BucketKey, HyperLogLog> sketches = new ConcurrentHashMap<>();
+    private final Set<BucketKey> changedSketches = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<BucketKey, RoaringBitmap> visitors = new ConcurrentHashMap<>();
+    private final ReadWriteLock flushLock = new ReentrantReadWriteLock();
+    private final Timer flushTimer;
+
+    private ScheduledExecutorService flushExecutor;
+
+    @Autowired
+    public LiveCounters(RollupRepository rollupRepository, DictionaryRepository dictionaryRepository,
+                        IngestProperties properties, TransactionTemplate transactionTemplate,
+                        MeterRegistry meterRegistry) {
+        this(rollupRepository, dictionaryRepository, properties, transactionTemplate, meterRegistry,
+                Clock.systemDefaultZone());
+    }
+
+    LiveCounters(RollupRepository rollupRepository, DictionaryRepository dictionaryRepository,
+                 IngestProperties properties, TransactionTemplate transactionTemplate, MeterRegistry meterRegistry,
+                 Clock clock) {
+        this.rollupRepository = rollupRepository;
+        this.dictionaryRepository = dictionaryRepository;
+        this.properties = properties;
+        this.transactionTemplate = transactionTemplate;
+        this.clock = clock;
+
+        Gauge.builder("stats.ingest.live.buckets", counts, Map::size)
+                .description("Number of minute buckets counted in memory")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("stats.ingest.live.flush")
+                .description("Latency of writing live counters to the rollup tables")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return properties.getRollups() == IngestProperties.Rollups.LIVE;
+    }
+
+    /**
+     * Takes the recent hits of the current transaction to be counted in memory once it commits
+     * and returns the others, whose rollups have to be updated in the transaction
+     *
+     * @param endpointHits encoded endpoint hits
+     * @return hits left to the rollup tables
+     */
+    public List<EndpointHit> takeRecent(List<EndpointHit> endpointHits) {
+        if (!isEnabled()) {
+            return endpointHits;
+        }
+
+        LocalDateTime current = RollupGranularity.MINUTE.floor(LocalDateTime.now(clock));
+        LocalDateTime first = current.minusMinutes(1);
+        LocalDateTime last = current.plusMinutes(1);
+        List<EndpointHit> recent = new ArrayList<>();
+        List<EndpointHit> others = new ArrayList<>();
+
+        for (EndpointHit endpointHit : endpointHits) {
+            LocalDateTime bucket = RollupGranularity.MINUTE.floor(endpointHit.getTimestamp());
+            (bucket.isBefore(first) || bucket.isAfter(last) ? others : recent).add(endpointHit);
+        }
+
+        if (recent.isEmpty()) {
+            return others;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public int getOrder() {
+                    return Ordered.HIGHEST_PRECEDENCE;
+                }
+
+                @Override
+                public void afterCommit() {
+                    count(recent);
+                }
+            });
+        } else {
+            count(recent);
+        }
+
+        return others;
+    }
+
+    /**
+     * Runs a query over the rollup tables that adds the live counters, no flush happens while it runs
+     *
+     * @param query
+     * @param <T>
+     * @return query result
+     */
+    public <T> T read(Supplier<T> query) {
+        if (!isEnabled()) {
+            return query.get();
+        }
+
+        flushLock.readLock().lock();
+        try {
+            return query.get();
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the counted hits per app and uri in the minute buckets covered by the rollup segments.
+     * Raw segments are read from the hits table, which already has every committed hit
+     *
+     * @param segments
+     * @param uris
+     * @return hit counts that are not in the rollup tables yet
+     */
+    public HitCountAggregate getHitCounts(List<RollupSegment> segments, List<String> uris) {
+        Map<EndpointKey, Long> values = new HashMap<>();
+        Predicate<String> uriFilter = uriFilter(uris);
+
+        counts.forEach((key, count) -> {
+            long value = count.sum();
+
+            if (value != 0 && covers(segments, key.getBucket(), granularity -> true)) {
+                EndpointKey endpointKey = toEndpointKey(key);
+
+                if (uriFilter.test(endpointKey.getUri())) {
+                    values.merge(endpointKey, value, Long::sum);
+                }
+            }
+        });
+
+        return new HitCountAggregate(values);
+    }
+
+    /**
+     * Returns the sketches of the hour buckets covered by the sketched rollup segments per app and uri.
+     * The sketches may repeat IPs that are already in the rollup tables, which does not change a merged sketch
+     *
+     * @param segments
+     * @param uris
+     * @return sketches of the visitor IPs
+     */
+    public SketchAggregate getSketches(List<RollupSegment> segments, List<String> uris) {
+        Map<EndpointKey, HyperLogLog> values = new HashMap<>();
+        Predicate<String> uriFilter = uriFilter(uris);
+
+        sketches.forEach((key, sketch) -> {
+            if (covers(segments, key.getBucket(), RollupGranularity::isSketched)) {
+                EndpointKey endpointKey = toEndpointKey(key);
+
+                if (uriFilter.test(endpointKey.getUri())) {
+                    values.merge(endpointKey, copy(sketch), HyperLogLog::merge);
+                }
+            }
+        });
+
+        return new SketchAggregate(values);
+    }
+
+    /**
+     * Returns the visitor ids of the hour buckets covered by the hour and day segments per app and uri
+     * that are not in the rollup tables yet
+     *
+     * @param segments
+     * @param uris
+     * @return bitmaps of the visitor ids
+     */
+    public VisitorAggregate getVisitors(List<RollupSegment> segments, List<String> uris) {
+        Map<EndpointKey, RoaringBitmap> values = new HashMap<>();
+        Predicate<String> uriFilter = uriFilter(uris);
+
+        visitors.forEach((key, bitmap) -> {
+            if (covers(segments, key.getBucket(), RollupGranularity::hasVisitors)) {
+                EndpointKey endpointKey = toEndpointKey(key);
+
+                if (uriFilter.test(endpointKey.getUri())) {
+                    values.merge(endpointKey, copy(bitmap), (value, other) -> RoaringBitmap.or(value, other));
+                }
+            }
+        });
+
+        return new VisitorAggregate(values);
+    }
+
+    /**
+     * Adds the counted hits to a series read from the rollup of the given granularity
+     *
+     * @param granularity
+     * @param first       start of the first bucket
+     * @param buckets     number of buckets
+     * @param uris
+     * @param series      hits per bucket by app and uri
+     */
+    public void addToSeries(RollupGranularity granularity, LocalDateTime first, int buckets, List<String> uris,
+                            Map<EndpointKey, long[]> series) {
+        Predicate<String> uriFilter = uriFilter(uris);
+        LocalDateTime end = first.plus(buckets, granularity.getUnit());
+
+        counts.forEach((key, count) -> {
+            long value = count.sum();
+
+            if (value == 0 || key.getBucket().isBefore(first) || !key.getBucket().isBefore(end)) {
+                return;
+            }
+
+            EndpointKey endpointKey = toEndpointKey(key);
+
+            if (uriFilter.test(endpointKey.getUri())) {
+                int index = (int) granularity.getUnit().between(first, granularity.floor(key.getBucket()));
+                series.computeIfAbsent(endpointKey, k -> new long[buckets])[index] += value;
+            }
+        });
+    }
+
+    /**
+     * Writes the counters, the changed sketches and the collected visitor ids to the rollup tables in one transaction.
+     * Counters and visitor ids are reset as they are read, so hits counted meanwhile go to the next flush;
+     * if the transaction fails they are put back
+     */
+    public void flush() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        flushLock.writeLock().lock();
+        try {
+            Map<BucketKey, Long> minuteCounts = new HashMap<>();
+            Map<BucketKey, HyperLogLog> hourSketches = new HashMap<>();
+            Map<BucketKey, RoaringBitmap> hourVisitors = new HashMap<>();
+
+            counts.forEach((key, count) -> {
+                long value = count.sumThenReset();
+
+                if (value != 0) {
+                    minuteCounts.put(key, value);
+                }
+            });
+
+            for (BucketKey key : changedSketches) {
+                changedSketches.remove(key);
+                HyperLogLog sketch = sketches.get(key);
+
+                if (sketch != null) {
+                    hourSketches.put(key, copy(sketch));
+                }
+            }
+
+            for (BucketKey key : visitors.keySet()) {
+                RoaringBitmap bitmap = visitors.remove(key);
+
+                if (bitmap != null) {
+                    hourVisitors.put(key, bitmap);
+                }
+            }
+
+            try {
+                flushTimer.record(() -> transactionTemplate.executeWithoutResult(status ->
+                        rollupRepository.add(minuteCounts, hourSketches, hourVisitors)));
+            } catch (RuntimeException e) {
+                minuteCounts.forEach((key, value) -> counts.computeIfAbsent(key, k -> new LongAdder()).add(value));
+                changedSketches.addAll(hourSketches.keySet());
+                hourVisitors.forEach((key, bitmap) -> visitors.merge(key, bitmap, (value, other) -> {
+                    synchronized (value) {
+                        value.or(other);
+                    }
+                    return value;
+                }));
+                log.error("Failed to flush live counters of {} minute buckets", minuteCounts.size(), e);
+                return;
+            }
+
+            evict();
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        long interval = properties.getLiveFlushInterval().toMillis();
+
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "live-counters-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushExecutor.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("Live rollup counters started: flush interval {}", properties.getLiveFlushInterval());
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        if (flushExecutor == null) {
+            return;
+        }
+
+        flushExecutor.shutdown();
+        flushExecutor.awaitTermination(30, TimeUnit.SECONDS);
+        flush();
+    }
+
+    /**
+     * Counts committed hits. Buckets of the last minutes are updated without locks, buckets of late commits
+     * may be evicted concurrently and are updated atomically with their map entries instead.
+     * Visitor ids are always added atomically with their map entries, which a flush removes
+     */
+    private void count(List<EndpointHit> endpointHits) {
+        LocalDateTime settled = RollupGranularity.MINUTE.floor(LocalDateTime.now(clock)).minusMinutes(2);
+
+        for (EndpointHit endpointHit : endpointHits) {
+            BucketKey minute = new BucketKey(endpointHit.getAppId(), endpointHit.getUriId(),
+                    RollupGranularity.MINUTE.floor(endpointHit.getTimestamp()));
+            BucketKey hour = minute.withBucket(RollupGranularity.HOUR.floor(minute.getBucket()));
+
+            visitors.compute(hour, (key, bitmap) -> {
+                RoaringBitmap value = bitmap == null ? new RoaringBitmap() : bitmap;
+                synchronized (value) {
+                    value.add(endpointHit.getVisitorId());
+                }
+                return value;
+            });
+
+            if (minute.getBucket().isBefore(settled)) {
+                counts.compute(minute, (key, count) -> {
+                    LongAdder value = count == null ? new LongAdder() : count;
+                    value.increment();
+                    return value;
+                });
+                sketches.compute(hour, (key, sketch) -> {
+                    HyperLogLog value = sketch == null ? new HyperLogLog() : sketch;
+                    synchronized (value) {
+                        value.add(endpointHit.getIp());
+                    }
+                    changedSketches.add(key);
+                    return value;
+                });
+                continue;
+            }
+
+            counts.computeIfAbsent(minute, key -> new LongAdder()).increment();
+
+            HyperLogLog sketch = sketches.computeIfAbsent(hour, key -> new HyperLogLog());
+            synchronized (sketch) {
+                sketch.add(endpointHit.getIp());
+            }
+            changedSketches.add(hour);
+        }
+    }
+
+    /**
+     * Drops the flushed counters and sketches of buckets that no longer take hits, called under the write lock
+     */
+    private void evict() {
+        LocalDateTime now = LocalDateTime.now(clock);
+        LocalDateTime minuteCutoff = RollupGranularity.MINUTE.floor(now).minus(RETENTION);
+        LocalDateTime hourCutoff = RollupGranularity.HOUR.floor(now.minus(RETENTION)).minusHours(1);
+
+        for (BucketKey key : counts.keySet()) {
+            if (key.getBucket().isBefore(minuteCutoff)) {
+                counts.computeIfPresent(key, (k, count) -> count.sum() == 0 ? null : count);
+            }
+        }
+
+        for (BucketKey key : sketches.keySet()) {
+            if (key.getBucket().isBefore(hourCutoff)) {
+                sketches.computeIfPresent(key, (k, sketch) -> changedSketches.contains(k) ? sketch : null);
+            }
+        }
+    }
+
+    private static HyperLogLog copy(HyperLogLog sketch) {
+        synchronized (sketch) {
+            return sketch.copy();
+        }
+    }
+
+    private static RoaringBitmap copy(RoaringBitmap bitmap) {
+        synchronized (bitmap) {
+            return bitmap.clone();
+        }
+    }
+
+    private static boolean covers(List<RollupSegment> segments, LocalDateTime bucket,
+                                  Predicate<RollupGranularity> granularities) {
+        for (RollupSegment segment : segments) {
+            if (!segment.isRaw() && granularities.test(segment.getGranularity())
+                    && !bucket.isBefore(segment.getStart()) && bucket.isBefore(segment.getEnd())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private EndpointKey toEndpointKey(BucketKey key) {
+        return new EndpointKey(dictionaryRepository.getAppName(key.getAppId()),
+                dictionaryRepository.getUriName(key.getUriId()));
+    }
+
+    private static Predicate<String> uriFilter(List<String> uris) {
+        return uris == null ? uri -> true : Set.copyOf(uris)::contains;
+    }
+}
@@ -0,0 +1,131 @@
+package ru.yandex.practicum.ewm.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.ewm.dto.EndpointHitDto;
+import ru.yandex.practicum.ewm.dto.EndpointHitsSummaryDto;
+import ru.yandex.practicum.ewm.dto.StatsSeriesDto;
+import ru.yandex.practicum.ewm.dto.ViewStatsDto;
+import ru.yandex.practicum.ewm.mapper.StatsMapper;
+import ru.yandex.practicum.ewm.model.EndpointHit;
+import ru.yandex.practicum.ewm.model.EndpointKey;
+import ru.yandex.practicum.ewm.model.RollupGranularity;
+import ru.yandex.practicum.ewm.model.StatsAggregate;
+import ru.yandex.practicum.ewm.repository.SegmentStore;
+import ru.yandex.practicum.ewm.util.HitAggregator;
+import ru.yandex.practicum.ewm.util.SeriesRequestParam;
+import ru.yandex.practicum.ewm.util.StatsRequestParam;
+import ru.yandex.practicum.ewm.util.TopStatsRequestParam;
+import ru.yandex.practicum.ewm.util.UriPatterns;
+import ru.yandex.practicum.ewm.validator.StatsRequestValidator;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Stats over the append-only segment store, selected by stats.storage=segment.
+ * Every query is a single scan of the segments that overlap the range, aggregated in memory
+ */
+@Service
+@ConditionalOnProperty(name = "stats.storage", havingValue = "segment")
+@RequiredArgsConstructor
+public class SegmentStatsService implements StatsService {
+
+    private final SegmentStore segmentStore;
+    private final HitDeduplicator hitDeduplicator;
+
+    @Override
+    public EndpointHitDto saveEndpointHit(EndpointHitDto endpointHitDto) {
+        EndpointHit endpointHit = StatsMapper.toEndpointHit(endpointHitDto);
+
+        if (hitDeduplicator.accept(endpointHit)) {
+            append(List.of(endpointHit));
+        }
+
+        return StatsMapper.toDto(endpointHit);
+    }
+
+    @Override
+    public EndpointHitsSummaryDto saveEndpointHits(List<EndpointHitDto> endpointHitDtos) {
+        List<EndpointHit> acceptedHits = hitDeduplicator.acceptAll(endpointHitDtos.stream()
+                .map(StatsMapper::toEndpointHit)
+                .collect(Collectors.toList()));
+
+        if (!acceptedHits.isEmpty()) {
+            append(acceptedHits);
+        }
+
+        return new EndpointHitsSummaryDto(acceptedHits.size(), endpointHitDtos.size() - acceptedHits.size());
+    }
+
+    private void append(List<EndpointHit> endpointHits) {
+        try {
+            segmentStore.append(endpointHits);
+        } catch (RuntimeException e) {
+            hitDeduplicator.forget(endpointHits);
+            throw e;
+        }
+    }
+
+    @Override
+    public List<ViewStatsDto> getStats(StatsRequestParam requestParam) {
+        StatsRequestValidator.validateRange(requestParam.getStart(), requestParam.getEnd());
+
+        Predicate<String> uriFilter = UriPatterns.filter(requestParam.getUris());
+
+        return aggregate(requestParam.getStart(), requestParam.getEnd(), uriFilter,
+                Objects.equals(Boolean.TRUE, requestParam.getUnique()),
+                Objects.equals(Boolean.TRUE, requestParam.getApproximate())).toViewStats();
+    }
+
+    /**
+     * Segments are aggregated in memory, so the stats are passed on once the scan is complete
+     */
+    @Override
+    public void streamStats(StatsRequestParam requestParam, Consumer<ViewStatsDto> consumer) {
+        getStats(requestParam).forEach(consumer);
+    }
+
+    @Override
+    public List<ViewStatsDto> getTopStats(TopStatsRequestParam requestParam) {
+        StatsRequestValidator.validateRange(requestParam.getStart(), requestParam.getEnd());
+
+        String prefix = requestParam.getPrefix() == null ? "" : requestParam.getPrefix();
+        StatsAggregate<?> aggregate = aggregate(requestParam.getStart(), requestParam.getEnd(),
+                uri -> uri.startsWith(prefix), Objects.equals(Boolean.TRUE, requestParam.getUnique()), false);
+
+        return aggregate.toTopViewStats(requestParam.getLimit());
+    }
+
+    @Override
+    public StatsSeriesDto getSeries(SeriesRequestParam requestParam) {
+        StatsRequestValidator.validateRange(requestParam.getStart(), requestParam.getEnd());
+
+        RollupGranularity granularity = StatsRequestValidator.parseGranularity(requestParam.getGranularity());
+        int buckets = StatsRequestValidator.countBuckets(granularity, requestParam.getStart(), requestParam.getEnd());
+        LocalDateTime first = granularity.floor(requestParam.getStart());
+        long firstMillis = SegmentStore.toMillis(first);
+        long bucketMillis = granularity.getUnit().getDuration().toMillis();
+        Map<EndpointKey, long[]> series = new HashMap<>();
+
+        segmentStore.scan(first, first.plus(buckets, granularity.getUnit()).minusNanos(1_000_000),
+                UriPatterns.filter(requestParam.getUris()),
+                (endpoint, timestamp, ipHigh, ipLow) -> series.computeIfAbsent(endpoint, key -> new long[buckets])
+                        [(int) ((timestamp - firstMillis) / bucketMillis)]++);
+
+        return StatsMapper.toSeriesDto(granularity, first, buckets, series);
+    }
+
+    private StatsAggregate<?> aggregate(LocalDateTime start, LocalDateTime end, Predicate<String> uriFilter,
+                                        boolean unique, boolean approximate) {
+        return HitAggregator.aggregate(visitor -> segmentStore.scan(start, end, uriFilter, visitor),
+                unique, approximate);
+    }
+}
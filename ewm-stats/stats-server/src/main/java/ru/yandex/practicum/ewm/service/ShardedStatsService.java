@@ -0,0 +1,220 @@
+package ru.yandex.practicum.ewm.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.ewm.config.ShardingProperties;
+import ru.yandex.practicum.ewm.dto.EndpointHitDto;
+import ru.yandex.practicum.ewm.dto.EndpointHitsSummaryDto;
+import ru.yandex.practicum.ewm.dto.StatsSeriesDto;
+import ru.yandex.practicum.ewm.dto.ViewStatsDto;
+import ru.yandex.practicum.ewm.mapper.StatsMapper;
+import ru.yandex.practicum.ewm.model.EndpointHit;
+import ru.yandex.practicum.ewm.model.EndpointKey;
+import ru.yandex.practicum.ewm.model.HitCountAggregate;
+import ru.yandex.practicum.ewm.model.RollupGranularity;
+import ru.yandex.practicum.ewm.model.StatsAggregate;
+import ru.yandex.practicum.ewm.repository.HitShard;
+import ru.yandex.practicum.ewm.repository.HitShards;
+import ru.yandex.practicum.ewm.util.SeriesRequestParam;
+import ru.yandex.practicum.ewm.util.StatsRequestParam;
+import ru.yandex.practicum.ewm.util.TopStatsRequestParam;
+import ru.yandex.practicum.ewm.validator.StatsRequestValidator;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Stats over several shard databases, selected by stats.storage=sharded.
+ * Hits are written to the shard of their app and uri, queries run on all shards in parallel
+ * and their partial aggregates are combined: counts are summed, sketches and visitor bitmaps are merged
+ */
+@Service
+@ConditionalOnProperty(name = "stats.storage", havingValue = "sharded")
+public class ShardedStatsService implements StatsService {
+
+    private final HitShards hitShards;
+    private final HitDeduplicator hitDeduplicator;
+    private final ExecutorService executor;
+    private final Duration timeout;
+
+    public ShardedStatsService(HitShards hitShards, HitDeduplicator hitDeduplicator, ShardingProperties properties) {
+        this.hitShards = hitShards;
+        this.hitDeduplicator = hitDeduplicator;
+        this.executor = Executors.newFixedThreadPool(properties.getThreads(),
+                new CustomizableThreadFactory("stats-shard-"));
+        this.timeout = properties.getTimeout();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public EndpointHitDto saveEndpointHit(EndpointHitDto endpointHitDto) {
+        EndpointHit endpointHit = StatsMapper.toEndpointHit(endpointHitDto);
+
+        if (hitDeduplicator.accept(endpointHit)) {
+            write(List.of(endpointHit));
+        }
+
+        return StatsMapper.toDto(endpointHit);
+    }
+
+    @Override
+    public EndpointHitsSummaryDto saveEndpointHits(List<EndpointHitDto> endpointHitDtos) {
+        List<EndpointHit> acceptedHits = hitDeduplicator.acceptAll(endpointHitDtos.stream()
+                .map(StatsMapper::toEndpointHit)
+                .collect(Collectors.toList()));
+
+        if (!acceptedHits.isEmpty()) {
+            write(acceptedHits);
+        }
+
+        return new EndpointHitsSummaryDto(acceptedHits.size(), endpointHitDtos.size() - acceptedHits.size());
+    }
+
+    /**
+     * Writes the hits of each shard in its own transaction. When a shard fails, the hits written to the other shards
+     * stay committed and only the hits of the failed shard may be sent again under the same hit ids
+     */
+    private void write(List<EndpointHit> endpointHits) {
+        Map<HitShard, List<EndpointHit>> hitsByShard = endpointHits.stream()
+                .collect(Collectors.groupingBy(endpointHit -> hitShards.route(endpointHit.getApp(),
+                        endpointHit.getUri()), LinkedHashMap::new, Collectors.toList()));
+
+        fanOut(hitsByShard.entrySet(), entry -> {
+            try {
+                entry.getKey().write(entry.getValue());
+                return null;
+            } catch (RuntimeException e) {
+                hitDeduplicator.forget(entry.getValue());
+                throw e;
+            }
+        });
+    }
+
+    @Override
+    public List<ViewStatsDto> getStats(StatsRequestParam requestParam) {
+        StatsRequestValidator.validateRange(requestParam.getStart(), requestParam.getEnd());
+
+        boolean unique = Objects.equals(Boolean.TRUE, requestParam.getUnique());
+        boolean approximate = Objects.equals(Boolean.TRUE, requestParam.getApproximate());
+        List<StatsAggregate<?>> aggregates = fanOut(hitShards.getShards(), shard -> shard.aggregate(
+                requestParam.getStart(), requestParam.getEnd(), requestParam.getUris(), unique, approximate));
+
+        StatsAggregate<?> aggregate = aggregates.get(0);
+        for (StatsAggregate<?> other : aggregates.subList(1, aggregates.size())) {
+            aggregate = aggregate.plus(other);
+        }
+
+        return aggregate.toViewStats();
+    }
+
+    /**
+     * Shards are combined in memory, so the stats are passed on once all shards have answered
+     */
+    @Override
+    public void streamStats(StatsRequestParam requestParam, Consumer<ViewStatsDto> consumer) {
+        getStats(requestParam).forEach(consumer);
+    }
+
+    /**
+     * Every shard returns its own top endpoints. An endpoint is counted on one shard only,
+     * so the top of all shards is among the tops of the single shards
+     */
+    @Override
+    public List<ViewStatsDto> getTopStats(TopStatsRequestParam requestParam) {
+        StatsRequestValidator.validateRange(requestParam.getStart(), requestParam.getEnd());
+
+        boolean unique = Objects.equals(Boolean.TRUE, requestParam.getUnique());
+        List<List<ViewStatsDto>> tops = fanOut(hitShards.getShards(), shard -> shard.findTopStats(
+                requestParam.getStart(), requestParam.getEnd(), requestParam.getPrefix(), requestParam.getLimit(),
+                unique));
+
+        return HitCountAggregate.of(tops.stream()
+                        .flatMap(List::stream)
+                        .collect(Collectors.toList()))
+                .toTopViewStats(requestParam.getLimit());
+    }
+
+    @Override
+    public StatsSeriesDto getSeries(SeriesRequestParam requestParam) {
+        StatsRequestValidator.validateRange(requestParam.getStart(), requestParam.getEnd());
+
+        RollupGranularity granularity = StatsRequestValidator.parseGranularity(requestParam.getGranularity());
+        int buckets = StatsRequestValidator.countBuckets(granularity, requestParam.getStart(), requestParam.getEnd());
+        LocalDateTime first = granularity.floor(requestParam.getStart());
+        Map<EndpointKey, long[]> series = new HashMap<>();
+
+        for (Map<EndpointKey, long[]> shardSeries : fanOut(hitShards.getShards(),
+                shard -> shard.findSeries(granularity, first, buckets, requestParam.getUris()))) {
+            shardSeries.forEach((key, counts) -> series.merge(key, counts, (value, other) -> {
+                for (int i = 0; i < buckets; i++) {
+                    value[i] += other[i];
+                }
+                return value;
+            }));
+        }
+
+        return StatsMapper.toSeriesDto(granularity, first, buckets, series);
+    }
+
+    /**
+     * Applies the task to every item on the shard executor and returns the results in the order of the items.
+     * A single item is handled on the calling thread. The first failure of a task is rethrown once all tasks
+     * have completed, tasks that are still running when the timeout expires are cancelled
+     */
+    private <T, R> List<R> fanOut(Collection<T> items, Function<T, R> task) {
+        if (items.size() == 1) {
+            return Collections.singletonList(task.apply(items.iterator().next()));
+        }
+
+        List<CompletableFuture<R>> futures = items.stream()
+                .map(item -> CompletableFuture.supplyAsync(() -> task.apply(item), executor))
+                .collect(Collectors.toList());
+
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                    .get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            throw new IllegalStateException("Shard request failed", cause);
+        } catch (TimeoutException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException(String.format("Shards did not answer within %s", timeout));
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the shards", e);
+        }
+
+        return futures.stream()
+                .map(CompletableFuture::join)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,208 @@
+package ru.yandex.practicum.ewm.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.practicum.ewm.config.CacheProperties;
+import ru.yandex.practicum.ewm.dto.ViewStatsDto;
+import ru.yandex.practicum.ewm.model.EndpointHit;
+import ru.yandex.practicum.ewm.model.RollupGranularity;
+import ru.yandex.practicum.ewm.model.StatsAggregate;
+import ru.yandex.practicum.ewm.replica.ReplicaProperties;
+import ru.yandex.practicum.ewm.util.StatsRequestParam;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Cache of stats aggregates keyed by uris, uniqueness and start of the range.
+ * An entry covers [start, watermark), where the watermark is a minute boundary at least the settle delay in the past.
+ * A later request extends the entry by counting only the hits between the cached and the current watermark,
+ * the hits after the current watermark are always counted fresh and are not cached.
+ * Hits older than a watermark that was already used are late, they invalidate the entries whose range contains them.
+ * When reads go to a replica, aggregates loaded within the maximum replication lag after an invalidation
+ * may miss the late hits and are not cached, nor are aggregates that are not cacheable.
+ * The cache is bounded by the approximate heap size of the aggregates
+ */
+@Component
+public class StatsCache {
+
+    private final CacheProperties properties;
+    private final Duration replicaLag;
+    private final Clock clock;
+    private final Cache<Key, Entry> cache;
+    private final AtomicReference<LocalDateTime> highestWatermark = new AtomicReference<>(LocalDateTime.MIN);
+    private final AtomicLong invalidations = new AtomicLong();
+    private volatile LocalDateTime lastInvalidation = LocalDateTime.MIN;
+    private final Counter extensions;
+    private final Counter lateHits;
+
+    @Autowired
+    public StatsCache(CacheProperties properties, ReplicaProperties replicaProperties, MeterRegistry meterRegistry) {
+        this(properties, replicaProperties.isEnabled() ? replicaProperties.getMaxLag() : Duration.ZERO, meterRegistry,
+                Clock.systemDefaultZone());
+    }
+
+    StatsCache(CacheProperties properties, Duration replicaLag, MeterRegistry meterRegistry, Clock clock) {
+        this.properties = properties;
+        this.replicaLag = replicaLag;
+        this.clock = clock;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaxSize().toBytes())
+                .weigher((Key key, Entry entry) -> (int) Math.min(Integer.MAX_VALUE, entry.getAggregate().weight()))
+                .expireAfterAccess(properties.getExpireAfterAccess())
+                .recordStats()
+                .build();
+        this.extensions = Counter.builder("stats.cache.extensions")
+                .description("Cached aggregates extended with newer hits")
+                .register(meterRegistry);
+        this.lateHits = Counter.builder("stats.cache.late.hits")
+                .description("Written hits older than a cached watermark")
+                .register(meterRegistry);
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "stats");
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Returns the stats of the requested range from the cached aggregate extended with the hits after its watermark
+     *
+     * @param requestParam
+     * @param loader       computes the aggregate of a range from the database
+     * @return list of endpoints hits
+     */
+    public List<ViewStatsDto> getStats(StatsRequestParam requestParam, Loader loader) {
+        LocalDateTime start = requestParam.getStart();
+        LocalDateTime end = requestParam.getEnd();
+        LocalDateTime now = LocalDateTime.now(clock);
+        LocalDateTime settled = now.minus(properties.getSettleDelay());
+        LocalDateTime watermark = RollupGranularity.MINUTE.floor(end.isBefore(settled) ? end : settled);
+
+        if (!watermark.isAfter(start)) {
+            return loader.load(start, end, true).toViewStats();
+        }
+
+        // announced before reading, so a hit committed after this point and older than the watermark is late
+        highestWatermark.accumulateAndGet(watermark, (a, b) -> a.isAfter(b) ? a : b);
+        long epoch = invalidations.get();
+
+        Key key = new Key(requestParam);
+        Entry cached = cache.getIfPresent(key);
+        StatsAggregate<?> aggregate;
+
+        if (cached != null && !cached.getWatermark().isAfter(watermark)) {
+            aggregate = cached.getAggregate();
+
+            if (cached.getWatermark().isBefore(watermark)) {
+                aggregate = aggregate.plus(loader.load(cached.getWatermark(), watermark, false));
+                extensions.increment();
+            }
+        } else {
+            aggregate = loader.load(start, watermark, false);
+        }
+
+        if ((cached == null || cached.getWatermark().isBefore(watermark)) && aggregate.isCacheable()
+                && !lastInvalidation.plus(replicaLag).isAfter(now)) {
+            Entry entry = new Entry(watermark, aggregate);
+            cache.asMap().merge(key, entry, (old, fresh) -> old.getWatermark().isAfter(fresh.getWatermark()) ? old : fresh);
+
+            if (invalidations.get() != epoch) {
+                cache.asMap().remove(key, entry);
+            }
+        }
+
+        return aggregate.plus(loader.load(watermark, end, true)).toViewStats();
+    }
+
+    /**
+     * Invalidates the entries whose range contains committed hits older than their watermark
+     *
+     * @param event
+     */
+    @TransactionalEventListener
+    public void onHitsWritten(HitsWrittenEvent event) {
+        LocalDateTime highest = highestWatermark.get();
+        List<EndpointHit> late = event.getEndpointHits().stream()
+                .filter(endpointHit -> endpointHit.getTimestamp().isBefore(highest))
+                .collect(Collectors.toList());
+
+        if (late.isEmpty()) {
+            return;
+        }
+
+        invalidations.incrementAndGet();
+        lastInvalidation = LocalDateTime.now(clock);
+        lateHits.increment(late.size());
+
+        cache.asMap().entrySet().removeIf(entry -> late.stream().anyMatch(endpointHit ->
+                entry.getKey().contains(endpointHit) && endpointHit.getTimestamp().isBefore(entry.getValue().getWatermark())));
+    }
+
+    void cleanUp() {
+        cache.cleanUp();
+    }
+
+    long size() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * Computes the aggregate of [start, end] or [start, end)
+     */
+    @FunctionalInterface
+    public interface Loader {
+
+        StatsAggregate<?> load(LocalDateTime start, LocalDateTime end, boolean endInclusive);
+    }
+
+    @EqualsAndHashCode
+    private static final class Key {
+
+        private final List<String> uris;
+
+        private final boolean unique;
+
+        private final boolean approximate;
+
+        private final LocalDateTime start;
+
+        Key(StatsRequestParam requestParam) {
+            this.uris = requestParam.getUris() == null
+                    ? null
+                    : requestParam.getUris().stream().distinct().sorted().collect(Collectors.toList());
+            this.unique = Objects.equals(Boolean.TRUE, requestParam.getUnique());
+            this.approximate = unique && Objects.equals(Boolean.TRUE, requestParam.getApproximate());
+            this.start = requestParam.getStart();
+        }
+
+        boolean contains(EndpointHit endpointHit) {
+            return !endpointHit.getTimestamp().isBefore(start) && (uris == null || uris.contains(endpointHit.getUri()));
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static final class Entry {
+
+        private final LocalDateTime watermark;
+
+        private final StatsAggregate<?> aggregate;
+    }
+}
@@ -1,27 +1,72 @@
 package ru.yandex.practicum.ewm.service;
 
 import ru.yandex.practicum.ewm.dto.EndpointHitDto;
+import ru.yandex.practicum.ewm.dto.EndpointHitsSummaryDto;
+import ru.yandex.practicum.ewm.dto.StatsSeriesDto;
 import ru.yandex.practicum.ewm.dto.ViewStatsDto;
+import ru.yandex.practicum.ewm.util.SeriesRequestParam;
 import ru.yandex.practicum.ewm.util.StatsRequestParam;
+import ru.yandex.practicum.ewm.util.TopStatsRequestParam;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface StatsService {
 
     /**
      * Creates a new endpoint hit
+     * In buffered ingest mode the hit is written by a background group commit and its id is not returned
      *
      * @param endpointHitDto
      * @return new endpoint hit
      */
     EndpointHitDto saveEndpointHit(EndpointHitDto endpointHitDto);
 
+    /**
+     * Creates endpoint hits in a single transaction using batched inserts
+     *
+     * @param endpointHitDtos
+     * @return summary of the saved batch
+     */
+    EndpointHitsSummaryDto saveEndpointHits(List<EndpointHitDto> endpointHitDtos);
+
     /**
      * Returns statistics on endpoints
      * If the start date and time is greater than the end date and time throws NotFoundException
+     * Non-unique counts are read from the coarsest aligned rollup buckets and raw hits only at the range edges
+     * Approximate unique counts merge HyperLogLog sketches and have a standard error of about 1.6%,
+     * exact unique counts are computed over raw hits
      *
      * @param requestParam
      * @return list of endpoints hits
      */
     List<ViewStatsDto> getStats(StatsRequestParam requestParam);
+
+    /**
+     * Passes statistics on endpoints to the consumer one by one as they are read from the database, most viewed first
+     * Non-unique and exact unique counts are read from a forward-only cursor and are never held in memory as a whole,
+     * approximate unique counts merge sketches in memory and are passed on once merged
+     *
+     * @param requestParam
+     * @param consumer
+     */
+    void streamStats(StatsRequestParam requestParam, Consumer<ViewStatsDto> consumer);
+
+    /**
+     * Returns the most viewed endpoints, most viewed first
+     * Only the requested number of rows is kept and returned, the other groups are never sorted
+     *
+     * @param requestParam
+     * @return list of endpoints hits
+     */
+    List<ViewStatsDto> getTopStats(TopStatsRequestParam requestParam);
+
+    /**
+     * Returns the number of hits per minute, hour or day bucket of the given uris, most viewed uris first
+     * The buckets containing the start and the end of the range are counted as a whole
+     *
+     * @param requestParam
+     * @return bucket starts and hits per bucket
+     */
+    StatsSeriesDto getSeries(SeriesRequestParam requestParam);
 }
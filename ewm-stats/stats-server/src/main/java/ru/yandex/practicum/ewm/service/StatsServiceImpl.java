@@ -1,81 +1,378 @@
 package ru.yandex.practicum.ewm.service;
 
-import com.querydsl.core.types.Projections;
-import com.querydsl.core.types.dsl.BooleanExpression;
-import com.querydsl.core.types.dsl.NumberExpression;
-import com.querydsl.jpa.impl.JPAQueryFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.ewm.dto.EndpointHitDto;
+import ru.yandex.practicum.ewm.dto.EndpointHitsSummaryDto;
+import ru.yandex.practicum.ewm.dto.StatsSeriesDto;
 import ru.yandex.practicum.ewm.dto.ViewStatsDto;
 import ru.yandex.practicum.ewm.mapper.StatsMapper;
-import ru.yandex.practicum.ewm.model.QEndpointHit;
-import ru.yandex.practicum.ewm.repository.StatsRepository;
+import ru.yandex.practicum.ewm.model.EndpointHit;
+import ru.yandex.practicum.ewm.model.EndpointKey;
+import ru.yandex.practicum.ewm.model.HitCountAggregate;
+import ru.yandex.practicum.ewm.model.RollupGranularity;
+import ru.yandex.practicum.ewm.model.RollupSegment;
+import ru.yandex.practicum.ewm.model.StatsAggregate;
+import ru.yandex.practicum.ewm.repository.DictionaryRepository;
+import ru.yandex.practicum.ewm.repository.RollupRepository;
+import ru.yandex.practicum.ewm.util.RollupPlanner;
+import ru.yandex.practicum.ewm.util.SeriesRequestParam;
 import ru.yandex.practicum.ewm.util.StatsRequestParam;
-import ru.yandex.practicum.ewm.validator.ValidationException;
+import ru.yandex.practicum.ewm.util.TopStatsRequestParam;
+import ru.yandex.practicum.ewm.util.UriPatterns;
+import ru.yandex.practicum.ewm.validator.StatsRequestValidator;
 
-import javax.persistence.EntityManager;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Service
-@Transactional
+@ConditionalOnProperty(name = "stats.storage", havingValue = "database", matchIfMissing = true)
 public class StatsServiceImpl implements StatsService {
 
-    private final StatsRepository statsRepository;
-    private final JPAQueryFactory queryFactory;
+    private final EndpointHitWriter endpointHitWriter;
+    private final HitWriteBuffer hitWriteBuffer;
+    private final RollupRepository rollupRepository;
+    private final DictionaryRepository dictionaryRepository;
+    private final StatsCache statsCache;
+    private final HitsArchive hitsArchive;
+    private final LiveCounters liveCounters;
+    private final HitDeduplicator hitDeduplicator;
+    private final MeterRegistry meterRegistry;
+    private final Counter receivedHits;
+    private final Counter receivedBatchHits;
+    private final DistributionSummary batchSize;
+    private final Timer insertTimer;
+    private final Timer batchInsertTimer;
 
-    public StatsServiceImpl(StatsRepository statsRepository, EntityManager entityManager) {
-        this.statsRepository = statsRepository;
-        this.queryFactory = new JPAQueryFactory(entityManager);
+    public StatsServiceImpl(EndpointHitWriter endpointHitWriter, HitWriteBuffer hitWriteBuffer,
+                            RollupRepository rollupRepository, DictionaryRepository dictionaryRepository,
+                            StatsCache statsCache, HitsArchive hitsArchive, LiveCounters liveCounters,
+                            HitDeduplicator hitDeduplicator, MeterRegistry meterRegistry) {
+        this.endpointHitWriter = endpointHitWriter;
+        this.hitWriteBuffer = hitWriteBuffer;
+        this.rollupRepository = rollupRepository;
+        this.dictionaryRepository = dictionaryRepository;
+        this.statsCache = statsCache;
+        this.hitsArchive = hitsArchive;
+        this.liveCounters = liveCounters;
+        this.hitDeduplicator = hitDeduplicator;
+        this.meterRegistry = meterRegistry;
+
+        this.receivedHits = receivedHitsCounter(false);
+        this.receivedBatchHits = receivedHitsCounter(true);
+        this.batchSize = DistributionSummary.builder("stats.ingest.batch.size")
+                .description("Number of hits in one batch request")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.insertTimer = insertTimer(false);
+        this.batchInsertTimer = insertTimer(true);
     }
 
     @Override
     public EndpointHitDto saveEndpointHit(EndpointHitDto endpointHitDto) {
-        return StatsMapper.toDto(statsRepository.save(StatsMapper.toEndpointHit(endpointHitDto)));
+        EndpointHit endpointHit = StatsMapper.toEndpointHit(endpointHitDto);
+        receivedHits.increment();
+
+        if (!hitDeduplicator.accept(endpointHit)) {
+            return StatsMapper.toDto(endpointHit);
+        }
+
+        try {
+            dictionaryRepository.encode(List.of(endpointHit));
+
+            if (hitWriteBuffer.isEnabled()) {
+                hitWriteBuffer.submit(endpointHit);
+                return StatsMapper.toDto(endpointHit);
+            }
+
+            return StatsMapper.toDto(insertTimer.record(() -> endpointHitWriter.write(endpointHit)));
+        } catch (HitWriteTimeoutException e) {
+            e.getPendingWrite().whenComplete((ignored, error) -> {
+                if (error != null) {
+                    hitDeduplicator.forget(List.of(endpointHit));
+                }
+            });
+            throw e;
+        } catch (RuntimeException e) {
+            hitDeduplicator.forget(List.of(endpointHit));
+            throw e;
+        }
+    }
+
+    @Override
+    public EndpointHitsSummaryDto saveEndpointHits(List<EndpointHitDto> endpointHitDtos) {
+        List<EndpointHit> endpointHits = endpointHitDtos.stream()
+                .map(StatsMapper::toEndpointHit)
+                .collect(Collectors.toList());
+
+        receivedBatchHits.increment(endpointHits.size());
+        batchSize.record(endpointHits.size());
+
+        List<EndpointHit> acceptedHits = hitDeduplicator.acceptAll(endpointHits);
+
+        if (!acceptedHits.isEmpty()) {
+            try {
+                dictionaryRepository.encode(acceptedHits);
+                batchInsertTimer.record(() -> endpointHitWriter.writeAll(acceptedHits));
+            } catch (RuntimeException e) {
+                hitDeduplicator.forget(acceptedHits);
+                throw e;
+            }
+        }
+
+        return new EndpointHitsSummaryDto(acceptedHits.size(), endpointHits.size() - acceptedHits.size());
     }
 
     @Transactional(readOnly = true)
     @Override
     public List<ViewStatsDto> getStats(StatsRequestParam requestParam) {
-        if (requestParam.getStart().isAfter(requestParam.getEnd())) {
-            throw new ValidationException(String.format("The start of the range must be before the end of the range"));
+        StatsRequestValidator.validateRange(requestParam.getStart(), requestParam.getEnd());
+
+        StatsRequestParam resolvedParam = resolveUris(requestParam);
+        List<ViewStatsDto> stats = queryTimer("stats", requestParam.getUnique(), requestParam.getApproximate(),
+                requestParam.getUris()).record(() -> findStats(resolvedParam));
+        resultSize("stats").record(stats.size());
+
+        return stats;
+    }
+
+    @Transactional(readOnly = true)
+    @Override
+    public void streamStats(StatsRequestParam requestParam, Consumer<ViewStatsDto> consumer) {
+        StatsRequestValidator.validateRange(requestParam.getStart(), requestParam.getEnd());
+
+        StatsRequestParam resolvedParam = resolveUris(requestParam);
+        long[] results = new long[1];
+        Consumer<ViewStatsDto> countingConsumer = consumer.andThen(viewStatsDto -> results[0]++);
+
+        queryTimer("stream", requestParam.getUnique(), requestParam.getApproximate(), requestParam.getUris())
+                .record(() -> findStats(resolvedParam, countingConsumer));
+        resultSize("stream").record(results[0]);
+    }
+
+    @Transactional(readOnly = true)
+    @Override
+    public List<ViewStatsDto> getTopStats(TopStatsRequestParam requestParam) {
+        StatsRequestValidator.validateRange(requestParam.getStart(), requestParam.getEnd());
+
+        List<ViewStatsDto> stats = queryTimer("top", requestParam.getUnique(), false, null)
+                .record(() -> findTopStats(requestParam));
+        resultSize("top").record(stats.size());
+
+        return stats;
+    }
+
+    private List<ViewStatsDto> findStats(StatsRequestParam requestParam) {
+        if (statsCache.isEnabled()) {
+            return statsCache.getStats(requestParam, (start, end, endInclusive) ->
+                    getAggregate(requestParam, start, end, endInclusive));
+        }
+
+        if (needsAggregate(requestParam.getStart(), true)) {
+            return getAggregate(requestParam, requestParam.getStart(), requestParam.getEnd(), true).toViewStats();
+        }
+
+        if (!Objects.equals(Boolean.TRUE, requestParam.getUnique())) {
+            return rollupRepository.findStats(
+                    RollupPlanner.plan(requestParam.getStart(), requestParam.getEnd()), requestParam.getUris());
+        }
+
+        if (Objects.equals(Boolean.TRUE, requestParam.getApproximate())) {
+            return rollupRepository.findApproximateUniqueStats(
+                    RollupPlanner.plan(requestParam.getStart(), requestParam.getEnd()), requestParam.getUris());
+        }
+
+        return rollupRepository.findVisitors(
+                RollupPlanner.plan(requestParam.getStart(), requestParam.getEnd()), requestParam.getUris())
+                .toViewStats();
+    }
+
+    private void findStats(StatsRequestParam requestParam, Consumer<ViewStatsDto> consumer) {
+        if (needsAggregate(requestParam.getStart(), true)) {
+            findStats(requestParam).forEach(consumer);
+            return;
+        }
+
+        if (!Objects.equals(Boolean.TRUE, requestParam.getUnique())) {
+            rollupRepository.streamStats(RollupPlanner.plan(requestParam.getStart(), requestParam.getEnd()),
+                    requestParam.getUris(), consumer);
+            return;
+        }
+
+        if (Objects.equals(Boolean.TRUE, requestParam.getApproximate())) {
+            rollupRepository.findApproximateUniqueStats(
+                    RollupPlanner.plan(requestParam.getStart(), requestParam.getEnd()), requestParam.getUris())
+                    .forEach(consumer);
+            return;
+        }
+
+        rollupRepository.findVisitors(RollupPlanner.plan(requestParam.getStart(), requestParam.getEnd()),
+                requestParam.getUris()).toViewStats().forEach(consumer);
+    }
+
+    private List<ViewStatsDto> findTopStats(TopStatsRequestParam requestParam) {
+        if (needsAggregate(requestParam.getStart(), !Objects.equals(Boolean.TRUE, requestParam.getUnique()))) {
+            String prefix = requestParam.getPrefix() == null ? "" : requestParam.getPrefix();
+            StatsRequestParam statsParam = StatsRequestParam.builder()
+                    .start(requestParam.getStart())
+                    .end(requestParam.getEnd())
+                    .unique(requestParam.getUnique())
+                    .approximate(false)
+                    .build();
+
+            return getAggregate(statsParam, requestParam.getStart(), requestParam.getEnd(), true)
+                    .filter(key -> key.getUri().startsWith(prefix))
+                    .toTopViewStats(requestParam.getLimit());
         }
 
-        NumberExpression<Long> count = QEndpointHit.endpointHit.ip.count();
         if (Objects.equals(Boolean.TRUE, requestParam.getUnique())) {
-            count = QEndpointHit.endpointHit.ip.countDistinct();
+            return rollupRepository.findTopUniqueStats(requestParam.getStart(), requestParam.getEnd(),
+                    requestParam.getPrefix(), requestParam.getLimit());
+        }
+
+        return rollupRepository.findTopStats(RollupPlanner.plan(requestParam.getStart(), requestParam.getEnd()),
+                requestParam.getPrefix(), requestParam.getLimit());
+    }
+
+    /**
+     * Series are read from the rollups only, which keep the counts of archived hits, and the live counters
+     */
+    @Transactional(readOnly = true)
+    @Override
+    public StatsSeriesDto getSeries(SeriesRequestParam requestParam) {
+        StatsRequestValidator.validateRange(requestParam.getStart(), requestParam.getEnd());
+
+        RollupGranularity granularity = StatsRequestValidator.parseGranularity(requestParam.getGranularity());
+        int buckets = StatsRequestValidator.countBuckets(granularity, requestParam.getStart(), requestParam.getEnd());
+        LocalDateTime first = granularity.floor(requestParam.getStart());
+        List<String> uris = UriPatterns.hasPatterns(requestParam.getUris())
+                ? dictionaryRepository.expandUris(requestParam.getUris())
+                : requestParam.getUris();
+
+        Map<EndpointKey, long[]> series = liveCounters.read(() -> {
+            Map<EndpointKey, long[]> rollupSeries = rollupRepository.findSeries(granularity, first, buckets, uris);
+            liveCounters.addToSeries(granularity, first, buckets, uris, rollupSeries);
+            return rollupSeries;
+        });
+
+        return StatsMapper.toSeriesDto(granularity, first, buckets, series);
+    }
+
+    /**
+     * Returns the request with its uri patterns replaced by the known uris that match them
+     */
+    private StatsRequestParam resolveUris(StatsRequestParam requestParam) {
+        if (!UriPatterns.hasPatterns(requestParam.getUris())) {
+            return requestParam;
+        }
+
+        return StatsRequestParam.builder()
+                .start(requestParam.getStart())
+                .end(requestParam.getEnd())
+                .uris(dictionaryRepository.expandUris(requestParam.getUris()))
+                .unique(requestParam.getUnique())
+                .approximate(requestParam.getApproximate())
+                .build();
+    }
+
+    private Counter receivedHitsCounter(boolean batch) {
+        return Counter.builder("stats.ingest.hits")
+                .description("Number of hits received")
+                .tag("batch", String.valueOf(batch))
+                .register(meterRegistry);
+    }
+
+    private Timer insertTimer(boolean batch) {
+        return Timer.builder("stats.ingest.insert")
+                .description("Latency of writing hits and their rollups in one transaction")
+                .tag("batch", String.valueOf(batch))
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the latency timer of a query. The number of requested uris is tagged by range
+     * to keep the number of time series bounded
+     */
+    private Timer queryTimer(String query, Boolean unique, Boolean approximate, List<String> uris) {
+        String uriCount;
+
+        if (uris == null) {
+            uriCount = "all";
+        } else if (uris.size() <= 1) {
+            uriCount = "1";
+        } else if (uris.size() <= 10) {
+            uriCount = "2-10";
+        } else if (uris.size() <= 100) {
+            uriCount = "11-100";
+        } else {
+            uriCount = "101+";
         }
 
-        return queryFactory.select(
-                Projections.constructor(
-                        ViewStatsDto.class,
-                        QEndpointHit.endpointHit.app,
-                        QEndpointHit.endpointHit.uri,
-                        count))
-                .from(QEndpointHit.endpointHit)
-                .where(getCondition(requestParam.getStart(), requestParam.getEnd(), requestParam.getUris()))
-                .groupBy(QEndpointHit.endpointHit.app, QEndpointHit.endpointHit.uri)
-                .orderBy(count.desc())
-                .fetch();
+        return Timer.builder("stats.query")
+                .description("Latency of stats queries")
+                .tag("query", query)
+                .tag("unique", String.valueOf(Objects.equals(Boolean.TRUE, unique)))
+                .tag("approximate", String.valueOf(Objects.equals(Boolean.TRUE, approximate)))
+                .tag("uris", uriCount)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
     }
 
-    private BooleanExpression getCondition(LocalDateTime start, LocalDateTime end, List<String> uris) {
-        List<BooleanExpression> conditions = new ArrayList<>();
+    private DistributionSummary resultSize(String query) {
+        return DistributionSummary.builder("stats.query.results")
+                .description("Number of rows in the response of a stats query")
+                .tag("query", query)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private StatsAggregate<?> getAggregate(StatsRequestParam requestParam, LocalDateTime start, LocalDateTime end,
+                                           boolean endInclusive) {
+        StatsAggregate<?> aggregate = getDatabaseAggregate(requestParam, start, end, endInclusive);
+
+        if (hitsArchive.reaches(start)) {
+            aggregate = aggregate.plus(hitsArchive.aggregate(start, end, endInclusive, requestParam.getUris(),
+                    Objects.equals(Boolean.TRUE, requestParam.getUnique()),
+                    Objects.equals(Boolean.TRUE, requestParam.getApproximate())));
+        }
+
+        return aggregate;
+    }
+
+    private StatsAggregate<?> getDatabaseAggregate(StatsRequestParam requestParam, LocalDateTime start,
+                                                   LocalDateTime end, boolean endInclusive) {
+        List<RollupSegment> segments = RollupPlanner.plan(start, end, endInclusive);
 
-        conditions.add(QEndpointHit.endpointHit.timestamp.after(start)
-                .or(QEndpointHit.endpointHit.timestamp.eq(start)));
-        conditions.add(QEndpointHit.endpointHit.timestamp.before(end)
-                .or(QEndpointHit.endpointHit.timestamp.eq(end)));
+        if (!Objects.equals(Boolean.TRUE, requestParam.getUnique())) {
+            return liveCounters.read(() -> HitCountAggregate.of(rollupRepository.findStats(segments,
+                    requestParam.getUris())).plus(liveCounters.getHitCounts(segments, requestParam.getUris())));
+        }
 
-        if (uris != null) {
-            conditions.add(QEndpointHit.endpointHit.uri.in(uris));
+        if (Objects.equals(Boolean.TRUE, requestParam.getApproximate())) {
+            return liveCounters.read(() -> rollupRepository.findSketches(segments, requestParam.getUris())
+                    .plus(liveCounters.getSketches(segments, requestParam.getUris())));
         }
 
-        return conditions.stream()
-                .reduce(BooleanExpression::and)
-                .orElse(null);
+        return liveCounters.read(() -> rollupRepository.findVisitors(segments, requestParam.getUris())
+                .plus(liveCounters.getVisitors(segments, requestParam.getUris())));
+    }
+
+    /**
+     * Returns whether a query has to combine the database with the archive, or with the live counters
+     * when it reads the rollups, instead of letting the database group and sort the result.
+     * Stats read the rollups of every kind, exact unique top stats read the raw hits only
+     */
+    private boolean needsAggregate(LocalDateTime start, boolean readsRollups) {
+        return hitsArchive.reaches(start) || readsRollups && liveCounters.isEnabled();
     }
 }
@@ -0,0 +1,76 @@
+package ru.yandex.practicum.ewm.util;
+
+import java.time.Duration;
+
+/**
+ * Limits the number of requests in flight and adapts the limit in the AIMD way: the limit grows by one per limit's
+ * worth of requests that completed in time while at least half of it was used, and is multiplied by the backoff ratio
+ * when a request fails or exceeds the timeout. Requests that started before the last backoff do not trigger another
+ * one, so a burst of slow requests shrinks the limit once rather than once per request
+ */
+public class ConcurrencyLimiter {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long timeoutNanos;
+
+    private double limit;
+    private int inFlight;
+    private long lastBackoff = Long.MIN_VALUE;
+
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio, Duration timeout) {
+        if (minLimit < 1 || minLimit > maxLimit || backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= min <= max and the backoff ratio must be "
+                    + "in (0, 1), got min " + minLimit + ", max " + maxLimit + ", ratio " + backoffRatio);
+        }
+
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.timeoutNanos = timeout.toNanos();
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Takes a slot if fewer requests than the limit are in flight
+     *
+     * @return true if the request may proceed and has to be released afterwards
+     */
+    public synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            return false;
+        }
+
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Returns the slot of a completed request and adapts the limit to its outcome
+     *
+     * @param startNanos {@link System#nanoTime()} when the request was admitted
+     * @param endNanos   {@link System#nanoTime()} when the request completed
+     * @param failed     whether the request failed on the server side
+     */
+    public synchronized void release(long startNanos, long endNanos, boolean failed) {
+        int used = inFlight--;
+
+        if (failed || endNanos - startNanos > timeoutNanos) {
+            if (startNanos - lastBackoff > 0 || lastBackoff == Long.MIN_VALUE) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+                lastBackoff = endNanos;
+            }
+        } else if (used * 2 >= (int) limit) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+}
@@ -0,0 +1,62 @@
+package ru.yandex.practicum.ewm.util;
+
+import lombok.experimental.UtilityClass;
+import ru.yandex.practicum.ewm.model.DistinctIpAggregate;
+import ru.yandex.practicum.ewm.model.EndpointKey;
+import ru.yandex.practicum.ewm.model.HitCountAggregate;
+import ru.yandex.practicum.ewm.model.SketchAggregate;
+import ru.yandex.practicum.ewm.model.StatsAggregate;
+import ru.yandex.practicum.ewm.repository.HitVisitor;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+@UtilityClass
+public class HitAggregator {
+
+    /**
+     * Aggregates the hits of a scan over hit files in memory
+     *
+     * @param scan        runs the scan with the given visitor
+     * @param unique      whether distinct IPs are counted instead of hits
+     * @param approximate whether distinct IPs are estimated with sketches
+     * @return hit counts, distinct IPs or sketches per app and uri
+     */
+    public StatsAggregate<?> aggregate(Consumer<HitVisitor> scan, boolean unique, boolean approximate) {
+        if (!unique) {
+            Map<EndpointKey, long[]> counts = new HashMap<>();
+
+            scan.accept((endpoint, timestamp, ipHigh, ipLow) ->
+                    counts.computeIfAbsent(endpoint, key -> new long[1])[0]++);
+
+            return new HitCountAggregate(counts.entrySet().stream()
+                    .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue()[0])));
+        }
+
+        if (approximate) {
+            Map<EndpointKey, HyperLogLog> sketches = new HashMap<>();
+            byte[] ip = new byte[IpAddressUtils.LENGTH];
+            ByteBuffer ipBuffer = ByteBuffer.wrap(ip);
+
+            scan.accept((endpoint, timestamp, ipHigh, ipLow) -> {
+                ipBuffer.putLong(0, ipHigh).putLong(8, ipLow);
+                sketches.computeIfAbsent(endpoint, key -> new HyperLogLog()).add(ip);
+            });
+
+            return new SketchAggregate(sketches);
+        }
+
+        Map<EndpointKey, Set<ByteBuffer>> ips = new HashMap<>();
+
+        scan.accept((endpoint, timestamp, ipHigh, ipLow) ->
+                ips.computeIfAbsent(endpoint, key -> new HashSet<>())
+                        .add(ByteBuffer.allocate(IpAddressUtils.LENGTH).putLong(0, ipHigh).putLong(8, ipLow)));
+
+        return new DistinctIpAggregate(ips);
+    }
+}
@@ -0,0 +1,183 @@
+package ru.yandex.practicum.ewm.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Mergeable HyperLogLog sketch for approximate distinct counting.
+ * Uses 2^12 registers, so the standard error of the estimate is 1.04 / sqrt(4096) ~ 1.6%,
+ * i.e. about 95% of estimates are within 3.3% of the exact number of distinct values.
+ * Small cardinalities are estimated with linear counting and are exact in practice.
+ * Sketches are serialized sparsely while few registers are set and as a dense register array afterwards
+ */
+public class HyperLogLog {
+
+    public static final int PRECISION = 12;
+
+    private static final int REGISTERS = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+    private static final byte SPARSE = 1;
+    private static final byte DENSE = 2;
+    private static final int HEADER_SIZE = 2;
+    private static final int SPARSE_ENTRY_SIZE = 3;
+
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this.registers = new byte[REGISTERS];
+    }
+
+    private HyperLogLog(byte[] registers) {
+        this.registers = registers;
+    }
+
+    /**
+     * Adds a value to the sketch
+     *
+     * @param value
+     */
+    public void add(byte[] value) {
+        addHash(hash(value));
+    }
+
+    /**
+     * Adds a value to the sketch
+     *
+     * @param value
+     */
+    public void add(String value) {
+        add(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Adds all values of another sketch to this one
+     *
+     * @param other
+     * @return this sketch
+     */
+    public HyperLogLog merge(HyperLogLog other) {
+        for (int i = 0; i < REGISTERS; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * Returns an independent copy of the sketch
+     *
+     * @return copy of the sketch
+     */
+    public HyperLogLog copy() {
+        return new HyperLogLog(registers.clone());
+    }
+
+    /**
+     * Returns the estimated number of distinct values added to the sketch
+     *
+     * @return estimated cardinality
+     */
+    public long cardinality() {
+        double sum = 0;
+        int zeros = 0;
+
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+
+        return Math.round(estimate);
+    }
+
+    public byte[] toBytes() {
+        int nonZero = 0;
+        for (byte register : registers) {
+            if (register != 0) {
+                nonZero++;
+            }
+        }
+
+        if (nonZero * SPARSE_ENTRY_SIZE >= REGISTERS) {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + REGISTERS);
+            buffer.put(DENSE).put((byte) PRECISION).put(registers);
+            return buffer.array();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + nonZero * SPARSE_ENTRY_SIZE);
+        buffer.put(SPARSE).put((byte) PRECISION);
+
+        for (int i = 0; i < REGISTERS; i++) {
+            if (registers[i] != 0) {
+                buffer.putShort((short) i).put(registers[i]);
+            }
+        }
+
+        return buffer.array();
+    }
+
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        byte format = buffer.get();
+
+        if (buffer.get() != PRECISION) {
+            throw new IllegalArgumentException("Unsupported sketch precision");
+        }
+
+        byte[] registers = new byte[REGISTERS];
+
+        if (format == DENSE) {
+            buffer.get(registers);
+        } else if (format == SPARSE) {
+            while (buffer.hasRemaining()) {
+                int index = Short.toUnsignedInt(buffer.getShort());
+                registers[index] = buffer.get();
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown sketch format: " + format);
+        }
+
+        return new HyperLogLog(registers);
+    }
+
+    private void addHash(long hash) {
+        int index = (int) (hash >>> (Long.SIZE - PRECISION));
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1);
+
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    /**
+     * Returns the 64-bit FNV-1a hash of the value followed by the MurmurHash3 finalizer to spread the bits
+     *
+     * @param value
+     * @return hash of the value
+     */
+    public static long hash(byte[] value) {
+        long hash = 0xcbf29ce484222325L;
+
+        for (byte b : value) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb3fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+}
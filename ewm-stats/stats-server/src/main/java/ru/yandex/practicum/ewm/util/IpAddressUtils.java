@@ -0,0 +1,136 @@
+package ru.yandex.practicum.ewm.util;
+
+import lombok.experimental.UtilityClass;
+import ru.yandex.practicum.ewm.validator.ValidationException;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+
+@UtilityClass
+public class IpAddressUtils {
+
+    public static final int LENGTH = 16;
+
+    private static final byte[] IPV4_MAPPED_PREFIX = {0, 0, 0, 0, 0, 0, 0, 0, 0, 0, (byte) 0xff, (byte) 0xff};
+
+    /**
+     * Converts an IPv4 or IPv6 literal to 16 bytes, IPv4 addresses are stored as IPv4-mapped IPv6 addresses.
+     * Host names are rejected without a DNS lookup
+     *
+     * @param ip
+     * @return address in network byte order
+     */
+    public byte[] parse(String ip) {
+        String address = ip.strip();
+
+        if (address.startsWith("[") && address.endsWith("]")) {
+            address = address.substring(1, address.length() - 1);
+        }
+
+        int zone = address.indexOf('%');
+        if (zone >= 0) {
+            address = address.substring(0, zone);
+        }
+
+        return address.indexOf(':') >= 0 ? parseIpv6(address, ip) : parseIpv4(address, ip);
+    }
+
+    /**
+     * Formats 16 bytes as an IPv4 address if they are IPv4-mapped, otherwise as a compressed IPv6 address
+     *
+     * @param bytes
+     * @return IP address
+     */
+    public String format(byte[] bytes) {
+        if (isIpv4Mapped(bytes)) {
+            return String.format("%d.%d.%d.%d", bytes[12] & 0xff, bytes[13] & 0xff, bytes[14] & 0xff,
+                    bytes[15] & 0xff);
+        }
+
+        int[] groups = new int[8];
+        for (int i = 0; i < groups.length; i++) {
+            groups[i] = ((bytes[2 * i] & 0xff) << 8) | (bytes[2 * i + 1] & 0xff);
+        }
+
+        int zerosStart = -1;
+        int zerosLength = 1;
+        for (int i = 0; i < groups.length; i++) {
+            int length = 0;
+            while (i + length < groups.length && groups[i + length] == 0) {
+                length++;
+            }
+            if (length > zerosLength) {
+                zerosStart = i;
+                zerosLength = length;
+            }
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < groups.length; i++) {
+            if (i == zerosStart) {
+                builder.append("::");
+                i += zerosLength - 1;
+                continue;
+            }
+            if (builder.length() > 0 && builder.charAt(builder.length() - 1) != ':') {
+                builder.append(':');
+            }
+            builder.append(Integer.toHexString(groups[i]));
+        }
+
+        return builder.toString();
+    }
+
+    private byte[] parseIpv4(String address, String ip) {
+        String[] octets = address.split("\\.", -1);
+
+        if (octets.length != 4) {
+            throw invalidAddress(ip);
+        }
+
+        byte[] bytes = Arrays.copyOf(IPV4_MAPPED_PREFIX, LENGTH);
+
+        for (int i = 0; i < octets.length; i++) {
+            String octet = octets[i];
+
+            if (octet.isEmpty() || octet.length() > 3 || !octet.chars().allMatch(Character::isDigit)) {
+                throw invalidAddress(ip);
+            }
+
+            int value = Integer.parseInt(octet);
+            if (value > 255) {
+                throw invalidAddress(ip);
+            }
+
+            bytes[12 + i] = (byte) value;
+        }
+
+        return bytes;
+    }
+
+    private byte[] parseIpv6(String address, String ip) {
+        try {
+            // a bracketed literal is never resolved as a host name
+            byte[] bytes = InetAddress.getByName("[" + address + "]").getAddress();
+
+            if (bytes.length == LENGTH) {
+                return bytes;
+            }
+
+            byte[] mapped = Arrays.copyOf(IPV4_MAPPED_PREFIX, LENGTH);
+            System.arraycopy(bytes, 0, mapped, IPV4_MAPPED_PREFIX.length, bytes.length);
+            return mapped;
+        } catch (UnknownHostException e) {
+            throw invalidAddress(ip);
+        }
+    }
+
+    private boolean isIpv4Mapped(byte[] bytes) {
+        return Arrays.equals(bytes, 0, IPV4_MAPPED_PREFIX.length, IPV4_MAPPED_PREFIX, 0, IPV4_MAPPED_PREFIX.length);
+    }
+
+    private ValidationException invalidAddress(String ip) {
+        return new ValidationException(String.format("IP %s is not a valid IPv4 or IPv6 address", ip));
+    }
+}
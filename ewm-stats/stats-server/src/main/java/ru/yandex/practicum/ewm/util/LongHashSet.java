@@ -0,0 +1,123 @@
+package ru.yandex.practicum.ewm.util;
+
+import java.util.Arrays;
+
+/**
+ * Set of non-zero longs in one open-addressing array with linear probing, 16 to 32 bytes per element
+ * instead of the 60 or so of a HashSet of boxed longs. Values are expected to be well-mixed hashes,
+ * so they are used as their own slot index. Not thread-safe
+ */
+public class LongHashSet {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] slots;
+    private int size;
+
+    public LongHashSet() {
+        slots = new long[MIN_CAPACITY];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(long value) {
+        int mask = slots.length - 1;
+
+        for (int index = (int) value & mask; slots[index] != 0; index = (index + 1) & mask) {
+            if (slots[index] == value) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Adds a value to the set
+     *
+     * @param value non-zero value
+     * @return true if the value was not in the set
+     */
+    public boolean add(long value) {
+        if (value == 0) {
+            throw new IllegalArgumentException("Zero marks an empty slot");
+        }
+
+        if ((size + 1) * 2 > slots.length) {
+            resize(slots.length * 2);
+        }
+
+        int mask = slots.length - 1;
+        int index = (int) value & mask;
+
+        while (slots[index] != 0) {
+            if (slots[index] == value) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+
+        slots[index] = value;
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes a value and shifts the following values of its probe run back, so no tombstones are left
+     *
+     * @param value
+     * @return true if the value was in the set
+     */
+    public boolean remove(long value) {
+        int mask = slots.length - 1;
+        int index = (int) value & mask;
+
+        while (slots[index] != value) {
+            if (slots[index] == 0) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+
+        int gap = index;
+
+        for (int next = (gap + 1) & mask; slots[next] != 0; next = (next + 1) & mask) {
+            int home = (int) slots[next] & mask;
+
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                slots[gap] = slots[next];
+                gap = next;
+            }
+        }
+
+        slots[gap] = 0;
+        size--;
+        return true;
+    }
+
+    /**
+     * Removes all values and gives the memory of a grown set back
+     */
+    public void clear() {
+        if (slots.length > MIN_CAPACITY) {
+            slots = new long[MIN_CAPACITY];
+        } else {
+            Arrays.fill(slots, 0);
+        }
+        size = 0;
+    }
+
+    private void resize(int capacity) {
+        long[] old = slots;
+        slots = new long[capacity];
+        size = 0;
+
+        for (long value : old) {
+            if (value != 0) {
+                add(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package ru.yandex.practicum.ewm.util;
+
+import lombok.experimental.UtilityClass;
+import ru.yandex.practicum.ewm.model.RollupGranularity;
+import ru.yandex.practicum.ewm.model.RollupSegment;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@UtilityClass
+public class RollupPlanner {
+
+    /**
+     * Splits the inclusive range [start, end] into the coarsest aligned rollup buckets.
+     * Only the ragged edges that are not aligned to a minute are left to the raw hits table,
+     * so the number of segments does not depend on the length of the range
+     *
+     * @param start
+     * @param end
+     * @return segments in chronological order
+     */
+    public List<RollupSegment> plan(LocalDateTime start, LocalDateTime end) {
+        return plan(start, end, true);
+    }
+
+    /**
+     * Splits the range [start, end] or [start, end) into the coarsest aligned rollup buckets.
+     * A half-open range that ends on a minute boundary has no raw tail, an empty half-open range has no segments
+     *
+     * @param start
+     * @param end
+     * @param endInclusive
+     * @return segments in chronological order
+     */
+    public List<RollupSegment> plan(LocalDateTime start, LocalDateTime end, boolean endInclusive) {
+        List<RollupSegment> segments = new ArrayList<>();
+
+        LocalDateTime alignedStart = RollupGranularity.MINUTE.ceil(start);
+        LocalDateTime alignedEnd = RollupGranularity.MINUTE.floor(end);
+
+        if (!alignedStart.isBefore(alignedEnd)) {
+            if (endInclusive || start.isBefore(end)) {
+                segments.add(new RollupSegment(null, start, end, endInclusive));
+            }
+            return segments;
+        }
+
+        if (start.isBefore(alignedStart)) {
+            segments.add(new RollupSegment(null, start, alignedStart, false));
+        }
+
+        split(alignedStart, alignedEnd, RollupGranularity.DAY, segments);
+
+        if (endInclusive || alignedEnd.isBefore(end)) {
+            segments.add(new RollupSegment(null, alignedEnd, end, endInclusive));
+        }
+
+        return segments;
+    }
+
+    private void split(LocalDateTime start, LocalDateTime end, RollupGranularity granularity,
+                       List<RollupSegment> segments) {
+        if (!start.isBefore(end)) {
+            return;
+        }
+
+        if (granularity.finer() == null) {
+            segments.add(new RollupSegment(granularity, start, end, false));
+            return;
+        }
+
+        LocalDateTime alignedStart = granularity.ceil(start);
+        LocalDateTime alignedEnd = granularity.floor(end);
+
+        if (!alignedStart.isBefore(alignedEnd)) {
+            split(start, end, granularity.finer(), segments);
+            return;
+        }
+
+        split(start, alignedStart, granularity.finer(), segments);
+        segments.add(new RollupSegment(granularity, alignedStart, alignedEnd, false));
+        split(alignedEnd, end, granularity.finer(), segments);
+    }
+}
@@ -0,0 +1,127 @@
+package ru.yandex.practicum.ewm.util;
+
+import lombok.experimental.UtilityClass;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Uri selectors of stats requests. A selector with a * is a pattern: * matches any characters within
+ * one path segment and a trailing /** matches the path itself and everything below it, so /events/* selects
+ * /events/1 but not /events/1/comments, and /events/** selects both
+ */
+@UtilityClass
+public class UriPatterns {
+
+    public static final String WILDCARD = "*";
+
+    public static final String ANY_PATH = "**";
+
+    public boolean isPattern(String uri) {
+        return uri.contains(WILDCARD);
+    }
+
+    public boolean hasPatterns(List<String> uris) {
+        return uris != null && uris.stream().anyMatch(UriPatterns::isPattern);
+    }
+
+    /**
+     * Returns a filter of uri names that accepts the uris and the matches of the patterns among them,
+     * every uri if there are no selectors
+     *
+     * @param uris
+     * @return uri filter
+     */
+    public Predicate<String> filter(List<String> uris) {
+        if (uris == null) {
+            return uri -> true;
+        }
+
+        Set<String> exact = new HashSet<>();
+        List<Pattern> patterns = new ArrayList<>();
+
+        for (String uri : uris) {
+            if (isPattern(uri)) {
+                patterns.add(compile(uri));
+            } else {
+                exact.add(uri);
+            }
+        }
+
+        if (patterns.isEmpty()) {
+            return exact::contains;
+        }
+
+        return uri -> exact.contains(uri) || patterns.stream().anyMatch(pattern -> pattern.matcher(uri).matches());
+    }
+
+    /**
+     * Returns the regular expression of a whole uri pattern
+     *
+     * @param pattern
+     * @return compiled pattern
+     */
+    public Pattern compile(String pattern) {
+        String[] segments = split(pattern);
+        StringBuilder regex = new StringBuilder();
+
+        for (int i = 0; i < segments.length; i++) {
+            if (i == segments.length - 1 && i > 0 && ANY_PATH.equals(segments[i])) {
+                regex.append("(/.*)?");
+                break;
+            }
+
+            if (i > 0) {
+                regex.append('/');
+            }
+
+            regex.append(segmentRegex(segments[i]));
+        }
+
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Returns the regular expression of one path segment of a pattern
+     *
+     * @param segment
+     * @return compiled pattern
+     */
+    public Pattern compileSegment(String segment) {
+        return Pattern.compile(segmentRegex(segment));
+    }
+
+    /**
+     * Splits a uri or pattern into its path segments, the leading slash gives an empty first segment
+     *
+     * @param uri
+     * @return path segments
+     */
+    public String[] split(String uri) {
+        return uri.split("/", -1);
+    }
+
+    private String segmentRegex(String segment) {
+        StringBuilder regex = new StringBuilder();
+        int start = 0;
+        int index;
+
+        while ((index = segment.indexOf(WILDCARD, start)) >= 0) {
+            if (index > start) {
+                regex.append(Pattern.quote(segment.substring(start, index)));
+            }
+            regex.append("[^/]*");
+            start = index + 1;
+        }
+
+        if (start < segment.length()) {
+            regex.append(Pattern.quote(segment.substring(start)));
+        }
+
+        return regex.toString();
+    }
+}
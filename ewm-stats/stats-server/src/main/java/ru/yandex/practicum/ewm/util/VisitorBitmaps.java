@@ -0,0 +1,71 @@
+package ru.yandex.practicum.ewm.util;
+
+import lombok.experimental.UtilityClass;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Serialization of the Roaring bitmaps of visitor ids kept by the hour and day rollups.
+ * Bitmaps are stored in the portable Roaring format after run-length encoding where it is smaller
+ */
+@UtilityClass
+public class VisitorBitmaps {
+
+    /**
+     * Serializes a bitmap, the bitmap may be compressed in place but keeps its values
+     *
+     * @param bitmap
+     * @return serialized bitmap
+     */
+    public byte[] toBytes(RoaringBitmap bitmap) {
+        bitmap.runOptimize();
+
+        ByteBuffer buffer = ByteBuffer.allocate(bitmap.serializedSizeInBytes());
+        bitmap.serialize(buffer);
+
+        return buffer.array();
+    }
+
+    /**
+     * Returns the provisional visitor id of an IP that is not in the visitor dictionary yet.
+     * It is derived from the IP, so all queries and instances give the IP the same id, and lies in the top half
+     * of the unsigned range, which dictionary ids never reach. Two unknown IPs share an id with a chance of 2^-31
+     *
+     * @param ip
+     * @return provisional visitor id
+     */
+    public int provisionalId(byte[] ip) {
+        return (int) (HyperLogLog.hash(ip) >>> 33) | Integer.MIN_VALUE;
+    }
+
+    /**
+     * Returns whether the bitmap holds provisional ids, which stop matching their IPs once the IPs get dictionary ids
+     *
+     * @param bitmap
+     * @return whether the bitmap has ids from the top half of the unsigned range
+     */
+    public boolean hasProvisionalIds(RoaringBitmap bitmap) {
+        return !bitmap.isEmpty() && bitmap.last() < 0;
+    }
+
+    /**
+     * Restores a bitmap serialized by {@link #toBytes(RoaringBitmap)}
+     *
+     * @param bytes
+     * @return bitmap of visitor ids
+     */
+    public RoaringBitmap fromBytes(byte[] bytes) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+
+        try {
+            bitmap.deserialize(ByteBuffer.wrap(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Invalid visitor bitmap", e);
+        }
+
+        return bitmap;
+    }
+}
@@ -0,0 +1,49 @@
+package ru.yandex.practicum.ewm.validator;
+
+import lombok.experimental.UtilityClass;
+import ru.yandex.practicum.ewm.model.RollupGranularity;
+
+import java.time.LocalDateTime;
+import java.util.Locale;
+
+/**
+ * Checks of stats requests shared by the storage backends
+ */
+@UtilityClass
+public class StatsRequestValidator {
+
+    public static final int MAX_SERIES_BUCKETS = 20_000;
+
+    public void validateRange(LocalDateTime start, LocalDateTime end) {
+        if (start.isAfter(end)) {
+            throw new ValidationException(String.format("The start of the range must be before the end of the range"));
+        }
+    }
+
+    public RollupGranularity parseGranularity(String granularity) {
+        try {
+            return RollupGranularity.valueOf(granularity.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException(String.format("Unknown granularity: %s", granularity));
+        }
+    }
+
+    /**
+     * Returns the number of buckets of the given granularity that overlap the range
+     *
+     * @param granularity
+     * @param start
+     * @param end
+     * @return number of buckets
+     */
+    public int countBuckets(RollupGranularity granularity, LocalDateTime start, LocalDateTime end) {
+        long buckets = granularity.getUnit().between(granularity.floor(start), granularity.floor(end)) + 1;
+
+        if (buckets > MAX_SERIES_BUCKETS) {
+            throw new ValidationException(String.format("The range contains %d %s buckets, no more than %d are allowed",
+                    buckets, granularity.name().toLowerCase(Locale.ROOT), MAX_SERIES_BUCKETS));
+        }
+
+        return (int) buckets;
+    }
+}
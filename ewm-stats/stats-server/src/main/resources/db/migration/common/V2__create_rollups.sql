@@ -0,0 +1,42 @@
+CREATE TABLE IF NOT EXISTS hits_minute (
+  uri_id INT NOT NULL,
+  bucket timestamp without time zone NOT NULL,
+  app_id INT NOT NULL,
+  hits BIGINT NOT NULL,
+  PRIMARY KEY (uri_id, bucket, app_id)
+);
+
+CREATE TABLE IF NOT EXISTS hits_hour (
+  uri_id INT NOT NULL,
+  bucket timestamp without time zone NOT NULL,
+  app_id INT NOT NULL,
+  hits BIGINT NOT NULL,
+  PRIMARY KEY (uri_id, bucket, app_id)
+);
+
+CREATE TABLE IF NOT EXISTS hits_day (
+  uri_id INT NOT NULL,
+  bucket timestamp without time zone NOT NULL,
+  app_id INT NOT NULL,
+  hits BIGINT NOT NULL,
+  PRIMARY KEY (uri_id, bucket, app_id)
+);
+
+INSERT INTO hits_minute (uri_id, bucket, app_id, hits)
+SELECT uri_id, DATE_TRUNC('minute', created), app_id, COUNT(*) FROM hits
+WHERE NOT EXISTS (SELECT 1 FROM hits_minute)
+GROUP BY uri_id, DATE_TRUNC('minute', created), app_id;
+
+INSERT INTO hits_hour (uri_id, bucket, app_id, hits)
+SELECT uri_id, DATE_TRUNC('hour', created), app_id, COUNT(*) FROM hits
+WHERE NOT EXISTS (SELECT 1 FROM hits_hour)
+GROUP BY uri_id, DATE_TRUNC('hour', created), app_id;
+
+INSERT INTO hits_day (uri_id, bucket, app_id, hits)
+SELECT uri_id, DATE_TRUNC('day', created), app_id, COUNT(*) FROM hits
+WHERE NOT EXISTS (SELECT 1 FROM hits_day)
+GROUP BY uri_id, DATE_TRUNC('day', created), app_id;
+
+ALTER TABLE hits_hour ADD COLUMN IF NOT EXISTS sketch bytea;
+
+ALTER TABLE hits_day ADD COLUMN IF NOT EXISTS sketch bytea;
@@ -0,0 +1,5 @@
+CREATE TABLE IF NOT EXISTS hits_archive (
+  bucket date NOT NULL PRIMARY KEY,
+  version INT NOT NULL,
+  hits BIGINT NOT NULL
+);
@@ -0,0 +1,10 @@
+CREATE TABLE IF NOT EXISTS visitors (
+  id INT NOT NULL GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  ip bytea NOT NULL UNIQUE
+);
+
+INSERT INTO visitors (ip)
+SELECT DISTINCT ip FROM hits
+WHERE NOT EXISTS (SELECT 1 FROM visitors);
+
+ALTER TABLE hits_day ADD COLUMN IF NOT EXISTS visitors bytea;
@@ -0,0 +1 @@
+ALTER TABLE hits_hour ADD COLUMN IF NOT EXISTS visitors bytea;
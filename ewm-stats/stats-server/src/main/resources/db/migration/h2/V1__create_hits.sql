@@ -0,0 +1,17 @@
+CREATE TABLE IF NOT EXISTS apps (
+  id INT NOT NULL GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  name varchar(50) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS uris (
+  id INT NOT NULL GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  name varchar(255) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS hits (
+  id BIGINT NOT NULL GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  app_id INT NOT NULL,
+  uri_id INT NOT NULL,
+  ip BINARY(16) NOT NULL,
+  created timestamp without time zone NOT NULL
+);
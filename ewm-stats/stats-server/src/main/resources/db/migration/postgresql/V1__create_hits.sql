@@ -0,0 +1,53 @@
+CREATE TABLE IF NOT EXISTS apps (
+  id INT NOT NULL GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  name varchar(50) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS uris (
+  id INT NOT NULL GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  name varchar(255) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS hits (
+  id BIGINT NOT NULL GENERATED BY DEFAULT AS IDENTITY,
+  app_id INT NOT NULL,
+  uri_id INT NOT NULL,
+  ip bytea NOT NULL,
+  created timestamp without time zone NOT NULL,
+  PRIMARY KEY (id, created)
+) PARTITION BY RANGE (created);
+
+DO $$
+DECLARE
+  t text;
+BEGIN
+  FOREACH t IN ARRAY ARRAY['hits', 'hits_minute', 'hits_hour', 'hits_day'] LOOP
+    IF EXISTS (SELECT 1 FROM information_schema.columns
+               WHERE table_schema = current_schema() AND table_name = t AND column_name = 'app') THEN
+      EXECUTE format('INSERT INTO apps (name) SELECT DISTINCT app FROM %I ON CONFLICT DO NOTHING', t);
+      EXECUTE format('INSERT INTO uris (name) SELECT DISTINCT uri FROM %I ON CONFLICT DO NOTHING', t);
+      EXECUTE format('ALTER TABLE %I ADD COLUMN app_id INT, ADD COLUMN uri_id INT', t);
+      EXECUTE format('UPDATE %I r SET app_id = a.id, uri_id = u.id FROM apps a, uris u '
+                     'WHERE a.name = r.app AND u.name = r.uri', t);
+      EXECUTE format('ALTER TABLE %I DROP COLUMN app, DROP COLUMN uri, '
+                     'ALTER COLUMN app_id SET NOT NULL, ALTER COLUMN uri_id SET NOT NULL', t);
+      IF t <> 'hits' THEN
+        EXECUTE format('ALTER TABLE %I ADD PRIMARY KEY (uri_id, bucket, app_id)', t);
+      END IF;
+    END IF;
+  END LOOP;
+
+  IF EXISTS (SELECT 1 FROM information_schema.columns WHERE table_schema = current_schema()
+             AND table_name = 'hits' AND column_name = 'ip' AND data_type = 'character varying') THEN
+    ALTER TABLE hits ALTER COLUMN ip TYPE bytea USING CASE
+      WHEN family(ip::inet) = 4 THEN decode('00000000000000000000ffff', 'hex') || substring(inet_send(ip::inet) FROM 5)
+      ELSE substring(inet_send(ip::inet) FROM 5)
+    END;
+    FOREACH t IN ARRAY ARRAY['hits_hour', 'hits_day'] LOOP
+      IF EXISTS (SELECT 1 FROM information_schema.columns WHERE table_schema = current_schema()
+                 AND table_name = t AND column_name = 'sketch') THEN
+        EXECUTE format('UPDATE %I SET sketch = NULL', t);
+      END IF;
+    END LOOP;
+  END IF;
+END $$;
@@ -0,0 +1,9 @@
+CREATE INDEX IF NOT EXISTS hits_uri_id_created_idx ON hits (uri_id, created) INCLUDE (app_id, ip);
+
+CREATE INDEX IF NOT EXISTS hits_created_idx ON hits (created);
+
+CREATE INDEX IF NOT EXISTS hits_minute_bucket_idx ON hits_minute (bucket);
+
+CREATE INDEX IF NOT EXISTS hits_hour_bucket_idx ON hits_hour (bucket);
+
+CREATE INDEX IF NOT EXISTS hits_day_bucket_idx ON hits_day (bucket);
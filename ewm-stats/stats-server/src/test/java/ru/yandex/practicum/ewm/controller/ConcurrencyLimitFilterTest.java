@@ -0,0 +1,75 @@
+package ru.yandex.practicum.ewm.controller;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import ru.yandex.practicum.ewm.config.LimiterProperties;
+
+import javax.servlet.FilterChain;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConcurrencyLimitFilterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ConcurrencyLimitFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        LimiterProperties properties = new LimiterProperties();
+        properties.setRetryAfter(Duration.ofMillis(1500));
+        properties.getIngest().setInitialLimit(1);
+        properties.getQuery().setInitialLimit(1);
+
+        filter = new ConcurrencyLimitFilter(properties, meterRegistry);
+    }
+
+    @Test
+    void doFilter_shouldRejectTheRequestsOverTheLimit_withRetryAfter() throws Exception {
+        List<MockHttpServletResponse> nested = new ArrayList<>();
+
+        FilterChain chain = (request, response) -> {
+            MockHttpServletResponse hitResponse = new MockHttpServletResponse();
+            MockHttpServletResponse statsResponse = new MockHttpServletResponse();
+
+            filter.doFilter(new MockHttpServletRequest("POST", "/hits"), hitResponse, new MockFilterChain());
+            filter.doFilter(new MockHttpServletRequest("GET", "/stats"), statsResponse, new MockFilterChain());
+
+            nested.add(hitResponse);
+            nested.add(statsResponse);
+        };
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("POST", "/hit"), response, chain);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(nested.get(0).getStatus()).isEqualTo(503);
+        assertThat(nested.get(0).getHeader("Retry-After")).isEqualTo("2");
+        assertThat(nested.get(1).getStatus()).isEqualTo(200);
+        assertThat(meterRegistry.get("stats.limiter.rejected").tag("limiter", "ingest").counter().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("stats.limiter.in.flight").tag("limiter", "ingest").gauge().value())
+                .isZero();
+    }
+
+    @Test
+    void doFilter_shouldNotLimitOtherRequests() throws Exception {
+        FilterChain chain = (request, response) -> {
+            MockHttpServletResponse nested = new MockHttpServletResponse();
+            filter.doFilter(new MockHttpServletRequest("GET", "/actuator/prometheus"), nested, new MockFilterChain());
+
+            assertThat(nested.getStatus()).isEqualTo(200);
+        };
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/stats/top"), new MockHttpServletResponse(), chain);
+
+        assertThat(meterRegistry.get("stats.limiter.rejected").tag("limiter", "query").counter().count()).isZero();
+    }
+}
@@ -1,5 +1,7 @@
 package ru.yandex.practicum.ewm.controller;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.junit.jupiter.api.BeforeEach;
@@ -10,28 +12,47 @@ import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import ru.yandex.practicum.ewm.dto.EndpointHitDto;
+import ru.yandex.practicum.ewm.dto.EndpointHitsSummaryDto;
+import ru.yandex.practicum.ewm.dto.StatsSeriesDto;
+import ru.yandex.practicum.ewm.dto.ViewSeriesDto;
 import ru.yandex.practicum.ewm.dto.ViewStatsDto;
 import ru.yandex.practicum.ewm.service.StatsService;
+import ru.yandex.practicum.ewm.util.CborUtils;
+import ru.yandex.practicum.ewm.util.SeriesRequestParam;
 import ru.yandex.practicum.ewm.util.StatsRequestParam;
+import ru.yandex.practicum.ewm.util.TopStatsRequestParam;
 import ru.yandex.practicum.ewm.validator.ErrorHandler;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(MockitoExtension.class)
@@ -47,6 +68,9 @@ class StatsControllerTest {
     @Mock
     private StatsService statsService;
 
+    @Spy
+    private ObjectMapper mapper = new ObjectMapper();
+
     @InjectMocks
     private StatsController statsController;
 
@@ -54,6 +78,7 @@ class StatsControllerTest {
     void setMockMvc() {
         mockMvc = MockMvcBuilders.standaloneSetup(statsController)
                 .setControllerAdvice(new ErrorHandler())
+                .setMessageConverters(new MappingJackson2HttpMessageConverter(), CborUtils.messageConverter())
                 .build();
     }
 
@@ -77,6 +102,7 @@ class StatsControllerTest {
                 .end(end)
                 .uris(uris)
                 .unique(unique)
+                .approximate(false)
                 .build();
 
         verify(statsService, times(1)).getStats(requestParam);
@@ -102,6 +128,7 @@ class StatsControllerTest {
                 .end(end)
                 .uris(uris)
                 .unique(unique)
+                .approximate(false)
                 .build();
 
         when(statsService.getStats(requestParam)).thenReturn(expected);
@@ -118,6 +145,96 @@ class StatsControllerTest {
         verifyNoMoreInteractions(statsService);
     }
 
+    @Test
+    void getTopStats_shouldReturnTheTopStats() throws Exception {
+        LocalDateTime start = LocalDateTime.of(2023, 5, 1, 0, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2023, 5, 2, 0, 0, 0);
+        List<ViewStatsDto> expected = List.of(initViewStatsDto());
+
+        TopStatsRequestParam requestParam = TopStatsRequestParam.builder()
+                .start(start)
+                .end(end)
+                .prefix("/events/")
+                .unique(false)
+                .limit(20)
+                .build();
+
+        when(statsService.getTopStats(requestParam)).thenReturn(expected);
+
+        mockMvc.perform(get("/stats/top?start={start}&end={end}&prefix=/events/&limit=20",
+                        start.format(DateTimeFormatter.ofPattern(DATE_TIME_FORMAT)),
+                        end.format(DateTimeFormatter.ofPattern(DATE_TIME_FORMAT))))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(expected)));
+
+        verify(statsService, times(1)).getTopStats(requestParam);
+        verifyNoMoreInteractions(statsService);
+    }
+
+    @Test
+    void getSeries_shouldReturnColumnarSeries() throws Exception {
+        LocalDateTime start = LocalDateTime.of(2023, 5, 1, 0, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2023, 5, 1, 1, 0, 0);
+
+        SeriesRequestParam requestParam = SeriesRequestParam.builder()
+                .start(start)
+                .end(end)
+                .uris(List.of("/events/1"))
+                .granularity("hour")
+                .build();
+
+        when(statsService.getSeries(requestParam)).thenReturn(new StatsSeriesDto("HOUR", List.of(start, end),
+                List.of(new ViewSeriesDto("ewm-main-service", "/events/1", List.of(3L, 1L)))));
+
+        mockMvc.perform(get("/stats/series?start={start}&end={end}&uris=/events/1",
+                        start.format(DateTimeFormatter.ofPattern(DATE_TIME_FORMAT)),
+                        end.format(DateTimeFormatter.ofPattern(DATE_TIME_FORMAT))))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"granularity\": \"HOUR\", "
+                        + "\"buckets\": [\"2023-05-01 00:00:00\", \"2023-05-01 01:00:00\"], "
+                        + "\"series\": [{\"app\": \"ewm-main-service\", \"uri\": \"/events/1\", \"hits\": [3, 1]}]}"));
+
+        verify(statsService, times(1)).getSeries(requestParam);
+        verifyNoMoreInteractions(statsService);
+    }
+
+    @Test
+    void streamStats_shouldWriteOneJsonObjectPerLine() throws Exception {
+        LocalDateTime start = LocalDateTime.of(2023, 5, 1, 0, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2035, 5, 1, 0, 0, 0);
+        ViewStatsDto viewStatsDto = initViewStatsDto();
+
+        StatsRequestParam requestParam = StatsRequestParam.builder()
+                .start(start)
+                .end(end)
+                .unique(true)
+                .approximate(false)
+                .build();
+
+        doAnswer(invocation -> {
+            Consumer<ViewStatsDto> consumer = invocation.getArgument(1);
+            consumer.accept(viewStatsDto);
+            consumer.accept(viewStatsDto);
+            return null;
+        }).when(statsService).streamStats(eq(requestParam), any());
+
+        MvcResult result = mockMvc.perform(get("/stats?start={start}&end={end}&unique=true",
+                        start.format(DateTimeFormatter.ofPattern(DATE_TIME_FORMAT)),
+                        end.format(DateTimeFormatter.ofPattern(DATE_TIME_FORMAT)))
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String line = objectMapper.writeValueAsString(viewStatsDto);
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(line + "\n" + line + "\n"));
+
+        verify(statsService, never()).getStats(any());
+    }
+
     @Test
     void saveEndpointHit_shouldResponseWithOk() throws Exception {
         EndpointHitDto endpointHitDto = initEndpointHitDto();
@@ -133,6 +250,71 @@ class StatsControllerTest {
         verifyNoMoreInteractions(statsService);
     }
 
+    @Test
+    void saveEndpointHits_shouldResponseWithSummary() throws Exception {
+        List<EndpointHitDto> endpointHitDtos = List.of(initEndpointHitDto(), initEndpointHitDto());
+
+        String json = objectMapper.writeValueAsString(endpointHitDtos);
+
+        when(statsService.saveEndpointHits(endpointHitDtos)).thenReturn(new EndpointHitsSummaryDto(2, 0));
+
+        mockMvc.perform(post("/hits").contentType("application/json").content(json))
+                .andExpect(status().isCreated())
+                .andExpect(content().json("{\"saved\": 2}"));
+
+        verify(statsService, times(1)).saveEndpointHits(endpointHitDtos);
+        verifyNoMoreInteractions(statsService);
+    }
+
+    @Test
+    void saveEndpointHits_shouldAcceptCborWithEpochMillisTimestamps() throws Exception {
+        List<EndpointHitDto> endpointHitDtos = List.of(initEndpointHitDto(), initEndpointHitDto());
+        ObjectMapper cborMapper = CborUtils.objectMapper();
+
+        byte[] cbor = cborMapper.writeValueAsBytes(endpointHitDtos);
+        JsonNode encoded = cborMapper.readTree(cbor);
+
+        assertTrue(encoded.get(0).get("timestamp").isIntegralNumber());
+        assertEquals(Instant.parse("2023-06-18T21:15:10Z").toEpochMilli(), encoded.get(0).get("timestamp").asLong());
+
+        when(statsService.saveEndpointHits(endpointHitDtos)).thenReturn(new EndpointHitsSummaryDto(2, 0));
+
+        MvcResult result = mockMvc.perform(post("/hits")
+                        .contentType(MediaType.APPLICATION_CBOR)
+                        .accept(MediaType.APPLICATION_CBOR)
+                        .content(cbor))
+                .andExpect(status().isCreated())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn();
+
+        assertEquals(new EndpointHitsSummaryDto(2, 0), cborMapper.readValue(
+                result.getResponse().getContentAsByteArray(), EndpointHitsSummaryDto.class));
+        verify(statsService, times(1)).saveEndpointHits(endpointHitDtos);
+    }
+
+    @Test
+    void getStats_shouldNegotiateCbor() throws Exception {
+        LocalDateTime start = LocalDateTime.of(2023, 5, 1, 0, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2035, 5, 1, 0, 0, 0);
+        List<ViewStatsDto> expected = List.of(initViewStatsDto());
+
+        when(statsService.getStats(any())).thenReturn(expected);
+
+        MvcResult result = mockMvc.perform(get("/stats?start={start}&end={end}",
+                        start.format(DateTimeFormatter.ofPattern(DATE_TIME_FORMAT)),
+                        end.format(DateTimeFormatter.ofPattern(DATE_TIME_FORMAT)))
+                        .accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn();
+
+        List<ViewStatsDto> actual = CborUtils.objectMapper().readValue(
+                result.getResponse().getContentAsByteArray(), new TypeReference<>() {
+                });
+
+        assertEquals(expected, actual);
+    }
+
     @ParameterizedTest
     @MethodSource("provideInvalidEndpoints")
     void saveEndpointHit_shouldResponseWithBadRequest_ifTheEndpointIsInvalid(EndpointHitDto endpointHitDto)
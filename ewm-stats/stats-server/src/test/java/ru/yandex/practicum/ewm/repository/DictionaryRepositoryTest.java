@@ -0,0 +1,101 @@
+package ru.yandex.practicum.ewm.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import ru.yandex.practicum.ewm.config.IngestProperties;
+import ru.yandex.practicum.ewm.model.EndpointHit;
+import ru.yandex.practicum.ewm.util.IpAddressUtils;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@Import({DictionaryRepository.class, IngestProperties.class})
+class DictionaryRepositoryTest {
+
+    @Autowired
+    private DictionaryRepository dictionaryRepository;
+
+    @Test
+    void encode_shouldAssignTheSameIdToTheSameName() {
+        EndpointHit first = initEndpointHit("/dictionary/1");
+        EndpointHit second = initEndpointHit("/dictionary/2");
+        EndpointHit third = initEndpointHit("/dictionary/1");
+
+        dictionaryRepository.encode(List.of(first, second, third));
+
+        assertThat(first.getAppId()).isEqualTo(second.getAppId()).isEqualTo(third.getAppId());
+        assertThat(first.getUriId()).isEqualTo(third.getUriId()).isNotEqualTo(second.getUriId());
+        assertThat(dictionaryRepository.getAppName(first.getAppId())).isEqualTo("ewm-main-service");
+        assertThat(dictionaryRepository.getUriName(second.getUriId())).isEqualTo("/dictionary/2");
+    }
+
+    @Test
+    void encode_shouldAssignTheSameVisitorIdToTheSameIp() {
+        EndpointHit first = initEndpointHit("/dictionary/1", "10.0.5.1");
+        EndpointHit second = initEndpointHit("/dictionary/2", "10.0.5.2");
+        EndpointHit third = initEndpointHit("/dictionary/2", "10.0.5.1");
+
+        dictionaryRepository.encode(List.of(first, second));
+        dictionaryRepository.encode(List.of(third));
+
+        assertThat(first.getVisitorId()).isEqualTo(third.getVisitorId()).isNotEqualTo(second.getVisitorId());
+        assertThat(dictionaryRepository.findVisitorIds(List.of(ByteBuffer.wrap(IpAddressUtils.parse("10.0.5.2")),
+                ByteBuffer.wrap(IpAddressUtils.parse("10.0.5.3")))))
+                .containsOnlyKeys(ByteBuffer.wrap(IpAddressUtils.parse("10.0.5.2")));
+    }
+
+    @Test
+    void findUriIds_shouldSkipUnknownUris() {
+        EndpointHit endpointHit = initEndpointHit("/dictionary/3");
+
+        dictionaryRepository.encode(List.of(endpointHit));
+
+        assertThat(dictionaryRepository.findUriIds(List.of("/dictionary/3", "/dictionary/unknown")))
+                .containsExactly(endpointHit.getUriId());
+        assertThat(dictionaryRepository.findUriIds(List.of("/dictionary/unknown"))).isEmpty();
+    }
+
+    @Test
+    void expandUris_shouldReplacePatternsByTheMatchingUris() {
+        List<EndpointHit> endpointHits = List.of(initEndpointHit("/trie/events/1"), initEndpointHit("/trie/events/12"),
+                initEndpointHit("/trie/events/2"), initEndpointHit("/trie/events/1/comments"),
+                initEndpointHit("/trie/users/1"));
+
+        dictionaryRepository.encode(endpointHits);
+
+        assertThat(dictionaryRepository.expandUris(List.of("/trie/events/*")))
+                .containsExactlyInAnyOrder("/trie/events/1", "/trie/events/12", "/trie/events/2");
+        assertThat(dictionaryRepository.expandUris(List.of("/trie/events/1*", "/trie/users/1")))
+                .containsExactlyInAnyOrder("/trie/events/1", "/trie/events/12", "/trie/users/1");
+        assertThat(dictionaryRepository.expandUris(List.of("/trie/*/1")))
+                .containsExactlyInAnyOrder("/trie/events/1", "/trie/users/1");
+        assertThat(dictionaryRepository.expandUris(List.of("/trie/events/**")))
+                .containsExactlyInAnyOrder("/trie/events/1", "/trie/events/12", "/trie/events/2",
+                        "/trie/events/1/comments");
+        assertThat(dictionaryRepository.expandUris(List.of("/trie/unknown/*"))).isEmpty();
+
+        EndpointHit added = initEndpointHit("/trie/events/3");
+        dictionaryRepository.encode(List.of(added));
+
+        assertThat(dictionaryRepository.expandUris(List.of("/trie/events/*"))).contains("/trie/events/3");
+    }
+
+    private EndpointHit initEndpointHit(String uri) {
+        return initEndpointHit(uri, "10.0.0.1");
+    }
+
+    private EndpointHit initEndpointHit(String uri, String ip) {
+        EndpointHit endpointHit = new EndpointHit();
+
+        endpointHit.setApp("ewm-main-service");
+        endpointHit.setUri(uri);
+        endpointHit.setIp(IpAddressUtils.parse(ip));
+
+        return endpointHit;
+    }
+}
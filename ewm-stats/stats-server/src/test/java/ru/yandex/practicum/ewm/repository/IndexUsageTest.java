@@ -0,0 +1,122 @@
+package ru.yandex.practicum.ewm.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.ewm.config.DedupProperties;
+import ru.yandex.practicum.ewm.config.IngestProperties;
+import ru.yandex.practicum.ewm.model.EndpointHit;
+import ru.yandex.practicum.ewm.service.EndpointHitWriter;
+import ru.yandex.practicum.ewm.service.HitDeduplicator;
+import ru.yandex.practicum.ewm.service.HitWriteBuffer;
+import ru.yandex.practicum.ewm.service.HitsArchive;
+import ru.yandex.practicum.ewm.service.LiveCounters;
+import ru.yandex.practicum.ewm.service.StatsCache;
+import ru.yandex.practicum.ewm.service.StatsServiceImpl;
+import ru.yandex.practicum.ewm.util.IpAddressUtils;
+import ru.yandex.practicum.ewm.util.StatsRequestParam;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@Import({StatsServiceImpl.class, RollupRepository.class, DictionaryRepository.class, IngestProperties.class,
+        LiveCounters.class, HitDeduplicator.class, DedupProperties.class, SimpleMeterRegistry.class})
+class IndexUsageTest {
+
+    private static final LocalDateTime ORIGIN = LocalDateTime.of(2023, 5, 1, 0, 0, 0);
+
+    @MockBean
+    private EndpointHitWriter endpointHitWriter;
+
+    @MockBean
+    private HitWriteBuffer hitWriteBuffer;
+
+    @MockBean
+    private StatsCache statsCache;
+
+    @MockBean
+    private HitsArchive hitsArchive;
+
+    @Autowired
+    private StatsServiceImpl statsService;
+
+    @Autowired
+    private StatsRepository statsRepository;
+
+    @Autowired
+    private DictionaryRepository dictionaryRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void saveEndpointHits() {
+        List<EndpointHit> endpointHits = new ArrayList<>();
+
+        for (int i = 0; i < 500; i++) {
+            EndpointHit endpointHit = new EndpointHit();
+
+            endpointHit.setApp("ewm-main-service");
+            endpointHit.setUri("/events/" + i % 50);
+            endpointHit.setIp(IpAddressUtils.parse("10.0.0." + i % 200));
+            endpointHit.setTimestamp(ORIGIN.plusMinutes(i));
+            endpointHits.add(endpointHit);
+        }
+
+        dictionaryRepository.encode(endpointHits);
+        statsRepository.saveAllInBatch(endpointHits);
+        jdbcTemplate.execute("ANALYZE");
+        jdbcTemplate.execute("SET QUERY_STATISTICS FALSE");
+        jdbcTemplate.execute("SET QUERY_STATISTICS TRUE");
+    }
+
+    @Test
+    void getStats_shouldUseTheUriIndex_ifUniqueAndFilteredByUris() {
+        statsService.getStats(StatsRequestParam.builder()
+                .start(ORIGIN)
+                .end(ORIGIN.plusDays(1))
+                .uris(List.of("/events/1", "/events/2"))
+                .unique(true)
+                .build());
+
+        assertThat(explain("hits")).isNotEmpty()
+                .allSatisfy(plan -> assertThat(plan).contains("HITS_URI_ID_CREATED_IDX"));
+    }
+
+    @Test
+    void getStats_shouldUseTheCreatedIndex_ifUniqueAndNotFilteredByUris() {
+        statsService.getStats(StatsRequestParam.builder()
+                .start(ORIGIN)
+                .end(ORIGIN.plusHours(1))
+                .unique(true)
+                .build());
+
+        assertThat(explain("hits")).isNotEmpty()
+                .allSatisfy(plan -> assertThat(plan).contains("HITS_CREATED_IDX"));
+    }
+
+    /**
+     * Returns the H2 execution plans of the statements that read the table since the query statistics were reset.
+     * Parameters are bound to nulls, the plan does not depend on their values
+     */
+    private List<String> explain(String table) {
+        return jdbcTemplate.queryForList("SELECT SQL_STATEMENT FROM INFORMATION_SCHEMA.QUERY_STATISTICS", String.class)
+                .stream()
+                .filter(statement -> statement.matches("(?is)\\s*select\\b.*\\bfrom\\s+" + table + "\\b.*"))
+                .map(sql -> jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class,
+                        Collections.nCopies(sql.length() - sql.replace("?", "").length(), null).toArray())
+                        .toUpperCase())
+                .collect(Collectors.toList());
+    }
+}
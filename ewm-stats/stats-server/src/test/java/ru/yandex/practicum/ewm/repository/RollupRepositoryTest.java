@@ -0,0 +1,276 @@
+package ru.yandex.practicum.ewm.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.ewm.config.IngestProperties;
+import ru.yandex.practicum.ewm.dto.ViewStatsDto;
+import ru.yandex.practicum.ewm.model.EndpointHit;
+import ru.yandex.practicum.ewm.model.EndpointKey;
+import ru.yandex.practicum.ewm.model.RollupGranularity;
+import ru.yandex.practicum.ewm.model.RollupSegment;
+import ru.yandex.practicum.ewm.model.VisitorAggregate;
+import ru.yandex.practicum.ewm.util.IpAddressUtils;
+import ru.yandex.practicum.ewm.util.RollupPlanner;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+@DataJpaTest
+@Import({RollupRepository.class, DictionaryRepository.class, IngestProperties.class, SimpleMeterRegistry.class})
+class RollupRepositoryTest {
+
+    private static final LocalDateTime ORIGIN = LocalDateTime.of(2023, 5, 1, 0, 0, 0);
+
+    @Autowired
+    private StatsRepository statsRepository;
+
+    @Autowired
+    private RollupRepository rollupRepository;
+
+    @Autowired
+    private DictionaryRepository dictionaryRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void saveEndpointHits() {
+        Random random = new Random(42);
+        List<EndpointHit> endpointHits = new ArrayList<>();
+
+        for (int i = 0; i < 2_000; i++) {
+            endpointHits.add(initEndpointHit("/events/" + random.nextInt(5), "10.0.0." + random.nextInt(200),
+                    ORIGIN.plusSeconds(random.nextInt(5 * 24 * 60 * 60))));
+        }
+
+        dictionaryRepository.encode(endpointHits);
+        statsRepository.saveAllInBatch(endpointHits);
+        rollupRepository.add(endpointHits);
+    }
+
+    @Test
+    void findStats_shouldMatchTheRawHits_forUnalignedRanges() {
+        Random random = new Random(7);
+
+        for (int i = 0; i < 50; i++) {
+            LocalDateTime start = ORIGIN.plusSeconds(random.nextInt(3 * 24 * 60 * 60));
+            LocalDateTime end = start.plusSeconds(random.nextInt(3 * 24 * 60 * 60));
+
+            List<ViewStatsDto> expected = rollupRepository.findStats(
+                    List.of(new RollupSegment(null, start, end, true)), null);
+
+            assertThat(rollupRepository.findStats(RollupPlanner.plan(start, end), null))
+                    .containsExactlyInAnyOrderElementsOf(expected);
+        }
+    }
+
+    @Test
+    void findStats_shouldFilterByUris() {
+        LocalDateTime start = ORIGIN.plusMinutes(90).plusSeconds(5);
+        LocalDateTime end = ORIGIN.plusDays(3).plusSeconds(10);
+
+        assertThat(rollupRepository.findStats(RollupPlanner.plan(start, end), List.of("/events/1")))
+                .extracting(ViewStatsDto::getUri)
+                .containsExactly("/events/1");
+        assertThat(rollupRepository.findStats(RollupPlanner.plan(start, end), List.of())).isEmpty();
+    }
+
+    @Test
+    void findApproximateUniqueStats_shouldBeCloseToTheExactCounts() {
+        LocalDateTime start = ORIGIN.plusMinutes(90).plusSeconds(5);
+        LocalDateTime end = ORIGIN.plusDays(4).plusSeconds(10);
+
+        Map<String, Long> exact = countDistinctIps(start, end);
+        List<ViewStatsDto> approximate = rollupRepository.findApproximateUniqueStats(
+                RollupPlanner.plan(start, end), null);
+
+        assertThat(approximate).hasSize(exact.size());
+        assertThat(approximate).allSatisfy(viewStats -> assertThat((double) viewStats.getHits())
+                .isCloseTo(exact.get(viewStats.getUri()), within(exact.get(viewStats.getUri()) * 0.05)));
+    }
+
+    @Test
+    void findVisitors_shouldMatchTheExactCounts_forUnalignedRanges() {
+        Random random = new Random(7);
+
+        for (int i = 0; i < 20; i++) {
+            LocalDateTime start = ORIGIN.plusSeconds(random.nextInt(3 * 24 * 60 * 60));
+            LocalDateTime end = start.plusSeconds(random.nextInt(3 * 24 * 60 * 60));
+
+            assertThat(toMap(rollupRepository.findVisitors(RollupPlanner.plan(start, end), null).toViewStats()))
+                    .isEqualTo(countDistinctIps(start, end));
+        }
+    }
+
+    @Test
+    void findVisitors_shouldRebuildMissingBitmapsFromTheRawHits() {
+        LocalDateTime start = ORIGIN.plusMinutes(90).plusSeconds(5);
+        LocalDateTime end = ORIGIN.plusDays(4).plusSeconds(10);
+
+        jdbcTemplate.update("UPDATE hits_hour SET visitors = NULL");
+        jdbcTemplate.update("UPDATE hits_day SET visitors = NULL");
+
+        assertThat(toMap(rollupRepository.findVisitors(RollupPlanner.plan(start, end), null).toViewStats()))
+                .isEqualTo(countDistinctIps(start, end));
+
+        List<EndpointHit> endpointHits = List.of(initEndpointHit("/events/1", "10.0.2.1", ORIGIN.plusDays(2)));
+        dictionaryRepository.encode(endpointHits);
+        statsRepository.saveAllInBatch(endpointHits);
+        rollupRepository.add(endpointHits);
+        rollupRepository.fillMissingVisitors(ORIGIN, ORIGIN.plusDays(5));
+
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM hits_hour WHERE visitors IS NULL", Long.class))
+                .isZero();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM hits_day WHERE visitors IS NULL", Long.class))
+                .isZero();
+        assertThat(toMap(rollupRepository.findVisitors(RollupPlanner.plan(start, end), null).toViewStats()))
+                .isEqualTo(countDistinctIps(start, end));
+    }
+
+    @Test
+    void findVisitors_shouldNotReadTheRawHits_forRangesAlignedToHours() {
+        LocalDateTime start = ORIGIN.plusHours(5);
+        LocalDateTime end = ORIGIN.plusDays(3).plusHours(7);
+        Map<String, Long> expected = countDistinctIps(start, end.minusNanos(1));
+
+        jdbcTemplate.update("DELETE FROM hits");
+
+        assertThat(toMap(rollupRepository.findVisitors(RollupPlanner.plan(start, end, false), null).toViewStats()))
+                .isEqualTo(expected);
+    }
+
+    @Test
+    void findVisitors_shouldCountUnknownIpsWithoutWritingTheDictionary() {
+        LocalDateTime start = ORIGIN.plusDays(1).plusSeconds(10);
+        LocalDateTime end = ORIGIN.plusDays(3).plusSeconds(5);
+        Long visitors = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM visitors", Long.class);
+
+        jdbcTemplate.update("INSERT INTO hits (app_id, uri_id, ip, created) "
+                        + "SELECT id, ?, ?, ? FROM apps WHERE name = 'ewm-main-service'",
+                dictionaryRepository.findUriIds(List.of("/events/1")).get(0), IpAddressUtils.parse("10.0.3.1"),
+                ORIGIN.plusDays(1).plusSeconds(20));
+
+        VisitorAggregate aggregate = rollupRepository.findVisitors(RollupPlanner.plan(start, end), null);
+
+        assertThat(toMap(aggregate.toViewStats())).isEqualTo(countDistinctIps(start, end));
+        assertThat(aggregate.isCacheable()).isFalse();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM visitors", Long.class)).isEqualTo(visitors);
+        assertThat(toMap(aggregate.plus(rollupRepository.findVisitors(RollupPlanner.plan(start, end), null))
+                .toViewStats())).isEqualTo(countDistinctIps(start, end));
+    }
+
+    @Test
+    void findTopStats_shouldReturnTheMostViewedUris() {
+        LocalDateTime start = ORIGIN.plusMinutes(90).plusSeconds(5);
+        LocalDateTime end = ORIGIN.plusDays(4).plusSeconds(10);
+        List<ViewStatsDto> all = rollupRepository.findStats(RollupPlanner.plan(start, end), null);
+
+        assertThat(rollupRepository.findTopStats(RollupPlanner.plan(start, end), null, 3))
+                .extracting(ViewStatsDto::getHits)
+                .containsExactlyElementsOf(all.stream().map(ViewStatsDto::getHits).limit(3).collect(Collectors.toList()));
+        assertThat(rollupRepository.findTopUniqueStats(start, end, null, 2))
+                .extracting(ViewStatsDto::getHits)
+                .containsExactlyElementsOf(countDistinctIps(start, end).values().stream()
+                        .sorted(Comparator.reverseOrder()).limit(2).collect(Collectors.toList()));
+    }
+
+    @Test
+    void findTopStats_shouldOnlyCountUrisWithThePrefix() {
+        List<EndpointHit> endpointHits = List.of(
+                initEndpointHit("/compilations_1", "10.0.1.1", ORIGIN),
+                initEndpointHit("/compilationsX1", "10.0.1.1", ORIGIN));
+        dictionaryRepository.encode(endpointHits);
+        statsRepository.saveAllInBatch(endpointHits);
+        rollupRepository.add(endpointHits);
+
+        List<RollupSegment> segments = RollupPlanner.plan(ORIGIN, ORIGIN.plusDays(5));
+
+        assertThat(rollupRepository.findTopStats(segments, "/events/", 10))
+                .hasSize(5)
+                .allSatisfy(viewStats -> assertThat(viewStats.getUri()).startsWith("/events/"));
+        assertThat(rollupRepository.findTopStats(segments, "/compilations_", 10))
+                .extracting(ViewStatsDto::getUri)
+                .containsExactly("/compilations_1");
+    }
+
+    @Test
+    void findSeries_shouldSplitTheRollupTotalsIntoBuckets() {
+        LocalDateTime first = ORIGIN.plusHours(5);
+        List<String> uris = List.of("/events/1", "/events/2");
+
+        Map<EndpointKey, long[]> series = rollupRepository.findSeries(RollupGranularity.HOUR, first, 48, uris);
+        List<ViewStatsDto> totals = rollupRepository.findStats(
+                List.of(new RollupSegment(null, first, first.plusHours(48), false)), uris);
+
+        assertThat(series).hasSize(2);
+        assertThat(series.values()).allSatisfy(hits -> assertThat(hits).hasSize(48));
+        assertThat(totals).allSatisfy(viewStats -> assertThat(LongStream.of(series.get(
+                new EndpointKey(viewStats.getApp(), viewStats.getUri()))).sum()).isEqualTo(viewStats.getHits()));
+    }
+
+    @Test
+    void add_shouldMergeNewHitsIntoExistingSketches() {
+        LocalDateTime timestamp = ORIGIN.plusDays(1).plusMinutes(30);
+        List<EndpointHit> endpointHits = List.of(
+                initEndpointHit("/events/100", "10.0.1.1", timestamp),
+                initEndpointHit("/events/100", "10.0.1.2", timestamp));
+
+        dictionaryRepository.encode(endpointHits);
+        statsRepository.saveAllInBatch(endpointHits);
+        rollupRepository.add(endpointHits);
+        statsRepository.saveAllInBatch(endpointHits.subList(0, 1));
+        rollupRepository.add(endpointHits.subList(0, 1));
+
+        List<RollupSegment> day = List.of(new RollupSegment(RollupGranularity.DAY,
+                ORIGIN.plusDays(1), ORIGIN.plusDays(2), false));
+
+        assertThat(rollupRepository.findApproximateUniqueStats(day, List.of("/events/100")))
+                .containsExactly(new ViewStatsDto("ewm-main-service", "/events/100", 2L));
+        assertThat(rollupRepository.findVisitors(day, List.of("/events/100")).toViewStats())
+                .containsExactly(new ViewStatsDto("ewm-main-service", "/events/100", 2L));
+        assertThat(rollupRepository.findStats(day, List.of("/events/100")))
+                .containsExactly(new ViewStatsDto("ewm-main-service", "/events/100", 3L));
+    }
+
+    private Map<String, Long> countDistinctIps(LocalDateTime start, LocalDateTime end) {
+        Map<String, Long> exact = new HashMap<>();
+
+        jdbcTemplate.query("SELECT u.name AS uri, COUNT(DISTINCT ip) AS hits FROM hits h "
+                        + "JOIN uris u ON u.id = h.uri_id WHERE created >= ? AND created <= ? GROUP BY u.name",
+                rs -> {
+                    exact.put(rs.getString("uri"), rs.getLong("hits"));
+                }, start, end);
+
+        return exact;
+    }
+
+    private Map<String, Long> toMap(List<ViewStatsDto> stats) {
+        return stats.stream().collect(Collectors.toMap(ViewStatsDto::getUri, ViewStatsDto::getHits));
+    }
+
+    private EndpointHit initEndpointHit(String uri, String ip, LocalDateTime timestamp) {
+        EndpointHit endpointHit = new EndpointHit();
+
+        endpointHit.setApp("ewm-main-service");
+        endpointHit.setUri(uri);
+        endpointHit.setIp(IpAddressUtils.parse(ip));
+        endpointHit.setTimestamp(timestamp);
+
+        return endpointHit;
+    }
+}
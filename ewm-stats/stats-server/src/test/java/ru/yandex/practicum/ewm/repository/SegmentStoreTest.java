@@ -0,0 +1,120 @@
+package ru.yandex.practicum.ewm.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.yandex.practicum.ewm.config.SegmentProperties;
+import ru.yandex.practicum.ewm.model.EndpointHit;
+import ru.yandex.practicum.ewm.util.IpAddressUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SegmentStoreTest {
+
+    private static final LocalDateTime ORIGIN = LocalDateTime.of(2023, 5, 1, 0, 0, 0);
+
+    @TempDir
+    Path directory;
+
+    private final SegmentProperties properties = new SegmentProperties();
+
+    private SegmentStore segmentStore;
+
+    @BeforeEach
+    void setUp() {
+        properties.setDirectory(directory.toString());
+        properties.setRecordsPerSegment(100);
+        properties.setBlockSize(10);
+        segmentStore = new SegmentStore(properties);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        segmentStore.close();
+    }
+
+    @Test
+    void append_shouldRollOverToNewSegments_andAssignIncreasingIds() throws IOException {
+        List<EndpointHit> endpointHits = initEndpointHits(250);
+
+        segmentStore.append(endpointHits);
+
+        assertThat(endpointHits).extracting(EndpointHit::getId).isSorted().doesNotHaveDuplicates();
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.filter(path -> path.toString().endsWith(".dat")).count()).isEqualTo(3);
+        }
+        assertThat(scan(ORIGIN, ORIGIN.plusHours(1), uri -> true)).hasSize(250);
+    }
+
+    @Test
+    void scan_shouldOnlyVisitHitsInTheRangeWithAMatchingUri() {
+        segmentStore.append(initEndpointHits(250));
+
+        List<String> visited = scan(ORIGIN.plusSeconds(20), ORIGIN.plusSeconds(29), "/events/1"::equals);
+
+        assertThat(visited).hasSize(2).containsOnly("/events/1");
+    }
+
+    @Test
+    void scan_shouldPassTheIpInNetworkByteOrder() {
+        EndpointHit endpointHit = initEndpointHit("/events/1", "2001:db8::1", ORIGIN);
+        segmentStore.append(List.of(endpointHit));
+        List<byte[]> ips = new ArrayList<>();
+
+        segmentStore.scan(ORIGIN, ORIGIN, uri -> true, (endpoint, timestamp, ipHigh, ipLow) ->
+                ips.add(ByteBuffer.allocate(16).putLong(ipHigh).putLong(ipLow).array()));
+
+        assertThat(ips).containsExactly(IpAddressUtils.parse("2001:db8::1"));
+    }
+
+    @Test
+    void open_shouldRestoreCommittedHits_andIgnoreATornDictionaryEntry() throws IOException {
+        segmentStore.append(initEndpointHits(150));
+        segmentStore.close();
+
+        Path dictionary = directory.resolve("segment-0000000001.dict");
+        Files.write(dictionary, new byte[]{0, 42, 'x'}, StandardOpenOption.APPEND);
+
+        segmentStore = new SegmentStore(properties);
+        segmentStore.append(initEndpointHits(10));
+
+        assertThat(scan(ORIGIN, ORIGIN.plusHours(1), uri -> true)).hasSize(160);
+    }
+
+    private List<String> scan(LocalDateTime start, LocalDateTime end, Predicate<String> filter) {
+        List<String> uris = new ArrayList<>();
+        segmentStore.scan(start, end, filter, (endpoint, timestamp, ipHigh, ipLow) -> uris.add(endpoint.getUri()));
+        return uris;
+    }
+
+    private List<EndpointHit> initEndpointHits(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> initEndpointHit("/events/" + (i % 5), "10.0.0." + (i % 7), ORIGIN.plusSeconds(i)))
+                .collect(Collectors.toList());
+    }
+
+    private EndpointHit initEndpointHit(String uri, String ip, LocalDateTime timestamp) {
+        EndpointHit endpointHit = new EndpointHit();
+
+        endpointHit.setApp("ewm-main-service");
+        endpointHit.setUri(uri);
+        endpointHit.setIp(IpAddressUtils.parse(ip));
+        endpointHit.setTimestamp(timestamp);
+
+        return endpointHit;
+    }
+}
@@ -0,0 +1,121 @@
+package ru.yandex.practicum.ewm.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.ewm.config.DedupProperties;
+import ru.yandex.practicum.ewm.model.EndpointHit;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HitDeduplicatorTest {
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2023-05-01T12:00:00Z"));
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private HitDeduplicator hitDeduplicator;
+
+    @BeforeEach
+    void setUp() {
+        DedupProperties properties = new DedupProperties();
+        properties.setWindow(Duration.ofMinutes(3));
+
+        hitDeduplicator = new HitDeduplicator(properties, meterRegistry, clock);
+    }
+
+    @Test
+    void accept_shouldDropTheRepeatedIds_withinTheWindow() {
+        assertThat(hitDeduplicator.accept(initEndpointHit("first"))).isTrue();
+        assertThat(hitDeduplicator.accept(initEndpointHit(null))).isTrue();
+        assertThat(hitDeduplicator.accept(initEndpointHit(null))).isTrue();
+
+        clock.advance(Duration.ofMinutes(2).plusSeconds(59));
+
+        assertThat(hitDeduplicator.accept(initEndpointHit("first"))).isFalse();
+        assertThat(hitDeduplicator.accept(initEndpointHit("second"))).isTrue();
+        assertThat(meterRegistry.get("stats.ingest.duplicates").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("stats.ingest.dedup.ids").gauge().value()).isEqualTo(2);
+    }
+
+    @Test
+    void accept_shouldForgetTheIds_afterTheWindow() {
+        hitDeduplicator.accept(initEndpointHit("first"));
+
+        clock.advance(Duration.ofMinutes(2));
+        hitDeduplicator.accept(initEndpointHit("second"));
+
+        clock.advance(Duration.ofMinutes(2));
+
+        assertThat(hitDeduplicator.accept(initEndpointHit("first"))).isTrue();
+        assertThat(hitDeduplicator.accept(initEndpointHit("second"))).isFalse();
+
+        clock.advance(Duration.ofHours(1));
+
+        assertThat(hitDeduplicator.accept(initEndpointHit("second"))).isTrue();
+    }
+
+    @Test
+    void acceptAll_shouldDropTheRepeatedIds_withinTheList() {
+        List<EndpointHit> endpointHits = List.of(initEndpointHit("first"), initEndpointHit("second"),
+                initEndpointHit("first"));
+
+        assertThat(hitDeduplicator.acceptAll(endpointHits)).containsExactly(endpointHits.get(0), endpointHits.get(1));
+    }
+
+    @Test
+    void forget_shouldAcceptTheIdsAgain() {
+        hitDeduplicator.accept(initEndpointHit("first"));
+        hitDeduplicator.accept(initEndpointHit("second"));
+
+        hitDeduplicator.forget(List.of(initEndpointHit("first")));
+
+        assertThat(hitDeduplicator.accept(initEndpointHit("first"))).isTrue();
+        assertThat(hitDeduplicator.accept(initEndpointHit("second"))).isFalse();
+    }
+
+    private EndpointHit initEndpointHit(String hitId) {
+        EndpointHit endpointHit = new EndpointHit();
+
+        endpointHit.setApp("ewm-main-service");
+        endpointHit.setUri("/events/1");
+        endpointHit.setHitId(hitId);
+
+        return endpointHit;
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant instant;
+
+        private MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
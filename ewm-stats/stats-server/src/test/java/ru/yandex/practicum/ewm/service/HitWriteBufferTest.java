@@ -0,0 +1,164 @@
+package ru.yandex.practicum.ewm.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.yandex.practicum.ewm.config.IngestProperties;
+import ru.yandex.practicum.ewm.model.EndpointHit;
+import ru.yandex.practicum.ewm.util.IpAddressUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class HitWriteBufferTest {
+
+    @Mock
+    private EndpointHitWriter endpointHitWriter;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private HitWriteBuffer hitWriteBuffer;
+
+    @AfterEach
+    void stopBuffer() throws InterruptedException {
+        hitWriteBuffer.stop();
+    }
+
+    @Test
+    void submit_shouldWriteHitsInGroupCommits_ifAckOnFlush() {
+        hitWriteBuffer = initBuffer(IngestProperties.Ack.FLUSH, 10);
+
+        List<CompletableFuture<Void>> futures = IntStream.range(0, 25)
+                .mapToObj(i -> CompletableFuture.runAsync(() -> hitWriteBuffer.submit(initEndpointHit(i))))
+                .collect(Collectors.toList());
+        futures.forEach(CompletableFuture::join);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<EndpointHit>> captor = ArgumentCaptor.forClass(List.class);
+        verify(endpointHitWriter, atLeastOnce()).writeAll(captor.capture());
+
+        assertThat(captor.getAllValues()).allSatisfy(batch -> assertThat(batch).hasSizeLessThanOrEqualTo(10));
+        assertThat(captor.getAllValues().stream().mapToInt(List::size).sum()).isEqualTo(25);
+        assertThat(meterRegistry.get("stats.ingest.buffer.flush").timer().count())
+                .isEqualTo(captor.getAllValues().size());
+    }
+
+    @Test
+    void submit_shouldReturnBeforeTheFlush_ifAckOnEnqueue() throws InterruptedException {
+        hitWriteBuffer = initBuffer(IngestProperties.Ack.ENQUEUE, 10);
+
+        hitWriteBuffer.submit(initEndpointHit(1));
+        hitWriteBuffer.stop();
+
+        verify(endpointHitWriter, times(1)).writeAll(List.of(initEndpointHit(1)));
+        verify(endpointHitWriter, never()).write(initEndpointHit(1));
+    }
+
+    @Test
+    void submit_shouldPropagateTheWriteError_ifAckOnFlush() {
+        hitWriteBuffer = initBuffer(IngestProperties.Ack.FLUSH, 10);
+
+        doThrow(new IllegalStateException("Database is unavailable")).when(endpointHitWriter).writeAll(anyList());
+
+        assertThatExceptionOfType(RuntimeException.class)
+                .isThrownBy(() -> hitWriteBuffer.submit(initEndpointHit(1)));
+    }
+
+    @Test
+    void submit_shouldWriteTheHitSynchronously_ifBufferIsStopped() throws InterruptedException {
+        hitWriteBuffer = initBuffer(IngestProperties.Ack.FLUSH, 10);
+
+        hitWriteBuffer.stop();
+        hitWriteBuffer.submit(initEndpointHit(1));
+
+        verify(endpointHitWriter, times(1)).write(initEndpointHit(1));
+        verify(endpointHitWriter, never()).writeAll(anyList());
+    }
+
+    @Test
+    void submit_shouldFail_ifTheFlushTakesLongerThanTheTimeout() {
+        hitWriteBuffer = initBuffer(IngestProperties.Ack.FLUSH, 10);
+
+        doAnswer(invocation -> {
+            Thread.sleep(500);
+            return null;
+        }).when(endpointHitWriter).writeAll(anyList());
+
+        assertThatExceptionOfType(HitWriteTimeoutException.class)
+                .isThrownBy(() -> hitWriteBuffer.submit(initEndpointHit(1)))
+                .withMessageContaining("was not written within")
+                .satisfies(e -> assertThat(e.getPendingWrite().toCompletableFuture().join()).isNull());
+    }
+
+    @Test
+    void submit_shouldDropTheQueuedHit_ifItIsNotWrittenWithinTheTimeout() throws InterruptedException {
+        hitWriteBuffer = initBuffer(IngestProperties.Ack.FLUSH, 1);
+
+        doAnswer(invocation -> {
+            Thread.sleep(500);
+            return null;
+        }).when(endpointHitWriter).writeAll(anyList());
+
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> hitWriteBuffer.submit(initEndpointHit(1)));
+        Thread.sleep(50);
+
+        assertThatExceptionOfType(IllegalStateException.class)
+                .isThrownBy(() -> hitWriteBuffer.submit(initEndpointHit(2)))
+                .withMessageContaining("was not written within")
+                .isNotInstanceOf(HitWriteTimeoutException.class);
+        assertThat(first).failsWithin(Duration.ofSeconds(1))
+                .withThrowableOfType(ExecutionException.class)
+                .withCauseInstanceOf(HitWriteTimeoutException.class);
+
+        hitWriteBuffer.stop();
+
+        verify(endpointHitWriter, times(1)).writeAll(List.of(initEndpointHit(1)));
+        verify(endpointHitWriter, never()).writeAll(List.of(initEndpointHit(2)));
+    }
+
+    private HitWriteBuffer initBuffer(IngestProperties.Ack ack, int flushSize) {
+        IngestProperties properties = new IngestProperties();
+
+        properties.setMode(IngestProperties.Mode.BUFFERED);
+        properties.setAck(ack);
+        properties.setFlushSize(flushSize);
+        properties.setFlushInterval(Duration.ofMillis(20));
+        properties.setFlushTimeout(Duration.ofMillis(200));
+
+        HitWriteBuffer buffer = new HitWriteBuffer(endpointHitWriter, properties, meterRegistry);
+        buffer.start();
+
+        return buffer;
+    }
+
+    private EndpointHit initEndpointHit(int id) {
+        EndpointHit endpointHit = new EndpointHit();
+
+        endpointHit.setApp("ewm-main-service");
+        endpointHit.setUri("/events/" + id);
+        endpointHit.setIp(IpAddressUtils.parse("192.163.0.1"));
+        endpointHit.setTimestamp(LocalDateTime.of(2023, 6, 18, 21, 15, 10));
+
+        return endpointHit;
+    }
+}
@@ -0,0 +1,151 @@
+package ru.yandex.practicum.ewm.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.ewm.config.ArchiveProperties;
+import ru.yandex.practicum.ewm.config.IngestProperties;
+import ru.yandex.practicum.ewm.dto.ViewStatsDto;
+import ru.yandex.practicum.ewm.model.EndpointHit;
+import ru.yandex.practicum.ewm.model.HitCountAggregate;
+import ru.yandex.practicum.ewm.model.RollupSegment;
+import ru.yandex.practicum.ewm.repository.ArchiveRepository;
+import ru.yandex.practicum.ewm.repository.DictionaryRepository;
+import ru.yandex.practicum.ewm.repository.RollupRepository;
+import ru.yandex.practicum.ewm.repository.StatsRepository;
+import ru.yandex.practicum.ewm.util.IpAddressUtils;
+import ru.yandex.practicum.ewm.util.RollupPlanner;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@Import({RollupRepository.class, DictionaryRepository.class, IngestProperties.class, SimpleMeterRegistry.class})
+class HitsArchiveTest {
+
+    private static final LocalDateTime ORIGIN = LocalDateTime.of(2023, 5, 1, 0, 0, 0);
+
+    @TempDir
+    Path directory;
+
+    @Autowired
+    private StatsRepository statsRepository;
+
+    @Autowired
+    private RollupRepository rollupRepository;
+
+    @Autowired
+    private DictionaryRepository dictionaryRepository;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private HitsArchive hitsArchive;
+
+    @BeforeEach
+    void setUp() {
+        ArchiveProperties properties = new ArchiveProperties();
+        properties.setEnabled(true);
+        properties.setDirectory(directory.toString());
+        properties.setMaxAge(Duration.ofDays(2));
+
+        hitsArchive = new HitsArchive(new ArchiveRepository(namedJdbcTemplate, dictionaryRepository, properties),
+                rollupRepository, properties, new TransactionTemplate(transactionManager),
+                Clock.fixed(ORIGIN.plusDays(5).plusHours(12).toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+
+        Random random = new Random(42);
+        List<EndpointHit> endpointHits = new ArrayList<>();
+
+        for (int i = 0; i < 2_000; i++) {
+            endpointHits.add(initEndpointHit("/events/" + random.nextInt(5), "10.0.0." + random.nextInt(200),
+                    ORIGIN.plusSeconds(random.nextInt(5 * 24 * 60 * 60))));
+        }
+
+        save(endpointHits);
+    }
+
+    @Test
+    void archiveHits_shouldMoveTheOldDaysAndKeepTheStats() {
+        LocalDateTime start = ORIGIN.plusHours(5).plusSeconds(17);
+        LocalDateTime end = ORIGIN.plusDays(4).plusHours(3).plusSeconds(42);
+
+        List<ViewStatsDto> hits = rollupRepository.findStats(RollupPlanner.plan(start, end), null);
+        List<ViewStatsDto> unique = rollupRepository.findVisitors(List.of(new RollupSegment(null, start, end, true)),
+                null).toViewStats();
+
+        hitsArchive.archiveHits();
+
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM hits WHERE created < ?", Long.class,
+                ORIGIN.plusDays(3))).isZero();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM hits WHERE created >= ?", Long.class,
+                ORIGIN.plusDays(3))).isPositive();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM hits_archive", Long.class)).isEqualTo(3);
+        assertThat(hitsArchive.reaches(start)).isTrue();
+        assertThat(hitsArchive.reaches(ORIGIN.plusDays(3))).isFalse();
+
+        assertThat(HitCountAggregate.of(rollupRepository.findStats(RollupPlanner.plan(start, end), null))
+                .plus(hitsArchive.aggregate(start, end, true, null, false, false)).toViewStats())
+                .containsExactlyInAnyOrderElementsOf(hits);
+        assertThat(rollupRepository.findVisitors(RollupPlanner.plan(start, end), null)
+                .plus(hitsArchive.aggregate(start, end, true, null, true, false)).toViewStats())
+                .containsExactlyInAnyOrderElementsOf(unique);
+    }
+
+    @Test
+    void archiveHits_shouldMergeLateHitsIntoTheArchivedDay() {
+        hitsArchive.archiveHits();
+
+        save(List.of(initEndpointHit("/events/late", "10.0.1.1", ORIGIN.plusHours(1).plusSeconds(1)),
+                initEndpointHit("/events/late", "10.0.1.2", ORIGIN.plusHours(1).plusSeconds(2))));
+
+        hitsArchive.archiveHits();
+
+        LocalDateTime start = ORIGIN.plusHours(1);
+        LocalDateTime end = ORIGIN.plusHours(1).plusSeconds(30);
+
+        assertThat(jdbcTemplate.queryForObject("SELECT version FROM hits_archive WHERE bucket = ?", Integer.class,
+                ORIGIN.toLocalDate())).isEqualTo(2);
+        assertThat(hitsArchive.aggregate(start, end, true, List.of("/events/late"), true, false).toViewStats())
+                .containsExactly(new ViewStatsDto("ewm-main-service", "/events/late", 2L));
+        assertThat(directory.toFile().list()).hasSize(4);
+    }
+
+    private void save(List<EndpointHit> endpointHits) {
+        dictionaryRepository.encode(endpointHits);
+        statsRepository.saveAllInBatch(endpointHits);
+        rollupRepository.add(endpointHits);
+    }
+
+    private EndpointHit initEndpointHit(String uri, String ip, LocalDateTime timestamp) {
+        EndpointHit endpointHit = new EndpointHit();
+
+        endpointHit.setApp("ewm-main-service");
+        endpointHit.setUri(uri);
+        endpointHit.setIp(IpAddressUtils.parse(ip));
+        endpointHit.setTimestamp(timestamp);
+
+        return endpointHit;
+    }
+}
@@ -0,0 +1,125 @@
+package ru.yandex.practicum.ewm.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.ewm.config.PartitionProperties;
+import ru.yandex.practicum.ewm.repository.PartitionRepository;
+import ru.yandex.practicum.ewm.repository.RollupRepository;
+import ru.yandex.practicum.ewm.repository.SqlDialect;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class HitsPartitionManagerTest {
+
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2023-05-15T10:00:00Z"), ZoneOffset.UTC);
+
+    @Mock
+    private PartitionRepository partitionRepository;
+
+    @Mock
+    private RollupRepository rollupRepository;
+
+    @Mock
+    private HitsArchive hitsArchive;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final PartitionProperties properties = new PartitionProperties();
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        properties.setMonthsAhead(1);
+    }
+
+    @Test
+    void maintainPartitions_shouldConvertTableAndCreateMissingPartitions() {
+        when(partitionRepository.isPartitioned()).thenReturn(false);
+        when(partitionRepository.findPartitionMonths()).thenReturn(List.of(YearMonth.of(2023, 5)));
+        when(partitionRepository.findDefaultPartitionMonths()).thenReturn(List.of(YearMonth.of(2022, 12)));
+
+        initManager(SqlDialect.POSTGRESQL).maintainPartitions();
+
+        verify(partitionRepository).convertToPartitioned();
+        verify(partitionRepository).createDefaultPartition();
+        verify(partitionRepository).createPartition(YearMonth.of(2022, 12));
+        verify(partitionRepository).createPartition(YearMonth.of(2023, 6));
+        verify(partitionRepository, never()).createPartition(YearMonth.of(2023, 5));
+        verify(partitionRepository, never()).dropPartition(any());
+    }
+
+    @Test
+    void maintainPartitions_shouldDropPartitionsOutsideRetention() {
+        properties.setRetentionMonths(2);
+        when(partitionRepository.isPartitioned()).thenReturn(true);
+        when(partitionRepository.findPartitionMonths()).thenReturn(List.of(YearMonth.of(2023, 2),
+                YearMonth.of(2023, 3), YearMonth.of(2023, 4), YearMonth.of(2023, 5), YearMonth.of(2023, 6)));
+
+        initManager(SqlDialect.POSTGRESQL).maintainPartitions();
+
+        InOrder inOrder = inOrder(rollupRepository, partitionRepository);
+        inOrder.verify(rollupRepository).fillMissingVisitors(LocalDateTime.of(2023, 2, 1, 0, 0),
+                LocalDateTime.of(2023, 3, 1, 0, 0));
+        inOrder.verify(rollupRepository).fillMissingSketches(LocalDateTime.of(2023, 2, 1, 0, 0),
+                LocalDateTime.of(2023, 3, 1, 0, 0));
+        inOrder.verify(partitionRepository).dropPartition(YearMonth.of(2023, 2));
+
+        verify(partitionRepository, never()).convertToPartitioned();
+        verify(partitionRepository, never()).dropPartition(YearMonth.of(2023, 3));
+        verify(partitionRepository, never()).createPartition(any());
+        verify(hitsArchive, never()).archiveHits();
+    }
+
+    @Test
+    void maintainPartitions_shouldKeepPartitionsAfterTheArchiveCutoff_andArchiveTheOthersFirst() {
+        properties.setRetentionMonths(1);
+        when(hitsArchive.isEnabled()).thenReturn(true);
+        when(hitsArchive.getCutoff()).thenReturn(LocalDateTime.of(2023, 3, 10, 0, 0));
+        when(partitionRepository.isPartitioned()).thenReturn(true);
+        when(partitionRepository.findPartitionMonths()).thenReturn(List.of(YearMonth.of(2023, 2),
+                YearMonth.of(2023, 3), YearMonth.of(2023, 4), YearMonth.of(2023, 5), YearMonth.of(2023, 6)));
+
+        initManager(SqlDialect.POSTGRESQL).maintainPartitions();
+
+        InOrder inOrder = inOrder(hitsArchive, partitionRepository);
+        inOrder.verify(hitsArchive).archiveHits();
+        inOrder.verify(partitionRepository).dropPartition(YearMonth.of(2023, 2));
+
+        verify(partitionRepository, never()).dropPartition(YearMonth.of(2023, 3));
+        verify(partitionRepository, never()).dropPartition(YearMonth.of(2023, 4));
+    }
+
+    @Test
+    void maintainPartitions_shouldDoNothing_ifDatabaseIsNotPostgresql() {
+        initManager(SqlDialect.H2).maintainPartitions();
+
+        verifyNoInteractions(partitionRepository);
+    }
+
+    private HitsPartitionManager initManager(SqlDialect dialect) {
+        return new HitsPartitionManager(partitionRepository, rollupRepository, hitsArchive, properties,
+                new TransactionTemplate(transactionManager), dialect, CLOCK);
+    }
+}
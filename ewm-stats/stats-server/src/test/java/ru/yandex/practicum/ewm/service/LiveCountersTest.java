@@ -0,0 +1,158 @@
+package ru.yandex.practicum.ewm.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.ewm.config.IngestProperties;
+import ru.yandex.practicum.ewm.dto.ViewStatsDto;
+import ru.yandex.practicum.ewm.model.EndpointHit;
+import ru.yandex.practicum.ewm.model.EndpointKey;
+import ru.yandex.practicum.ewm.model.HitCountAggregate;
+import ru.yandex.practicum.ewm.model.RollupGranularity;
+import ru.yandex.practicum.ewm.model.RollupSegment;
+import ru.yandex.practicum.ewm.repository.DictionaryRepository;
+import ru.yandex.practicum.ewm.repository.RollupRepository;
+import ru.yandex.practicum.ewm.repository.StatsRepository;
+import ru.yandex.practicum.ewm.util.IpAddressUtils;
+import ru.yandex.practicum.ewm.util.RollupPlanner;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({RollupRepository.class, DictionaryRepository.class, IngestProperties.class, SimpleMeterRegistry.class})
+class LiveCountersTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2023, 5, 1, 12, 0, 30);
+
+    private static final LocalDateTime HOUR = RollupGranularity.HOUR.floor(NOW);
+
+    @Autowired
+    private StatsRepository statsRepository;
+
+    @Autowired
+    private RollupRepository rollupRepository;
+
+    @Autowired
+    private DictionaryRepository dictionaryRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    private LiveCounters liveCounters;
+
+    @BeforeEach
+    void setUp() {
+        IngestProperties properties = new IngestProperties();
+        properties.setRollups(IngestProperties.Rollups.LIVE);
+
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        liveCounters = new LiveCounters(rollupRepository, dictionaryRepository, properties, transactionTemplate,
+                new SimpleMeterRegistry(), Clock.fixed(NOW.toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+
+        save(List.of(initEndpointHit("/events/1", "10.0.0.1", NOW.minusMinutes(40)),
+                initEndpointHit("/events/1", "10.0.0.2", NOW.minusSeconds(50)),
+                initEndpointHit("/events/1", "10.0.0.1", NOW.minusSeconds(5)),
+                initEndpointHit("/events/2", "10.0.0.3", NOW.minusSeconds(1))));
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (String table : List.of("hits", "hits_minute", "hits_hour", "hits_day")) {
+            jdbcTemplate.update("DELETE FROM " + table);
+        }
+    }
+
+    @Test
+    void flush_shouldMoveTheCountsOfRecentHitsToTheRollups() {
+        List<RollupSegment> segments = RollupPlanner.plan(NOW.minusHours(1), NOW.plusMinutes(1), false);
+        List<ViewStatsDto> expected = List.of(new ViewStatsDto("ewm-main-service", "/events/1", 3L),
+                new ViewStatsDto("ewm-main-service", "/events/2", 1L));
+
+        assertThat(rollupRepository.findStats(segments, null))
+                .containsExactly(new ViewStatsDto("ewm-main-service", "/events/1", 1L));
+        assertThat(HitCountAggregate.of(rollupRepository.findStats(segments, null))
+                .plus(liveCounters.getHitCounts(segments, null)).toViewStats())
+                .containsExactlyElementsOf(expected);
+
+        liveCounters.flush();
+
+        assertThat(liveCounters.getHitCounts(segments, null).toViewStats()).isEmpty();
+        assertThat(rollupRepository.findStats(segments, null)).containsExactlyElementsOf(expected);
+        assertThat(rollupRepository.findApproximateUniqueStats(
+                List.of(new RollupSegment(RollupGranularity.HOUR, HOUR.minusHours(1), HOUR.plusHours(1), false)),
+                List.of("/events/1")))
+                .containsExactly(new ViewStatsDto("ewm-main-service", "/events/1", 2L));
+    }
+
+    @Test
+    void flush_shouldMergeTheVisitorsOfRecentHitsIntoTheHourBitmaps() {
+        LocalDateTime day = RollupGranularity.DAY.floor(NOW);
+        List<RollupSegment> segments = RollupPlanner.plan(day, day.plusDays(1), false);
+        List<ViewStatsDto> expected = List.of(new ViewStatsDto("ewm-main-service", "/events/1", 2L),
+                new ViewStatsDto("ewm-main-service", "/events/2", 1L));
+
+        assertThat(rollupRepository.findVisitors(segments, null).toViewStats())
+                .containsExactly(new ViewStatsDto("ewm-main-service", "/events/1", 1L));
+        assertThat(rollupRepository.findVisitors(segments, null).plus(liveCounters.getVisitors(segments, null))
+                .toViewStats())
+                .containsExactlyElementsOf(expected);
+
+        liveCounters.flush();
+
+        assertThat(liveCounters.getVisitors(segments, null).toViewStats()).isEmpty();
+        assertThat(rollupRepository.findVisitors(segments, null).toViewStats()).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void addToSeries_shouldAddTheCountsThatAreNotFlushedYet() {
+        LocalDateTime first = HOUR.minusHours(1);
+        Map<EndpointKey, long[]> series = new HashMap<>(
+                rollupRepository.findSeries(RollupGranularity.HOUR, first, 2, List.of("/events/1")));
+
+        liveCounters.addToSeries(RollupGranularity.HOUR, first, 2, List.of("/events/1"), series);
+
+        assertThat(series).containsOnlyKeys(new EndpointKey("ewm-main-service", "/events/1"));
+        assertThat(series.get(new EndpointKey("ewm-main-service", "/events/1"))).containsExactly(2, 1);
+    }
+
+    private void save(List<EndpointHit> endpointHits) {
+        transactionTemplate.executeWithoutResult(status -> {
+            dictionaryRepository.encode(endpointHits);
+            statsRepository.saveAllInBatch(endpointHits);
+            rollupRepository.add(liveCounters.takeRecent(endpointHits));
+        });
+    }
+
+    private EndpointHit initEndpointHit(String uri, String ip, LocalDateTime timestamp) {
+        EndpointHit endpointHit = new EndpointHit();
+
+        endpointHit.setApp("ewm-main-service");
+        endpointHit.setUri(uri);
+        endpointHit.setIp(IpAddressUtils.parse(ip));
+        endpointHit.setTimestamp(timestamp);
+
+        return endpointHit;
+    }
+}
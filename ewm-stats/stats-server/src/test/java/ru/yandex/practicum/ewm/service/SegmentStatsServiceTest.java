@@ -0,0 +1,119 @@
+package ru.yandex.practicum.ewm.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.yandex.practicum.ewm.config.DedupProperties;
+import ru.yandex.practicum.ewm.config.SegmentProperties;
+import ru.yandex.practicum.ewm.dto.EndpointHitDto;
+import ru.yandex.practicum.ewm.dto.StatsSeriesDto;
+import ru.yandex.practicum.ewm.dto.ViewSeriesDto;
+import ru.yandex.practicum.ewm.dto.ViewStatsDto;
+import ru.yandex.practicum.ewm.repository.SegmentStore;
+import ru.yandex.practicum.ewm.util.SeriesRequestParam;
+import ru.yandex.practicum.ewm.util.StatsRequestParam;
+import ru.yandex.practicum.ewm.util.TopStatsRequestParam;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SegmentStatsServiceTest {
+
+    private static final String APP = "ewm-main-service";
+    private static final LocalDateTime ORIGIN = LocalDateTime.of(2023, 5, 1, 10, 0, 0);
+
+    @TempDir
+    Path directory;
+
+    private SegmentStore segmentStore;
+
+    private SegmentStatsService statsService;
+
+    @BeforeEach
+    void setUp() {
+        SegmentProperties properties = new SegmentProperties();
+        properties.setDirectory(directory.toString());
+        properties.setRecordsPerSegment(4);
+        segmentStore = new SegmentStore(properties);
+        statsService = new SegmentStatsService(segmentStore,
+                new HitDeduplicator(new DedupProperties(), new SimpleMeterRegistry()));
+
+        statsService.saveEndpointHits(List.of(
+                initEndpointHitDto("/events/1", "10.0.0.1", ORIGIN),
+                initEndpointHitDto("/events/1", "10.0.0.1", ORIGIN.plusMinutes(30)),
+                initEndpointHitDto("/events/1", "10.0.0.2", ORIGIN.plusHours(1)),
+                initEndpointHitDto("/events/2", "10.0.0.1", ORIGIN.plusHours(1)),
+                initEndpointHitDto("/compilations/1", "10.0.0.3", ORIGIN.plusHours(2))));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        segmentStore.close();
+    }
+
+    @Test
+    void getStats_shouldCountHitsAndDistinctIps() {
+        StatsRequestParam requestParam = StatsRequestParam.builder()
+                .start(ORIGIN)
+                .end(ORIGIN.plusHours(1))
+                .uris(List.of("/events/1", "/events/2"))
+                .unique(false)
+                .build();
+
+        assertThat(statsService.getStats(requestParam)).containsExactly(
+                new ViewStatsDto(APP, "/events/1", 3L), new ViewStatsDto(APP, "/events/2", 1L));
+
+        requestParam.setUnique(true);
+        assertThat(statsService.getStats(requestParam)).containsExactly(
+                new ViewStatsDto(APP, "/events/1", 2L), new ViewStatsDto(APP, "/events/2", 1L));
+
+        requestParam.setApproximate(true);
+        assertThat(statsService.getStats(requestParam)).containsExactly(
+                new ViewStatsDto(APP, "/events/1", 2L), new ViewStatsDto(APP, "/events/2", 1L));
+    }
+
+    @Test
+    void getTopStats_shouldReturnTheMostViewedUrisWithThePrefix() {
+        TopStatsRequestParam requestParam = TopStatsRequestParam.builder()
+                .start(ORIGIN)
+                .end(ORIGIN.plusHours(3))
+                .prefix("/events/")
+                .unique(false)
+                .limit(1)
+                .build();
+
+        assertThat(statsService.getTopStats(requestParam)).containsExactly(new ViewStatsDto(APP, "/events/1", 3L));
+    }
+
+    @Test
+    void getSeries_shouldCountHitsPerBucket() {
+        SeriesRequestParam requestParam = SeriesRequestParam.builder()
+                .start(ORIGIN.plusMinutes(10))
+                .end(ORIGIN.plusHours(2))
+                .uris(List.of("/events/1"))
+                .granularity("hour")
+                .build();
+
+        StatsSeriesDto series = statsService.getSeries(requestParam);
+
+        assertThat(series.getBuckets()).containsExactly(ORIGIN, ORIGIN.plusHours(1), ORIGIN.plusHours(2));
+        assertThat(series.getSeries()).containsExactly(new ViewSeriesDto(APP, "/events/1", List.of(2L, 1L, 0L)));
+    }
+
+    private EndpointHitDto initEndpointHitDto(String uri, String ip, LocalDateTime timestamp) {
+        EndpointHitDto endpointHitDto = new EndpointHitDto();
+
+        endpointHitDto.setApp(APP);
+        endpointHitDto.setUri(uri);
+        endpointHitDto.setIp(ip);
+        endpointHitDto.setTimestamp(timestamp);
+
+        return endpointHitDto;
+    }
+}
@@ -0,0 +1,189 @@
+package ru.yandex.practicum.ewm.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.flyway.FlywayProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.ewm.config.DedupProperties;
+import ru.yandex.practicum.ewm.config.IngestProperties;
+import ru.yandex.practicum.ewm.config.ShardingProperties;
+import ru.yandex.practicum.ewm.dto.EndpointHitDto;
+import ru.yandex.practicum.ewm.dto.EndpointHitsSummaryDto;
+import ru.yandex.practicum.ewm.dto.StatsSeriesDto;
+import ru.yandex.practicum.ewm.dto.ViewSeriesDto;
+import ru.yandex.practicum.ewm.dto.ViewStatsDto;
+import ru.yandex.practicum.ewm.repository.HitShard;
+import ru.yandex.practicum.ewm.repository.HitShards;
+import ru.yandex.practicum.ewm.util.SeriesRequestParam;
+import ru.yandex.practicum.ewm.util.StatsRequestParam;
+import ru.yandex.practicum.ewm.util.TopStatsRequestParam;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ShardedStatsServiceTest {
+
+    private static final String APP = "ewm-main-service";
+    private static final LocalDateTime ORIGIN = LocalDateTime.of(2023, 5, 1, 10, 0, 0);
+    private static final int SHARDS = 3;
+
+    private final Map<String, Long> hits = new HashMap<>();
+    private final Map<String, Set<String>> ips = new HashMap<>();
+
+    private HitShards hitShards;
+
+    private ShardedStatsService statsService;
+
+    @BeforeEach
+    void setUp() {
+        ShardingProperties properties = new ShardingProperties();
+        String database = UUID.randomUUID().toString();
+
+        for (int i = 0; i < SHARDS; i++) {
+            ShardingProperties.Shard shard = new ShardingProperties.Shard();
+            shard.setUrl(String.format("jdbc:h2:mem:%s_%d", database, i));
+            shard.setUsername("test");
+            shard.setPassword("test");
+            properties.getShards().add(shard);
+        }
+
+        FlywayProperties flywayProperties = new FlywayProperties();
+        flywayProperties.setLocations(List.of("classpath:db/migration/common", "classpath:db/migration/{vendor}"));
+
+        hitShards = new HitShards(properties, flywayProperties, new IngestProperties(), new SimpleMeterRegistry());
+        statsService = new ShardedStatsService(hitShards,
+                new HitDeduplicator(new DedupProperties(), new SimpleMeterRegistry()), properties);
+
+        Random random = new Random(42);
+        List<EndpointHitDto> endpointHitDtos = new ArrayList<>();
+
+        for (int i = 0; i < 1_000; i++) {
+            String uri = "/events/" + random.nextInt(20);
+            String ip = "10.0.0." + random.nextInt(50);
+
+            endpointHitDtos.add(initEndpointHitDto(uri, ip, ORIGIN.plusSeconds(random.nextInt(3 * 60 * 60))));
+            hits.merge(uri, 1L, Long::sum);
+            ips.computeIfAbsent(uri, key -> new HashSet<>()).add(ip);
+        }
+
+        assertThat(statsService.saveEndpointHits(endpointHitDtos)).isEqualTo(new EndpointHitsSummaryDto(1_000, 0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        statsService.shutdown();
+        hitShards.close();
+    }
+
+    @Test
+    void saveEndpointHits_shouldKeepEachUriOnOneShard() {
+        List<String> uris = new ArrayList<>();
+
+        for (HitShard shard : hitShards.getShards()) {
+            List<String> shardUris = new JdbcTemplate(shard.getDataSource()).queryForList(
+                    "SELECT DISTINCT u.name FROM hits h JOIN uris u ON u.id = h.uri_id", String.class);
+
+            assertThat(shardUris).isNotEmpty();
+            uris.addAll(shardUris);
+        }
+
+        assertThat(uris).doesNotHaveDuplicates().containsExactlyInAnyOrderElementsOf(hits.keySet());
+    }
+
+    @Test
+    void getStats_shouldMergeTheStatsOfAllShards() {
+        StatsRequestParam requestParam = StatsRequestParam.builder()
+                .start(ORIGIN)
+                .end(ORIGIN.plusHours(3))
+                .unique(false)
+                .build();
+
+        assertThat(toMap(statsService.getStats(requestParam))).isEqualTo(hits);
+
+        requestParam.setUnique(true);
+        assertThat(toMap(statsService.getStats(requestParam))).isEqualTo(ips.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> (long) entry.getValue().size())));
+
+        requestParam.setApproximate(true);
+        statsService.getStats(requestParam).forEach(viewStatsDto -> assertThat(viewStatsDto.getHits())
+                .isCloseTo(ips.get(viewStatsDto.getUri()).size(), within(2L)));
+    }
+
+    @Test
+    void getStats_shouldReturnTheRequestedUrisOnly() {
+        StatsRequestParam requestParam = StatsRequestParam.builder()
+                .start(ORIGIN)
+                .end(ORIGIN.plusHours(3))
+                .uris(List.of("/events/1", "/events/2", "/events/404"))
+                .unique(false)
+                .build();
+
+        assertThat(toMap(statsService.getStats(requestParam)))
+                .isEqualTo(Map.of("/events/1", hits.get("/events/1"), "/events/2", hits.get("/events/2")));
+    }
+
+    @Test
+    void getTopStats_shouldReturnTheMostViewedUrisOfAllShards() {
+        TopStatsRequestParam requestParam = TopStatsRequestParam.builder()
+                .start(ORIGIN)
+                .end(ORIGIN.plusHours(3))
+                .unique(false)
+                .limit(3)
+                .build();
+
+        List<Long> expected = hits.values().stream()
+                .sorted((value, other) -> Long.compare(other, value))
+                .limit(3)
+                .collect(Collectors.toList());
+
+        assertThat(statsService.getTopStats(requestParam))
+                .extracting(ViewStatsDto::getHits)
+                .isEqualTo(expected);
+    }
+
+    @Test
+    void getSeries_shouldSumTheBucketsOfAllShards() {
+        SeriesRequestParam requestParam = SeriesRequestParam.builder()
+                .start(ORIGIN)
+                .end(ORIGIN.plusHours(3).minusSeconds(1))
+                .uris(List.of("/events/1"))
+                .granularity("hour")
+                .build();
+
+        StatsSeriesDto series = statsService.getSeries(requestParam);
+
+        assertThat(series.getSeries()).hasSize(1);
+
+        ViewSeriesDto viewSeriesDto = series.getSeries().get(0);
+        assertThat(viewSeriesDto.getHits()).hasSize(3);
+        assertThat(viewSeriesDto.getHits().stream().mapToLong(Long::longValue).sum()).isEqualTo(hits.get("/events/1"));
+    }
+
+    private Map<String, Long> toMap(List<ViewStatsDto> stats) {
+        return stats.stream().collect(Collectors.toMap(ViewStatsDto::getUri, ViewStatsDto::getHits));
+    }
+
+    private EndpointHitDto initEndpointHitDto(String uri, String ip, LocalDateTime timestamp) {
+        EndpointHitDto endpointHitDto = new EndpointHitDto();
+
+        endpointHitDto.setApp(APP);
+        endpointHitDto.setUri(uri);
+        endpointHitDto.setIp(ip);
+        endpointHitDto.setTimestamp(timestamp);
+
+        return endpointHitDto;
+    }
+}
@@ -0,0 +1,166 @@
+package ru.yandex.practicum.ewm.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.util.unit.DataSize;
+import ru.yandex.practicum.ewm.config.CacheProperties;
+import ru.yandex.practicum.ewm.dto.ViewStatsDto;
+import ru.yandex.practicum.ewm.model.EndpointHit;
+import ru.yandex.practicum.ewm.model.EndpointKey;
+import ru.yandex.practicum.ewm.model.HitCountAggregate;
+import ru.yandex.practicum.ewm.model.VisitorAggregate;
+import ru.yandex.practicum.ewm.util.IpAddressUtils;
+import ru.yandex.practicum.ewm.util.StatsRequestParam;
+import ru.yandex.practicum.ewm.util.VisitorBitmaps;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class StatsCacheTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2023, 5, 1, 0, 0, 0);
+    private static final LocalDateTime NOW = LocalDateTime.of(2023, 5, 15, 10, 0, 30);
+    private static final LocalDateTime WATERMARK = LocalDateTime.of(2023, 5, 15, 10, 0, 0);
+
+    @Mock
+    private StatsCache.Loader loader;
+
+    private final CacheProperties properties = new CacheProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        properties.setSettleDelay(Duration.ofSeconds(10));
+        when(loader.load(any(), any(), anyBoolean())).thenAnswer(invocation -> hits(1));
+    }
+
+    @Test
+    void getStats_shouldCountOnlyTheHitsAfterTheCachedWatermark() {
+        StatsCache cache = initCache(NOW.plusMinutes(5));
+
+        assertThat(cache.getStats(request(NOW), loader))
+                .containsExactly(new ViewStatsDto("ewm-main-service", "/events", 2L));
+        assertThat(cache.getStats(request(NOW.plusMinutes(5)), loader))
+                .containsExactly(new ViewStatsDto("ewm-main-service", "/events", 3L));
+
+        verify(loader).load(START, WATERMARK, false);
+        verify(loader).load(WATERMARK, WATERMARK.plusMinutes(5), false);
+        assertThat(meterRegistry.counter("stats.cache.extensions").count()).isEqualTo(1);
+    }
+
+    @Test
+    void getStats_shouldReuseTheCachedAggregate_ifTheWatermarkHasNotMoved() {
+        StatsCache cache = initCache(NOW);
+
+        cache.getStats(request(NOW), loader);
+        cache.getStats(request(NOW), loader);
+
+        verify(loader).load(START, WATERMARK, false);
+        verify(loader, times(2)).load(WATERMARK, NOW, true);
+        verifyNoMoreInteractions(loader);
+        assertThat(meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void getStats_shouldNotCache_ifTheRangeIsNotSettled() {
+        StatsCache cache = initCache(NOW);
+        StatsRequestParam requestParam = StatsRequestParam.builder()
+                .start(NOW.minusSeconds(5))
+                .end(NOW)
+                .unique(false)
+                .build();
+
+        cache.getStats(requestParam, loader);
+
+        verify(loader).load(NOW.minusSeconds(5), NOW, true);
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void getStats_shouldNotCache_ifTheAggregateHasProvisionalVisitorIds() {
+        StatsCache cache = initCache(NOW);
+        byte[] ip = IpAddressUtils.parse("10.0.3.1");
+
+        when(loader.load(any(), any(), anyBoolean())).thenAnswer(invocation -> new VisitorAggregate(Map.of(
+                new EndpointKey("ewm-main-service", "/events"),
+                RoaringBitmap.bitmapOf(1, VisitorBitmaps.provisionalId(ip)))));
+
+        assertThat(cache.getStats(request(NOW), loader))
+                .containsExactly(new ViewStatsDto("ewm-main-service", "/events", 2L));
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void onHitsWritten_shouldInvalidateEntries_ifAHitIsOlderThanTheWatermark() {
+        StatsCache cache = initCache(NOW);
+        cache.getStats(request(NOW), loader);
+
+        cache.onHitsWritten(new HitsWrittenEvent(List.of(hit("/events/1", WATERMARK.minusMinutes(1)))));
+        assertThat(cache.size()).isEqualTo(1);
+
+        cache.onHitsWritten(new HitsWrittenEvent(List.of(hit("/events", WATERMARK.plusSeconds(1)))));
+        assertThat(cache.size()).isEqualTo(1);
+
+        cache.onHitsWritten(new HitsWrittenEvent(List.of(hit("/events", WATERMARK.minusMinutes(1)))));
+        assertThat(cache.size()).isZero();
+        assertThat(meterRegistry.counter("stats.cache.late.hits").count()).isEqualTo(2);
+    }
+
+    @Test
+    void getStats_shouldEvictEntries_ifTheCacheExceedsItsSize() {
+        properties.setMaxSize(DataSize.ofBytes(1000));
+        StatsCache cache = initCache(NOW);
+
+        for (int day = 1; day <= 10; day++) {
+            StatsRequestParam requestParam = request(NOW);
+            requestParam.setStart(START.withDayOfMonth(day));
+            cache.getStats(requestParam, loader);
+        }
+        cache.cleanUp();
+
+        assertThat(cache.size()).isLessThan(10);
+        assertThat(meterRegistry.get("cache.evictions").functionCounter().count()).isPositive();
+    }
+
+    private StatsCache initCache(LocalDateTime now) {
+        return new StatsCache(properties, Duration.ZERO, meterRegistry, Clock.fixed(now.toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+    }
+
+    private StatsRequestParam request(LocalDateTime end) {
+        return StatsRequestParam.builder()
+                .start(START)
+                .end(end)
+                .uris(List.of("/events"))
+                .unique(false)
+                .build();
+    }
+
+    private HitCountAggregate hits(long count) {
+        return new HitCountAggregate(Map.of(new EndpointKey("ewm-main-service", "/events"), count));
+    }
+
+    private EndpointHit hit(String uri, LocalDateTime timestamp) {
+        EndpointHit endpointHit = new EndpointHit();
+        endpointHit.setUri(uri);
+        endpointHit.setTimestamp(timestamp);
+        return endpointHit;
+    }
+}
@@ -1,25 +1,46 @@
 package ru.yandex.practicum.ewm.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.roaringbitmap.RoaringBitmap;
+import ru.yandex.practicum.ewm.config.DedupProperties;
 import ru.yandex.practicum.ewm.dto.EndpointHitDto;
+import ru.yandex.practicum.ewm.dto.EndpointHitsSummaryDto;
+import ru.yandex.practicum.ewm.dto.StatsSeriesDto;
+import ru.yandex.practicum.ewm.dto.ViewSeriesDto;
 import ru.yandex.practicum.ewm.dto.ViewStatsDto;
 import ru.yandex.practicum.ewm.mapper.StatsMapper;
 import ru.yandex.practicum.ewm.model.EndpointHit;
-import ru.yandex.practicum.ewm.repository.StatsRepository;
+import ru.yandex.practicum.ewm.model.EndpointKey;
+import ru.yandex.practicum.ewm.model.RollupGranularity;
+import ru.yandex.practicum.ewm.model.VisitorAggregate;
+import ru.yandex.practicum.ewm.repository.DictionaryRepository;
+import ru.yandex.practicum.ewm.repository.RollupRepository;
+import ru.yandex.practicum.ewm.util.IpAddressUtils;
+import ru.yandex.practicum.ewm.util.RollupPlanner;
+import ru.yandex.practicum.ewm.util.SeriesRequestParam;
 import ru.yandex.practicum.ewm.util.StatsRequestParam;
 import ru.yandex.practicum.ewm.validator.ValidationException;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
@@ -30,7 +51,31 @@ import static org.mockito.Mockito.when;
 class StatsServiceImplTest {
 
     @Mock
-    private StatsRepository statsRepository;
+    private EndpointHitWriter endpointHitWriter;
+
+    @Mock
+    private HitWriteBuffer hitWriteBuffer;
+
+    @Mock
+    private RollupRepository rollupRepository;
+
+    @Mock
+    private DictionaryRepository dictionaryRepository;
+
+    @Mock
+    private StatsCache statsCache;
+
+    @Mock
+    private HitsArchive hitsArchive;
+
+    @Mock
+    private LiveCounters liveCounters;
+
+    @Spy
+    private HitDeduplicator hitDeduplicator = new HitDeduplicator(new DedupProperties(), new SimpleMeterRegistry());
+
+    @Spy
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
 
     @InjectMocks
     private StatsServiceImpl statsService;
@@ -50,7 +95,137 @@ class StatsServiceImplTest {
         assertThatExceptionOfType(ValidationException.class)
                 .isThrownBy(() -> statsService.getStats(requestParam));
 
-        verifyNoInteractions(statsRepository);
+        verifyNoInteractions(endpointHitWriter, hitWriteBuffer, rollupRepository, dictionaryRepository);
+    }
+
+    @Test
+    void getStats_shouldReadRollups_ifNotUnique() {
+        LocalDateTime start = LocalDateTime.of(2023, 5, 1, 0, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2023, 5, 3, 12, 30, 15);
+        List<String> uris = List.of("/events/1");
+        List<ViewStatsDto> expected = List.of(initViewStatsDto());
+
+        StatsRequestParam requestParam = StatsRequestParam.builder()
+                .start(start)
+                .end(end)
+                .uris(uris)
+                .unique(false)
+                .build();
+
+        when(rollupRepository.findStats(RollupPlanner.plan(start, end), uris)).thenReturn(expected);
+
+        assertThat(statsService.getStats(requestParam)).isEqualTo(expected);
+        assertThat(meterRegistry.get("stats.query").tags("query", "stats", "unique", "false", "uris", "1").timer()
+                .count()).isEqualTo(1);
+        assertThat(meterRegistry.get("stats.query.results").summary().totalAmount()).isEqualTo(1);
+    }
+
+    @Test
+    void getStats_shouldReadTheMatchingUris_ifUrisArePatterns() {
+        LocalDateTime start = LocalDateTime.of(2023, 5, 1, 0, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2023, 5, 3, 12, 30, 15);
+        List<String> uris = List.of("/events/*");
+        List<String> matchingUris = List.of("/events/1", "/events/2");
+        List<ViewStatsDto> expected = List.of(initViewStatsDto());
+
+        StatsRequestParam requestParam = StatsRequestParam.builder()
+                .start(start)
+                .end(end)
+                .uris(uris)
+                .unique(false)
+                .build();
+
+        when(dictionaryRepository.expandUris(uris)).thenReturn(matchingUris);
+        when(rollupRepository.findStats(RollupPlanner.plan(start, end), matchingUris)).thenReturn(expected);
+
+        assertThat(statsService.getStats(requestParam)).isEqualTo(expected);
+    }
+
+    @Test
+    void getStats_shouldMergeSketches_ifUniqueAndApproximate() {
+        LocalDateTime start = LocalDateTime.of(2023, 5, 1, 0, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2023, 5, 3, 12, 30, 15);
+        List<String> uris = List.of("/events/1");
+        List<ViewStatsDto> expected = List.of(initViewStatsDto());
+
+        StatsRequestParam requestParam = StatsRequestParam.builder()
+                .start(start)
+                .end(end)
+                .uris(uris)
+                .unique(true)
+                .approximate(true)
+                .build();
+
+        when(rollupRepository.findApproximateUniqueStats(RollupPlanner.plan(start, end), uris)).thenReturn(expected);
+
+        assertThat(statsService.getStats(requestParam)).isEqualTo(expected);
+    }
+
+    @Test
+    void streamStats_shouldCountTheVisitorBitmaps_ifUniqueAndExact() {
+        LocalDateTime start = LocalDateTime.of(2023, 5, 1, 0, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2023, 5, 3, 12, 30, 15);
+        List<ViewStatsDto> streamed = new ArrayList<>();
+        Consumer<ViewStatsDto> consumer = streamed::add;
+
+        StatsRequestParam requestParam = StatsRequestParam.builder()
+                .start(start)
+                .end(end)
+                .unique(true)
+                .approximate(false)
+                .build();
+
+        when(rollupRepository.findVisitors(RollupPlanner.plan(start, end), null)).thenReturn(new VisitorAggregate(
+                Map.of(new EndpointKey("ewm-main-service", "/events/1"), RoaringBitmap.bitmapOf(1, 2))));
+
+        statsService.streamStats(requestParam, consumer);
+
+        assertThat(streamed).containsExactly(initViewStatsDto());
+        assertThat(meterRegistry.get("stats.query.results").tag("query", "stream").summary().totalAmount())
+                .isEqualTo(1);
+        verifyNoInteractions(statsCache);
+    }
+
+    @Test
+    void getSeries_shouldReturnOneCountPerBucket_mostViewedFirst() {
+        LocalDateTime start = LocalDateTime.of(2023, 5, 1, 10, 30, 0);
+        LocalDateTime end = LocalDateTime.of(2023, 5, 1, 12, 10, 0);
+        LocalDateTime first = LocalDateTime.of(2023, 5, 1, 10, 0, 0);
+        List<String> uris = List.of("/events/1", "/events/2");
+
+        SeriesRequestParam requestParam = SeriesRequestParam.builder()
+                .start(start)
+                .end(end)
+                .uris(uris)
+                .granularity("hour")
+                .build();
+
+        when(rollupRepository.findSeries(RollupGranularity.HOUR, first, 3, uris)).thenReturn(Map.of(
+                new EndpointKey("ewm-main-service", "/events/1"), new long[]{1, 0, 0},
+                new EndpointKey("ewm-main-service", "/events/2"), new long[]{0, 2, 3}));
+        when(liveCounters.read(any())).thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(0).get());
+
+        StatsSeriesDto series = statsService.getSeries(requestParam);
+
+        assertThat(series.getGranularity()).isEqualTo("HOUR");
+        assertThat(series.getBuckets()).containsExactly(first, first.plusHours(1), first.plusHours(2));
+        assertThat(series.getSeries()).containsExactly(
+                new ViewSeriesDto("ewm-main-service", "/events/2", List.of(0L, 2L, 3L)),
+                new ViewSeriesDto("ewm-main-service", "/events/1", List.of(1L, 0L, 0L)));
+    }
+
+    @Test
+    void getSeries_shouldThrowAnException_ifTheRangeHasTooManyBuckets() {
+        SeriesRequestParam requestParam = SeriesRequestParam.builder()
+                .start(LocalDateTime.of(2023, 1, 1, 0, 0, 0))
+                .end(LocalDateTime.of(2023, 3, 1, 0, 0, 0))
+                .uris(List.of("/events/1"))
+                .granularity("minute")
+                .build();
+
+        assertThatExceptionOfType(ValidationException.class)
+                .isThrownBy(() -> statsService.getSeries(requestParam));
+        verifyNoInteractions(rollupRepository);
     }
 
     @Test
@@ -58,17 +233,104 @@ class StatsServiceImplTest {
         EndpointHitDto endpointHitDto = initEndpointHitDto();
         EndpointHit endpointHit = initEndpointHit();
 
-        MockedStatic<StatsMapper> statsMapper = Mockito.mockStatic(StatsMapper.class);
-        statsMapper.when(() -> StatsMapper.toEndpointHit(endpointHitDto))
-                .thenReturn(endpointHit);
-        when(statsRepository.save(endpointHit)).thenReturn(endpointHit);
-        statsMapper.when(() -> StatsMapper.toDto(endpointHit))
-                .thenReturn(endpointHitDto);
+        try (MockedStatic<StatsMapper> statsMapper = Mockito.mockStatic(StatsMapper.class)) {
+            statsMapper.when(() -> StatsMapper.toEndpointHit(endpointHitDto))
+                    .thenReturn(endpointHit);
+            when(endpointHitWriter.write(endpointHit)).thenReturn(endpointHit);
+            statsMapper.when(() -> StatsMapper.toDto(endpointHit))
+                    .thenReturn(endpointHitDto);
+
+            assertThat(statsService.saveEndpointHit(endpointHitDto)).isEqualTo(endpointHitDto);
+        }
+
+        verify(dictionaryRepository, times(1)).encode(List.of(endpointHit));
+        verify(endpointHitWriter, times(1)).write(endpointHit);
+        verifyNoMoreInteractions(endpointHitWriter);
+    }
+
+    @Test
+    void saveEndpointHit_shouldSubmitTheEndpointToTheBuffer_ifBufferedIngestIsEnabled() {
+        EndpointHitDto endpointHitDto = initEndpointHitDto();
+
+        when(hitWriteBuffer.isEnabled()).thenReturn(true);
 
         assertThat(statsService.saveEndpointHit(endpointHitDto)).isEqualTo(endpointHitDto);
 
-        verify(statsRepository, times(1)).save(endpointHit);
-        verifyNoMoreInteractions(statsRepository);
+        verify(hitWriteBuffer, times(1)).submit(initEndpointHit());
+        verifyNoInteractions(endpointHitWriter);
+    }
+
+    @Test
+    void saveEndpointHits_shouldSaveTheEndpointsInBatch() {
+        List<EndpointHitDto> endpointHitDtos = List.of(initEndpointHitDto(), initEndpointHitDto());
+
+        assertThat(statsService.saveEndpointHits(endpointHitDtos)).isEqualTo(new EndpointHitsSummaryDto(2, 0));
+
+        verify(dictionaryRepository, times(1)).encode(List.of(initEndpointHit(), initEndpointHit()));
+        verify(endpointHitWriter, times(1)).writeAll(List.of(initEndpointHit(), initEndpointHit()));
+        verifyNoMoreInteractions(endpointHitWriter);
+
+        assertThat(meterRegistry.get("stats.ingest.hits").tag("batch", "true").counter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("stats.ingest.batch.size").summary().max()).isEqualTo(2);
+        assertThat(meterRegistry.get("stats.ingest.insert").tag("batch", "true").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void saveEndpointHits_shouldDropTheHitsWithARepeatedHitId() {
+        List<EndpointHitDto> endpointHitDtos = List.of(initEndpointHitDto("first"), initEndpointHitDto("first"),
+                initEndpointHitDto("second"));
+
+        assertThat(statsService.saveEndpointHits(endpointHitDtos)).isEqualTo(new EndpointHitsSummaryDto(2, 1));
+        assertThat(statsService.saveEndpointHits(List.of(initEndpointHitDto("second"))))
+                .isEqualTo(new EndpointHitsSummaryDto(0, 1));
+
+        verify(endpointHitWriter, times(1)).writeAll(List.of(initEndpointHit("first"), initEndpointHit("second")));
+        verifyNoMoreInteractions(endpointHitWriter);
+    }
+
+    @Test
+    void saveEndpointHit_shouldAcceptTheRetry_ifTheWriteFailed() {
+        when(endpointHitWriter.write(initEndpointHit("first")))
+                .thenThrow(new IllegalStateException("Connection refused"))
+                .thenReturn(initEndpointHit("first"));
+
+        assertThatExceptionOfType(IllegalStateException.class)
+                .isThrownBy(() -> statsService.saveEndpointHit(initEndpointHitDto("first")));
+        assertThat(statsService.saveEndpointHit(initEndpointHitDto("first"))).isEqualTo(initEndpointHitDto("first"));
+
+        verify(endpointHitWriter, times(2)).write(initEndpointHit("first"));
+    }
+
+    @Test
+    void saveEndpointHit_shouldDropTheRetry_untilTheTimedOutWriteFails() {
+        CompletableFuture<Void> pendingWrite = new CompletableFuture<>();
+
+        when(hitWriteBuffer.isEnabled()).thenReturn(true);
+        doThrow(new HitWriteTimeoutException("Buffered hit was not written within PT10S", pendingWrite))
+                .doNothing()
+                .when(hitWriteBuffer).submit(initEndpointHit("first"));
+
+        assertThatExceptionOfType(HitWriteTimeoutException.class)
+                .isThrownBy(() -> statsService.saveEndpointHit(initEndpointHitDto("first")));
+        assertThat(statsService.saveEndpointHit(initEndpointHitDto("first"))).isEqualTo(initEndpointHitDto("first"));
+        verify(hitWriteBuffer, times(1)).submit(initEndpointHit("first"));
+
+        pendingWrite.completeExceptionally(new IllegalStateException("Connection refused"));
+
+        assertThat(statsService.saveEndpointHit(initEndpointHitDto("first"))).isEqualTo(initEndpointHitDto("first"));
+        verify(hitWriteBuffer, times(2)).submit(initEndpointHit("first"));
+    }
+
+    private EndpointHitDto initEndpointHitDto(String hitId) {
+        EndpointHitDto endpointHitDto = initEndpointHitDto();
+        endpointHitDto.setHitId(hitId);
+        return endpointHitDto;
+    }
+
+    private EndpointHit initEndpointHit(String hitId) {
+        EndpointHit endpointHit = initEndpointHit();
+        endpointHit.setHitId(hitId);
+        return endpointHit;
     }
 
     private EndpointHitDto initEndpointHitDto() {
@@ -87,7 +349,7 @@ class StatsServiceImplTest {
 
         endpointHit.setApp("ewm-main-service");
         endpointHit.setUri("/events/1");
-        endpointHit.setIp("192.163.0.1");
+        endpointHit.setIp(IpAddressUtils.parse("192.163.0.1"));
         endpointHit.setTimestamp(LocalDateTime.of(2023, 6, 18, 21, 15, 10));
 
         return endpointHit;
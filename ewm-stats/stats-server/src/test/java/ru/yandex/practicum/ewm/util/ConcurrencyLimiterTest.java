@@ -0,0 +1,76 @@
+package ru.yandex.practicum.ewm.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConcurrencyLimiterTest {
+
+    private static final long MILLIS = 1_000_000;
+
+    private final ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 6, 0.5, Duration.ofMillis(100));
+
+    @Test
+    void tryAcquire_shouldRejectTheRequestsOverTheLimit() {
+        for (int i = 0; i < 4; i++) {
+            assertThat(limiter.tryAcquire()).isTrue();
+        }
+
+        assertThat(limiter.tryAcquire()).isFalse();
+
+        limiter.release(0, 10 * MILLIS, false);
+
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.getInFlight()).isEqualTo(4);
+    }
+
+    @Test
+    void release_shouldRaiseTheLimitByOnePerWindow_ifTheLimitIsUsed() {
+        long time = 0;
+
+        for (int i = 0; i < 4; i++) {
+            fill(limiter.getLimit());
+            release(limiter.getInFlight(), time, time + 10 * MILLIS, false);
+            time += 10 * MILLIS;
+        }
+
+        assertThat(limiter.getLimit()).isEqualTo(6);
+        assertThat(limiter.getInFlight()).isZero();
+
+        for (int i = 0; i < 100; i++) {
+            limiter.tryAcquire();
+            limiter.release(time, time + MILLIS, false);
+        }
+
+        assertThat(limiter.getLimit()).isEqualTo(6);
+    }
+
+    @Test
+    void release_shouldBackOffOncePerBurst_ifTheRequestsAreSlowOrFail() {
+        fill(4);
+        release(3, 0, 200 * MILLIS, false);
+        limiter.release(0, 200 * MILLIS, true);
+
+        assertThat(limiter.getLimit()).isEqualTo(2);
+
+        fill(2);
+        limiter.release(300 * MILLIS, 310 * MILLIS, true);
+        limiter.release(300 * MILLIS, 500 * MILLIS, false);
+
+        assertThat(limiter.getLimit()).isEqualTo(1);
+    }
+
+    private void fill(int count) {
+        for (int i = 0; i < count; i++) {
+            assertThat(limiter.tryAcquire()).isTrue();
+        }
+    }
+
+    private void release(int count, long startNanos, long endNanos, boolean failed) {
+        for (int i = 0; i < count; i++) {
+            limiter.release(startNanos, endNanos, failed);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package ru.yandex.practicum.ewm.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class HyperLogLogTest {
+
+    @Test
+    void cardinality_shouldBeExact_forSmallCardinalities() {
+        HyperLogLog sketch = new HyperLogLog();
+
+        for (int i = 0; i < 10; i++) {
+            sketch.add("192.168.0." + i);
+            sketch.add("192.168.0." + i);
+        }
+
+        assertThat(sketch.cardinality()).isEqualTo(10);
+    }
+
+    @Test
+    void cardinality_shouldBeWithinTheErrorBound_forLargeCardinalities() {
+        HyperLogLog sketch = new HyperLogLog();
+
+        for (int i = 0; i < 100_000; i++) {
+            sketch.add("10." + (i >> 16) + "." + ((i >> 8) & 0xff) + "." + (i & 0xff));
+        }
+
+        assertThat((double) sketch.cardinality()).isCloseTo(100_000, within(100_000 * 0.05));
+    }
+
+    @Test
+    void merge_shouldCountTheUnionOfTheSketches() {
+        HyperLogLog first = new HyperLogLog();
+        HyperLogLog second = new HyperLogLog();
+
+        for (int i = 0; i < 600; i++) {
+            first.add("user-" + i);
+        }
+        for (int i = 400; i < 1_000; i++) {
+            second.add("user-" + i);
+        }
+
+        assertThat((double) first.merge(second).cardinality()).isCloseTo(1_000, within(1_000 * 0.05));
+    }
+
+    @Test
+    void fromBytes_shouldRestoreSparseAndDenseSketches() {
+        HyperLogLog sparse = new HyperLogLog();
+        sparse.add("192.168.0.1");
+
+        HyperLogLog dense = new HyperLogLog();
+        for (int i = 0; i < 50_000; i++) {
+            dense.add("user-" + i);
+        }
+
+        assertThat(sparse.toBytes()).hasSize(5);
+        assertThat(HyperLogLog.fromBytes(sparse.toBytes()).cardinality()).isEqualTo(sparse.cardinality());
+        assertThat(dense.toBytes()).hasSize(2 + (1 << HyperLogLog.PRECISION));
+        assertThat(HyperLogLog.fromBytes(dense.toBytes()).cardinality()).isEqualTo(dense.cardinality());
+    }
+}
@@ -0,0 +1,36 @@
+package ru.yandex.practicum.ewm.util;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.ewm.validator.ValidationException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class IpAddressUtilsTest {
+
+    @Test
+    void parse_shouldStoreIpv4AsIpv4MappedAddress() {
+        byte[] bytes = IpAddressUtils.parse("192.168.0.1");
+
+        assertThat(bytes).hasSize(IpAddressUtils.LENGTH);
+        assertThat(bytes).isEqualTo(IpAddressUtils.parse("::ffff:192.168.0.1"));
+        assertThat(IpAddressUtils.format(bytes)).isEqualTo("192.168.0.1");
+    }
+
+    @Test
+    void format_shouldCompressIpv6Addresses() {
+        assertThat(IpAddressUtils.format(IpAddressUtils.parse("2001:0DB8:0:0:0:0:0:1"))).isEqualTo("2001:db8::1");
+        assertThat(IpAddressUtils.format(IpAddressUtils.parse("0:0:0:0:0:0:0:1"))).isEqualTo("::1");
+        assertThat(IpAddressUtils.format(IpAddressUtils.parse("fe80::1%eth0"))).isEqualTo("fe80::1");
+        assertThat(IpAddressUtils.format(IpAddressUtils.parse("1:0:0:2:0:0:0:3"))).isEqualTo("1:0:0:2::3");
+        assertThat(IpAddressUtils.format(IpAddressUtils.parse("::"))).isEqualTo("::");
+    }
+
+    @Test
+    void parse_shouldRejectHostNamesAndMalformedAddresses() {
+        assertThatExceptionOfType(ValidationException.class).isThrownBy(() -> IpAddressUtils.parse("localhost"));
+        assertThatExceptionOfType(ValidationException.class).isThrownBy(() -> IpAddressUtils.parse("256.0.0.1"));
+        assertThatExceptionOfType(ValidationException.class).isThrownBy(() -> IpAddressUtils.parse("1.2.3"));
+        assertThatExceptionOfType(ValidationException.class).isThrownBy(() -> IpAddressUtils.parse("g::1"));
+    }
+}
@@ -0,0 +1,66 @@
+package ru.yandex.practicum.ewm.util;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.ewm.model.RollupGranularity;
+import ru.yandex.practicum.ewm.model.RollupSegment;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RollupPlannerTest {
+
+    @Test
+    void plan_shouldReturnSingleRawSegment_ifTheRangeIsWithinOneMinute() {
+        LocalDateTime start = LocalDateTime.of(2023, 5, 1, 10, 15, 10);
+        LocalDateTime end = LocalDateTime.of(2023, 5, 1, 10, 16, 0);
+
+        assertThat(RollupPlanner.plan(start, end)).containsExactly(new RollupSegment(null, start, end, true));
+    }
+
+    @Test
+    void plan_shouldUseTheCoarsestAlignedBuckets() {
+        LocalDateTime start = LocalDateTime.of(2023, 5, 1, 22, 58, 30);
+        LocalDateTime end = LocalDateTime.of(2023, 5, 4, 1, 2, 15);
+
+        assertThat(RollupPlanner.plan(start, end)).containsExactly(
+                new RollupSegment(null, start, LocalDateTime.of(2023, 5, 1, 22, 59), false),
+                new RollupSegment(RollupGranularity.MINUTE,
+                        LocalDateTime.of(2023, 5, 1, 22, 59), LocalDateTime.of(2023, 5, 1, 23, 0), false),
+                new RollupSegment(RollupGranularity.HOUR,
+                        LocalDateTime.of(2023, 5, 1, 23, 0), LocalDateTime.of(2023, 5, 2, 0, 0), false),
+                new RollupSegment(RollupGranularity.DAY,
+                        LocalDateTime.of(2023, 5, 2, 0, 0), LocalDateTime.of(2023, 5, 4, 0, 0), false),
+                new RollupSegment(RollupGranularity.HOUR,
+                        LocalDateTime.of(2023, 5, 4, 0, 0), LocalDateTime.of(2023, 5, 4, 1, 0), false),
+                new RollupSegment(RollupGranularity.MINUTE,
+                        LocalDateTime.of(2023, 5, 4, 1, 0), LocalDateTime.of(2023, 5, 4, 1, 2), false),
+                new RollupSegment(null, LocalDateTime.of(2023, 5, 4, 1, 2), end, true)
+        );
+    }
+
+    @Test
+    void plan_shouldLeaveOutTheRawTail_ifAHalfOpenRangeEndsOnAMinute() {
+        LocalDateTime start = LocalDateTime.of(2023, 5, 1, 10, 15, 10);
+        LocalDateTime end = LocalDateTime.of(2023, 5, 1, 10, 18, 0);
+
+        assertThat(RollupPlanner.plan(start, end, false)).containsExactly(
+                new RollupSegment(null, start, LocalDateTime.of(2023, 5, 1, 10, 16), false),
+                new RollupSegment(RollupGranularity.MINUTE, LocalDateTime.of(2023, 5, 1, 10, 16), end, false)
+        );
+        assertThat(RollupPlanner.plan(end, end, false)).isEmpty();
+    }
+
+    @Test
+    void plan_shouldCoverTheRangeWithoutGaps() {
+        LocalDateTime start = LocalDateTime.of(2023, 1, 1, 0, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 1, 0, 0, 0);
+
+        List<RollupSegment> segments = RollupPlanner.plan(start, end);
+
+        assertThat(segments).hasSize(2);
+        assertThat(segments.get(0)).isEqualTo(new RollupSegment(RollupGranularity.DAY, start, end, false));
+        assertThat(segments.get(1)).isEqualTo(new RollupSegment(null, end, end, true));
+    }
+}
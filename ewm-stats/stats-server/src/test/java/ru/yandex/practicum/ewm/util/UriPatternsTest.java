@@ -0,0 +1,35 @@
+package ru.yandex.practicum.ewm.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UriPatternsTest {
+
+    @Test
+    void filter_shouldMatchOneSegmentPerWildcard() {
+        Predicate<String> filter = UriPatterns.filter(List.of("/events/*", "/users/1"));
+
+        assertThat(filter).accepts("/events/1", "/events/", "/users/1");
+        assertThat(filter).rejects("/events", "/events/1/comments", "/users/12", "/compilations/1");
+    }
+
+    @Test
+    void filter_shouldMatchEverythingBelowATrailingDoubleWildcard() {
+        Predicate<String> filter = UriPatterns.filter(List.of("/events/**"));
+
+        assertThat(filter).accepts("/events", "/events/1", "/events/1/comments");
+        assertThat(filter).rejects("/eventsx", "/users/1");
+    }
+
+    @Test
+    void filter_shouldTreatOtherCharactersLiterally() {
+        Predicate<String> filter = UriPatterns.filter(List.of("/events/1?.*"));
+
+        assertThat(filter).accepts("/events/1?.x");
+        assertThat(filter).rejects("/events/12.x", "/events/1?x");
+    }
+}